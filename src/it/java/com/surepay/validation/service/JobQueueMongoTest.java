@@ -0,0 +1,139 @@
+package com.surepay.validation.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.util.HashComputingInputStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the conditional updates of {@link JobQueue} against a real MongoDB, where several instances
+ * race for the same documents. Only part of the {@code mongo-it} profile, since it needs Docker.
+ */
+@Testcontainers
+class JobQueueMongoTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getReplicaSetUrl());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = new MongoTemplate(client, "validation");
+        mongoTemplate.dropCollection(JobEntity.class);
+    }
+
+    @Test
+    void shouldLeaseJobToExactlyOneOfManyInstances() throws Exception {
+        JobEntity job = insert("racing.csv");
+        List<JobQueue> instances = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            instances.add(queue("worker-" + i));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<JobEntity>>> leases = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (JobQueue instance : instances) {
+                Callable<Optional<JobEntity>> lease = () -> {
+                    start.await();
+                    return instance.lease(job.jobId());
+                };
+                leases.add(executor.submit(lease));
+            }
+            start.countDown();
+        }
+
+        List<JobEntity> leased = new ArrayList<>();
+        for (Future<Optional<JobEntity>> lease : leases) {
+            lease.get().ifPresent(leased::add);
+        }
+        assertThat(leased).hasSize(1);
+        JobEntity stored = mongoTemplate.findById(job.jobId(), JobEntity.class);
+        assertThat(stored.status()).isEqualTo(JobEntity.JobStatus.PROCESSING);
+        assertThat(stored.leaseOwner()).isEqualTo(leased.get(0).leaseOwner());
+    }
+
+    @Test
+    void shouldOnlyTakeOverExpiredLeases() {
+        JobEntity job = insert("expiring.csv");
+        JobQueue first = queue("worker-1");
+        JobQueue second = queue("worker-2");
+
+        assertThat(first.lease(job.jobId())).isPresent();
+        assertThat(second.lease(job.jobId())).isEmpty();
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(job.jobId())),
+            new Update().set("leaseExpiresAt", Instant.now().minusSeconds(1)), JobEntity.class);
+
+        assertThat(second.lease(job.jobId())).map(JobEntity::leaseOwner).contains("worker-2");
+        assertThat(first.complete(job.jobId(), null)).isFalse();
+    }
+
+    @Test
+    void shouldPagePastJobsInCreationOrder() {
+        List<String> created = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            created.add(insert("job-" + i + ".csv").jobId());
+        }
+        JobQueue queue = queue("worker-1");
+
+        List<String> paged = new ArrayList<>();
+        JobEntity last = null;
+        List<JobEntity> page;
+        do {
+            page = queue.findLeasable(last, 10);
+            page.forEach(job -> paged.add(job.jobId()));
+            last = page.isEmpty() ? null : page.getLast();
+        } while (page.size() == 10);
+
+        assertThat(paged).containsExactlyInAnyOrderElementsOf(created).doesNotHaveDuplicates();
+    }
+
+    private JobEntity insert(String filename) {
+        String hash = HashComputingInputStream.computeHash(filename.getBytes(StandardCharsets.UTF_8));
+        return mongoTemplate.insert(JobEntity.create(hash, filename).withInput("text/csv", 100));
+    }
+
+    private JobQueue queue(String instanceId) {
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getJobs().setInstanceId(instanceId);
+        return new JobQueue(mongoTemplate, validationProperties);
+    }
+}
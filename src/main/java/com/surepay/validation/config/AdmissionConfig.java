@@ -0,0 +1,34 @@
+package com.surepay.validation.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.controller.AdmissionFilter;
+import com.surepay.validation.service.LoadShedder;
+import com.surepay.validation.service.MongoLatency;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AdmissionConfig {
+
+    /**
+     * Admission control for the validation and upload session endpoints only; reading reports and job
+     * status is cheap and stays available while uploads are shed.
+     */
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(LoadShedder loadShedder, ObjectMapper objectMapper) {
+        FilterRegistrationBean<AdmissionFilter> registration =
+            new FilterRegistrationBean<>(new AdmissionFilter(loadShedder, objectMapper));
+        registration.addUrlPatterns("/api/v1/validation/validate/*", "/api/v1/validation/uploads/*");
+        return registration;
+    }
+
+    /**
+     * Feeds the latency of every MongoDB command into {@link MongoLatency}.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoLatencyListener(MongoLatency mongoLatency) {
+        return settings -> settings.addCommandListener(mongoLatency);
+    }
+}
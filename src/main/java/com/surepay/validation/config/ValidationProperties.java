@@ -4,6 +4,10 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 @Component
 @ConfigurationProperties(prefix = "validation")
@@ -12,6 +16,14 @@ public class ValidationProperties {
     private Balance balance = new Balance();
     private Error error = new Error();
     private Pagination pagination = new Pagination();
+    private Export export = new Export();
+    private Cache cache = new Cache();
+    private Spool spool = new Spool();
+    private Chunking chunking = new Chunking();
+    private Upload upload = new Upload();
+    private Jobs jobs = new Jobs();
+    private Sync sync = new Sync();
+    private Admission admission = new Admission();
     
     public Balance getBalance() {
         return balance;
@@ -37,6 +49,70 @@ public class ValidationProperties {
         this.pagination = pagination;
     }
     
+    public Export getExport() {
+        return export;
+    }
+    
+    public void setExport(Export export) {
+        this.export = export;
+    }
+    
+    public Cache getCache() {
+        return cache;
+    }
+    
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+    
+    public Spool getSpool() {
+        return spool;
+    }
+    
+    public void setSpool(Spool spool) {
+        this.spool = spool;
+    }
+    
+    public Chunking getChunking() {
+        return chunking;
+    }
+    
+    public void setChunking(Chunking chunking) {
+        this.chunking = chunking;
+    }
+    
+    public Upload getUpload() {
+        return upload;
+    }
+    
+    public void setUpload(Upload upload) {
+        this.upload = upload;
+    }
+    
+    public Jobs getJobs() {
+        return jobs;
+    }
+    
+    public void setJobs(Jobs jobs) {
+        this.jobs = jobs;
+    }
+    
+    public Sync getSync() {
+        return sync;
+    }
+    
+    public void setSync(Sync sync) {
+        this.sync = sync;
+    }
+    
+    public Admission getAdmission() {
+        return admission;
+    }
+    
+    public void setAdmission(Admission admission) {
+        this.admission = admission;
+    }
+    
     public static class Balance {
         private BigDecimal tolerance = new BigDecimal("0.01");
         
@@ -81,5 +157,445 @@ public class ValidationProperties {
             this.maxPageSize = maxPageSize;
         }
     }
+    
+    public static class Export {
+        private int batchSize = 1000;
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+    
+    public static class Cache {
+        private long maxWeightBytes = 64L * 1024 * 1024;
+        private Duration otherRulesTtl = Duration.ofSeconds(30);
+        private KnownReports knownReports = new KnownReports();
+        
+        public long getMaxWeightBytes() {
+            return maxWeightBytes;
+        }
+        
+        public void setMaxWeightBytes(long maxWeightBytes) {
+            this.maxWeightBytes = maxWeightBytes;
+        }
+        
+        public Duration getOtherRulesTtl() {
+            return otherRulesTtl;
+        }
+        
+        public void setOtherRulesTtl(Duration otherRulesTtl) {
+            this.otherRulesTtl = otherRulesTtl;
+        }
+        
+        public KnownReports getKnownReports() {
+            return knownReports;
+        }
+        
+        public void setKnownReports(KnownReports knownReports) {
+            this.knownReports = knownReports;
+        }
+    }
+    
+    public static class KnownReports {
+        private boolean enabled = true;
+        private long expectedReports = 1_000_000;
+        private double falsePositiveRate = 0.01;
+        private Duration rebuildInterval = Duration.ofMinutes(15);
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getExpectedReports() {
+            return expectedReports;
+        }
+        
+        public void setExpectedReports(long expectedReports) {
+            this.expectedReports = expectedReports;
+        }
+        
+        public double getFalsePositiveRate() {
+            return falsePositiveRate;
+        }
+        
+        public void setFalsePositiveRate(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+        }
+        
+        public Duration getRebuildInterval() {
+            return rebuildInterval;
+        }
+        
+        public void setRebuildInterval(Duration rebuildInterval) {
+            this.rebuildInterval = rebuildInterval;
+        }
+    }
+    
+    public static class Spool {
+        private String directory = Path.of(System.getProperty("java.io.tmpdir"), "validation-spool").toString();
+        private long maxBytes = 20L * 1024 * 1024 * 1024;
+        private Duration retention = Duration.ofHours(1);
+        private Duration cleanupInterval = Duration.ofMinutes(5);
+        
+        public String getDirectory() {
+            return directory;
+        }
+        
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+        
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+        
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+        
+        public Duration getRetention() {
+            return retention;
+        }
+        
+        public void setRetention(Duration retention) {
+            this.retention = retention;
+        }
+        
+        public Duration getCleanupInterval() {
+            return cleanupInterval;
+        }
+        
+        public void setCleanupInterval(Duration cleanupInterval) {
+            this.cleanupInterval = cleanupInterval;
+        }
+    }
+    
+    public static class Chunking {
+        private boolean enabled = true;
+        private int minSize = 64 * 1024;
+        private int averageSize = 256 * 1024;
+        private int maxSize = 1024 * 1024;
+        private Duration retention = Duration.ofDays(30);
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getMinSize() {
+            return minSize;
+        }
+        
+        public void setMinSize(int minSize) {
+            this.minSize = minSize;
+        }
+        
+        public int getAverageSize() {
+            return averageSize;
+        }
+        
+        public void setAverageSize(int averageSize) {
+            this.averageSize = averageSize;
+        }
+        
+        public int getMaxSize() {
+            return maxSize;
+        }
+        
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+        
+        public Duration getRetention() {
+            return retention;
+        }
+        
+        public void setRetention(Duration retention) {
+            this.retention = retention;
+        }
+    }
+    
+    public static class Upload {
+        private Duration sessionTtl = Duration.ofHours(1);
+        private int maxParts = 10_000;
+        private Duration cleanupInterval = Duration.ofMinutes(1);
+        
+        public Duration getSessionTtl() {
+            return sessionTtl;
+        }
+        
+        public void setSessionTtl(Duration sessionTtl) {
+            this.sessionTtl = sessionTtl;
+        }
+        
+        public int getMaxParts() {
+            return maxParts;
+        }
+        
+        public void setMaxParts(int maxParts) {
+            this.maxParts = maxParts;
+        }
+        
+        public Duration getCleanupInterval() {
+            return cleanupInterval;
+        }
+        
+        public void setCleanupInterval(Duration cleanupInterval) {
+            this.cleanupInterval = cleanupInterval;
+        }
+    }
+    
+    public static class Jobs {
+        private double heapFraction = 0.6;
+        private long memoryBudgetBytes = 0;
+        private long initialThroughputBytesPerSecond = 50L * 1024 * 1024;
+        private int cpuParallelism = 0;
+        private String instanceId = "";
+        private Duration leaseDuration = Duration.ofMinutes(2);
+        private Duration heartbeatInterval = Duration.ofSeconds(30);
+        private Duration pollInterval = Duration.ofSeconds(5);
+        private String checkpointDirectory = Path.of(System.getProperty("java.io.tmpdir"), "validation-checkpoints").toString();
+        private Duration checkpointInterval = Duration.ofSeconds(30);
+        private long interactiveMaxBytes = 50L * 1024 * 1024;
+        private double batchMemoryShare = 0.8;
+        private Duration maxQueueWait = Duration.ofMinutes(5);
+        private Map<String, Integer> clientWeights = new HashMap<>();
+        private Duration progressInterval = Duration.ofSeconds(2);
+        private Duration progressPersistInterval = Duration.ofSeconds(15);
+        private Duration eventsTimeout = Duration.ofMinutes(30);
+        
+        public double getHeapFraction() {
+            return heapFraction;
+        }
+        
+        public void setHeapFraction(double heapFraction) {
+            this.heapFraction = heapFraction;
+        }
+        
+        public long getMemoryBudgetBytes() {
+            return memoryBudgetBytes;
+        }
+        
+        public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+            this.memoryBudgetBytes = memoryBudgetBytes;
+        }
+        
+        public long getInitialThroughputBytesPerSecond() {
+            return initialThroughputBytesPerSecond;
+        }
+        
+        public void setInitialThroughputBytesPerSecond(long initialThroughputBytesPerSecond) {
+            this.initialThroughputBytesPerSecond = initialThroughputBytesPerSecond;
+        }
+        
+        public int getCpuParallelism() {
+            return cpuParallelism;
+        }
+        
+        public void setCpuParallelism(int cpuParallelism) {
+            this.cpuParallelism = cpuParallelism;
+        }
+        
+        public String getInstanceId() {
+            return instanceId;
+        }
+        
+        public void setInstanceId(String instanceId) {
+            this.instanceId = instanceId;
+        }
+        
+        public Duration getLeaseDuration() {
+            return leaseDuration;
+        }
+        
+        public void setLeaseDuration(Duration leaseDuration) {
+            this.leaseDuration = leaseDuration;
+        }
+        
+        public Duration getHeartbeatInterval() {
+            return heartbeatInterval;
+        }
+        
+        public void setHeartbeatInterval(Duration heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+        }
+        
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+        
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+        
+        public String getCheckpointDirectory() {
+            return checkpointDirectory;
+        }
+        
+        public void setCheckpointDirectory(String checkpointDirectory) {
+            this.checkpointDirectory = checkpointDirectory;
+        }
+        
+        public Duration getCheckpointInterval() {
+            return checkpointInterval;
+        }
+        
+        public void setCheckpointInterval(Duration checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+        }
+        
+        public long getInteractiveMaxBytes() {
+            return interactiveMaxBytes;
+        }
+        
+        public void setInteractiveMaxBytes(long interactiveMaxBytes) {
+            this.interactiveMaxBytes = interactiveMaxBytes;
+        }
+        
+        public double getBatchMemoryShare() {
+            return batchMemoryShare;
+        }
+        
+        public void setBatchMemoryShare(double batchMemoryShare) {
+            this.batchMemoryShare = batchMemoryShare;
+        }
+        
+        public Duration getMaxQueueWait() {
+            return maxQueueWait;
+        }
+        
+        public void setMaxQueueWait(Duration maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+        }
+        
+        public Map<String, Integer> getClientWeights() {
+            return clientWeights;
+        }
+        
+        public void setClientWeights(Map<String, Integer> clientWeights) {
+            this.clientWeights = clientWeights;
+        }
+        
+        public Duration getProgressInterval() {
+            return progressInterval;
+        }
+        
+        public void setProgressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
+        }
+        
+        public Duration getProgressPersistInterval() {
+            return progressPersistInterval;
+        }
+        
+        public void setProgressPersistInterval(Duration progressPersistInterval) {
+            this.progressPersistInterval = progressPersistInterval;
+        }
+        
+        public Duration getEventsTimeout() {
+            return eventsTimeout;
+        }
+        
+        public void setEventsTimeout(Duration eventsTimeout) {
+            this.eventsTimeout = eventsTimeout;
+        }
+    }
+    
+    public static class Sync {
+        private Duration deadline = Duration.ofSeconds(30);
+        private Duration maxDeadline = Duration.ofMinutes(5);
+        
+        public Duration getDeadline() {
+            return deadline;
+        }
+        
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+        
+        public Duration getMaxDeadline() {
+            return maxDeadline;
+        }
+        
+        public void setMaxDeadline(Duration maxDeadline) {
+            this.maxDeadline = maxDeadline;
+        }
+    }
+    
+    public static class Admission {
+        private boolean enabled = true;
+        private double maxHeapUsedFraction = 0.85;
+        private long maxInFlightBytes = 1024L * 1024 * 1024;
+        private int maxQueueDepth = 100;
+        private Duration maxMongoLatency = Duration.ofMillis(500);
+        private Duration minRetryAfter = Duration.ofSeconds(5);
+        private Duration maxRetryAfter = Duration.ofMinutes(5);
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public double getMaxHeapUsedFraction() {
+            return maxHeapUsedFraction;
+        }
+        
+        public void setMaxHeapUsedFraction(double maxHeapUsedFraction) {
+            this.maxHeapUsedFraction = maxHeapUsedFraction;
+        }
+        
+        public long getMaxInFlightBytes() {
+            return maxInFlightBytes;
+        }
+        
+        public void setMaxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+        }
+        
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+        
+        public void setMaxQueueDepth(int maxQueueDepth) {
+            this.maxQueueDepth = maxQueueDepth;
+        }
+        
+        public Duration getMaxMongoLatency() {
+            return maxMongoLatency;
+        }
+        
+        public void setMaxMongoLatency(Duration maxMongoLatency) {
+            this.maxMongoLatency = maxMongoLatency;
+        }
+        
+        public Duration getMinRetryAfter() {
+            return minRetryAfter;
+        }
+        
+        public void setMinRetryAfter(Duration minRetryAfter) {
+            this.minRetryAfter = minRetryAfter;
+        }
+        
+        public Duration getMaxRetryAfter() {
+            return maxRetryAfter;
+        }
+        
+        public void setMaxRetryAfter(Duration maxRetryAfter) {
+            this.maxRetryAfter = maxRetryAfter;
+        }
+    }
 }
-
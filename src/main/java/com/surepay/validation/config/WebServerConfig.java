@@ -0,0 +1,20 @@
+package com.surepay.validation.config;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class WebServerConfig {
+
+    /**
+     * Sends {@code 100 Continue} only once a handler starts reading the body, so a client that sent
+     * {@code Expect: 100-continue} with a known content hash never uploads a file we already validated.
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> continueOnReadCustomizer() {
+        return factory -> factory.addConnectorCustomizers(
+            connector -> connector.setProperty("continueResponseTiming", "onRead"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.surepay.validation.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.dto.ErrorResponse;
+import com.surepay.validation.service.LoadShedder;
+import com.surepay.validation.util.ContentHash;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Sheds uploads to {@link ValidationController} and {@link UploadSessionController} with
+ * {@code 429 Too Many Requests} and a {@code Retry-After} while {@link LoadShedder} finds this instance
+ * saturated. It runs before the body is read, so a client that sent {@code Expect: 100-continue} does
+ * not upload the file at all.
+ * <p>
+ * An upload with the content hash in {@code If-None-Match} is let through, since a stored result
+ * answers it without reading the body; the controller sheds it with {@link #deferredShed} only when it
+ * would have to read the upload after all.
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionFilter.class);
+    static final String REJECTION_ATTRIBUTE = AdmissionFilter.class.getName() + ".rejection";
+    // Endpoints that answer If-None-Match from a stored result; streaming mode always reads the upload
+    private static final Set<String> CONDITIONAL_UPLOADS = Set.of("/api/v1/validation/validate", "/api/v1/validation/validate/async");
+
+    private final LoadShedder loadShedder;
+    private final ObjectMapper objectMapper;
+
+    public AdmissionFilter(LoadShedder loadShedder, ObjectMapper objectMapper) {
+        this.loadShedder = loadShedder;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * The rejection of a conditional upload that was let through, for when it has to be shed after all
+     * because no stored result answers it; whoever sends the 429 counts it.
+     */
+    public static Optional<LoadShedder.Rejection> deferredShed(HttpServletRequest request) {
+        return Optional.ofNullable((LoadShedder.Rejection) request.getAttribute(REJECTION_ATTRIBUTE));
+    }
+
+    static String retryMessage(Duration retryAfter) {
+        return "The service is at capacity. Retry after " + retryAfter.toSeconds() + " seconds.";
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod()) && !HttpMethod.PUT.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Optional<LoadShedder.Rejection> rejection = loadShedder.shed();
+        if (rejection.isEmpty()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (isConditional(request)) {
+            request.setAttribute(REJECTION_ATTRIBUTE, rejection.get());
+            filterChain.doFilter(request, response);
+            return;
+        }
+        Duration retryAfter = rejection.get().retryAfter();
+        logger.debug("Shedding upload to {}, retry after {}", request.getRequestURI(), retryAfter);
+        rejection.get().count();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.toSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), ErrorResponse.of("TOO_MANY_REQUESTS", retryMessage(retryAfter)));
+    }
+
+    // Reads neither the body nor form parameters, which would make the container read a multipart body
+    private static boolean isConditional(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return HttpMethod.POST.matches(request.getMethod())
+            && CONDITIONAL_UPLOADS.contains(path)
+            && !isStreaming(request.getQueryString())
+            && ContentHash.fromEntityTag(request.getHeader(HttpHeaders.IF_NONE_MATCH)).isPresent();
+    }
+
+    // Whether the query selects streaming mode, which the controller maps for a first stream value of exactly "true"
+    static boolean isStreaming(String query) {
+        if (query == null) {
+            return false;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            if (URLDecoder.decode(name, StandardCharsets.UTF_8).equals("stream")) {
+                return separator >= 0
+                    && "true".equals(URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return false;
+    }
+}
@@ -2,8 +2,10 @@ package com.surepay.validation.controller;
 
 import com.surepay.validation.dto.ErrorResponse;
 import com.surepay.validation.parser.ParseException;
+import com.surepay.validation.spool.SpoolQuotaExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -37,6 +39,17 @@ public class GlobalExceptionHandler {
             .body(error);
     }
 
+    @ExceptionHandler(SpoolQuotaExceededException.class)
+    public ResponseEntity<ErrorResponse> handleSpoolQuotaExceededException(SpoolQuotaExceededException e) {
+        logger.warn("Upload rejected: {}", e.getMessage());
+        ErrorResponse error = ErrorResponse.of("INSUFFICIENT_STORAGE", e.getMessage());
+        return ResponseEntity
+            .status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "60")
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(error);
+    }
+
     @ExceptionHandler(IOException.class)
     public ResponseEntity<ErrorResponse> handleIOException(IOException e) {
         logger.error("IO error during file processing: {}", e.getMessage(), e);
@@ -0,0 +1,60 @@
+package com.surepay.validation.controller;
+
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.dto.ErrorResponse;
+import com.surepay.validation.dto.HashLookupResponse;
+import com.surepay.validation.service.JobService;
+import com.surepay.validation.service.ReportService;
+import com.surepay.validation.util.ContentHash;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+
+/**
+ * Lets clients check whether content was already validated before uploading it. The hash is the one
+ * {@link ContentHash} computes; {@code HEAD} answers with the status code only.
+ */
+@RestController
+@RequestMapping("/api/v1/validation/hashes")
+public class HashController {
+
+    private final ReportService reportService;
+    private final JobService jobService;
+
+    public HashController(ReportService reportService, JobService jobService) {
+        this.reportService = reportService;
+        this.jobService = jobService;
+    }
+
+    @GetMapping(value = "/{hash}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> lookup(@PathVariable String hash) {
+        String normalizedHash = hash.toLowerCase();
+        if (!ContentHash.isValid(normalizedHash)) {
+            ErrorResponse error = ErrorResponse.of("INVALID_INPUT",
+                "Hash must be 32 hexadecimal characters, got: " + hash);
+            return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(error);
+        }
+        
+        boolean reportAvailable = reportService.isReportCurrent(normalizedHash);
+        Optional<JobEntity> job = jobService.getJob(normalizedHash);
+        if (!reportAvailable && job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        var response = ResponseEntity.ok().eTag(normalizedHash);
+        if (reportAvailable) {
+            response.header(HttpHeaders.CONTENT_LOCATION, "/api/v1/validation/reports/" + normalizedHash);
+        }
+        return response
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(new HashLookupResponse(
+                normalizedHash,
+                reportAvailable,
+                job.map(j -> j.status().name()).orElse(null)));
+    }
+}
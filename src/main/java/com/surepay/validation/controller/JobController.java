@@ -1,33 +1,44 @@
 package com.surepay.validation.controller;
 
+import com.surepay.validation.dto.ErrorResponse;
 import com.surepay.validation.dto.ValidationJobResponse;
 import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.service.JobEvents;
 import com.surepay.validation.service.JobService;
 import com.surepay.validation.domain.JobEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/v1/validation/jobs")
 public class JobController {
 
     private final JobService jobService;
+    private final JobEvents jobEvents;
 
-    public JobController(JobService jobService) {
+    public JobController(JobService jobService, JobEvents jobEvents) {
         this.jobService = jobService;
+        this.jobEvents = jobEvents;
     }
 
     @GetMapping("/{jobId}/status")
     public ResponseEntity<ValidationJobResponse> getJobStatus(@PathVariable String jobId) {
         return jobService.getJob(jobId)
             .map(job -> {
-                ValidationJobResponse response = ValidationJobResponse.from(job);
+                ValidationJobResponse response = job.status() == JobEntity.JobStatus.PENDING
+                    ? jobService.getQueueStatus(jobId)
+                        .map(queue -> ValidationJobResponse.from(job)
+                            .withQueue(queue.position(), queue.queueDepth(), queue.estimatedStartAt()))
+                        .orElseGet(() -> ValidationJobResponse.from(job))
+                    : ValidationJobResponse.from(job);
                 
                 HttpStatus status = switch (job.status()) {
                     case COMPLETED -> HttpStatus.OK;
                     case FAILED -> HttpStatus.INTERNAL_SERVER_ERROR;
+                    case CANCELLED -> HttpStatus.OK;
                     case PROCESSING, PENDING -> HttpStatus.ACCEPTED;
                 };
                 
@@ -38,6 +49,17 @@ public class JobController {
             .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Streams the status and progress of a job as Server-Sent Events until it finishes, instead of
+     * polling {@code /status}.
+     */
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJobEvents(@PathVariable String jobId) {
+        return jobEvents.subscribe(jobId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/{jobId}/result")
     public ResponseEntity<ValidationReportDto> getJobResult(@PathVariable String jobId) {
         return jobService.getJob(jobId)
@@ -45,6 +67,22 @@ public class JobController {
             .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Cancels a job that is queued or running. A job that already completed or failed is left as it
+     * is and answered with 409.
+     */
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<?> cancelJob(@PathVariable String jobId) {
+        return jobService.cancelJob(jobId)
+            .<ResponseEntity<?>>map(job -> job.status() == JobEntity.JobStatus.CANCELLED
+                ? ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(ValidationJobResponse.from(job))
+                : ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ErrorResponse.of("JOB_FINISHED", "Job " + jobId + " already finished with status " + job.status())))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     private ResponseEntity<ValidationReportDto> buildResultResponse(JobEntity job) {
         if (job.status() == JobEntity.JobStatus.COMPLETED && job.report() != null) {
             return ResponseEntity.ok()
@@ -52,6 +90,8 @@ public class JobController {
                 .body(job.report());
         } else if (job.status() == JobEntity.JobStatus.FAILED) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        } else if (job.status() == JobEntity.JobStatus.CANCELLED) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
         } else {
             return ResponseEntity.status(HttpStatus.ACCEPTED).build();
         }
@@ -2,17 +2,30 @@ package com.surepay.validation.controller;
 
 import com.surepay.validation.config.ValidationProperties;
 import com.surepay.validation.dto.ErrorResponse;
+import com.surepay.validation.reporter.ErrorExportWriter;
 import com.surepay.validation.service.ReportService;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/validation/reports")
 public class ReportController {
 
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // A report only changes when its content is re-validated under other rules, which changes its
+    // version and so its ETag; caches may keep it but must revalidate
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePublic();
+
     private final ReportService reportService;
     private final ValidationProperties validationProperties;
 
@@ -26,7 +39,9 @@ public class ReportController {
             @PathVariable String reportId,
             @RequestParam(value = "errors", defaultValue = "false") boolean includeErrors,
             @RequestParam(value = "page", required = false) Integer page,
-            @RequestParam(value = "size", required = false) Integer size) {
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
         if (includeErrors) {
             int pageNum = (page != null) ? page : 0;
@@ -38,6 +53,14 @@ public class ReportController {
                     .body(error);
             }
             
+            if (after != null && after < -1) {
+                ErrorResponse error = ErrorResponse.of("INVALID_INPUT", 
+                    "Cursor must be -1 or a non-negative error index, got: " + after);
+                return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(error);
+            }
+            
             int defaultPageSize = validationProperties.getPagination().getDefaultPageSize();
             int maxPageSize = validationProperties.getPagination().getMaxPageSize();
             int pageSize = (size != null) ? size : defaultPageSize;
@@ -58,20 +81,113 @@ public class ReportController {
                     .body(error);
             }
             
-            Pageable pageable = PageRequest.of(pageNum, pageSize);
+            // Error indexes are dense per report, so a page number maps directly onto a cursor
+            int afterIndex = (after != null)
+                ? after
+                : (int) Math.min((long) pageNum * pageSize - 1, Integer.MAX_VALUE);
             
-            return reportService.getReport(reportId, includeErrors, pageable)
-                .map(report -> ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_JSON)
+            Optional<String> version = reportService.getReportVersion(reportId);
+            if (version.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = etag(reportId + "." + version.get() + ":" + afterIndex + ":" + pageSize);
+            if (matches(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
+            
+            if (afterIndex == -1) {
+                return reportService.getReportPayload(reportId, true, pageSize)
+                    .<ResponseEntity<?>>map(payload -> pageResponse(
+                        payload.summary().errorCount(), afterIndex, payload.errorsIncluded(), pageSize, etag)
+                        .body(payload.json()))
+                    .orElse(ResponseEntity.notFound().build());
+            }
+            
+            return reportService.getReportWithErrors(reportId, afterIndex, pageSize)
+                .<ResponseEntity<?>>map(report -> pageResponse(
+                    report.errorCount(), afterIndex, report.errors().size(), pageSize, etag)
                     .body(report))
                 .orElse(ResponseEntity.notFound().build());
         } else {
-            return reportService.getReport(reportId, includeErrors)
-                .map(report -> ResponseEntity.ok()
+            Optional<String> version = reportService.getReportVersion(reportId);
+            if (version.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = etag(reportId + "." + version.get());
+            if (matches(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
+            
+            return reportService.getReportPayload(reportId, false, 0)
+                .<ResponseEntity<?>>map(payload -> ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(REVALIDATE)
                     .contentType(MediaType.APPLICATION_JSON)
-                    .body(report))
+                    .body(payload.json()))
                 .orElse(ResponseEntity.notFound().build());
         }
     }
-}
 
+    private ResponseEntity.BodyBuilder pageResponse(
+            int errorCount, int afterIndex, int errorsOnPage, int pageSize, String etag) {
+        var response = ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(REVALIDATE)
+            .contentType(MediaType.APPLICATION_JSON)
+            .header(TOTAL_COUNT_HEADER, String.valueOf(errorCount));
+        long lastIndex = (long) afterIndex + errorsOnPage;
+        if (errorsOnPage == pageSize && lastIndex < errorCount - 1) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(lastIndex));
+        }
+        return response;
+    }
+
+    private static ResponseEntity<?> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+            .eTag(etag)
+            .cacheControl(REVALIDATE)
+            .build();
+    }
+
+    private static String etag(String value) {
+        return "\"" + value + "\"";
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @GetMapping("/{reportId}/errors/export")
+    public ResponseEntity<StreamingResponseBody> exportErrors(
+            @PathVariable String reportId,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format) {
+        
+        ErrorExportWriter.Format exportFormat = ErrorExportWriter.Format.fromString(format);
+        
+        if (!reportService.reportExists(reportId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        StreamingResponseBody body = out -> reportService.exportErrors(reportId, exportFormat, out);
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(exportFormat.getMediaType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(reportId + "-errors." + exportFormat.getExtension())
+                .build()
+                .toString())
+            .body(body);
+    }
+}
@@ -0,0 +1,133 @@
+package com.surepay.validation.controller;
+
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.dto.CreateUploadRequest;
+import com.surepay.validation.dto.ErrorResponse;
+import com.surepay.validation.dto.UploadPartResponse;
+import com.surepay.validation.dto.UploadSessionResponse;
+import com.surepay.validation.dto.ValidationJobResponse;
+import com.surepay.validation.parser.ParseException;
+import com.surepay.validation.service.UploadSessionService;
+import com.surepay.validation.util.FileRequestUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Optional;
+
+/**
+ * Multi-part uploads: create a session, {@code PUT} the parts in any order and in parallel, then
+ * complete the session to validate the assembled file as an async job.
+ */
+@RestController
+@RequestMapping("/api/v1/validation/uploads")
+public class UploadSessionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionController.class);
+
+    private final UploadSessionService uploadSessionService;
+
+    public UploadSessionController(UploadSessionService uploadSessionService) {
+        this.uploadSessionService = uploadSessionService;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> createUpload(@RequestBody CreateUploadRequest request) throws ParseException {
+        String filename = request.filename() != null ? request.filename() : "unknown";
+        String contentType;
+        try {
+            contentType = FileRequestUtil.determineContentType(request.contentType(), filename);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ErrorResponse.of("UNSUPPORTED_FORMAT", e.getMessage()));
+        }
+
+        UploadSessionResponse session = uploadSessionService.create(filename, contentType);
+        return ResponseEntity
+            .created(URI.create("/api/v1/validation/uploads/" + session.uploadId()))
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(session);
+    }
+
+    @GetMapping(value = "/{uploadId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getUpload(@PathVariable String uploadId) {
+        return orNotFound(uploadSessionService.get(uploadId), uploadId);
+    }
+
+    /**
+     * Stores one part from the raw request body. The response carries the hash of the part, also as
+     * the {@code ETag}, so clients can check what arrived; uploading a part again replaces it.
+     */
+    @PutMapping(value = "/{uploadId}/parts/{partNumber}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> uploadPart(
+            @PathVariable String uploadId,
+            @PathVariable int partNumber,
+            HttpServletRequest request) throws IOException {
+        Optional<UploadPartResponse> part;
+        try {
+            part = uploadSessionService.uploadPart(
+                uploadId, partNumber, request.getInputStream(), request.getContentLengthLong());
+        } catch (FileUploadSizeException e) {
+            return partsTooLarge();
+        }
+        return part
+            .<ResponseEntity<?>>map(stored -> ResponseEntity.ok()
+                .eTag(stored.hash())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(stored))
+            .orElseGet(() -> uploadNotFound(uploadId));
+    }
+
+    @PostMapping(value = "/{uploadId}/complete", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> completeUpload(@PathVariable String uploadId, HttpServletRequest request) throws IOException {
+        Optional<JobEntity> submitted;
+        try {
+            submitted = uploadSessionService.complete(uploadId, ValidationController.submitter(request));
+        } catch (FileUploadSizeException e) {
+            return partsTooLarge();
+        }
+        return submitted
+            .<ResponseEntity<?>>map(job -> {
+                logger.info("Upload {} submitted as job {}", uploadId, job.jobId());
+                return ResponseEntity
+                    .accepted()
+                    .location(URI.create("/api/v1/validation/jobs/" + job.jobId() + "/status"))
+                    .body(ValidationJobResponse.from(job));
+            })
+            .orElseGet(() -> uploadNotFound(uploadId));
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<?> abortUpload(@PathVariable String uploadId) {
+        return uploadSessionService.abort(uploadId)
+            ? ResponseEntity.noContent().build()
+            : uploadNotFound(uploadId);
+    }
+
+    private ResponseEntity<?> orNotFound(Optional<?> body, String uploadId) {
+        return body
+            .<ResponseEntity<?>>map(value -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(value))
+            .orElseGet(() -> uploadNotFound(uploadId));
+    }
+
+    private ResponseEntity<ErrorResponse> partsTooLarge() {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(ErrorResponse.of("FILE_TOO_LARGE",
+                "Parts exceed the maximum allowed size of 2.5 GB for async validation."));
+    }
+
+    private ResponseEntity<ErrorResponse> uploadNotFound(String uploadId) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(ErrorResponse.of("UPLOAD_NOT_FOUND", "Upload session " + uploadId + " does not exist or has expired"));
+    }
+}
@@ -1,20 +1,40 @@
 package com.surepay.validation.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.dto.ErrorResponse;
 import com.surepay.validation.dto.ValidationJobResponse;
+import com.surepay.validation.parser.ParseException;
+import com.surepay.validation.reporter.StreamingReportWriter;
+import com.surepay.validation.service.JobScheduler;
 import com.surepay.validation.service.JobService;
 import com.surepay.validation.service.ValidationService;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import com.surepay.validation.util.ContentHash;
 import com.surepay.validation.util.FileSizeValidator;
 import com.surepay.validation.util.FileRequestUtil;
+import com.surepay.validation.util.SizeLimitedInputStream;
+import com.surepay.validation.util.StreamingMultipart;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/validation")
@@ -22,28 +42,44 @@ public class ValidationController {
     
     private static final Logger logger = LoggerFactory.getLogger(ValidationController.class);
 
+    // Original filename for jobs created from a stored report, since the upload is never read,
+    // and for raw-body uploads, which carry no filename of their own
+    static final String FILENAME_HEADER = "X-Filename";
+    // Who submits an async job and the lane it asks for, interactive or batch
+    static final String CLIENT_ID_HEADER = "X-Client-Id";
+    static final String PRIORITY_HEADER = "X-Job-Priority";
+    // How long a sync request waits for the result before it gets the job the validation continues as
+    static final String SYNC_DEADLINE_HEADER = "X-Sync-Deadline";
+    static final String TEXT_CSV_VALUE = "text/csv";
+    private static final String SYNC_SIZE_MESSAGE = "File exceeds the maximum allowed size of 250 MB for synchronous validation."
+        + " Please use /api/v1/validation/validate/async endpoint for larger files.";
+    private static final String ASYNC_SIZE_MESSAGE = "File exceeds the maximum allowed size of 2.5 GB for async validation.";
+
     private final ValidationService validationService;
     private final JobService jobService;
+    private final ObjectMapper objectMapper;
+    private final SpoolStore spoolStore;
 
     public ValidationController(
             ValidationService validationService,
-            JobService jobService) {
+            JobService jobService,
+            ObjectMapper objectMapper,
+            SpoolStore spoolStore) {
         this.validationService = validationService;
         this.jobService = jobService;
+        this.objectMapper = objectMapper;
+        this.spoolStore = spoolStore;
     }
 
     @PostMapping(value = "/validate", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> validateFile(@RequestParam("file") MultipartFile file) throws IOException {
-        
+    public ResponseEntity<?> validateFile(
+            @RequestParam("file") MultipartFile file,
+            HttpServletRequest request) throws IOException {
+        Duration deadline = syncDeadline(request);
         logger.info("Received validation request for file: {}, size: {} bytes", 
                    file.getOriginalFilename(), file.getSize());
 
-        var fileRequest = FileRequestUtil.processFileRequest(
-            file,
-            FileSizeValidator.MAX_SYNC_FILE_SIZE,
-            String.format("File size (%d bytes) exceeds the maximum allowed size of 250 MB for synchronous validation." +
-                    " Please use /api/v1/validation/validate/async endpoint for larger files.", file.getSize())
-        );
+        var fileRequest = processSyncFileRequest(file);
         
         if (!fileRequest.isValid()) {
             return ResponseEntity.status(fileRequest.errorStatus())
@@ -51,25 +87,108 @@ public class ValidationController {
                 .body(fileRequest.errorResponse());
         }
         
-        var result = validationService.validateAndStoreReport(
-            file.getInputStream(),
-            fileRequest.contentType(),
-            fileRequest.filename(),
-            fileRequest.fileSize()
-        );
+        SpooledFile spooled = spoolStore.spool(file.getInputStream(), fileRequest.fileSize());
+        return syncResponse(jobService.validateWithin(spooled, fileRequest.contentType(), fileRequest.filename(), deadline));
+    }
 
-        HttpStatus status = result.validationResult().isValid() 
-            ? HttpStatus.OK 
-            : HttpStatus.BAD_REQUEST;
-        return ResponseEntity.status(status)
-            .header("X-Report-Id", result.reportId())
+    /**
+     * Sync validation for clients that computed the content hash up front (see {@link ContentHash}) and
+     * send it as {@code If-None-Match}. A stored result is returned without reading the upload; with
+     * {@code Expect: 100-continue} the client does not even send it. Otherwise the upload is validated.
+     */
+    @PostMapping(value = "/validate", headers = HttpHeaders.IF_NONE_MATCH, consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> validateFileIfNoneMatch(
+            @RequestHeader(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+            MultipartHttpServletRequest request) throws IOException {
+        
+        Optional<ValidationService.ValidationAndStorageResult> stored = ContentHash.fromEntityTag(ifNoneMatch)
+            .flatMap(validationService::findStoredReport);
+        if (stored.isPresent()) {
+            logger.info("Returning stored report {} without reading the upload", stored.get().reportId());
+            return validationResponse(stored.get());
+        }
+        Optional<ResponseEntity<ErrorResponse>> shed = shedResponse(request);
+        if (shed.isPresent()) {
+            return shed.get();
+        }
+        
+        MultipartFile file = request.getFile("file");
+        if (file == null) {
+            return missingFileResponse();
+        }
+        return validateFile(file, request);
+    }
+
+    /**
+     * Synchronous validation with the report written while the file is being validated. The status is
+     * committed before the outcome is known, so it is always 200 and the result is in the body trailer.
+     */
+    @PostMapping(value = "/validate", params = "stream=true", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> validateFileStreaming(@RequestParam("file") MultipartFile file) throws IOException {
+        
+        logger.info("Received streaming validation request for file: {}, size: {} bytes", 
+                   file.getOriginalFilename(), file.getSize());
+
+        var fileRequest = processSyncFileRequest(file);
+        
+        if (!fileRequest.isValid()) {
+            ErrorResponse error = fileRequest.errorResponse();
+            return ResponseEntity.status(fileRequest.errorStatus())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, error));
+        }
+        
+        InputStream inputStream = file.getInputStream();
+        StreamingResponseBody body = out -> {
+            try (StreamingReportWriter writer = new StreamingReportWriter(objectMapper, out)) {
+                try {
+                    var result = validationService.validateAndStreamReport(
+                        inputStream,
+                        fileRequest.contentType(),
+                        fileRequest.filename(),
+                        fileRequest.fileSize(),
+                        writer::writeError
+                    );
+                    writer.finish(result.reportDto(), result.reportId());
+                } catch (ParseException e) {
+                    logger.error("Parse error during streamed validation: {}", e.getMessage(), e);
+                    writer.fail(ErrorResponse.of("PARSE_ERROR", "Failed to parse file: " + e.getMessage()));
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected error during streamed validation: {}", e.getMessage(), e);
+                    writer.fail(ErrorResponse.of("INTERNAL_ERROR", "An unexpected error occurred: " + e.getMessage()));
+                }
+            } finally {
+                inputStream.close();
+            }
+        };
+
+        return ResponseEntity.ok()
             .contentType(MediaType.APPLICATION_JSON)
-            .body(result.reportDto());
+            .body(body);
+    }
+
+    /**
+     * Sync validation without the servlet container's multipart handling: the {@code file} part is
+     * spooled and hashed as it comes off the socket, so it is not buffered to disk by the container
+     * first and not read back for hashing.
+     */
+    @PostMapping(value = "/validate/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> validateFileStreamedUpload(HttpServletRequest request) throws IOException {
+        Duration deadline = syncDeadline(request);
+        SpooledUpload upload = spoolFilePart(request, FileSizeValidator.MAX_SYNC_FILE_SIZE, SYNC_SIZE_MESSAGE);
+        if (!upload.isValid()) {
+            return upload.error();
+        }
+        logger.info("Received streamed validation request for file: {}, size: {} bytes",
+                   upload.filename(), upload.file().size());
+        return syncResponse(jobService.validateWithin(upload.file(), upload.contentType(), upload.filename(), deadline));
     }
 
     @PostMapping(value = "/validate/async", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> validateFileAsync(
-            @RequestParam("file") MultipartFile file) throws IOException {
+            @RequestParam("file") MultipartFile file,
+            HttpServletRequest request) throws IOException {
+        JobScheduler.Submitter submitter = submitter(request);
         logger.info("Received async validation request for file: {}, size: {} bytes", 
                    file.getOriginalFilename(), file.getSize());
 
@@ -89,7 +208,8 @@ public class ValidationController {
             fileRequest.filename(), 
             file.getInputStream(),
             fileRequest.contentType(), 
-            fileRequest.fileSize()
+            fileRequest.fileSize(),
+            submitter
         );
         ValidationJobResponse response = ValidationJobResponse.from(job);
 
@@ -99,5 +219,251 @@ public class ValidationController {
             .body(response);
     }
 
-}
+    /**
+     * Async counterpart of {@link #validateFileIfNoneMatch}: an existing job for the hash, or one created
+     * from a stored report, is returned without reading the upload.
+     */
+    @PostMapping(value = "/validate/async", headers = HttpHeaders.IF_NONE_MATCH, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> validateFileAsyncIfNoneMatch(
+            @RequestHeader(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+            MultipartHttpServletRequest request) throws IOException {
+        
+        Optional<String> hash = ContentHash.fromEntityTag(ifNoneMatch);
+        Optional<ValidationJobResponse> existingJob = hash
+            .flatMap(h -> jobService.findReusableJob(h, request.getHeader(FILENAME_HEADER)))
+            .map(ValidationJobResponse::from);
+        if (existingJob.isPresent()) {
+            logger.info("Returning existing job {} without reading the upload", existingJob.get().jobId());
+            return ResponseEntity
+                .accepted()
+                .location(URI.create("/api/v1/validation/jobs/" + existingJob.get().jobId() + "/status"))
+                .body(existingJob.get());
+        }
+        Optional<ResponseEntity<ErrorResponse>> shed = shedResponse(request);
+        if (shed.isPresent()) {
+            return shed.get();
+        }
+        
+        MultipartFile file = request.getFile("file");
+        if (file == null) {
+            return missingFileResponse();
+        }
+        return validateFileAsync(file, request);
+    }
+
+    /**
+     * Async counterpart of {@link #validateFileStreamedUpload}.
+     */
+    @PostMapping(value = "/validate/async/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> validateFileAsyncStreamedUpload(HttpServletRequest request) throws IOException {
+        JobScheduler.Submitter submitter = submitter(request);
+        SpooledUpload upload = spoolFilePart(request, FileSizeValidator.MAX_ASYNC_FILE_SIZE, ASYNC_SIZE_MESSAGE);
+        if (!upload.isValid()) {
+            return upload.error();
+        }
+        logger.info("Received streamed async validation request for file: {}, size: {} bytes",
+                   upload.filename(), upload.file().size());
+        return jobAccepted(jobService.submitJob(upload.filename(), upload.file(), upload.contentType(), submitter));
+    }
+
+    /**
+     * Sync validation of the file sent as the raw request body, for clients that do not need multipart.
+     * Chunked transfer encoding is accepted; the body is spooled and hashed as it arrives and then
+     * handled like a multipart upload, including the {@code If-None-Match} pre-check.
+     */
+    @PostMapping(value = "/validate", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_JSON_VALUE}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> validateRawBody(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = FILENAME_HEADER, defaultValue = "unknown") String filename,
+            HttpServletRequest request) throws IOException {
+        
+        Optional<ValidationService.ValidationAndStorageResult> stored = ContentHash.fromEntityTag(ifNoneMatch)
+            .flatMap(validationService::findStoredReport);
+        if (stored.isPresent()) {
+            logger.info("Returning stored report {} without reading the upload", stored.get().reportId());
+            return validationResponse(stored.get());
+        }
+        Optional<ResponseEntity<ErrorResponse>> shed = shedResponse(request);
+        if (shed.isPresent()) {
+            return shed.get();
+        }
+        Duration deadline = syncDeadline(request);
+        SpooledUpload upload = spoolRawBody(request, contentType, filename,
+            FileSizeValidator.MAX_SYNC_FILE_SIZE, SYNC_SIZE_MESSAGE);
+        if (!upload.isValid()) {
+            return upload.error();
+        }
+        logger.info("Received raw validation request for file: {}, size: {} bytes", filename, upload.file().size());
+        return syncResponse(jobService.validateWithin(upload.file(), upload.contentType(), filename, deadline));
+    }
 
+    /**
+     * Async counterpart of {@link #validateRawBody}.
+     */
+    @PostMapping(value = "/validate/async", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> validateRawBodyAsync(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = FILENAME_HEADER, defaultValue = "unknown") String filename,
+            HttpServletRequest request) throws IOException {
+        
+        Optional<JobEntity> existingJob = ContentHash.fromEntityTag(ifNoneMatch)
+            .flatMap(hash -> jobService.findReusableJob(hash, filename));
+        if (existingJob.isPresent()) {
+            logger.info("Returning existing job {} without reading the upload", existingJob.get().jobId());
+            return jobAccepted(existingJob.get());
+        }
+        Optional<ResponseEntity<ErrorResponse>> shed = shedResponse(request);
+        if (shed.isPresent()) {
+            return shed.get();
+        }
+        JobScheduler.Submitter submitter = submitter(request);
+        SpooledUpload upload = spoolRawBody(request, contentType, filename,
+            FileSizeValidator.MAX_ASYNC_FILE_SIZE, ASYNC_SIZE_MESSAGE);
+        if (!upload.isValid()) {
+            return upload.error();
+        }
+        logger.info("Received raw async validation request for file: {}, size: {} bytes", filename, upload.file().size());
+        return jobAccepted(jobService.submitJob(filename, upload.file(), upload.contentType(), submitter));
+    }
+
+    static JobScheduler.Submitter submitter(HttpServletRequest request) {
+        return JobScheduler.Submitter.of(request.getHeader(CLIENT_ID_HEADER), request.getHeader(PRIORITY_HEADER));
+    }
+
+    /**
+     * The deadline the request asks for, as {@code 1500ms}, {@code 10s}, {@code PT10S} or a number of
+     * milliseconds; null when it does not ask for one.
+     */
+    static Duration syncDeadline(HttpServletRequest request) {
+        String value = request.getHeader(SYNC_DEADLINE_HEADER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        Duration deadline = DurationStyle.detectAndParse(value.trim());
+        if (!deadline.isPositive()) {
+            throw new IllegalArgumentException(SYNC_DEADLINE_HEADER + " must be positive: " + value);
+        }
+        return deadline;
+    }
+
+    private SpooledUpload spoolFilePart(HttpServletRequest request, long maxSize, String sizeMessage) throws IOException {
+        Optional<StreamingMultipart.FilePart> part = StreamingMultipart.openFilePart(request, maxSize);
+        if (part.isEmpty()) {
+            return SpooledUpload.rejected(missingFileResponse());
+        }
+        String contentType;
+        try {
+            contentType = FileRequestUtil.determineContentType(part.get().contentType(), part.get().filename());
+        } catch (IllegalArgumentException e) {
+            return SpooledUpload.rejected(ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ErrorResponse.of("UNSUPPORTED_FORMAT", e.getMessage())));
+        }
+        return spool(part.get().stream(), part.get().size(), contentType, part.get().filename(), sizeMessage);
+    }
+
+    private SpooledUpload spoolRawBody(HttpServletRequest request, MediaType contentType, String filename,
+            long maxSize, String sizeMessage) throws IOException {
+        if (request.getContentLengthLong() > maxSize) {
+            return SpooledUpload.rejected(fileTooLargeResponse(sizeMessage));
+        }
+        // Without Content-Length (chunked transfer encoding) the limit is enforced while reading
+        InputStream body = new SizeLimitedInputStream(request.getInputStream(), maxSize);
+        return spool(body, request.getContentLengthLong(), mediaTypeName(contentType), filename, sizeMessage);
+    }
+
+    private SpooledUpload spool(InputStream in, long expectedSize, String contentType, String filename,
+            String sizeMessage) throws IOException {
+        SpooledFile file;
+        try {
+            file = spoolStore.spoolStreamed(in, expectedSize);
+        } catch (FileUploadSizeException e) {
+            return SpooledUpload.rejected(fileTooLargeResponse(sizeMessage));
+        }
+        if (file.size() == 0) {
+            file.close();
+            return SpooledUpload.rejected(emptyFileResponse());
+        }
+        return new SpooledUpload(file, contentType, filename, null);
+    }
+
+    /**
+     * A spooled upload ready for validation, or the response rejecting it.
+     */
+    private record SpooledUpload(SpooledFile file, String contentType, String filename,
+                                 ResponseEntity<ErrorResponse> error) {
+        static SpooledUpload rejected(ResponseEntity<ErrorResponse> error) {
+            return new SpooledUpload(null, null, null, error);
+        }
+
+        boolean isValid() {
+            return error == null;
+        }
+    }
+
+    private static String mediaTypeName(MediaType contentType) {
+        return contentType.getType() + "/" + contentType.getSubtype();
+    }
+
+    private ResponseEntity<ValidationJobResponse> jobAccepted(JobEntity job) {
+        return ResponseEntity
+            .accepted()
+            .location(URI.create("/api/v1/validation/jobs/" + job.jobId() + "/status"))
+            .body(ValidationJobResponse.from(job));
+    }
+
+    private ResponseEntity<?> syncResponse(JobService.SyncOutcome outcome) {
+        return outcome.isPromoted() ? jobAccepted(outcome.job()) : validationResponse(outcome.result());
+    }
+
+    private ResponseEntity<?> validationResponse(ValidationService.ValidationAndStorageResult result) {
+        HttpStatus status = result.validationResult().isValid() 
+            ? HttpStatus.OK 
+            : HttpStatus.BAD_REQUEST;
+        return ResponseEntity.status(status)
+            .header("X-Report-Id", result.reportId())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(result.reportDto());
+    }
+
+    // A conditional upload the admission filter let through in case a stored result answers it
+    private static Optional<ResponseEntity<ErrorResponse>> shedResponse(HttpServletRequest request) {
+        return AdmissionFilter.deferredShed(request).map(rejection -> {
+            rejection.count();
+            return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(rejection.retryAfter().toSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ErrorResponse.of("TOO_MANY_REQUESTS", AdmissionFilter.retryMessage(rejection.retryAfter())));
+        });
+    }
+
+    private ResponseEntity<ErrorResponse> missingFileResponse() {
+        return ResponseEntity.badRequest()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(ErrorResponse.of("INVALID_FILE", "Required multipart part 'file' is missing"));
+    }
+
+    private ResponseEntity<ErrorResponse> emptyFileResponse() {
+        return ResponseEntity.badRequest()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(ErrorResponse.of("INVALID_FILE", "File is empty"));
+    }
+
+    private ResponseEntity<ErrorResponse> fileTooLargeResponse(String message) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(ErrorResponse.of("FILE_TOO_LARGE", message));
+    }
+
+    private FileRequestUtil.FileRequestResult processSyncFileRequest(MultipartFile file) {
+        return FileRequestUtil.processFileRequest(
+            file,
+            FileSizeValidator.MAX_SYNC_FILE_SIZE,
+            String.format("File size (%d bytes) exceeds the maximum allowed size of 250 MB for synchronous validation." +
+                    " Please use /api/v1/validation/validate/async endpoint for larger files.", file.getSize())
+        );
+    }
+}
@@ -0,0 +1,34 @@
+package com.surepay.validation.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validation work for one content-defined chunk of a CSV file, keyed by the chunk hash so any file
+ * containing the same rows can reuse it. Holds a 128-bit fingerprint of every row's reference
+ * (16 bytes per row, in row order) from which reference uniqueness is recomputed for the whole file,
+ * and the errors of each row-local rule keyed by the rule's fingerprint, tagged with the row position
+ * inside the chunk. A changed rule only adds an entry; the other rules' entries stay usable.
+ * MongoDB removes a chunk once {@code lastUsedAt} is older than {@code validation.chunking.retention};
+ * validations that reuse it move {@code lastUsedAt} forward.
+ */
+@Document(collection = "validation_chunks")
+public record ChunkResultEntity(
+    @Id String chunkHash,
+    int rowCount,
+    byte[] referenceFingerprints,
+    Map<String, List<RowError>> ruleErrors,
+    Instant createdAt,
+    @Indexed(name = "lastUsedAt_ttl", expireAfter = "#{@validationProperties.chunking.retention}")
+    Instant lastUsedAt
+) {
+    public record RowError(
+        int row,
+        ValidationError error
+    ) {}
+}
@@ -2,13 +2,26 @@ package com.surepay.validation.domain;
 
 import com.surepay.validation.dto.ValidationReportDto;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+/**
+ * A single stored validation error. Errors of a report are numbered densely from 0 by
+ * {@code index}, and the compound (reportId, ruleSetFingerprint, generation, index) index lets pages be
+ * read with a range scan ({@code index > lastIndex}) instead of skip/count. {@code ruleSetFingerprint} is
+ * that of the rules that found the error, and {@code generation} identifies the run that stored it, so
+ * runs of the same content, concurrent or under other rules, each store their errors next to those of
+ * the report still served; a report names the generation it was produced with, and the errors of the
+ * report it replaces are removed once it is stored. Errors stored before generations existed have none.
+ */
 @Document(collection = "validation_errors")
+@CompoundIndex(name = "reportId_ruleSetFingerprint_generation_index",
+    def = "{'reportId': 1, 'ruleSetFingerprint': 1, 'generation': 1, 'index': 1}")
 public record ErrorEntity(
     @Id String id,
-    @Indexed String reportId,
+    String reportId,
+    String ruleSetFingerprint,
+    String generation,
     String transactionReference,
     String description,
     String errorType,
@@ -17,11 +30,15 @@ public record ErrorEntity(
 ) {
     public static ErrorEntity create(
             String reportId,
+            String ruleSetFingerprint,
+            String generation,
             ValidationReportDto.ValidationErrorDto errorDto,
             int index) {
         return new ErrorEntity(
             null,
             reportId,
+            ruleSetFingerprint,
+            generation,
             errorDto.transactionReference(),
             errorDto.description(),
             errorDto.errorType(),
@@ -30,4 +47,3 @@ public record ErrorEntity(
         );
     }
 }
-
@@ -1,12 +1,25 @@
 package com.surepay.validation.domain;
 
 import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.util.TreeHash;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 
+/**
+ * An async validation job, keyed by the content hash of its input. Jobs double as the work queue:
+ * any instance can lease a {@code PENDING} job, or a {@code PROCESSING} one whose lease expired, and
+ * runs it from the spooled input; {@code leaseOwner} and {@code leaseExpiresAt} record who runs it
+ * until when. A run that stops early leaves a {@code checkpoint} the next run continues from, and a
+ * running job carries its latest {@code progress}, written every
+ * {@code validation.jobs.progress-persist-interval}. A {@code CANCELLED} job was stopped on request
+ * before it finished. {@code hashVersion} is the {@link TreeHash#VERSION} of the job ID; jobs keyed by an
+ * older content hash format have none and are never matched by a new upload.
+ */
 @Document(collection = "validation_jobs")
+@CompoundIndex(name = "status_createdAt", def = "{'status': 1, 'createdAt': 1}")
 public record JobEntity(
     @Id String jobId,
     String filename,
@@ -14,16 +27,48 @@ public record JobEntity(
     Instant createdAt,
     Instant completedAt,
     ValidationReportDto report,
-    String errorMessage
+    String errorMessage,
+    String ruleSetFingerprint,
+    String contentType,
+    long fileSize,
+    String leaseOwner,
+    Instant leaseExpiresAt,
+    ValidationCheckpoint checkpoint,
+    String clientId,
+    Priority priority,
+    ValidationProgress progress,
+    Integer hashVersion
 ) {
     public enum JobStatus {
         PENDING,
         PROCESSING,
         COMPLETED,
-        FAILED
+        FAILED,
+        CANCELLED
+    }
+
+    /**
+     * Scheduling lane asked for on submission; without one, the lane follows from the file size.
+     */
+    public enum Priority {
+        INTERACTIVE,
+        BATCH;
+
+        public static Priority parse(String value) {
+            for (Priority priority : values()) {
+                if (priority.name().equalsIgnoreCase(value.trim())) {
+                    return priority;
+                }
+            }
+            throw new IllegalArgumentException("Unknown job priority '" + value + "', expected interactive or batch");
+        }
     }
 
     public static JobEntity create(String jobId, String filename) {
+        return create(jobId, filename, null);
+    }
+
+    public static JobEntity create(String jobId, String filename, String ruleSetFingerprint) {
         return new JobEntity(
             jobId,
             filename,
@@ -31,7 +76,89 @@ public record JobEntity(
             Instant.now(),
             null,
             null,
-            null
+            null,
+            ruleSetFingerprint,
+            null,
+            0,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            TreeHash.VERSION
+        );
+    }
+
+    /**
+     * The input a worker needs to run the job: the spooled file is found by {@code jobId}.
+     */
+    public JobEntity withInput(String contentType, long fileSize) {
+        return new JobEntity(
+            jobId,
+            filename,
+            status,
+            createdAt,
+            completedAt,
+            report,
+            errorMessage,
+            ruleSetFingerprint,
+            contentType,
+            fileSize,
+            leaseOwner,
+            leaseExpiresAt,
+            checkpoint,
+            clientId,
+            priority,
+            progress,
+            hashVersion
+        );
+    }
+
+    /**
+     * Who submitted the job and the lane they asked for, both optional; used to schedule it.
+     */
+    public JobEntity withSubmitter(String clientId, Priority priority) {
+        return new JobEntity(
+            jobId,
+            filename,
+            status,
+            createdAt,
+            completedAt,
+            report,
+            errorMessage,
+            ruleSetFingerprint,
+            contentType,
+            fileSize,
+            leaseOwner,
+            leaseExpiresAt,
+            checkpoint,
+            clientId,
+            priority,
+            progress,
+            hashVersion
+        );
+    }
+
+    public JobEntity withProgress(ValidationProgress progress) {
+        return new JobEntity(
+            jobId,
+            filename,
+            status,
+            createdAt,
+            completedAt,
+            report,
+            errorMessage,
+            ruleSetFingerprint,
+            contentType,
+            fileSize,
+            leaseOwner,
+            leaseExpiresAt,
+            checkpoint,
+            clientId,
+            priority,
+            progress,
+            hashVersion
         );
     }
 
@@ -45,7 +172,17 @@ public record JobEntity(
                 ? Instant.now() 
                 : completedAt,
             report,
-            errorMessage
+            errorMessage,
+            ruleSetFingerprint,
+            contentType,
+            fileSize,
+            leaseOwner,
+            leaseExpiresAt,
+            checkpoint,
+            clientId,
+            priority,
+            progress,
+            hashVersion
         );
     }
 
@@ -57,7 +194,17 @@ public record JobEntity(
             createdAt,
             Instant.now(),
             report,
-            errorMessage
+            errorMessage,
+            ruleSetFingerprint,
+            contentType,
+            fileSize,
+            null,
+            null,
+            null,
+            clientId,
+            priority,
+            progress,
+            hashVersion
         );
     }
 
@@ -69,8 +216,54 @@ public record JobEntity(
             createdAt,
             Instant.now(),
             report,
-            errorMessage
+            errorMessage,
+            ruleSetFingerprint,
+            contentType,
+            fileSize,
+            null,
+            null,
+            checkpoint,
+            clientId,
+            priority,
+            progress,
+            hashVersion
+        );
+    }
+
+    /**
+     * The job as {@code CANCELLED} at {@code cancelledAt}, without lease or checkpoint.
+     */
+    public JobEntity cancelledAt(Instant cancelledAt) {
+        return new JobEntity(
+            jobId,
+            filename,
+            JobStatus.CANCELLED,
+            createdAt,
+            cancelledAt,
+            report,
+            errorMessage,
+            ruleSetFingerprint,
+            contentType,
+            fileSize,
+            null,
+            null,
+            null,
+            clientId,
+            priority,
+            progress,
+            hashVersion
         );
     }
-}
 
+    /**
+     * Whether a submission under the active rules can reuse this job: it is still running, or it
+     * completed under the same rules.
+     */
+    public boolean isReusableFor(String currentRuleSetFingerprint) {
+        return switch (status) {
+            case PENDING, PROCESSING -> true;
+            case COMPLETED -> currentRuleSetFingerprint.equals(ruleSetFingerprint);
+            case FAILED, CANCELLED -> false;
+        };
+    }
+}
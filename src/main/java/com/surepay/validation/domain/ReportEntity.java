@@ -1,11 +1,21 @@
 package com.surepay.validation.domain;
 
 import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.util.TreeHash;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 
+/**
+ * Stored report summary. Besides the summary itself, the JSON responses for the summary and for the
+ * first error page are kept ready to send. A report is only current while {@code ruleSetFingerprint}
+ * matches the active {@link com.surepay.validation.validator.RuleSet}; validating the same content under
+ * other rules replaces it. Its errors are those stored under {@code errorGeneration} by the run that
+ * produced it. Reports stored before these fields existed have them set to null; a report
+ * without {@code hashVersion} is keyed by an older content hash format (see {@link TreeHash#VERSION}) and
+ * stays readable by its ID, but no upload hashes to it any more.
+ */
 @Document(collection = "validation_reports")
 public record ReportEntity(
     @Id String reportId,
@@ -13,21 +23,56 @@ public record ReportEntity(
     String filename,
     String contentType,
     Instant timestamp,
-    long fileSize
+    long fileSize,
+    byte[] summaryJson,
+    byte[] firstErrorPageJson,
+    int firstErrorPageSize,
+    String ruleSetFingerprint,
+    Integer hashVersion,
+    String errorGeneration
 ) {
     public static ReportEntity create(
             String reportId,
             ValidationReportDto report,
             ReportMetadata metadata) {
+        return create(reportId, report, metadata, null, null, null);
+    }
+
+    public static ReportEntity create(
+            String reportId,
+            ValidationReportDto report,
+            ReportMetadata metadata,
+            SerializedPayloads payloads,
+            String ruleSetFingerprint) {
+        return create(reportId, report, metadata, payloads, ruleSetFingerprint, null);
+    }
+
+    public static ReportEntity create(
+            String reportId,
+            ValidationReportDto report,
+            ReportMetadata metadata,
+            SerializedPayloads payloads,
+            String ruleSetFingerprint,
+            String errorGeneration) {
         return new ReportEntity(
             reportId,
             report,
             metadata.filename(),
             metadata.contentType(),
             metadata.timestamp(),
-            metadata.fileSize()
+            metadata.fileSize(),
+            payloads != null ? payloads.summaryJson() : null,
+            payloads != null ? payloads.firstErrorPageJson() : null,
+            payloads != null ? payloads.firstErrorPageSize() : 0,
+            ruleSetFingerprint,
+            TreeHash.VERSION,
+            errorGeneration
         );
     }
+
+    public boolean matchesRules(String currentRuleSetFingerprint) {
+        return currentRuleSetFingerprint.equals(ruleSetFingerprint);
+    }
     
     public record ReportMetadata(
         String filename,
@@ -35,5 +80,10 @@ public record ReportEntity(
         Instant timestamp,
         long fileSize
     ) {}
-}
 
+    public record SerializedPayloads(
+        byte[] summaryJson,
+        byte[] firstErrorPageJson,
+        int firstErrorPageSize
+    ) {}
+}
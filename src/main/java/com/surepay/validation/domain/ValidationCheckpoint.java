@@ -0,0 +1,26 @@
+package com.surepay.validation.domain;
+
+import java.time.Instant;
+
+/**
+ * How far an async job got, stored with the job so a run that is interrupted continues from here.
+ * Chunks before {@code nextChunk}, which start at {@code byteOffset}, are fully reflected in the counts
+ * and in the stored errors; every error is stored, so {@code errorCount} is also the index the next
+ * error is stored under; the errors are stored under {@code errorGeneration}, which every run of the
+ * job continues. The references seen so far are the first {@code referenceSnapshotBytes} of the local
+ * file {@code referenceSnapshot}.
+ */
+public record ValidationCheckpoint(
+    String ruleSetFingerprint,
+    int nextChunk,
+    long byteOffset,
+    long rowCount,
+    int errorCount,
+    String errorGeneration,
+    long duplicateReferenceCount,
+    long balanceMismatchCount,
+    String referenceSnapshot,
+    long referenceSnapshotBytes,
+    Instant savedAt
+) {
+}
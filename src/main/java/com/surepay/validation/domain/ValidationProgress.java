@@ -0,0 +1,19 @@
+package com.surepay.validation.domain;
+
+import java.time.Instant;
+
+/**
+ * How far a running job got, as measured by the instance running it. {@code rowsPerSecond} and
+ * {@code estimatedCompletionAt} are derived from the progress of the current run only, so a resumed
+ * run is not credited with the rows it skipped; both are null until the run reported progress twice.
+ */
+public record ValidationProgress(
+    long bytesRead,
+    long totalBytes,
+    long rowsValidated,
+    long errorCount,
+    Double rowsPerSecond,
+    Instant estimatedCompletionAt,
+    Instant updatedAt
+) {
+}
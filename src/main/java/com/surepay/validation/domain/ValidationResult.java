@@ -3,40 +3,93 @@ package com.surepay.validation.domain;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class ValidationResult {
-    private final List<ValidationError> errors = Collections.synchronizedList(new ArrayList<>());
+    private volatile List<ValidationError> errors;
+    private final Consumer<ValidationError> listener;
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicLong duplicateReferenceCount = new AtomicLong();
+    private final AtomicLong balanceMismatchCount = new AtomicLong();
+
+    public ValidationResult() {
+        this(Collections.synchronizedList(new ArrayList<>()), error -> {});
+    }
+
+    private ValidationResult(List<ValidationError> errors, Consumer<ValidationError> listener) {
+        this.errors = errors;
+        this.listener = listener;
+    }
+
+    /**
+     * A result that keeps all errors and also hands each one to {@code listener} as it is found.
+     */
+    public static ValidationResult withListener(Consumer<ValidationError> listener) {
+        return new ValidationResult(Collections.synchronizedList(new ArrayList<>()), listener);
+    }
+
+    /**
+     * A result that only keeps the counts and hands every error to {@code listener} as it is found,
+     * so memory does not grow with the number of errors. {@link #getErrors()} is always empty.
+     */
+    public static ValidationResult streaming(Consumer<ValidationError> listener) {
+        return new ValidationResult(null, listener);
+    }
 
     public void addError(ValidationError error) {
-        errors.add(error);
+        errorCount.incrementAndGet();
+        switch (error.errorType()) {
+            case DUPLICATE_REFERENCE -> duplicateReferenceCount.incrementAndGet();
+            case BALANCE_MISMATCH -> balanceMismatchCount.incrementAndGet();
+        }
+        List<ValidationError> retained = errors;
+        if (retained != null) {
+            retained.add(error);
+        }
+        listener.accept(error);
+    }
+
+    /**
+     * Continues the counts of an interrupted run; its errors themselves are already stored.
+     */
+    public void resumeFrom(ValidationCheckpoint checkpoint) {
+        errorCount.set(checkpoint.errorCount());
+        duplicateReferenceCount.set(checkpoint.duplicateReferenceCount());
+        balanceMismatchCount.set(checkpoint.balanceMismatchCount());
     }
 
     public void merge(ValidationResult other) {
-        this.errors.addAll(other.errors);
+        other.getErrors().forEach(this::addError);
+    }
+
+    /**
+     * Drops the errors kept so far and keeps only the counts from now on, like a
+     * {@link #streaming(Consumer)} result; for a run whose error list is no longer wanted.
+     */
+    public void stopRetaining() {
+        errors = null;
     }
 
     public List<ValidationError> getErrors() {
-        return Collections.unmodifiableList(errors);
+        List<ValidationError> retained = errors;
+        return retained != null ? Collections.unmodifiableList(retained) : List.of();
     }
 
     public boolean isValid() {
-        return errors.isEmpty();
+        return errorCount.get() == 0;
     }
 
     public int getErrorCount() {
-        return errors.size();
+        return errorCount.get();
     }
 
     public long getDuplicateReferenceCount() {
-        return errors.stream()
-            .filter(error -> error.errorType() == ValidationError.ErrorType.DUPLICATE_REFERENCE)
-            .count();
+        return duplicateReferenceCount.get();
     }
 
     public long getBalanceMismatchCount() {
-        return errors.stream()
-            .filter(error -> error.errorType() == ValidationError.ErrorType.BALANCE_MISMATCH)
-            .count();
+        return balanceMismatchCount.get();
     }
 }
-
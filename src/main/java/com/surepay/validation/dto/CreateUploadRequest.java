@@ -0,0 +1,8 @@
+package com.surepay.validation.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record CreateUploadRequest(
+    @JsonProperty("filename") String filename,
+    @JsonProperty("contentType") String contentType
+) {}
@@ -0,0 +1,9 @@
+package com.surepay.validation.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record HashLookupResponse(
+    @JsonProperty("hash") String hash,
+    @JsonProperty("reportAvailable") boolean reportAvailable,
+    @JsonProperty("jobStatus") String jobStatus
+) {}
@@ -0,0 +1,9 @@
+package com.surepay.validation.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record UploadPartResponse(
+    @JsonProperty("partNumber") int partNumber,
+    @JsonProperty("size") long size,
+    @JsonProperty("hash") String hash
+) {}
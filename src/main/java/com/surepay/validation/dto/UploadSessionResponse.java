@@ -0,0 +1,14 @@
+package com.surepay.validation.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+public record UploadSessionResponse(
+    @JsonProperty("uploadId") String uploadId,
+    @JsonProperty("filename") String filename,
+    @JsonProperty("contentType") String contentType,
+    @JsonProperty("expiresAt") Instant expiresAt,
+    @JsonProperty("parts") List<UploadPartResponse> parts
+) {}
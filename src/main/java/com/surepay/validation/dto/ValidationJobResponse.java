@@ -2,6 +2,7 @@ package com.surepay.validation.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationProgress;
 
 import java.time.Instant;
 
@@ -12,7 +13,11 @@ public record ValidationJobResponse(
     @JsonProperty("createdAt") Instant createdAt,
     @JsonProperty("completedAt") Instant completedAt,
     @JsonProperty("report") ValidationReportDto report,
-    @JsonProperty("errorMessage") String errorMessage
+    @JsonProperty("errorMessage") String errorMessage,
+    @JsonProperty("queuePosition") Integer queuePosition,
+    @JsonProperty("queueDepth") Integer queueDepth,
+    @JsonProperty("estimatedStartAt") Instant estimatedStartAt,
+    @JsonProperty("progress") ValidationProgress progress
 ) {
     public static ValidationJobResponse from(JobEntity job) {
         return new ValidationJobResponse(
@@ -22,8 +27,32 @@ public record ValidationJobResponse(
             job.createdAt(),
             job.completedAt(),
             job.report(),
-            job.errorMessage()
+            job.errorMessage(),
+            null,
+            null,
+            null,
+            job.progress()
+        );
+    }
+
+    /**
+     * For a {@code PENDING} job waiting for memory: its 1-based position among {@code queueDepth}
+     * queued jobs and when it is expected to start.
+     */
+    public ValidationJobResponse withQueue(int queuePosition, int queueDepth, Instant estimatedStartAt) {
+        return new ValidationJobResponse(
+            jobId, filename, status, createdAt, completedAt, report, errorMessage,
+            queuePosition, queueDepth, estimatedStartAt, progress
         );
     }
-}
 
+    /**
+     * For a {@code PROCESSING} job: how far it got, as measured by the instance running it.
+     */
+    public ValidationJobResponse withProgress(ValidationProgress progress) {
+        return new ValidationJobResponse(
+            jobId, filename, status, createdAt, completedAt, report, errorMessage,
+            queuePosition, queueDepth, estimatedStartAt, progress
+        );
+    }
+}
@@ -0,0 +1,112 @@
+package com.surepay.validation.reporter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencsv.CSVWriter;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Writes a stream of errors to an output stream one record at a time, so an export never
+ * holds more than the current record in memory.
+ */
+@Component
+public class ErrorExportWriter {
+
+    private static final String[] CSV_HEADERS = {
+        "transactionReference", "description", "errorType", "errorMessage"
+    };
+
+    private final ObjectMapper objectMapper;
+
+    public ErrorExportWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String mediaType;
+        private final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format fromString(String value) {
+            try {
+                return Format.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                    "Unsupported export format: " + value + ". Supported formats are ndjson and csv.");
+            }
+        }
+    }
+
+    public long write(Stream<ValidationReportDto.ValidationErrorDto> errors, Format format, OutputStream out)
+            throws IOException {
+        return switch (format) {
+            case NDJSON -> writeNdjson(errors, out);
+            case CSV -> writeCsv(errors, out);
+        };
+    }
+
+    private long writeNdjson(Stream<ValidationReportDto.ValidationErrorDto> errors, OutputStream out)
+            throws IOException {
+        long count = 0;
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Lines are separated by the newline below, not by Jackson's default space between root values
+            generator.setRootValueSeparator(null);
+            Iterator<ValidationReportDto.ValidationErrorDto> iterator = errors.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+                generator.writeRaw('\n');
+                count++;
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    private long writeCsv(Stream<ValidationReportDto.ValidationErrorDto> errors, OutputStream out)
+            throws IOException {
+        CSVWriter writer = new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.writeNext(CSV_HEADERS, false);
+        long count = 0;
+        Iterator<ValidationReportDto.ValidationErrorDto> iterator = errors.iterator();
+        while (iterator.hasNext()) {
+            ValidationReportDto.ValidationErrorDto error = iterator.next();
+            writer.writeNext(new String[] {
+                error.transactionReference(),
+                error.description(),
+                error.errorType(),
+                error.errorMessage()
+            }, false);
+            count++;
+        }
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Failed to write CSV export", writer.getException());
+        }
+        return count;
+    }
+}
@@ -19,12 +19,7 @@ public class ReportGenerator {
         List<ValidationError> errors = result.getErrors();
         
         List<ValidationReportDto.ValidationErrorDto> errorDtos = errors.stream()
-            .map(error -> new ValidationReportDto.ValidationErrorDto(
-                error.transactionReference(),
-                error.description(),
-                error.errorType().name(),
-                error.errorType().getMessage()
-            ))
+            .map(this::toErrorDto)
             .collect(Collectors.toList());
 
         return new ValidationReportDto(
@@ -36,5 +31,13 @@ public class ReportGenerator {
         );
     }
 
-}
+    public ValidationReportDto.ValidationErrorDto toErrorDto(ValidationError error) {
+        return new ValidationReportDto.ValidationErrorDto(
+            error.transactionReference(),
+            error.description(),
+            error.errorType().name(),
+            error.errorType().getMessage()
+        );
+    }
 
+}
@@ -0,0 +1,45 @@
+package com.surepay.validation.reporter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.domain.ReportEntity;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Produces the exact JSON bytes the report endpoints send, so they can be stored with the report
+ * and written to the response without going through Jackson again.
+ */
+@Component
+public class ReportSerializer {
+
+    private final ObjectMapper objectMapper;
+
+    public ReportSerializer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public byte[] toJson(ValidationReportDto report) {
+        try {
+            return objectMapper.writeValueAsBytes(report);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize validation report", e);
+        }
+    }
+
+    public ReportEntity.SerializedPayloads serializePayloads(
+            ValidationReportDto summary,
+            List<ValidationReportDto.ValidationErrorDto> firstErrorPage,
+            int pageSize) {
+        ValidationReportDto firstPageReport = new ValidationReportDto(
+            summary.valid(),
+            summary.errorCount(),
+            summary.duplicateReferenceCount(),
+            summary.balanceMismatchCount(),
+            firstErrorPage
+        );
+        return new ReportEntity.SerializedPayloads(toJson(summary), toJson(firstPageReport), pageSize);
+    }
+}
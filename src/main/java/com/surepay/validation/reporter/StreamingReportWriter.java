@@ -0,0 +1,70 @@
+package com.surepay.validation.reporter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.dto.ErrorResponse;
+import com.surepay.validation.dto.ValidationReportDto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes a validation report while validation is still running. The layout puts the
+ * {@code errors} array first and the summary fields after it, since the counts are only known
+ * once the whole file has been read:
+ * <pre>
+ * {"errors":[...],"valid":false,"errorCount":2,"duplicateReferenceCount":1,"balanceMismatchCount":1,"reportId":"..."}
+ * </pre>
+ * If validation fails after the response has started, an {@code error} field takes the place of
+ * the summary.
+ */
+public class StreamingReportWriter implements Closeable {
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final JsonGenerator generator;
+    private long written;
+
+    public StreamingReportWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+        this.generator = objectMapper.createGenerator(out);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.writeStartObject();
+        this.generator.writeArrayFieldStart("errors");
+        this.generator.flush();
+    }
+
+    public void writeError(ValidationReportDto.ValidationErrorDto error) {
+        try {
+            generator.writeObject(error);
+            if (++written % FLUSH_INTERVAL == 0) {
+                generator.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write validation error to response", e);
+        }
+    }
+
+    public void finish(ValidationReportDto summary, String reportId) throws IOException {
+        generator.writeEndArray();
+        generator.writeBooleanField("valid", summary.valid());
+        generator.writeNumberField("errorCount", summary.errorCount());
+        generator.writeNumberField("duplicateReferenceCount", summary.duplicateReferenceCount());
+        generator.writeNumberField("balanceMismatchCount", summary.balanceMismatchCount());
+        generator.writeStringField("reportId", reportId);
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    public void fail(ErrorResponse error) throws IOException {
+        generator.writeEndArray();
+        generator.writeObjectField("error", error);
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
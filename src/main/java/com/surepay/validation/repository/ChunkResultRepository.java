@@ -0,0 +1,18 @@
+package com.surepay.validation.repository;
+
+import com.surepay.validation.domain.ChunkResultEntity;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+
+@Repository
+public interface ChunkResultRepository extends MongoRepository<ChunkResultEntity, String> {
+
+    @Query("{ '_id': { '$in': ?0 } }")
+    @Update("{ '$set': { 'lastUsedAt': ?1 } }")
+    void touchAll(Collection<String> chunkHashes, Instant lastUsedAt);
+}
@@ -1,8 +1,7 @@
 package com.surepay.validation.repository;
 
 import com.surepay.validation.domain.ErrorEntity;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -10,12 +9,11 @@ import java.util.List;
 
 @Repository
 public interface ErrorRepository extends MongoRepository<ErrorEntity, String> {
-    List<ErrorEntity> findByReportIdOrderByIndexAsc(String reportId);
+    List<ErrorEntity> findByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanOrderByIndexAsc(
+        String reportId, String ruleSetFingerprint, String generation, int index, Limit limit);
     
-    Page<ErrorEntity> findByReportIdOrderByIndexAsc(String reportId, Pageable pageable);
+    void deleteByReportIdAndRuleSetFingerprintAndGeneration(String reportId, String ruleSetFingerprint, String generation);
     
-    long countByReportId(String reportId);
-    
-    void deleteByReportId(String reportId);
+    void deleteByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanEqual(
+        String reportId, String ruleSetFingerprint, String generation, int index);
 }
-
@@ -8,7 +8,7 @@ import org.springframework.stereotype.Repository;
 import java.util.Optional;
 
 @Repository
-public interface ReportRepository extends MongoRepository<ReportEntity, String> {
+public interface ReportRepository extends MongoRepository<ReportEntity, String>, ReportRepositoryCustom {
     default boolean existsByHash(String hash) {
         return existsById(hash);
     }
@@ -0,0 +1,11 @@
+package com.surepay.validation.repository;
+
+import com.surepay.validation.domain.ReportEntity;
+
+public interface ReportRepositoryCustom {
+    /**
+     * Stores {@code report} in place of the report with the same ID in one step and returns the report
+     * it replaced, or null when there was none.
+     */
+    ReportEntity replace(ReportEntity report);
+}
@@ -0,0 +1,24 @@
+package com.surepay.validation.repository;
+
+import com.surepay.validation.domain.ReportEntity;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+class ReportRepositoryCustomImpl implements ReportRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    ReportRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public ReportEntity replace(ReportEntity report) {
+        return mongoTemplate.findAndReplace(
+            Query.query(Criteria.where("_id").is(report.reportId())),
+            report,
+            FindAndReplaceOptions.options().upsert());
+    }
+}
@@ -0,0 +1,211 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.domain.ValidationCheckpoint;
+import com.surepay.validation.domain.ValidationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The checkpoints of one run of an async job: where an earlier run stopped, if anywhere, and where
+ * this run records its own progress. Reference fingerprints are appended to the job's snapshot file as
+ * they are first seen; a checkpoint forces them to disk and then stores the position in the job
+ * document, so a checkpoint never refers to snapshot bytes that could be lost. The run should stop once
+ * {@link #isStopped()}, and reports its progress at the same points. Created by {@link JobCheckpoints}.
+ */
+public class CheckpointSession implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointSession.class);
+
+    private static final CheckpointSession DISABLED =
+        new CheckpointSession(null, null, null, null, null, Duration.ZERO, ProgressListener.NONE, () -> false, () -> {});
+
+    private final String jobId;
+    private final ValidationCheckpoint resumePoint;
+    private final String errorGeneration;
+    private final Path snapshot;
+    private final JobQueue jobQueue;
+    private final long intervalNanos;
+    private final ProgressListener progressListener;
+    private final BooleanSupplier stopRequested;
+    private final Runnable onClose;
+    private FileChannel snapshotChannel;
+    private long resumedSnapshotBytes;
+    private long lastSavedNanos = System.nanoTime();
+
+    CheckpointSession(
+            String jobId,
+            ValidationCheckpoint resumePoint,
+            String errorGeneration,
+            Path snapshot,
+            JobQueue jobQueue,
+            Duration interval,
+            ProgressListener progressListener,
+            BooleanSupplier stopRequested,
+            Runnable onClose) {
+        this.jobId = jobId;
+        this.resumePoint = resumePoint;
+        this.errorGeneration = errorGeneration;
+        this.snapshot = snapshot;
+        this.jobQueue = jobQueue;
+        this.intervalNanos = interval.toNanos();
+        this.progressListener = progressListener;
+        this.stopRequested = stopRequested;
+        this.onClose = onClose;
+    }
+
+    /**
+     * A session that neither resumes nor records anything, for validations that are not jobs.
+     */
+    public static CheckpointSession disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Same as {@link #disabled()}, but passes the progress of the run on to {@code progressListener}.
+     */
+    public static CheckpointSession disabled(ProgressListener progressListener) {
+        return disabled(progressListener, () -> false);
+    }
+
+    /**
+     * Same as {@link #disabled(ProgressListener)}, for a run that stops once {@code stopRequested}.
+     */
+    public static CheckpointSession disabled(ProgressListener progressListener, BooleanSupplier stopRequested) {
+        return new CheckpointSession(null, null, null, null, null, Duration.ZERO, progressListener, stopRequested, () -> {});
+    }
+
+    public boolean isEnabled() {
+        return jobId != null;
+    }
+
+    public Optional<ValidationCheckpoint> resumePoint() {
+        return Optional.ofNullable(resumePoint);
+    }
+
+    /**
+     * The generation every run of the job stores its errors under. A session without a job has none;
+     * its run stores them under a generation of its own.
+     */
+    public String errorGeneration() {
+        return errorGeneration;
+    }
+
+    /**
+     * Opens the reference fingerprints the earlier run had seen at its checkpoint, 16 bytes each;
+     * read exactly {@code referenceSnapshotBytes} of them.
+     */
+    public DataInputStream openReferences() throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)));
+    }
+
+    /**
+     * Records that the run continues from {@code checkpoint}, so the snapshot keeps the references it
+     * had seen there. Without this the run starts over and the snapshot is rewritten from the start.
+     */
+    public void resumedFrom(ValidationCheckpoint checkpoint) {
+        if (snapshotChannel != null) {
+            throw new IllegalStateException("Job " + jobId + " already wrote references before resuming");
+        }
+        resumedSnapshotBytes = checkpoint.referenceSnapshotBytes();
+    }
+
+    public void appendReferences(ByteBuffer references) throws IOException {
+        FileChannel channel = snapshotChannel();
+        while (references.hasRemaining()) {
+            channel.write(references);
+        }
+    }
+
+    /**
+     * Whether the job was cancelled, or taken over by another instance, since this run started, or
+     * the run of a session without a job was asked to stop.
+     */
+    public boolean isStopped() {
+        return isEnabled() ? !jobQueue.holds(jobId) : stopRequested.getAsBoolean();
+    }
+
+    /**
+     * Reports that the rows before {@code bytesRead} are validated; cheap enough to call wherever
+     * {@link #isStopped()} is checked.
+     */
+    public void reportProgress(long bytesRead, long rowCount, long errorCount) {
+        progressListener.progress(bytesRead, rowCount, errorCount);
+    }
+
+    public boolean isDue() {
+        return isEnabled() && System.nanoTime() - lastSavedNanos >= intervalNanos;
+    }
+
+    /**
+     * Records that the chunks before {@code nextChunk}, starting at {@code byteOffset}, are in
+     * {@code result} and that all its errors are stored. Returns false when the job's lease was lost.
+     */
+    public boolean save(String ruleSetFingerprint, int nextChunk, long byteOffset, long rowCount, ValidationResult result)
+            throws IOException {
+        FileChannel channel = snapshotChannel();
+        channel.force(false);
+        ValidationCheckpoint checkpoint = new ValidationCheckpoint(
+            ruleSetFingerprint,
+            nextChunk,
+            byteOffset,
+            rowCount,
+            result.getErrorCount(),
+            errorGeneration,
+            result.getDuplicateReferenceCount(),
+            result.getBalanceMismatchCount(),
+            snapshot.toString(),
+            channel.position(),
+            Instant.now());
+        lastSavedNanos = System.nanoTime();
+        boolean saved = jobQueue.checkpoint(jobId, checkpoint);
+        if (saved) {
+            logger.info("Checkpoint of job {} at byte {} (row {}, {} errors)", jobId, byteOffset, rowCount, checkpoint.errorCount());
+        }
+        return saved;
+    }
+
+    /**
+     * Receives the progress of a run.
+     */
+    public interface ProgressListener {
+        ProgressListener NONE = (bytesRead, rowCount, errorCount) -> {};
+
+        void progress(long bytesRead, long rowCount, long errorCount);
+    }
+
+    // Continues the snapshot of a resumed run, dropping anything written after its checkpoint; a run
+    // that did not resume starts an empty one
+    private FileChannel snapshotChannel() throws IOException {
+        if (snapshotChannel == null) {
+            FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(resumedSnapshotBytes);
+            channel.position(resumedSnapshotBytes);
+            snapshotChannel = channel;
+        }
+        return snapshotChannel;
+    }
+
+    @Override
+    public void close() {
+        if (snapshotChannel != null) {
+            try {
+                snapshotChannel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close reference snapshot of job {}: {}", jobId, e.getMessage());
+            }
+        }
+        onClose.run();
+    }
+}
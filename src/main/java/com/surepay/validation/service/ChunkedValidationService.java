@@ -0,0 +1,548 @@
+package com.surepay.validation.service;
+
+import com.dynatrace.hash4j.hashing.HashValue128;
+import com.dynatrace.hash4j.hashing.Hasher128;
+import com.dynatrace.hash4j.hashing.Hashing;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ChunkResultEntity;
+import com.surepay.validation.domain.Transaction;
+import com.surepay.validation.domain.ValidationCheckpoint;
+import com.surepay.validation.domain.ValidationError;
+import com.surepay.validation.domain.ValidationResult;
+import com.surepay.validation.parser.CsvTransactionParser;
+import com.surepay.validation.parser.ParseException;
+import com.surepay.validation.parser.TransactionParser;
+import com.surepay.validation.repository.ChunkResultRepository;
+import com.surepay.validation.spool.SpooledFile;
+import com.surepay.validation.util.CsvChunker;
+import com.surepay.validation.validator.RuleSet;
+import com.surepay.validation.validator.TransactionValidator;
+import com.surepay.validation.validator.UniquenessValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Validates CSV files chunk by chunk so that rows seen before in another file are not validated again.
+ * The file is split by {@link CsvChunker}; for every chunk the stored {@link ChunkResultEntity} is used
+ * for each row-local rule it has results for, and only the rules it lacks (new chunks, or rules whose
+ * fingerprint changed) are run on the parsed chunk and stored. Reference uniqueness spans the whole file and is recomputed from the per-row reference fingerprints;
+ * a chunk is only parsed again when one of its rows turns out to be a duplicate.
+ * <p>
+ * Progress can be recorded through {@link Checkpoints} at chunk batch boundaries, with the reference
+ * fingerprints as the only state that spans chunks; a run continued from a checkpoint reports exactly
+ * what an uninterrupted run would. A run that {@link Checkpoints#isStopped() is stopped} ends after the
+ * chunk at hand with a {@link CancellationException}.
+ * <p>
+ * Meant to be called on an I/O thread: splitting, parsing and the rules are handed to the CPU pool of
+ * {@link JobExecutors} a batch at a time, while chunk lookups, writes and checkpoints block the caller.
+ */
+@Service
+public class ChunkedValidationService {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedValidationService.class);
+
+    private static final int LOOKUP_BATCH_SIZE = 256;
+    private static final int FINGERPRINT_BYTES = 16;
+    // A chunk only outgrows the maximum size when a single row does; beyond this, validate in one pass
+    private static final int MAX_SIZE_FACTOR = 16;
+    private static final Hasher128 FINGERPRINT_HASHER = Hashing.xxh3_128();
+    private static final int TOUCH_FRACTION = 10;
+
+    private final List<TransactionValidator> validators;
+    private final List<TransactionValidator> rowValidators;
+    private final CsvTransactionParser csvParser;
+    private final ChunkResultRepository chunkResultRepository;
+    private final ValidationProperties.Chunking chunking;
+    private final JobExecutors jobExecutors;
+
+    public ChunkedValidationService(
+            List<TransactionValidator> validators,
+            CsvTransactionParser csvParser,
+            ChunkResultRepository chunkResultRepository,
+            JobExecutors jobExecutors,
+            ValidationProperties validationProperties) {
+        this.validators = validators;
+        this.rowValidators = validators.stream().filter(TransactionValidator::isRowLocal).toList();
+        this.csvParser = csvParser;
+        this.chunkResultRepository = chunkResultRepository;
+        this.chunking = validationProperties.getChunking();
+        this.jobExecutors = jobExecutors;
+    }
+
+    /**
+     * Validates {@code file} into {@code result}. Returns false, without touching {@code result}, when
+     * the file has to be validated in a single pass instead: chunking is disabled, the parser is not
+     * the CSV parser, a validator other than reference uniqueness spans rows, or a single row is too
+     * large to be chunked.
+     */
+    public boolean validate(SpooledFile file, TransactionParser parser, ValidationResult result)
+            throws ParseException, IOException {
+        return validate(file, parser, result, Checkpoints.NONE);
+    }
+
+    /**
+     * Same as {@link #validate(SpooledFile, TransactionParser, ValidationResult)}, continuing from the
+     * resume point of {@code checkpoints} when it matches the chunks of {@code file}, and recording
+     * progress whenever a checkpoint is due.
+     */
+    public boolean validate(SpooledFile file, TransactionParser parser, ValidationResult result, Checkpoints checkpoints)
+            throws ParseException, IOException {
+        if (!chunking.isEnabled() || parser != csvParser || !onlyUniquenessSpansRows()) {
+            return false;
+        }
+
+        CsvChunker chunker = new CsvChunker(chunking.getMinSize(), chunking.getAverageSize(), chunking.getMaxSize());
+        List<CsvChunker.Chunk> chunks = jobExecutors.parseOnCpu(() -> chunker.split(file.path()));
+        long maxChunkLength = (long) chunking.getMaxSize() * MAX_SIZE_FACTOR;
+        if (chunks.stream().anyMatch(chunk -> chunk.length() > maxChunkLength)) {
+            logger.info("File {} has rows too large to chunk, validating in a single pass", file.hash());
+            return false;
+        }
+        if (chunks.isEmpty()) {
+            return true;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            byte[] header = read(channel, chunks.get(0));
+            // Rejects a bad header exactly like a full parse would
+            csvParser.parse(new ByteArrayInputStream(header)).close();
+
+            Map<TransactionValidator, String> ruleKeys = new HashMap<>();
+            rowValidators.forEach(validator -> ruleKeys.put(validator, RuleSet.fingerprint(validator)));
+            Set<Fingerprint> seenReferences = new HashSet<>();
+            int firstChunk = 1;
+            long rowCount = 0;
+            Optional<ValidationCheckpoint> resumePoint = checkpoints.resumePoint()
+                .filter(checkpoint -> startsChunk(checkpoint, chunks));
+            if (resumePoint.isPresent()) {
+                ValidationCheckpoint checkpoint = resumePoint.get();
+                readReferences(checkpoints, checkpoint.referenceSnapshotBytes(), seenReferences);
+                checkpoints.resume(checkpoint);
+                firstChunk = checkpoint.nextChunk();
+                rowCount = checkpoint.rowCount();
+                logger.info("Resuming {} at byte {} (chunk {} of {})",
+                    file.hash(), checkpoint.byteOffset(), firstChunk, chunks.size() - 1);
+            }
+            List<Fingerprint> firstSeen = checkpoints.isEnabled() ? new ArrayList<>() : null;
+            int computed = 0;
+            for (int start = firstChunk; start < chunks.size(); start += LOOKUP_BATCH_SIZE) {
+                int end = Math.min(start + LOOKUP_BATCH_SIZE, chunks.size());
+                List<CsvChunker.Chunk> batch = chunks.subList(start, end);
+                Map<String, ChunkResultEntity> stored = new HashMap<>();
+                chunkResultRepository.findAllById(batch.stream().map(CsvChunker.Chunk::hash).toList())
+                    .forEach(chunkResult -> stored.put(chunkResult.chunkHash(), chunkResult));
+                touch(stored.values());
+
+                // Only the parsing and the rules run on the CPU pool; lookups, writes, checkpoints and the
+                // errors, which are stored or streamed as they reach the result, stay here
+                long batchStart = rowCount;
+                List<ValidationError> found = new ArrayList<>();
+                List<ChunkResultEntity> changed = jobExecutors.parseOnCpu(() -> validateBatch(
+                    file.hash(), channel, header, batch, stored, ruleKeys, seenReferences, firstSeen,
+                    ValidationResult.streaming(found::add), checkpoints, batchStart));
+                found.forEach(result::addError);
+                for (CsvChunker.Chunk chunk : batch) {
+                    rowCount += stored.get(chunk.hash()).rowCount();
+                }
+                if (!changed.isEmpty()) {
+                    chunkResultRepository.saveAll(changed);
+                    computed += changed.size();
+                }
+                if (firstSeen != null) {
+                    checkpoints.appendReferences(toBytes(firstSeen));
+                    firstSeen.clear();
+                    if (end < chunks.size() && checkpoints.isDue()) {
+                        checkpoints.save(end, chunks.get(end).offset(), rowCount);
+                    }
+                }
+            }
+            logger.info("Validated {} of {} chunks of {}, reused the rest", computed, chunks.size() - firstChunk, file.hash());
+        }
+        return true;
+    }
+
+    /**
+     * Validates the chunks of one lookup batch into {@code found}, given what is {@code stored} for them,
+     * and returns the results that have to be written. Results computed here are put into {@code stored}.
+     */
+    private List<ChunkResultEntity> validateBatch(
+            String fileHash,
+            FileChannel channel,
+            byte[] header,
+            List<CsvChunker.Chunk> batch,
+            Map<String, ChunkResultEntity> stored,
+            Map<TransactionValidator, String> ruleKeys,
+            Set<Fingerprint> seenReferences,
+            List<Fingerprint> firstSeen,
+            ValidationResult found,
+            Checkpoints checkpoints,
+            long rowCount) throws ParseException, IOException {
+        List<ChunkResultEntity> changed = new ArrayList<>();
+        for (CsvChunker.Chunk chunk : batch) {
+            if (checkpoints.isStopped()) {
+                throw new CancellationException("Validation of " + fileHash + " stopped at byte " + chunk.offset());
+            }
+            checkpoints.progress(chunk.offset(), rowCount);
+            ChunkResultEntity chunkResult = stored.get(chunk.hash());
+            List<Transaction> transactions = null;
+            List<TransactionValidator> missingRules = missingRules(chunkResult, ruleKeys);
+            if (chunkResult == null || !missingRules.isEmpty()) {
+                transactions = parse(channel, header, chunk);
+                chunkResult = validateChunk(chunk.hash(), chunkResult, transactions, missingRules, ruleKeys);
+                stored.put(chunk.hash(), chunkResult);
+                changed.add(chunkResult);
+            }
+            report(chunkResult, ruleKeys, transactions, channel, header, chunk, seenReferences, firstSeen, found);
+            rowCount += chunkResult.rowCount();
+        }
+        return changed;
+    }
+
+    /**
+     * Validates and stores the chunks of {@code length} bytes of a CSV file from {@code offset}, a row
+     * start, ahead of a {@link #validate} of a file that contains them, with the rows parsed under
+     * {@code header}. The last chunk is left out: it ends where the region ends, not at a content-defined
+     * cut, so the whole file will not contain it. Returns the number of chunks validated.
+     */
+    public int prevalidate(Path file, long offset, long length, byte[] header) throws ParseException, IOException {
+        if (!chunking.isEnabled() || !onlyUniquenessSpansRows()) {
+            return 0;
+        }
+        CsvChunker chunker = new CsvChunker(chunking.getMinSize(), chunking.getAverageSize(), chunking.getMaxSize());
+        List<CsvChunker.Chunk> chunks = jobExecutors.parseOnCpu(() -> chunker.split(file, offset, length, false));
+        long maxChunkLength = (long) chunking.getMaxSize() * MAX_SIZE_FACTOR;
+        List<CsvChunker.Chunk> complete = chunks.subList(0, Math.max(0, chunks.size() - 1)).stream()
+            .filter(chunk -> chunk.length() <= maxChunkLength)
+            .toList();
+
+        Map<TransactionValidator, String> ruleKeys = new HashMap<>();
+        rowValidators.forEach(validator -> ruleKeys.put(validator, RuleSet.fingerprint(validator)));
+        int computed = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int start = 0; start < complete.size(); start += LOOKUP_BATCH_SIZE) {
+                List<CsvChunker.Chunk> batch = complete.subList(start, Math.min(start + LOOKUP_BATCH_SIZE, complete.size()));
+                Map<String, ChunkResultEntity> stored = new HashMap<>();
+                chunkResultRepository.findAllById(batch.stream().map(CsvChunker.Chunk::hash).toList())
+                    .forEach(chunkResult -> stored.put(chunkResult.chunkHash(), chunkResult));
+
+                Map<String, ChunkResultEntity> changed = jobExecutors.parseOnCpu(() -> {
+                    Map<String, ChunkResultEntity> validated = new HashMap<>();
+                    for (CsvChunker.Chunk chunk : batch) {
+                        ChunkResultEntity chunkResult = stored.get(chunk.hash());
+                        List<TransactionValidator> missingRules = missingRules(chunkResult, ruleKeys);
+                        if ((chunkResult == null || !missingRules.isEmpty()) && !validated.containsKey(chunk.hash())) {
+                            List<Transaction> transactions = parse(channel, header, chunk);
+                            validated.put(chunk.hash(), validateChunk(chunk.hash(), chunkResult, transactions, missingRules, ruleKeys));
+                        }
+                    }
+                    return validated;
+                });
+                if (!changed.isEmpty()) {
+                    chunkResultRepository.saveAll(List.copyOf(changed.values()));
+                    computed += changed.size();
+                }
+            }
+        }
+        return computed;
+    }
+
+    /**
+     * Moves {@code lastUsedAt} of reused chunks forward once it is older than a tenth of the retention,
+     * so that popular chunks do not cost a write on every validation.
+     */
+    private void touch(Collection<ChunkResultEntity> reused) {
+        Instant now = Instant.now();
+        Instant stale = now.minus(chunking.getRetention().dividedBy(TOUCH_FRACTION));
+        List<String> chunkHashes = reused.stream()
+            .filter(chunkResult -> chunkResult.lastUsedAt() == null || chunkResult.lastUsedAt().isBefore(stale))
+            .map(ChunkResultEntity::chunkHash)
+            .toList();
+        if (!chunkHashes.isEmpty()) {
+            chunkResultRepository.touchAll(chunkHashes, now);
+        }
+    }
+
+    private List<TransactionValidator> missingRules(
+            ChunkResultEntity chunkResult,
+            Map<TransactionValidator, String> ruleKeys) {
+        if (chunkResult == null || chunkResult.ruleErrors() == null) {
+            return rowValidators;
+        }
+        return rowValidators.stream()
+            .filter(validator -> !chunkResult.ruleErrors().containsKey(ruleKeys.get(validator)))
+            .toList();
+    }
+
+    /**
+     * Runs {@code rules} over the rows of a chunk and adds their errors to what is already stored for
+     * it. The reference fingerprints only depend on the content, so stored ones are kept.
+     */
+    private ChunkResultEntity validateChunk(
+            String chunkHash,
+            ChunkResultEntity existing,
+            List<Transaction> transactions,
+            List<TransactionValidator> rules,
+            Map<TransactionValidator, String> ruleKeys) {
+        Map<String, List<ChunkResultEntity.RowError>> ruleErrors = new HashMap<>();
+        if (existing != null && existing.ruleErrors() != null) {
+            ruleErrors.putAll(existing.ruleErrors());
+        }
+        for (TransactionValidator rule : rules) {
+            List<ChunkResultEntity.RowError> errors = new ArrayList<>();
+            int[] row = {0};
+            ValidationResult ruleResult = ValidationResult.streaming(
+                error -> errors.add(new ChunkResultEntity.RowError(row[0], error)));
+            for (Transaction transaction : transactions) {
+                rule.validate(transaction, ruleResult);
+                row[0]++;
+            }
+            ruleErrors.put(ruleKeys.get(rule), errors);
+        }
+
+        if (existing != null) {
+            return new ChunkResultEntity(
+                chunkHash, existing.rowCount(), existing.referenceFingerprints(), ruleErrors, existing.createdAt(), Instant.now());
+        }
+        ByteBuffer fingerprints = ByteBuffer.allocate(transactions.size() * FINGERPRINT_BYTES);
+        for (Transaction transaction : transactions) {
+            Fingerprint fingerprint = Fingerprint.of(transaction.reference());
+            fingerprints.putLong(fingerprint.high()).putLong(fingerprint.low());
+        }
+        Instant now = Instant.now();
+        return new ChunkResultEntity(chunkHash, transactions.size(), fingerprints.array(), ruleErrors, now, now);
+    }
+
+    /**
+     * Adds the errors of one chunk to {@code result} row by row, with each row's errors in validator
+     * order as a single pass would report them. Duplicate references are found against all earlier
+     * rows of the file.
+     */
+    private void report(
+            ChunkResultEntity chunkResult,
+            Map<TransactionValidator, String> ruleKeys,
+            List<Transaction> transactions,
+            FileChannel channel,
+            byte[] header,
+            CsvChunker.Chunk chunk,
+            Set<Fingerprint> seenReferences,
+            List<Fingerprint> firstSeen,
+            ValidationResult result) throws ParseException, IOException {
+        List<List<ChunkResultEntity.RowError>> errorsByValidator = new ArrayList<>();
+        for (TransactionValidator validator : validators) {
+            errorsByValidator.add(validator.isRowLocal() ? chunkResult.ruleErrors().get(ruleKeys.get(validator)) : null);
+        }
+        int[] nextError = new int[validators.size()];
+        ByteBuffer fingerprints = ByteBuffer.wrap(chunkResult.referenceFingerprints());
+
+        for (int row = 0; row < chunkResult.rowCount(); row++) {
+            Fingerprint fingerprint = new Fingerprint(fingerprints.getLong(), fingerprints.getLong());
+            for (int v = 0; v < validators.size(); v++) {
+                List<ChunkResultEntity.RowError> rowErrors = errorsByValidator.get(v);
+                if (rowErrors != null) {
+                    while (nextError[v] < rowErrors.size() && rowErrors.get(nextError[v]).row() == row) {
+                        result.addError(rowErrors.get(nextError[v]++).error());
+                    }
+                } else if (seenReferences.add(fingerprint)) {
+                    if (firstSeen != null) {
+                        firstSeen.add(fingerprint);
+                    }
+                } else {
+                    if (transactions == null) {
+                        transactions = parse(channel, header, chunk);
+                    }
+                    result.addError(ValidationError.duplicateReference(transactions.get(row)));
+                }
+            }
+        }
+    }
+
+    private List<Transaction> parse(FileChannel channel, byte[] header, CsvChunker.Chunk chunk)
+            throws ParseException, IOException {
+        InputStream in = new SequenceInputStream(
+            new ByteArrayInputStream(header), new ByteArrayInputStream(read(channel, chunk)));
+        try (Stream<Transaction> transactions = csvParser.parse(in)) {
+            return transactions.toList();
+        }
+    }
+
+    private static byte[] read(FileChannel channel, CsvChunker.Chunk chunk) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(chunk.length()));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, chunk.offset() + buffer.position()) < 0) {
+                throw new IOException("Spooled file shrank while validating");
+            }
+        }
+        return buffer.array();
+    }
+
+    // A checkpoint only applies when the file still splits into the same chunks, i.e. the chunking settings are unchanged
+    private static boolean startsChunk(ValidationCheckpoint checkpoint, List<CsvChunker.Chunk> chunks) {
+        return checkpoint.nextChunk() >= 1
+            && checkpoint.nextChunk() < chunks.size()
+            && chunks.get(checkpoint.nextChunk()).offset() == checkpoint.byteOffset()
+            && checkpoint.referenceSnapshotBytes() % FINGERPRINT_BYTES == 0;
+    }
+
+    private static void readReferences(Checkpoints checkpoints, long bytes, Set<Fingerprint> seenReferences)
+            throws IOException {
+        try (DataInputStream in = checkpoints.openReferences()) {
+            for (long read = 0; read < bytes; read += FINGERPRINT_BYTES) {
+                seenReferences.add(new Fingerprint(in.readLong(), in.readLong()));
+            }
+        }
+    }
+
+    private static ByteBuffer toBytes(List<Fingerprint> fingerprints) {
+        ByteBuffer bytes = ByteBuffer.allocate(fingerprints.size() * FINGERPRINT_BYTES);
+        for (Fingerprint fingerprint : fingerprints) {
+            bytes.putLong(fingerprint.high()).putLong(fingerprint.low());
+        }
+        return bytes.flip();
+    }
+
+    private boolean onlyUniquenessSpansRows() {
+        return validators.stream().allMatch(validator ->
+            validator.isRowLocal() || validator instanceof UniquenessValidator);
+    }
+
+    /**
+     * Where a chunked validation records its progress, and where it finds the progress of an earlier,
+     * interrupted run of the same file.
+     */
+    public interface Checkpoints {
+        Checkpoints NONE = reportingTo((byteOffset, rowCount) -> {});
+
+        /**
+         * Checkpoints that record nothing and only pass the progress on, for validations that are not
+         * job runs.
+         */
+        static Checkpoints reportingTo(ProgressReporter reporter) {
+            return reportingTo(reporter, () -> false);
+        }
+
+        /**
+         * Same as {@link #reportingTo(ProgressReporter)}, for a run that stops once {@code stopRequested}.
+         */
+        static Checkpoints reportingTo(ProgressReporter reporter, BooleanSupplier stopRequested) {
+            return new Checkpoints() {
+                @Override
+                public boolean isEnabled() {
+                    return false;
+                }
+
+                @Override
+                public Optional<ValidationCheckpoint> resumePoint() {
+                    return Optional.empty();
+                }
+
+                @Override
+                public DataInputStream openReferences() {
+                    throw new IllegalStateException("Nothing to resume from");
+                }
+
+                @Override
+                public void resume(ValidationCheckpoint checkpoint) {
+                }
+
+                @Override
+                public void appendReferences(ByteBuffer references) {
+                }
+
+                @Override
+                public boolean isStopped() {
+                    return stopRequested.getAsBoolean();
+                }
+
+                @Override
+                public void progress(long byteOffset, long rowCount) {
+                    reporter.progress(byteOffset, rowCount);
+                }
+
+                @Override
+                public boolean isDue() {
+                    return false;
+                }
+
+                @Override
+                public void save(int nextChunk, long byteOffset, long rowCount) {
+                }
+            };
+        }
+
+        /**
+         * Receives the progress of a chunked validation.
+         */
+        interface ProgressReporter {
+            void progress(long byteOffset, long rowCount);
+        }
+
+        /**
+         * Whether progress is recorded; references first seen are only handed over when it is.
+         */
+        boolean isEnabled();
+
+        Optional<ValidationCheckpoint> resumePoint();
+
+        /**
+         * The reference fingerprints the earlier run had seen, 16 bytes each.
+         */
+        DataInputStream openReferences() throws IOException;
+
+        /**
+         * Called when the run continues from {@code checkpoint}, before anything is added to the result.
+         */
+        void resume(ValidationCheckpoint checkpoint) throws IOException;
+
+        /**
+         * Fingerprints of references seen for the first time, in the order they were seen.
+         */
+        void appendReferences(ByteBuffer references) throws IOException;
+
+        /**
+         * Whether the run should stop; checked before every chunk.
+         */
+        boolean isStopped();
+
+        /**
+         * Reports that the rows before {@code byteOffset} are in the result; called before every chunk.
+         */
+        void progress(long byteOffset, long rowCount);
+
+        boolean isDue();
+
+        /**
+         * Records that the chunks before {@code nextChunk}, which starts at {@code byteOffset}, are
+         * fully in the result. Throws a {@link CancellationException} when the run may not continue.
+         */
+        void save(int nextChunk, long byteOffset, long rowCount) throws IOException;
+    }
+
+    private record Fingerprint(long high, long low) {
+        static Fingerprint of(String reference) {
+            HashValue128 hash = FINGERPRINT_HASHER.hashCharsTo128Bits(reference);
+            return new Fingerprint(hash.getMostSignificantBits(), hash.getLeastSignificantBits());
+        }
+    }
+}
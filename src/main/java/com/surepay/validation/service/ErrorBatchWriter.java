@@ -0,0 +1,155 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.domain.ErrorEntity;
+import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.repository.ErrorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Stores errors for one report as they are produced, inserting a batch whenever {@code batchSize}
+ * errors are buffered; {@link #flush()} stores the remainder and waits until everything is stored.
+ * Indexes are assigned densely from 0 in write order. Errors are stored for the rules with
+ * {@code ruleSetFingerprint} under {@code generation}, which only this writer writes to, so other runs of
+ * the same report never see or remove them. A generation is continued only by the runs of one job, each
+ * holding its lease: leftovers of an interrupted run are removed before the first insert, and a run
+ * resumed with {@link #resumeAt} keeps the errors stored before its checkpoint and only removes the
+ * ones after it.
+ * <p>
+ * Inserts run on {@code executor} one after another, so the caller keeps validating while a batch is
+ * stored; it only waits when two batches are still in flight.
+ */
+public class ErrorBatchWriter {
+    private static final Logger logger = LoggerFactory.getLogger(ErrorBatchWriter.class);
+
+    private final String reportId;
+    private final String ruleSetFingerprint;
+    private final String generation;
+    private final ErrorRepository errorRepository;
+    private final MongoTemplate mongoTemplate;
+    private final int batchSize;
+    private final Executor executor;
+    private List<ErrorEntity> buffer;
+    private int nextIndex;
+    private int resumedIndex;
+    private boolean started;
+    private CompletableFuture<Void> lastInsert = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> previousInsert = CompletableFuture.completedFuture(null);
+
+    ErrorBatchWriter(
+            String reportId,
+            String ruleSetFingerprint,
+            String generation,
+            ErrorRepository errorRepository,
+            MongoTemplate mongoTemplate,
+            int batchSize,
+            Executor executor) {
+        this.reportId = reportId;
+        this.ruleSetFingerprint = ruleSetFingerprint;
+        this.generation = generation;
+        this.errorRepository = errorRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.batchSize = batchSize;
+        this.executor = executor;
+        this.buffer = new ArrayList<>(batchSize);
+    }
+
+    public void write(ValidationReportDto.ValidationErrorDto error) {
+        buffer.add(ErrorEntity.create(reportId, ruleSetFingerprint, generation, error, nextIndex++));
+        if (buffer.size() >= batchSize) {
+            store();
+        }
+    }
+
+    /**
+     * Continues after the first {@code index} errors, which an earlier run of the same report already
+     * stored. Must be called before the first write.
+     */
+    public void resumeAt(int index) {
+        if (started || !buffer.isEmpty()) {
+            throw new IllegalStateException("Errors were already written for reportId: " + reportId);
+        }
+        nextIndex = index;
+        resumedIndex = index;
+    }
+
+    public void flush() {
+        if (!started && resumedIndex > 0) {
+            // No new errors, but the interrupted run may have stored some past the checkpoint
+            started = true;
+            lastInsert = lastInsert.thenRunAsync(this::removeLeftovers, executor);
+        }
+        store();
+        await(lastInsert);
+    }
+
+    /**
+     * Stops a run that will not finish: drops the buffered errors and waits for the inserts in flight,
+     * so nothing more is stored for the report once this returns.
+     */
+    public void abandon() {
+        buffer = new ArrayList<>(batchSize);
+        try {
+            lastInsert.join();
+        } catch (CompletionException e) {
+            logger.debug("Insert of abandoned run failed for reportId {}: {}", reportId, e.getMessage());
+        }
+    }
+
+    public int getWrittenCount() {
+        return nextIndex;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    private void store() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        List<ErrorEntity> batch = buffer;
+        buffer = new ArrayList<>(batchSize);
+        boolean first = !started;
+        started = true;
+
+        // Bounds the errors held in memory when MongoDB is slower than validation
+        await(previousInsert);
+        previousInsert = lastInsert;
+        lastInsert = lastInsert.thenRunAsync(() -> {
+            if (first) {
+                removeLeftovers();
+            }
+            mongoTemplate.insertAll(batch);
+            logger.debug("Stored batch of {} errors (up to index {}) for reportId: {}",
+                batch.size(), batch.get(batch.size() - 1).index(), reportId);
+        }, executor);
+    }
+
+    private void removeLeftovers() {
+        if (resumedIndex > 0) {
+            errorRepository.deleteByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanEqual(
+                reportId, ruleSetFingerprint, generation, resumedIndex);
+        } else {
+            errorRepository.deleteByReportIdAndRuleSetFingerprintAndGeneration(reportId, ruleSetFingerprint, generation);
+        }
+    }
+
+    private static void await(CompletableFuture<Void> insert) {
+        try {
+            insert.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -6,15 +6,17 @@ import com.surepay.validation.dto.ValidationReportDto;
 import com.surepay.validation.repository.ErrorRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 public class ErrorService {
@@ -23,78 +25,87 @@ public class ErrorService {
     private final ErrorRepository errorRepository;
     private final MongoTemplate mongoTemplate;
     private final ValidationProperties validationProperties;
+    private final JobExecutors jobExecutors;
     
-    public ErrorService(ErrorRepository errorRepository, MongoTemplate mongoTemplate, ValidationProperties validationProperties) {
+    public ErrorService(
+            ErrorRepository errorRepository,
+            MongoTemplate mongoTemplate,
+            ValidationProperties validationProperties,
+            JobExecutors jobExecutors) {
         this.errorRepository = errorRepository;
         this.mongoTemplate = mongoTemplate;
         this.validationProperties = validationProperties;
+        this.jobExecutors = jobExecutors;
     }
     
-    @Transactional
-    public void storeErrors(String reportId, List<ValidationReportDto.ValidationErrorDto> errors) {
-        if (errors == null || errors.isEmpty()) {
-            logger.debug("No errors to store for reportId: {}", reportId);
-            return;
-        }
-        
-        if (hasErrors(reportId)) {
-            logger.debug("Errors already exist for reportId: {}, skipping storage", reportId);
-            return;
-        }
-        
-        saveAllInBatches(reportId, errors);
+    /**
+     * Opens a writer that stores errors in batches of {@code validation.error.batch-size} while
+     * validation is still running, so the full error list never has to be held in memory. Batches are
+     * inserted on virtual threads, so validation does not wait for MongoDB. The errors are stored as
+     * found by the rules with {@code ruleSetFingerprint}, under a new generation.
+     */
+    public ErrorBatchWriter openWriter(String reportId, String ruleSetFingerprint) {
+        return openWriter(reportId, ruleSetFingerprint, UUID.randomUUID().toString());
     }
     
-    private void saveAllInBatches(String reportId, List<ValidationReportDto.ValidationErrorDto> errors) {
-        int BATCH_SIZE = validationProperties.getError().getBatchSize();
-        int totalErrors = errors.size();
-        logger.info("Storing {} errors for reportId: {} in batches of {}", totalErrors, reportId, BATCH_SIZE);
-        
-        IntStream.range(0, totalErrors)
-            .boxed()
-            .collect(Collectors.groupingBy(i -> i / BATCH_SIZE))
-            .values()
-            .forEach(batchIndices -> {
-                List<ErrorEntity> batch = batchIndices.stream()
-                    .map(i -> ErrorEntity.create(reportId, errors.get(i), i))
-                    .collect(Collectors.toList());
-                
-                mongoTemplate.insertAll(batch);
-                int startIdx = batchIndices.get(0) + 1;
-                int endIdx = batchIndices.get(batchIndices.size() - 1) + 1;
-                logger.debug("Stored batch {}-{} of {} errors for reportId: {}", 
-                            startIdx, endIdx, totalErrors, reportId);
-            });
-        
-        logger.info("Stored {} errors for reportId: {}", totalErrors, reportId);
+    /**
+     * Same as {@link #openWriter(String, String)}, continuing {@code generation}. The caller must be
+     * the only one writing it, i.e. hold the lease of the job it belongs to.
+     */
+    public ErrorBatchWriter openWriter(String reportId, String ruleSetFingerprint, String generation) {
+        return new ErrorBatchWriter(reportId, ruleSetFingerprint, generation, errorRepository, mongoTemplate,
+            validationProperties.getError().getBatchSize(), jobExecutors.io());
     }
     
-    public List<ValidationReportDto.ValidationErrorDto> getErrors(String reportId) {
-        List<ErrorEntity> documents = errorRepository.findByReportIdOrderByIndexAsc(reportId);
+    /**
+     * Keyset page of errors: up to {@code limit} errors found by the rules with {@code ruleSetFingerprint}
+     * and stored under {@code generation}, with an index greater than {@code afterIndex}, in index order.
+     * Pass -1 for the first page. Cost does not grow with the page position.
+     */
+    public List<ValidationReportDto.ValidationErrorDto> getErrorsAfter(
+            String reportId, String ruleSetFingerprint, String generation, int afterIndex, int limit) {
+        List<ErrorEntity> documents = errorRepository.findByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanOrderByIndexAsc(
+            reportId, ruleSetFingerprint, generation, afterIndex, Limit.of(limit));
         
         return documents.stream()
-            .map(doc -> new ValidationReportDto.ValidationErrorDto(
-                doc.transactionReference(),
-                doc.description(),
-                doc.errorType(),
-                doc.errorMessage()
-            ))
+            .map(this::toDto)
             .collect(Collectors.toList());
     }
     
-    public Page<ValidationReportDto.ValidationErrorDto> getErrors(String reportId, Pageable pageable) {
-        Page<ErrorEntity> documentPage = errorRepository.findByReportIdOrderByIndexAsc(reportId, pageable);
+    /**
+     * Streams all errors of a report found by the rules with {@code ruleSetFingerprint} and stored under
+     * {@code generation} in index order straight from a Mongo cursor, fetching
+     * {@code validation.export.batch-size} documents per round trip. The caller must close the stream.
+     */
+    public Stream<ValidationReportDto.ValidationErrorDto> streamErrors(
+            String reportId, String ruleSetFingerprint, String generation) {
+        Query query = Query.query(Criteria.where("reportId").is(reportId)
+                .and("ruleSetFingerprint").is(ruleSetFingerprint)
+                .and("generation").is(generation))
+            .with(Sort.by(Sort.Direction.ASC, "index"))
+            .cursorBatchSize(validationProperties.getExport().getBatchSize());
         
-        return documentPage.map(doc -> new ValidationReportDto.ValidationErrorDto(
+        return mongoTemplate.stream(query, ErrorEntity.class)
+            .map(this::toDto);
+    }
+    
+    /**
+     * Removes the errors one run stored for a report, under the rules with {@code ruleSetFingerprint}
+     * and {@code generation}, e.g. those of a report that was replaced.
+     */
+    public void deleteErrors(String reportId, String ruleSetFingerprint, String generation) {
+        errorRepository.deleteByReportIdAndRuleSetFingerprintAndGeneration(reportId, ruleSetFingerprint, generation);
+        logger.info("Deleted stored errors for reportId: {} under rules {} and generation {}",
+            reportId, ruleSetFingerprint, generation);
+    }
+    
+    private ValidationReportDto.ValidationErrorDto toDto(ErrorEntity doc) {
+        return new ValidationReportDto.ValidationErrorDto(
             doc.transactionReference(),
             doc.description(),
             doc.errorType(),
             doc.errorMessage()
-        ));
-    }
-    
-    public boolean hasErrors(String reportId) {
-        return errorRepository.countByReportId(reportId) > 0;
+        );
     }
 }
 
@@ -0,0 +1,120 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationCheckpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the checkpoints of async jobs. The position and counts are stored in the job document; the
+ * references seen so far, which run into hundreds of megabytes for the largest files, go to one file
+ * per job in {@code validation.jobs.checkpoint-directory}, so a checkpoint only writes what is new
+ * since the previous one. A job resumes from its checkpoint on whichever instance can read that
+ * file, which is any instance when the directory is shared like the spool directory.
+ * <p>
+ * Snapshots nobody uses are removed after {@code validation.spool.retention}, like the spooled
+ * input they belong to.
+ */
+@Component
+public class JobCheckpoints {
+    private static final Logger logger = LoggerFactory.getLogger(JobCheckpoints.class);
+
+    private static final String SNAPSHOT_SUFFIX = ".refs";
+
+    private final JobQueue jobQueue;
+    private final Path directory;
+    private final Duration interval;
+    private final Duration retention;
+    private final Set<String> open = ConcurrentHashMap.newKeySet();
+
+    public JobCheckpoints(JobQueue jobQueue, ValidationProperties validationProperties) {
+        this.jobQueue = jobQueue;
+        this.directory = Path.of(validationProperties.getJobs().getCheckpointDirectory());
+        this.interval = validationProperties.getJobs().getCheckpointInterval();
+        this.retention = validationProperties.getSpool().getRetention();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot initialise checkpoint directory " + directory, e);
+        }
+    }
+
+    /**
+     * Starts a run of {@code job}, a job as leased, continuing from its checkpoint when the snapshot
+     * it refers to is readable here.
+     */
+    public CheckpointSession open(JobEntity job) {
+        return open(job, CheckpointSession.ProgressListener.NONE);
+    }
+
+    /**
+     * Same as {@link #open(JobEntity)}, reporting the progress of the run to {@code progressListener}.
+     * The run stores its errors under the generation of the checkpoint, also when it cannot resume from
+     * it, so it removes what the earlier run stored; a job without a checkpoint starts a new generation.
+     * Checkpoints saved before generations existed continue the errors stored without one.
+     */
+    public CheckpointSession open(JobEntity job, CheckpointSession.ProgressListener progressListener) {
+        Path snapshot = snapshotOf(job.jobId());
+        ValidationCheckpoint resumePoint = job.checkpoint();
+        String errorGeneration = resumePoint != null ? resumePoint.errorGeneration() : UUID.randomUUID().toString();
+        if (resumePoint != null && !isReadable(snapshot, resumePoint)) {
+            logger.info("Checkpoint of job {} refers to a reference snapshot that is not available here, starting over", job.jobId());
+            resumePoint = null;
+        }
+        open.add(job.jobId());
+        return new CheckpointSession(job.jobId(), resumePoint, errorGeneration, snapshot, jobQueue, interval, progressListener,
+            () -> false, () -> open.remove(job.jobId()));
+    }
+
+    /**
+     * Removes the snapshot of a job that no longer needs it.
+     */
+    public void discard(String jobId) {
+        try {
+            Files.deleteIfExists(snapshotOf(jobId));
+        } catch (IOException e) {
+            logger.warn("Failed to remove reference snapshot of job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${validation.spool.cleanup-interval:PT5M}")
+    public void cleanup() {
+        Instant expired = Instant.now().minus(retention);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                String jobId = file.getFileName().toString().replace(SNAPSHOT_SUFFIX, "");
+                if (!open.contains(jobId) && Files.getLastModifiedTime(file).toInstant().isBefore(expired)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clean up checkpoint directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private Path snapshotOf(String jobId) {
+        return directory.resolve(jobId + SNAPSHOT_SUFFIX);
+    }
+
+    private static boolean isReadable(Path snapshot, ValidationCheckpoint checkpoint) {
+        try {
+            return Files.size(snapshot) >= checkpoint.referenceSnapshotBytes();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
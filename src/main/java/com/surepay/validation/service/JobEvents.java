@@ -0,0 +1,241 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationProgress;
+import com.surepay.validation.dto.ValidationJobResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Pushes job status and progress to subscribers as Server-Sent Events instead of having them poll the
+ * status endpoint. A {@code status} event is sent on subscribing and whenever the status changes, a
+ * {@code progress} event every {@code validation.jobs.progress-interval} while the job is queued or
+ * running; both carry the job as the status endpoint returns it. The stream ends after the event
+ * with the final status.
+ * <p>
+ * A subscription reads the job once. Jobs running on this instance are then followed in memory
+ * only: queue position from the scheduler, progress from the run, and the final status from the
+ * run's completion. Jobs running elsewhere only change in MongoDB every
+ * {@code validation.jobs.progress-persist-interval}, so all of them are refreshed at that interval
+ * with one query, however many subscribers they have.
+ */
+@Component
+public class JobEvents {
+    private static final Logger logger = LoggerFactory.getLogger(JobEvents.class);
+
+    private final JobService jobService;
+    private final long timeoutMillis;
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    public JobEvents(JobService jobService, ValidationProperties validationProperties) {
+        this.jobService = jobService;
+        this.timeoutMillis = validationProperties.getJobs().getEventsTimeout().toMillis();
+    }
+
+    /**
+     * Starts the event stream of {@code jobId}; empty when the job does not exist.
+     */
+    public Optional<SseEmitter> subscribe(String jobId) {
+        Optional<JobEntity> job = jobService.getJob(jobId);
+        if (job.isEmpty()) {
+            return Optional.empty();
+        }
+        SseEmitter emitter = newEmitter(timeoutMillis);
+        if (isFinal(job.get())) {
+            try {
+                emitter.send(SseEmitter.event().name("status").data(ValidationJobResponse.from(job.get())));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+            return Optional.of(emitter);
+        }
+        Watch watch = watches.computeIfAbsent(jobId, Watch::new);
+        emitter.onCompletion(() -> unsubscribe(watch, emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> unsubscribe(watch, emitter));
+        watch.add(emitter, job.get());
+        follow(watch);
+        return Optional.of(emitter);
+    }
+
+    int subscribedJobs() {
+        return watches.size();
+    }
+
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    @Scheduled(fixedDelayString = "${validation.jobs.progress-interval:PT2S}")
+    public void pushProgress() {
+        watches.values().forEach(watch -> {
+            if (!follow(watch)) {
+                return;
+            }
+            JobEntity job = watch.job();
+            if (job == null) {
+                return;
+            }
+            Optional<JobScheduler.QueueStatus> queue = jobService.getQueueStatus(watch.jobId);
+            Optional<ValidationProgress> progress = jobService.getProgress(watch.jobId);
+            if (queue.isPresent()) {
+                JobScheduler.QueueStatus status = queue.get();
+                watch.update(job.withStatus(JobEntity.JobStatus.PENDING), response ->
+                    response.withQueue(status.position(), status.queueDepth(), status.estimatedStartAt()));
+            } else if (progress.isPresent()) {
+                watch.update(job.withStatus(JobEntity.JobStatus.PROCESSING).withProgress(progress.get()), response -> response);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${validation.jobs.progress-persist-interval:PT15S}")
+    public void refreshRemote() {
+        List<String> remote = new ArrayList<>();
+        watches.values().forEach(watch -> {
+            if (!follow(watch)) {
+                remote.add(watch.jobId);
+            }
+        });
+        if (remote.isEmpty()) {
+            return;
+        }
+        List<JobEntity> jobs = jobService.getJobs(remote);
+        jobs.forEach(job -> {
+            Watch watch = watches.get(job.jobId());
+            if (watch != null) {
+                watch.update(job, response -> response);
+            }
+        });
+        // Removed meanwhile
+        remote.removeAll(jobs.stream().map(JobEntity::jobId).toList());
+        remote.forEach(jobId -> Optional.ofNullable(watches.remove(jobId)).ifPresent(Watch::completeAll));
+    }
+
+    // Attaches to the run when the job runs here, which may only start after the subscription did
+    private boolean follow(Watch watch) {
+        Optional<CompletableFuture<JobEntity>> running = jobService.getRunningJob(watch.jobId);
+        if (running.isEmpty()) {
+            return false;
+        }
+        if (watch.follow(running.get())) {
+            running.get().thenAccept(job -> {
+                if (job != null) {
+                    watch.update(job, response -> response);
+                }
+            });
+        }
+        return true;
+    }
+
+    private void unsubscribe(Watch watch, SseEmitter emitter) {
+        if (watch.remove(emitter)) {
+            watches.remove(watch.jobId, watch);
+        }
+    }
+
+    /**
+     * The subscribers of one job and what they were sent last.
+     */
+    private final class Watch {
+        private final String jobId;
+        private final List<SseEmitter> emitters = new ArrayList<>();
+        private JobEntity job;
+        private ValidationJobResponse lastSent;
+        private CompletableFuture<JobEntity> followed;
+        private boolean closed;
+
+        Watch(String jobId) {
+            this.jobId = jobId;
+        }
+
+        synchronized JobEntity job() {
+            return job;
+        }
+
+        synchronized void add(SseEmitter emitter, JobEntity current) {
+            if (closed) {
+                // The job finished since the subscriber read it
+                if (lastSent != null) {
+                    send(emitter, "status", lastSent);
+                }
+                emitter.complete();
+                return;
+            }
+            job = current;
+            emitters.add(emitter);
+            ValidationJobResponse response = ValidationJobResponse.from(current);
+            if (lastSent == null) {
+                lastSent = response;
+            }
+            send(emitter, "status", response);
+        }
+
+        synchronized boolean follow(CompletableFuture<JobEntity> run) {
+            if (followed == run) {
+                return false;
+            }
+            followed = run;
+            return true;
+        }
+
+        synchronized void update(JobEntity current, UnaryOperator<ValidationJobResponse> decorate) {
+            job = current;
+            ValidationJobResponse response = decorate.apply(ValidationJobResponse.from(current));
+            if (response.equals(lastSent)) {
+                return;
+            }
+            boolean statusChanged = lastSent == null || !lastSent.status().equals(response.status());
+            lastSent = response;
+            for (SseEmitter emitter : List.copyOf(emitters)) {
+                send(emitter, statusChanged ? "status" : "progress", response);
+            }
+            if (isFinal(current)) {
+                watches.remove(jobId, this);
+                completeAll();
+            }
+        }
+
+        synchronized void completeAll() {
+            closed = true;
+            List.copyOf(emitters).forEach(SseEmitter::complete);
+            emitters.clear();
+        }
+
+        // True when no subscriber is left
+        synchronized boolean remove(SseEmitter emitter) {
+            emitters.remove(emitter);
+            return emitters.isEmpty();
+        }
+
+        private void send(SseEmitter emitter, String event, ValidationJobResponse response) {
+            try {
+                emitter.send(SseEmitter.event().name(event).data(response));
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Dropping subscriber of job {}: {}", jobId, e.getMessage());
+                emitters.remove(emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private static boolean isFinal(JobEntity job) {
+        return switch (job.status()) {
+            case COMPLETED, FAILED, CANCELLED -> true;
+            case PENDING, PROCESSING -> false;
+        };
+    }
+}
@@ -0,0 +1,186 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.parser.ParseException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two kinds of threads validation work runs on. Parsing and validating is pure CPU and runs on a
+ * platform {@link ForkJoinPool} with one thread per core; it would otherwise hold the carrier threads
+ * that request handling and other virtual threads need. Everything that waits on MongoDB or the disk
+ * runs on virtual threads. A stage hands over to the other pool explicitly and waits for it, which
+ * costs a virtual thread nothing.
+ * <p>
+ * Besides the executor metrics of both pools ({@code executor.*} tagged {@code name=validation.cpu}
+ * and {@code validation.io}), the carrier threads of the virtual-thread scheduler are reported as
+ * {@code jobs.carriers.*} on JDKs that expose them (24 and later).
+ */
+@Component
+public class JobExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(JobExecutors.class);
+
+    private static final String CARRIER_MBEAN = "jdk.management:type=VirtualThreadScheduler";
+
+    private final ForkJoinPool cpuPool;
+    private final ExecutorService cpu;
+    private final ExecutorService io;
+    private final Timer cpuStage;
+
+    public JobExecutors(ValidationProperties validationProperties, MeterRegistry meterRegistry) {
+        int parallelism = validationProperties.getJobs().getCpuParallelism() > 0
+            ? validationProperties.getJobs().getCpuParallelism()
+            : Runtime.getRuntime().availableProcessors();
+        this.cpuPool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("validation-cpu-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.cpu = ExecutorServiceMetrics.monitor(meterRegistry, cpuPool, "validation.cpu");
+        this.io = ExecutorServiceMetrics.monitor(meterRegistry, Executors.newVirtualThreadPerTaskExecutor(), "validation.io");
+        this.cpuStage = Timer.builder("jobs.stage.cpu")
+            .description("Time spent in parse and validate stages on the CPU pool")
+            .register(meterRegistry);
+        Gauge.builder("jobs.cpu.utilization", cpuPool, pool -> (double) pool.getActiveThreadCount() / pool.getParallelism())
+            .description("Share of the CPU pool threads running a stage")
+            .register(meterRegistry);
+        registerCarrierGauges(meterRegistry);
+        logger.info("Validation CPU pool has {} threads", parallelism);
+    }
+
+    /**
+     * Pool for CPU-bound stages.
+     */
+    public ExecutorService cpu() {
+        return cpu;
+    }
+
+    /**
+     * Virtual threads for stages that block on MongoDB or the disk.
+     */
+    public ExecutorService io() {
+        return io;
+    }
+
+    /**
+     * Runs {@code stage} on the CPU pool and waits for it, rethrowing what it throws.
+     */
+    public <T> T onCpu(Callable<T> stage) throws Exception {
+        Timer.Sample sample = Timer.start();
+        // Completed by hand: the pool wraps checked exceptions and takes a CancellationException for a
+        // cancelled task, dropping its message
+        CompletableFuture<T> outcome = new CompletableFuture<>();
+        Future<?> task = cpu.submit(() -> {
+            try {
+                outcome.complete(stage.call());
+            } catch (Throwable e) {
+                outcome.completeExceptionally(e);
+            }
+        });
+        try {
+            return outcome.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        } finally {
+            sample.stop(cpuStage);
+        }
+    }
+
+    /**
+     * Same as {@link #onCpu} for parse and validate stages, rethrowing their checked exceptions as they
+     * are. Not to be called from the CPU pool itself.
+     */
+    public <T> T parseOnCpu(CpuStage<T> stage) throws ParseException, IOException {
+        try {
+            return onCpu(stage::call);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the CPU pool");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface CpuStage<T> {
+        T call() throws ParseException, IOException;
+    }
+
+    private static void registerCarrierGauges(MeterRegistry meterRegistry) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName scheduler;
+        try {
+            scheduler = new ObjectName(CARRIER_MBEAN);
+            if (!server.isRegistered(scheduler)) {
+                return;
+            }
+        } catch (Exception e) {
+            return;
+        }
+        Gauge.builder("jobs.carriers.mounted", () -> carrierAttribute(server, scheduler, "MountedVirtualThreadCount"))
+            .description("Carrier threads running a virtual thread")
+            .register(meterRegistry);
+        Gauge.builder("jobs.carriers.parallelism", () -> carrierAttribute(server, scheduler, "Parallelism"))
+            .description("Carrier threads available to virtual threads")
+            .register(meterRegistry);
+        Gauge.builder("jobs.carriers.queued", () -> carrierAttribute(server, scheduler, "QueuedVirtualThreadCount"))
+            .description("Virtual threads waiting for a carrier thread")
+            .register(meterRegistry);
+    }
+
+    private static double carrierAttribute(MBeanServer server, ObjectName scheduler, String attribute) {
+        try {
+            return ((Number) server.getAttribute(scheduler, attribute)).doubleValue();
+        } catch (Exception e) {
+            return Double.NaN;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Shutting down validation executors");
+        io.shutdown();
+        cpu.shutdown();
+        try {
+            if (!io.awaitTermination(60, TimeUnit.SECONDS)) {
+                io.shutdownNow();
+            }
+            if (!cpu.awaitTermination(10, TimeUnit.SECONDS)) {
+                cpu.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            io.shutdownNow();
+            cpu.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.domain.ValidationProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Progress of the jobs running on this instance, kept in memory where runs report it. Status reads
+ * and event subscribers get it from here; MongoDB only gets a copy every
+ * {@code validation.jobs.progress-persist-interval}, for status reads on other instances.
+ */
+@Component
+public class JobProgress {
+    private static final Logger logger = LoggerFactory.getLogger(JobProgress.class);
+
+    private final JobQueue jobQueue;
+    private final Map<String, Tracker> tracked = new ConcurrentHashMap<>();
+
+    public JobProgress(JobQueue jobQueue) {
+        this.jobQueue = jobQueue;
+    }
+
+    /**
+     * Starts tracking a run of {@code jobId} over {@code totalBytes}; hand the tracker to the run.
+     */
+    public Tracker track(String jobId, long totalBytes) {
+        return track(jobId, new Tracker(totalBytes));
+    }
+
+    /**
+     * Starts tracking {@code jobId} with a tracker its run already reports to, for a run that became
+     * a job while it was running.
+     */
+    public Tracker track(String jobId, Tracker tracker) {
+        tracked.put(jobId, tracker);
+        return tracker;
+    }
+
+    public void untrack(String jobId) {
+        tracked.remove(jobId);
+    }
+
+    /**
+     * Latest progress of a job running here; empty when it does not run here.
+     */
+    public Optional<ValidationProgress> current(String jobId) {
+        return Optional.ofNullable(tracked.get(jobId)).map(Tracker::snapshot);
+    }
+
+    @Scheduled(fixedDelayString = "${validation.jobs.progress-persist-interval:PT15S}")
+    public void persist() {
+        Map<String, ValidationProgress> changed = new HashMap<>();
+        tracked.forEach((jobId, tracker) -> {
+            Sample sample = tracker.latest;
+            if (sample != null && sample != tracker.persisted) {
+                tracker.persisted = sample;
+                changed.put(jobId, tracker.snapshot());
+            }
+        });
+        try {
+            jobQueue.recordProgress(changed);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to record progress of {} jobs: {}", changed.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Receives the progress of one run. Rates are measured from the first report on, so a resumed run
+     * is not credited with the part it skipped.
+     */
+    public static final class Tracker implements CheckpointSession.ProgressListener {
+        private final long totalBytes;
+        private volatile Sample first;
+        private volatile Sample latest;
+        private volatile Sample persisted;
+
+        Tracker(long totalBytes) {
+            this.totalBytes = totalBytes;
+        }
+
+        @Override
+        public void progress(long bytesRead, long rowCount, long errorCount) {
+            Sample sample = new Sample(bytesRead, rowCount, errorCount, System.nanoTime(), Instant.now());
+            if (first == null) {
+                first = sample;
+            }
+            latest = sample;
+        }
+
+        ValidationProgress snapshot() {
+            Sample start = first;
+            Sample now = latest;
+            if (now == null) {
+                return new ValidationProgress(0, totalBytes, 0, 0, null, null, Instant.now());
+            }
+            double seconds = (now.nanos - start.nanos) / 1e9;
+            Double rowsPerSecond = null;
+            Instant estimatedCompletionAt = null;
+            if (seconds > 0) {
+                rowsPerSecond = (now.rows - start.rows) / seconds;
+                double bytesPerSecond = (now.bytes - start.bytes) / seconds;
+                if (bytesPerSecond > 0) {
+                    long remainingMillis = (long) (Math.max(0, totalBytes - now.bytes) / bytesPerSecond * 1000);
+                    estimatedCompletionAt = now.at.plus(Duration.ofMillis(remainingMillis));
+                }
+            }
+            return new ValidationProgress(now.bytes, totalBytes, now.rows, now.errors, rowsPerSecond, estimatedCompletionAt, now.at);
+        }
+    }
+
+    private record Sample(long bytes, long rows, long errors, long nanos, Instant at) {}
+}
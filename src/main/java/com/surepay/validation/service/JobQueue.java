@@ -0,0 +1,259 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationCheckpoint;
+import com.surepay.validation.domain.ValidationProgress;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Treats {@code validation_jobs} as a work queue shared by all instances. An instance runs a job only
+ * while it holds the job's lease: {@link #lease} moves a {@code PENDING} job, or a {@code PROCESSING}
+ * job whose lease ran out, to {@code PROCESSING} under this instance's id, and a heartbeat keeps
+ * extending the leases held here. When an instance dies its leases expire and another instance picks
+ * the jobs up. Every transition is a conditional update of a single document, which MongoDB applies
+ * atomically on a standalone server as well as on a replica set.
+ * <p>
+ * A run checks {@link #holds} as it goes and stops once the lease is gone: right away when the job is
+ * cancelled on this instance, and at the next heartbeat when it was cancelled or taken over elsewhere.
+ */
+@Component
+public class JobQueue {
+    private static final Logger logger = LoggerFactory.getLogger(JobQueue.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final String instanceId;
+    private final Duration leaseDuration;
+    // Jobs this instance holds the lease of
+    private final Set<String> leased = ConcurrentHashMap.newKeySet();
+
+    public JobQueue(MongoTemplate mongoTemplate, ValidationProperties validationProperties) {
+        ValidationProperties.Jobs config = validationProperties.getJobs();
+        this.mongoTemplate = mongoTemplate;
+        this.leaseDuration = config.getLeaseDuration();
+        this.instanceId = config.getInstanceId().isBlank() ? defaultInstanceId() : config.getInstanceId();
+        logger.info("Leasing jobs as instance {}", instanceId);
+    }
+
+    public String instanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Takes the lease of {@code jobId} if it is pending or its previous owner stopped renewing it.
+     * Empty when the job is finished or another instance holds a live lease.
+     */
+    public Optional<JobEntity> lease(String jobId) {
+        Instant now = Instant.now();
+        JobEntity job = mongoTemplate.findAndModify(
+            Query.query(Criteria.where("_id").is(jobId).andOperator(leasable(now))),
+            new Update()
+                .set("status", JobEntity.JobStatus.PROCESSING)
+                .set("leaseOwner", instanceId)
+                .set("leaseExpiresAt", now.plus(leaseDuration)),
+            FindAndModifyOptions.options().returnNew(true),
+            JobEntity.class);
+        if (job == null) {
+            return Optional.empty();
+        }
+        leased.add(jobId);
+        return Optional.of(job);
+    }
+
+    /**
+     * Whether this instance still holds the lease of {@code jobId}, as far as it knows.
+     */
+    public boolean holds(String jobId) {
+        return leased.contains(jobId);
+    }
+
+    /**
+     * Moves a pending or running job to {@code CANCELLED}, whoever holds its lease, and drops the
+     * lease and checkpoint. Empty when the job does not exist or already finished.
+     */
+    public Optional<Cancellation> cancel(String jobId) {
+        Instant now = Instant.now();
+        JobEntity previous = mongoTemplate.findAndModify(
+            Query.query(Criteria.where("_id").is(jobId)
+                .and("status").in(JobEntity.JobStatus.PENDING, JobEntity.JobStatus.PROCESSING)),
+            new Update()
+                .set("status", JobEntity.JobStatus.CANCELLED)
+                .set("completedAt", now)
+                .unset("leaseOwner")
+                .unset("leaseExpiresAt")
+                .unset("checkpoint"),
+            FindAndModifyOptions.options().returnNew(false),
+            JobEntity.class);
+        leased.remove(jobId);
+        if (previous == null) {
+            return Optional.empty();
+        }
+        boolean runningElsewhere = previous.status() == JobEntity.JobStatus.PROCESSING
+            && previous.leaseOwner() != null
+            && !previous.leaseOwner().equals(instanceId)
+            && previous.leaseExpiresAt() != null
+            && previous.leaseExpiresAt().isAfter(now);
+        String errorGeneration = previous.checkpoint() != null ? previous.checkpoint().errorGeneration() : null;
+        return Optional.of(new Cancellation(previous.cancelledAt(now), runningElsewhere, errorGeneration));
+    }
+
+    /**
+     * A cancelled job, whether another instance held a live lease of it at the time, and the generation
+     * its last checkpoint stored errors under, if any. That instance's run stops at its next heartbeat
+     * and cleans up after itself.
+     */
+    public record Cancellation(JobEntity job, boolean runningElsewhere, String errorGeneration) {}
+
+    /**
+     * Oldest jobs with a spooled input of at most {@code maxFileSize} bytes that any instance may lease
+     * right now, in creation order from just after {@code after}, or from the start when it is null.
+     * Passing the last job of a page gets the next one, so jobs a caller cannot run do not hide the
+     * ones behind them.
+     */
+    public List<JobEntity> findLeasable(JobEntity after, long maxFileSize, int limit) {
+        Criteria criteria = new Criteria().andOperator(
+            leasable(Instant.now()),
+            Criteria.where("contentType").ne(null));
+        if (maxFileSize < Long.MAX_VALUE) {
+            criteria = new Criteria().andOperator(criteria, Criteria.where("fileSize").lte(maxFileSize));
+        }
+        if (after != null) {
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                Criteria.where("createdAt").gt(after.createdAt()),
+                Criteria.where("createdAt").is(after.createdAt()).and("_id").gt(after.jobId())));
+        }
+        Query query = Query.query(criteria)
+            .with(Sort.by("createdAt", "_id"))
+            .limit(limit);
+        return mongoTemplate.find(query, JobEntity.class);
+    }
+
+    /**
+     * Records the progress of a leased job, unless the lease was lost meanwhile.
+     */
+    public boolean checkpoint(String jobId, ValidationCheckpoint checkpoint) {
+        return mongoTemplate.updateFirst(
+            Query.query(Criteria.where("_id").is(jobId).and("leaseOwner").is(instanceId)),
+            new Update().set("checkpoint", checkpoint),
+            JobEntity.class).getModifiedCount() > 0;
+    }
+
+    /**
+     * Records the progress of leased jobs in one round trip, skipping those whose lease was lost.
+     */
+    public void recordProgress(Map<String, ValidationProgress> progress) {
+        if (progress.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, JobEntity.class);
+        progress.forEach((jobId, jobProgress) -> bulk.updateOne(
+            Query.query(Criteria.where("_id").is(jobId).and("leaseOwner").is(instanceId)),
+            new Update().set("progress", jobProgress)));
+        bulk.execute();
+    }
+
+    /**
+     * Stores the report of a leased job. Does nothing when the lease was lost meanwhile, since the
+     * new owner runs the job again and stores the same report.
+     */
+    public boolean complete(String jobId, ValidationReportDto report) {
+        return finish(jobId, new Update()
+            .set("status", JobEntity.JobStatus.COMPLETED)
+            .set("completedAt", Instant.now())
+            .set("report", report)
+            .unset("checkpoint"));
+    }
+
+    /**
+     * Marks a leased job as failed, unless the lease was lost meanwhile. Its checkpoint is kept, so a
+     * retry continues from it.
+     */
+    public boolean fail(String jobId, String errorMessage) {
+        return finish(jobId, new Update()
+            .set("status", JobEntity.JobStatus.FAILED)
+            .set("completedAt", Instant.now())
+            .set("errorMessage", errorMessage));
+    }
+
+    /**
+     * Stops renewing the lease of {@code jobId}; it expires unless the job was finished.
+     */
+    public void release(String jobId) {
+        leased.remove(jobId);
+    }
+
+    @Scheduled(fixedDelayString = "${validation.jobs.heartbeat-interval:PT30S}")
+    public void renewLeases() {
+        if (leased.isEmpty()) {
+            return;
+        }
+        List<String> jobIds = List.copyOf(leased);
+        long renewed = mongoTemplate.updateMulti(
+            Query.query(Criteria.where("_id").in(jobIds).and("leaseOwner").is(instanceId)),
+            new Update().set("leaseExpiresAt", Instant.now().plus(leaseDuration)),
+            JobEntity.class).getModifiedCount();
+        if (renewed < jobIds.size()) {
+            Query held = Query.query(Criteria.where("_id").in(jobIds).and("leaseOwner").is(instanceId));
+            held.fields().include("_id");
+            Set<String> stillHeld = new HashSet<>();
+            mongoTemplate.find(held, JobEntity.class).forEach(job -> stillHeld.add(job.jobId()));
+            // Runs of the others stop at their next check
+            jobIds.stream().filter(jobId -> !stillHeld.contains(jobId)).forEach(leased::remove);
+            logger.warn("Renewed {} of {} job leases; the others were cancelled, taken over or finished", renewed, jobIds.size());
+        }
+    }
+
+    private boolean finish(String jobId, Update update) {
+        leased.remove(jobId);
+        long modified = mongoTemplate.updateFirst(
+            Query.query(Criteria.where("_id").is(jobId).and("leaseOwner").is(instanceId)),
+            update.unset("leaseOwner").unset("leaseExpiresAt"),
+            JobEntity.class).getModifiedCount();
+        if (modified == 0) {
+            logger.warn("Lease of job {} was lost before it finished, result discarded", jobId);
+            return false;
+        }
+        return true;
+    }
+
+    // Jobs left PROCESSING without a lease were started before leases existed and count as expired
+    private static Criteria leasable(Instant now) {
+        return new Criteria().orOperator(
+            Criteria.where("status").is(JobEntity.JobStatus.PENDING),
+            Criteria.where("status").is(JobEntity.JobStatus.PROCESSING).orOperator(
+                Criteria.where("leaseExpiresAt").lt(now),
+                Criteria.where("leaseExpiresAt").is(null)));
+    }
+
+    private static String defaultInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,61 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.domain.JobEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * The jobs this instance holds the lease of, as they stand, so reading one does not go to MongoDB.
+ * Only the lease holder changes a running job, so its copy is current; a job whose lease was lost,
+ * because it was cancelled or taken over elsewhere, is answered from MongoDB again as soon as
+ * {@link JobQueue#holds} says so. The progress is the live one from {@link JobProgress}.
+ */
+@Component
+public class JobRegistry {
+
+    private final JobQueue jobQueue;
+    private final JobProgress jobProgress;
+    private final Map<String, JobEntity> live = new ConcurrentHashMap<>();
+
+    public JobRegistry(JobQueue jobQueue, JobProgress jobProgress) {
+        this.jobQueue = jobQueue;
+        this.jobProgress = jobProgress;
+    }
+
+    /**
+     * Keeps {@code job}, as returned by {@link JobQueue#lease}, until it is {@link #remove removed}.
+     */
+    public void register(JobEntity job) {
+        live.put(job.jobId(), job);
+    }
+
+    /**
+     * Applies a transition this instance also stored in MongoDB.
+     */
+    public void update(String jobId, UnaryOperator<JobEntity> transition) {
+        live.computeIfPresent(jobId, (id, job) -> transition.apply(job));
+    }
+
+    public Optional<JobEntity> get(String jobId) {
+        JobEntity job = live.get(jobId);
+        if (job == null || !jobQueue.holds(jobId)) {
+            return Optional.empty();
+        }
+        return Optional.of(jobProgress.current(jobId).map(job::withProgress).orElse(job));
+    }
+
+    /**
+     * Forgets {@code jobId}; returns the job as it was last known here.
+     */
+    public Optional<JobEntity> remove(String jobId) {
+        return Optional.ofNullable(live.remove(jobId));
+    }
+
+    public int size() {
+        return live.size();
+    }
+}
@@ -0,0 +1,385 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts async jobs while their estimated heap use fits a memory budget and queues the rest. The
+ * budget is a share of the max heap, which the JVM already derives from the container limit. A job
+ * estimated above the whole budget still runs, but only when nothing else does. Queued jobs stay
+ * {@code PENDING} in {@code validation_jobs}; their queue position and an estimated start time are
+ * reported with the job status.
+ * <p>
+ * The queue has two lanes. Interactive jobs, small files unless the submitter asked otherwise, start
+ * before batch jobs, and batch jobs only get {@code validation.jobs.batch-memory-share} of the budget,
+ * so a small file never waits for a large one to finish. Within a lane clients share the queue by
+ * weighted fair queuing: each job gets a virtual finish tag of its client's previous tag plus its size
+ * divided by the client's weight, and the lowest tag starts first, so a client submitting many large
+ * files delays others by at most about one file. A job queued longer than
+ * {@code validation.jobs.max-queue-wait} goes ahead of both lanes, so batch jobs cannot starve.
+ */
+@Component
+public class JobScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(JobScheduler.class);
+
+    // Parser buffers, chunk batches and error batches, independent of the file size
+    static final long BASE_JOB_BYTES = 32L * 1024 * 1024;
+    // The uniqueness set dominates: about 64 bytes per CSV row (a fingerprint in a hash set) at
+    // about 80 bytes per row, and about 100 bytes per JSON transaction (the reference string) at
+    // about 160 bytes per transaction
+    private static final double CSV_BYTES_PER_FILE_BYTE = 0.8;
+    private static final double JSON_BYTES_PER_FILE_BYTE = 0.65;
+    // Weight of the latest job in the throughput average; small files mostly measure fixed costs
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+    private static final long MIN_MEASURED_FILE_SIZE = 16L * 1024 * 1024;
+
+    private static final String ANONYMOUS_CLIENT = "anonymous";
+
+    private final long memoryBudget;
+    private final long batchMemoryBudget;
+    private final long interactiveMaxBytes;
+    private final long maxQueueWaitNanos;
+    private final Map<String, Integer> clientWeights;
+    private final JobExecutors jobExecutors;
+    private final Map<JobEntity.Priority, Timer> queueWait = new EnumMap<>(JobEntity.Priority.class);
+    private final List<ScheduledJob> queue = new ArrayList<>();
+    private final Map<String, ScheduledJob> running = new HashMap<>();
+    // Per lane: virtual time (tag of the job started last) and the last tag handed to each client
+    private final Map<JobEntity.Priority, Double> virtualTime = new EnumMap<>(JobEntity.Priority.class);
+    private final Map<JobEntity.Priority, Map<String, Double>> lastFinishTags = new EnumMap<>(JobEntity.Priority.class);
+    private long reservedBytes;
+    private double bytesPerSecond;
+    private long sequence;
+
+    public JobScheduler(
+            ValidationProperties validationProperties,
+            JobExecutors jobExecutors,
+            MeterRegistry meterRegistry) {
+        ValidationProperties.Jobs config = validationProperties.getJobs();
+        this.jobExecutors = jobExecutors;
+        this.memoryBudget = config.getMemoryBudgetBytes() > 0
+            ? config.getMemoryBudgetBytes()
+            : (long) (Runtime.getRuntime().maxMemory() * config.getHeapFraction());
+        this.batchMemoryBudget = (long) (memoryBudget * config.getBatchMemoryShare());
+        this.interactiveMaxBytes = config.getInteractiveMaxBytes();
+        this.maxQueueWaitNanos = config.getMaxQueueWait().toNanos();
+        this.clientWeights = Map.copyOf(config.getClientWeights());
+        this.bytesPerSecond = config.getInitialThroughputBytesPerSecond();
+        for (JobEntity.Priority lane : JobEntity.Priority.values()) {
+            virtualTime.put(lane, 0.0);
+            lastFinishTags.put(lane, new HashMap<>());
+            queueWait.put(lane, Timer.builder("jobs.queue.wait")
+                .description("Time async jobs waited for memory to start")
+                .tag("lane", lane.name().toLowerCase())
+                .register(meterRegistry));
+        }
+        Gauge.builder("jobs.queue.depth", this, JobScheduler::queueDepth)
+            .description("Async jobs waiting for memory to start")
+            .register(meterRegistry);
+        Gauge.builder("jobs.running", this, JobScheduler::runningJobs)
+            .description("Async jobs admitted and running")
+            .register(meterRegistry);
+        Gauge.builder("jobs.memory.reserved", this, JobScheduler::reservedBytes)
+            .description("Estimated heap reserved by running async jobs")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("jobs.memory.budget", this, JobScheduler::memoryBudget)
+            .description("Heap available to async jobs")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        logger.info("Async jobs get a memory budget of {} MB", memoryBudget / (1024 * 1024));
+    }
+
+    /**
+     * Heap a job is expected to need for a file of {@code fileSize} bytes in {@code contentType}.
+     */
+    public static long estimateMemory(long fileSize, String contentType) {
+        double perFileByte = contentType != null && contentType.contains("json")
+            ? JSON_BYTES_PER_FILE_BYTE
+            : CSV_BYTES_PER_FILE_BYTE;
+        return BASE_JOB_BYTES + (long) (fileSize * perFileByte);
+    }
+
+    /**
+     * Lane a job of {@code fileSize} bytes runs in when the submitter asked for {@code requested},
+     * which may be null.
+     */
+    public JobEntity.Priority laneFor(long fileSize, JobEntity.Priority requested) {
+        if (requested != null) {
+            return requested;
+        }
+        return fileSize <= interactiveMaxBytes ? JobEntity.Priority.INTERACTIVE : JobEntity.Priority.BATCH;
+    }
+
+    /**
+     * Runs {@code task} for an anonymous submitter, in the lane that follows from the file size.
+     */
+    public void submit(String jobId, long fileSize, String contentType, Runnable task) {
+        submit(jobId, fileSize, contentType, Submitter.ANONYMOUS, task, () -> {});
+    }
+
+    /**
+     * Runs {@code task} once its memory estimate fits next to the running jobs and no job ahead of it
+     * in the queue order is waiting, or runs {@code onCancel} instead when the job is
+     * {@link #cancel cancelled} while still queued.
+     */
+    public void submit(String jobId, long fileSize, String contentType, Submitter submitter, Runnable task, Runnable onCancel) {
+        JobEntity.Priority lane = laneFor(fileSize, submitter.priority());
+        String client = submitter.clientKey();
+        List<ScheduledJob> admitted;
+        ScheduledJob job;
+        synchronized (this) {
+            Map<String, Double> lastTags = lastFinishTags.get(lane);
+            double start = Math.max(virtualTime.get(lane), lastTags.getOrDefault(client, 0.0));
+            double finishTag = start + (double) Math.max(fileSize, 1) / clientWeights.getOrDefault(client, 1);
+            lastTags.put(client, finishTag);
+            job = new ScheduledJob(jobId, fileSize, estimateMemory(fileSize, contentType), lane, finishTag,
+                sequence++, task, onCancel);
+            queue.add(job);
+            admitted = admit();
+        }
+        if (!admitted.contains(job)) {
+            logger.info("Job {} queued in {} lane for {}: needs {} MB, {} MB of {} MB reserved", jobId, lane, client,
+                job.memoryEstimate / (1024 * 1024), reservedBytes() / (1024 * 1024), memoryBudget / (1024 * 1024));
+        }
+        admitted.forEach(this::start);
+    }
+
+    /**
+     * Removes {@code jobId} from the queue and runs its cancel action. False when it is not queued
+     * here, because it already started or runs elsewhere.
+     */
+    public boolean cancel(String jobId) {
+        ScheduledJob cancelled = null;
+        List<ScheduledJob> admitted;
+        synchronized (this) {
+            for (ScheduledJob queued : queue) {
+                if (queued.jobId.equals(jobId)) {
+                    cancelled = queued;
+                    break;
+                }
+            }
+            if (cancelled == null) {
+                return false;
+            }
+            queue.remove(cancelled);
+            // Jobs behind it may fit now
+            admitted = admit();
+        }
+        cancelled.onCancel.run();
+        admitted.forEach(this::start);
+        return true;
+    }
+
+    /**
+     * Position (1-based) and estimated start of a queued job; empty when it is not queued here.
+     */
+    public synchronized Optional<QueueStatus> queueStatus(String jobId) {
+        long bytesAhead = running.values().stream().mapToLong(job -> job.remainingBytes(bytesPerSecond)).sum();
+        int position = 1;
+        for (ScheduledJob queued : inStartOrder()) {
+            if (queued.jobId.equals(jobId)) {
+                Duration wait = Duration.ofMillis((long) (bytesAhead / drainRate() * 1000));
+                return Optional.of(new QueueStatus(position, queue.size(), Instant.now().plus(wait)));
+            }
+            bytesAhead += queued.fileSize;
+            position++;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Whether a job submitted now would start right away, assuming it fits the remaining budget.
+     */
+    public synchronized boolean hasCapacity() {
+        return queue.isEmpty() && reservedBytes < memoryBudget;
+    }
+
+    /**
+     * Largest file a job could start with right now: any while nothing runs, as the first job always
+     * starts, otherwise the largest whose leanest estimate fits the remaining budget.
+     */
+    public synchronized long largestStartableFile() {
+        if (running.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        long free = memoryBudget - reservedBytes - BASE_JOB_BYTES;
+        return free < 0 ? -1 : (long) (free / Math.min(CSV_BYTES_PER_FILE_BYTE, JSON_BYTES_PER_FILE_BYTE));
+    }
+
+    public long memoryBudget() {
+        return memoryBudget;
+    }
+
+    public synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int runningJobs() {
+        return running.size();
+    }
+
+    /**
+     * Size of the files the running jobs validate.
+     */
+    public synchronized long runningBytes() {
+        return running.values().stream().mapToLong(job -> job.fileSize).sum();
+    }
+
+    public synchronized long queuedBytes() {
+        return queue.stream().mapToLong(job -> job.fileSize).sum();
+    }
+
+    /**
+     * Bytes per second the queue is expected to drain at. Running jobs share the cores, so it drains
+     * at about their combined speed.
+     */
+    public synchronized double drainRate() {
+        return bytesPerSecond * Math.max(1, running.size());
+    }
+
+    // Jobs start on a virtual thread, which does their I/O and hands parsing to the CPU pool
+    private void start(ScheduledJob job) {
+        jobExecutors.io().submit(() -> {
+            try {
+                job.task.run();
+            } finally {
+                finish(job);
+            }
+        });
+    }
+
+    private void finish(ScheduledJob job) {
+        List<ScheduledJob> admitted;
+        synchronized (this) {
+            running.remove(job.jobId);
+            reservedBytes -= job.memoryEstimate;
+            long elapsedNanos = System.nanoTime() - job.startedNanos;
+            if (job.fileSize >= MIN_MEASURED_FILE_SIZE && elapsedNanos > 0) {
+                double measured = job.fileSize / (elapsedNanos / 1e9);
+                bytesPerSecond = THROUGHPUT_SMOOTHING * measured + (1 - THROUGHPUT_SMOOTHING) * bytesPerSecond;
+            }
+            admitted = admit();
+        }
+        admitted.forEach(this::start);
+    }
+
+    // The next job in start order waits for memory rather than being overtaken, so large jobs cannot starve
+    private List<ScheduledJob> admit() {
+        List<ScheduledJob> admitted = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            long now = System.nanoTime();
+            ScheduledJob head = queue.stream().min(startOrder(now)).orElseThrow();
+            long laneBudget = head.lane == JobEntity.Priority.BATCH ? batchMemoryBudget : memoryBudget;
+            if (!running.isEmpty() && reservedBytes + head.memoryEstimate > laneBudget) {
+                break;
+            }
+            queue.remove(head);
+            head.startedNanos = now;
+            running.put(head.jobId, head);
+            reservedBytes += head.memoryEstimate;
+            virtualTime.put(head.lane, Math.max(virtualTime.get(head.lane), head.finishTag));
+            // Clients whose tags the lane has passed start from the virtual time again
+            double laneTime = virtualTime.get(head.lane);
+            lastFinishTags.get(head.lane).values().removeIf(tag -> tag <= laneTime);
+            queueWait.get(head.lane).record(now - head.queuedNanos, TimeUnit.NANOSECONDS);
+            admitted.add(head);
+        }
+        return admitted;
+    }
+
+    private List<ScheduledJob> inStartOrder() {
+        List<ScheduledJob> ordered = new ArrayList<>(queue);
+        ordered.sort(startOrder(System.nanoTime()));
+        return ordered;
+    }
+
+    // Jobs past the maximum wait first, oldest first; then interactive before batch, by finish tag
+    private Comparator<ScheduledJob> startOrder(long now) {
+        return Comparator
+            .comparing((ScheduledJob job) -> now - job.queuedNanos < maxQueueWaitNanos)
+            .thenComparing(job -> now - job.queuedNanos < maxQueueWaitNanos ? 0 : job.sequence)
+            .thenComparing(job -> job.lane)
+            .thenComparingDouble(job -> job.finishTag)
+            .thenComparingLong(job -> job.sequence);
+    }
+
+    /**
+     * Who submitted a job, from the {@code X-Client-Id} header, and the lane asked for with
+     * {@code X-Job-Priority}; both may be null.
+     */
+    public record Submitter(String clientId, JobEntity.Priority priority) {
+        public static final Submitter ANONYMOUS = new Submitter(null, null);
+
+        /**
+         * From the header values, either of which may be missing. Rejects an unknown priority.
+         */
+        public static Submitter of(String clientId, String priority) {
+            return new Submitter(clientId, priority == null || priority.isBlank() ? null : JobEntity.Priority.parse(priority));
+        }
+
+        String clientKey() {
+            return clientId == null || clientId.isBlank() ? ANONYMOUS_CLIENT : clientId;
+        }
+    }
+
+    public record QueueStatus(int position, int queueDepth, Instant estimatedStartAt) {}
+
+    private static final class ScheduledJob {
+        final String jobId;
+        final long fileSize;
+        final long memoryEstimate;
+        final JobEntity.Priority lane;
+        final double finishTag;
+        final long sequence;
+        final Runnable task;
+        final Runnable onCancel;
+        final long queuedNanos = System.nanoTime();
+        long startedNanos;
+
+        ScheduledJob(
+                String jobId,
+                long fileSize,
+                long memoryEstimate,
+                JobEntity.Priority lane,
+                double finishTag,
+                long sequence,
+                Runnable task,
+                Runnable onCancel) {
+            this.jobId = jobId;
+            this.fileSize = fileSize;
+            this.memoryEstimate = memoryEstimate;
+            this.lane = lane;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.task = task;
+            this.onCancel = onCancel;
+        }
+
+        long remainingBytes(double bytesPerSecond) {
+            long processed = (long) ((System.nanoTime() - startedNanos) / 1e9 * bytesPerSecond);
+            return Math.max(0, fileSize - processed);
+        }
+    }
+}
@@ -1,100 +1,523 @@
 package com.surepay.validation.service;
 
+import com.surepay.validation.config.ValidationProperties;
 import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ReportEntity;
+import com.surepay.validation.domain.ValidationProgress;
 import com.surepay.validation.domain.ValidationResult;
 import com.surepay.validation.parser.ParseException;
 import com.surepay.validation.dto.ValidationReportDto;
 import com.surepay.validation.repository.JobRepository;
-import com.surepay.validation.util.HashComputingInputStream;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import com.surepay.validation.validator.RuleSet;
+import com.surepay.validation.util.TreeHash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import jakarta.annotation.PreDestroy;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class JobService {
     private static final Logger logger = LoggerFactory.getLogger(JobService.class);
 
+    private static final int POLL_BATCH_SIZE = 20;
+    // Pages a poll reads at most; the next poll continues after the last of them
+    private static final int POLL_MAX_PAGES = 5;
+
     private final ValidationService validationService;
     private final JobRepository jobRepository;
-    private final ExecutorService virtualThreadExecutor;
+    private final SpoolStore spoolStore;
+    private final ReportCache reportCache;
+    private final MongoTemplate mongoTemplate;
+    private final RuleSet ruleSet;
+    private final JobScheduler jobScheduler;
+    private final JobExecutors jobExecutors;
+    private final JobQueue jobQueue;
+    private final JobCheckpoints jobCheckpoints;
+    private final ErrorService errorService;
+    private final JobProgress jobProgress;
+    private final JobRegistry jobRegistry;
+    private final ValidationProperties.Sync sync;
+    // Size of the files sync requests validate right now, including runs that became jobs
+    private final AtomicLong syncBytesInFlight = new AtomicLong();
+    // Jobs claimed, queued or validating on this instance
+    private final ConcurrentHashMap<String, RunningJob> runningJobs = new ConcurrentHashMap<>();
+    // Last job the previous poll read when it stopped at its page limit; polls run one at a time
+    private JobEntity pollCursor;
 
     public JobService(
             ValidationService validationService,
-            JobRepository jobRepository) {
+            JobRepository jobRepository,
+            SpoolStore spoolStore,
+            ReportCache reportCache,
+            MongoTemplate mongoTemplate,
+            RuleSet ruleSet,
+            JobScheduler jobScheduler,
+            JobExecutors jobExecutors,
+            JobQueue jobQueue,
+            JobCheckpoints jobCheckpoints,
+            ErrorService errorService,
+            JobProgress jobProgress,
+            JobRegistry jobRegistry,
+            ValidationProperties validationProperties) {
         this.validationService = validationService;
         this.jobRepository = jobRepository;
-        this.virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.spoolStore = spoolStore;
+        this.reportCache = reportCache;
+        this.mongoTemplate = mongoTemplate;
+        this.ruleSet = ruleSet;
+        this.jobScheduler = jobScheduler;
+        this.jobExecutors = jobExecutors;
+        this.jobQueue = jobQueue;
+        this.jobCheckpoints = jobCheckpoints;
+        this.errorService = errorService;
+        this.jobProgress = jobProgress;
+        this.jobRegistry = jobRegistry;
+        this.sync = validationProperties.getSync();
     }
 
-    public JobEntity submitJob(String filename, InputStream fileInputStream, String contentType, long fileSize) throws IOException {
-        HashComputingInputStream hashStream = new HashComputingInputStream(fileInputStream);
-        String hash = hashStream.getHash();
+    /**
+     * Validates an upload for a sync request like {@link ValidationService#validateAndStoreReport(SpooledFile,
+     * String, String)}, but waits at most {@code deadline}, capped at {@code validation.sync.max-deadline},
+     * or {@code validation.sync.deadline} when it is null. A validation that is not done by then is not
+     * started over: it continues as the async job for the content, without keeping its error list, and
+     * that job is returned instead of the result. When the content already runs or waits as a job, on
+     * this instance or another, no validation starts, or a started one stops, and that job is returned;
+     * this is what a client re-sending a request that was answered with a job gets. A job continued
+     * this way stops like any other run once it is cancelled or its lease is lost, dropping the errors
+     * it stored. Takes ownership of {@code file}.
+     */
+    public SyncOutcome validateWithin(SpooledFile file, String contentType, String filename, Duration deadline)
+            throws ParseException, IOException {
+        String hash = file.hash();
+        Optional<JobEntity> active = activeJob(hash);
+        if (active.isPresent()) {
+            logger.info("Job with hash {} is already running or pending, returning it for sync validation", hash);
+            file.close();
+            return SyncOutcome.promoted(active.get());
+        }
+        Duration wait = syncDeadline(deadline);
+        JobProgress.Tracker progress = new JobProgress.Tracker(file.size());
+        AtomicBoolean stopRequested = new AtomicBoolean();
+        AtomicBoolean leased = new AtomicBoolean();
+        CompletableFuture<ValidationResult> started = new CompletableFuture<>();
+        // Once the run is the job's, it stops with the lease, which cancelling drops
+        CheckpointSession session = CheckpointSession.disabled(progress,
+            () -> stopRequested.get() || (leased.get() && !jobQueue.holds(hash)));
+        syncBytesInFlight.addAndGet(file.size());
+        CompletableFuture<ValidationService.ValidationAndStorageResult> run = CompletableFuture.supplyAsync(() -> {
+            try {
+                return validationService.validateAndStoreReport(file, contentType, filename, session, started::complete);
+            } catch (ParseException | IOException e) {
+                throw new CompletionException(e);
+            }
+            // Waits on MongoDB and the disk; the validation hands its parsing and rules to the CPU pool
+        }, jobExecutors.io());
+        run.whenComplete((result, error) -> {
+            file.close();
+            syncBytesInFlight.addAndGet(-file.size());
+        });
+        try {
+            return SyncOutcome.finished(!wait.isPositive() ? run.get() : run.get(wait.toNanos(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            SyncRun syncRun = new SyncRun(run, started, stopRequested, leased);
+            return SyncOutcome.promoted(promote(hash, filename, contentType, file.size(), progress, syncRun));
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case ParseException cause -> throw cause;
+                case IOException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // The validation still finishes and stores its report for the next request
+            throw new InterruptedIOException("Interrupted while waiting for validation of " + filename);
+        }
+    }
 
+    /**
+     * The job for {@code hash} that is claimed or running here, or pending or processing anywhere.
+     */
+    private Optional<JobEntity> activeJob(String hash) {
+        RunningJob running = runningJobs.get(hash);
+        if (running != null) {
+            return Optional.of(running.current(jobRegistry));
+        }
+        return jobRepository.findById(hash)
+            .filter(job -> job.status() == JobEntity.JobStatus.PENDING || job.status() == JobEntity.JobStatus.PROCESSING);
+    }
 
-        Optional<JobEntity> existingJob = jobRepository.findById(hash);
-        
-        if (existingJob.isPresent()) {
-            JobEntity job = existingJob.get();
-            
-            return switch (job.status()) {
-                case COMPLETED -> {
-                    logger.info("Job with hash {} already exists and is COMPLETED, returning existing job", hash);
-                    yield job;
-                }
-                case PENDING, PROCESSING -> {
-                    logger.info("Job with hash {} exists with status {}, already being processed, returning existing job", hash, job.status());
-                    yield job;
-                }
-                case FAILED -> {
-                    logger.info("Job with hash {} exists with status FAILED, retrying", hash);
-                    JobEntity updatedJob = job.withStatus(JobEntity.JobStatus.PROCESSING);
-                    jobRepository.save(updatedJob);
-                    
-                    virtualThreadExecutor.submit(() -> 
-                        processValidationAsync(hash, fileInputStream, contentType, filename, fileSize)
-                    );
-                    
-                    yield updatedJob;
+    public long syncBytesInFlight() {
+        return syncBytesInFlight.get();
+    }
+
+    private Duration syncDeadline(Duration requested) {
+        if (requested == null) {
+            return sync.getDeadline();
+        }
+        return requested.compareTo(sync.getMaxDeadline()) > 0 ? sync.getMaxDeadline() : requested;
+    }
+
+    /**
+     * Makes {@code syncRun} the run of the job for {@code hash}, unless that job is already run or
+     * finished, in which case the sync run stops and the caller gets that job instead. Claims the job
+     * like a submission would and takes its lease right away, so the job is never queued and no other
+     * instance starts it while this one holds the lease. Nobody reads the error list of a promoted run,
+     * so it stops keeping one; only its summary ends up in the job.
+     */
+    private JobEntity promote(
+            String hash,
+            String filename,
+            String contentType,
+            long fileSize,
+            JobProgress.Tracker progress,
+            SyncRun syncRun) {
+        RunningJob running = new RunningJob();
+        RunningJob existing = runningJobs.putIfAbsent(hash, running);
+        if (existing != null) {
+            logger.info("Job with hash {} is already running on this instance, stopping sync validation", hash);
+            syncRun.stop();
+            return existing.current(jobRegistry);
+        }
+        try {
+            JobClaim claim = claim(hash, filename, contentType, fileSize, JobScheduler.Submitter.ANONYMOUS);
+            Optional<JobEntity> leased = claim.owned() ? jobQueue.lease(hash) : Optional.empty();
+            if (leased.isEmpty()) {
+                logger.info("Job with hash {} exists with status {}, stopping sync validation", hash, claim.job().status());
+                syncRun.stop();
+                running.claimed.complete(claim.job());
+                runningJobs.remove(hash, running);
+                return claim.job();
+            }
+            syncRun.continueAsJob();
+            jobRegistry.register(leased.get());
+            running.claimed.complete(leased.get());
+            jobProgress.track(hash, progress);
+            logger.info("Sync validation of {} missed its deadline, continuing as job {}", filename, hash);
+            syncRun.result().whenCompleteAsync((result, error) -> finishPromoted(hash, result, error, running), jobExecutors.io());
+            return leased.get();
+        } catch (RuntimeException e) {
+            runningJobs.remove(hash, running);
+            running.fail(e);
+            throw e;
+        }
+    }
+
+    private void finishPromoted(
+            String jobId,
+            ValidationService.ValidationAndStorageResult result,
+            Throwable error,
+            RunningJob running) {
+        try {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                complete(jobId, result.reportDto());
+            } else if (cause instanceof CancellationException) {
+                // The run dropped the errors it stored; what remains is the spooled input
+                Optional<JobEntity> stopped = getJob(jobId);
+                if (stopped.map(job -> job.status() == JobEntity.JobStatus.CANCELLED).orElse(true)) {
+                    logger.info("Job {} was cancelled: {}", jobId, cause.getMessage());
+                    stopped.ifPresent(job -> removeLeftovers(job, null));
+                } else {
+                    logger.info("Job {} was taken over by another instance: {}", jobId, cause.getMessage());
                 }
-            };
+            } else if (cause instanceof ParseException) {
+                logger.error("Parse error for job {}: {}", jobId, cause.getMessage(), cause);
+                fail(jobId, "Failed to parse file: " + cause.getMessage());
+            } else {
+                logger.error("Unexpected error processing job {}", jobId, cause);
+                fail(jobId, "An error occurred during validation: " + cause.getMessage());
+            }
+        } finally {
+            finish(jobId, running);
         }
-        
-        JobEntity job = JobEntity.create(hash, filename);
-        jobRepository.save(job);
-        logger.info("Created new job with hash: {}", hash);
+    }
 
-        virtualThreadExecutor.submit(() -> 
-            processValidationAsync(hash, fileInputStream, contentType, filename, fileSize)
-        );
+    /**
+     * Spools the upload on the calling thread, so the request body is fully read before the request
+     * ends, and schedules validation of the spooled file unless a job for the same content exists.
+     * Submissions of the same content, on this instance or any other, attach to the job that claimed
+     * the hash first instead of validating again.
+     */
+    public JobEntity submitJob(String filename, InputStream fileInputStream, String contentType, long fileSize) throws IOException {
+        return submitJob(filename, fileInputStream, contentType, fileSize, JobScheduler.Submitter.ANONYMOUS);
+    }
+
+    /**
+     * Same as {@link #submitJob(String, InputStream, String, long)}, scheduled for {@code submitter}.
+     */
+    public JobEntity submitJob(
+            String filename,
+            InputStream fileInputStream,
+            String contentType,
+            long fileSize,
+            JobScheduler.Submitter submitter) throws IOException {
+        return submitJob(filename, spoolStore.spool(fileInputStream, fileSize), contentType, submitter);
+    }
+
+    /**
+     * Same as {@link #submitJob(String, InputStream, String, long)} for an upload that is already in
+     * the spool. Takes ownership of {@code file}.
+     */
+    public JobEntity submitJob(String filename, SpooledFile file, String contentType) {
+        return submitJob(filename, file, contentType, JobScheduler.Submitter.ANONYMOUS);
+    }
+
+    /**
+     * Same as {@link #submitJob(String, SpooledFile, String)}, scheduled for {@code submitter}.
+     */
+    public JobEntity submitJob(String filename, SpooledFile file, String contentType, JobScheduler.Submitter submitter) {
+        String hash = file.hash();
+
+        RunningJob running = new RunningJob();
+        RunningJob existing = runningJobs.putIfAbsent(hash, running);
+        if (existing != null) {
+            logger.info("Job with hash {} is already running on this instance, returning existing job", hash);
+            file.close();
+            return existing.current(jobRegistry);
+        }
+
+        try {
+            JobClaim claim = claim(hash, filename, contentType, file.size(), submitter);
+            running.claimed.complete(claim.job());
+            if (!claim.owned()) {
+                logger.info("Job with hash {} exists with status {}, returning existing job", hash, claim.job().status());
+                runningJobs.remove(hash, running);
+                file.close();
+                return claim.job();
+            }
+
+            schedule(hash, file, contentType, filename, submitter, running);
+            return claim.job();
+        } catch (RuntimeException e) {
+            runningJobs.remove(hash, running);
+            running.fail(e);
+            file.close();
+            throw e;
+        }
+    }
 
-        return job;
+    /**
+     * Picks up jobs that no instance runs: jobs submitted to an instance that stopped before running
+     * them, jobs whose lease expired, and jobs queued on a busy instance. Only jobs whose input this
+     * instance can open from the spool are taken, and only while it has memory to start them.
+     */
+    @Scheduled(fixedDelayString = "${validation.jobs.poll-interval:PT5S}")
+    public void pollForWork() {
+        if (!jobScheduler.hasCapacity()) {
+            return;
+        }
+        List<JobEntity> page;
+        JobEntity last = pollCursor;
+        int pages = 0;
+        do {
+            page = jobQueue.findLeasable(last, jobScheduler.largestStartableFile(), POLL_BATCH_SIZE);
+            for (JobEntity job : page) {
+                if (pickUp(job) && !jobScheduler.hasCapacity()) {
+                    // Jobs that became leasable meanwhile are older than those after this one
+                    pollCursor = null;
+                    return;
+                }
+            }
+            last = page.isEmpty() ? null : page.getLast();
+        } while (page.size() == POLL_BATCH_SIZE && ++pages < POLL_MAX_PAGES);
+        pollCursor = page.size() == POLL_BATCH_SIZE ? last : null;
     }
 
-    private void processValidationAsync(String jobId, InputStream fileInputStream, String contentType, String filename, long fileSize) {
+    /**
+     * Schedules {@code job} here unless it already runs here or its input is not in this instance's
+     * spool. Returns whether it was scheduled.
+     */
+    private boolean pickUp(JobEntity job) {
+        String jobId = job.jobId();
+        if (runningJobs.containsKey(jobId)) {
+            return false;
+        }
+        Optional<SpooledFile> input;
         try {
-            updateJobStatus(jobId, JobEntity.JobStatus.PROCESSING);
+            input = spoolStore.open(jobId);
+        } catch (IOException e) {
+            logger.warn("Cannot open spooled input of job {}: {}", jobId, e.getMessage());
+            return false;
+        }
+        if (input.isEmpty()) {
+            // Spooled on an instance that does not share its spool directory with this one
+            return false;
+        }
+        RunningJob running = new RunningJob();
+        running.claimed.complete(job);
+        if (runningJobs.putIfAbsent(jobId, running) != null) {
+            input.get().close();
+            return false;
+        }
+        logger.info("Picked up job {} with status {}", jobId, job.status());
+        schedule(jobId, input.get(), job.contentType(), job.filename(),
+            new JobScheduler.Submitter(job.clientId(), job.priority()), running);
+        return true;
+    }
+
+    /**
+     * Lets a caller wait for a job that is validating on this instance.
+     */
+    public Optional<CompletableFuture<JobEntity>> getRunningJob(String jobId) {
+        return Optional.ofNullable(runningJobs.get(jobId)).map(running -> running.completion);
+    }
+
+    /**
+     * Queue position and estimated start of a job that waits for memory on this instance.
+     */
+    public Optional<JobScheduler.QueueStatus> getQueueStatus(String jobId) {
+        return jobScheduler.queueStatus(jobId);
+    }
+
+    /**
+     * Latest progress of a job that is validating on this instance.
+     */
+    public Optional<ValidationProgress> getProgress(String jobId) {
+        return jobProgress.current(jobId);
+    }
 
+    /**
+     * Atomically claims the job for {@code hash}: inserts a new job, or moves a FAILED or CANCELLED
+     * job, or one COMPLETED under other rules, back to PENDING. The unique {@code _id} and the status condition
+     * make exactly one concurrent submitter the owner; everyone else gets the job as it stands.
+     */
+    private JobClaim claim(String hash, String filename, String contentType, long fileSize, JobScheduler.Submitter submitter) {
+        String ruleSetFingerprint = ruleSet.fingerprint();
+        while (true) {
+            JobEntity job = JobEntity.create(hash, filename, ruleSetFingerprint)
+                .withInput(contentType, fileSize)
+                .withSubmitter(submitter.clientId(), submitter.priority());
+            try {
+                jobRepository.insert(job);
+                logger.info("Created new job with hash: {}", hash);
+                return new JobClaim(job, true);
+            } catch (DuplicateKeyException e) {
+                logger.debug("Job with hash {} already exists", hash);
+            }
+
+            Optional<JobEntity> existingJob = jobRepository.findById(hash);
+            if (existingJob.isEmpty()) {
+                // Removed between the insert and the read, try again
+                continue;
+            }
+            if (existingJob.get().isReusableFor(ruleSetFingerprint)) {
+                return new JobClaim(existingJob.get(), false);
+            }
+
+            Criteria retryable = new Criteria().orOperator(
+                Criteria.where("status").in(JobEntity.JobStatus.FAILED, JobEntity.JobStatus.CANCELLED),
+                Criteria.where("status").is(JobEntity.JobStatus.COMPLETED).and("ruleSetFingerprint").ne(ruleSetFingerprint));
+            JobEntity retriedJob = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(hash).andOperator(retryable)),
+                new Update()
+                    .set("status", JobEntity.JobStatus.PENDING)
+                    .set("completedAt", null)
+                    .set("report", null)
+                    .set("errorMessage", null)
+                    .set("ruleSetFingerprint", ruleSetFingerprint)
+                    .set("contentType", contentType)
+                    .set("fileSize", fileSize)
+                    .set("clientId", submitter.clientId())
+                    .set("priority", submitter.priority())
+                    .set("hashVersion", TreeHash.VERSION)
+                    .unset("leaseOwner")
+                    .unset("leaseExpiresAt")
+                    .unset("progress"),
+                FindAndModifyOptions.options().returnNew(true),
+                JobEntity.class);
+            if (retriedJob != null) {
+                logger.info("Job with hash {} exists with status {}, retrying", hash, existingJob.get().status());
+                return new JobClaim(retriedJob, true);
+            }
+            // Another submitter retried it first
+            return new JobClaim(jobRepository.findById(hash).orElse(existingJob.get()), false);
+        }
+    }
+
+    /**
+     * Queues the job for memory; once admitted it runs only if this instance gets its lease, so a job
+     * that another instance picked up in the meantime is not validated twice.
+     */
+    private void schedule(
+            String jobId,
+            SpooledFile file,
+            String contentType,
+            String filename,
+            JobScheduler.Submitter submitter,
+            RunningJob running) {
+        Runnable skip = () -> {
+            file.close();
+            JobEntity job = getJob(jobId).orElse(null);
+            // Cancelled after it was admitted but before it got its lease; cancelJob left the cleanup to us
+            JobQueue.Cancellation cancellation = running.cancellation;
+            if (cancellation != null && job != null && job.status() == JobEntity.JobStatus.CANCELLED) {
+                removeLeftovers(job, cancellation.errorGeneration());
+            }
+            runningJobs.remove(jobId, running);
+            running.completion.complete(job);
+        };
+        jobScheduler.submit(jobId, file.size(), contentType, submitter, () -> {
+            Optional<JobEntity> leased = jobQueue.lease(jobId);
+            if (leased.isEmpty()) {
+                logger.info("Job {} is run, finished or cancelled by another instance, skipping", jobId);
+                skip.run();
+                return;
+            }
+            processValidationAsync(leased.get(), file, contentType, filename, running);
+        }, skip);
+    }
+
+    private void processValidationAsync(
+            JobEntity leasedJob,
+            SpooledFile file,
+            String contentType,
+            String filename,
+            RunningJob running) {
+        String jobId = leasedJob.jobId();
+        jobRegistry.register(leasedJob);
+        JobProgress.Tracker progress = jobProgress.track(jobId, file.size());
+        CheckpointSession checkpoints = jobCheckpoints.open(leasedJob, progress);
+        try (file; checkpoints) {
             long javaProcessingStartTime = System.nanoTime();
 
-            ValidationService.ValidationAndStorageResult result = validationService.validateAndStoreReport(
-                fileInputStream,
+            // Parsing and validating is handed to the CPU pool; this virtual thread waits on MongoDB and the disk
+            ValidationService.ValidationAndStorageResult result = validationService.validateAndStreamReport(
+                file,
                 contentType,
                 filename,
-                fileSize
+                error -> {},
+                checkpoints
             );
             
             String hash = result.reportId();
-            ValidationReportDto reportDto = result.reportDto();
             ValidationResult validationResult = result.validationResult();
 
             long javaProcessingEndTime = System.nanoTime();
@@ -103,62 +526,225 @@ public class JobService {
             logger.info("Stored validation report with hash: {} for job: {} (summary: {} errors)", 
                        hash, jobId, validationResult.getErrorCount());
 
-            JobEntity job = getJob(jobId)
-                .orElseThrow(() -> new IllegalStateException("Job not found: " + jobId));
-            
-                ValidationReportDto reportForStorage = new ValidationReportDto(
-                    reportDto.valid(),
-                    reportDto.errorCount(),
-                    reportDto.duplicateReferenceCount(),
-                    reportDto.balanceMismatchCount(),
-                    java.util.List.of()
-                );
-                
-                JobEntity completedJob = job.withReport(reportForStorage);
-                jobRepository.save(completedJob);
-
-                logger.info("Validation job {} completed successfully", jobId);
+            complete(jobId, result.reportDto());
+        } catch (CancellationException e) {
+            Optional<JobEntity> stopped = getJob(jobId);
+            if (stopped.map(job -> job.status() == JobEntity.JobStatus.CANCELLED).orElse(true)) {
+                logger.info("Job {} was cancelled: {}", jobId, e.getMessage());
+                removeLeftovers(stopped.orElse(leasedJob), checkpoints.errorGeneration());
+            } else {
+                logger.info("Job {} was taken over by another instance: {}", jobId, e.getMessage());
+            }
         } catch (ParseException e) {
             logger.error("Parse error for job {}: {}", jobId, e.getMessage(), e);
-            updateJobWithError(jobId, "Failed to parse file: " + e.getMessage());
+            fail(jobId, "Failed to parse file: " + e.getMessage());
         } catch (Exception e) {
             logger.error("Unexpected error processing job {}", jobId, e);
-            updateJobWithError(jobId, "An error occurred during validation: " + e.getMessage());
+            fail(jobId, "An error occurred during validation: " + e.getMessage());
+        } finally {
+            finish(jobId, running);
         }
     }
 
-    public Optional<JobEntity> getJob(String jobId) {
-        return jobRepository.findById(jobId);
+    private void complete(String jobId, ValidationReportDto reportDto) {
+        ValidationReportDto reportForStorage = new ValidationReportDto(
+            reportDto.valid(),
+            reportDto.errorCount(),
+            reportDto.duplicateReferenceCount(),
+            reportDto.balanceMismatchCount(),
+            java.util.List.of()
+        );
+
+        if (jobQueue.complete(jobId, reportForStorage)) {
+            jobRegistry.update(jobId, job -> job.withReport(reportForStorage));
+            jobCheckpoints.discard(jobId);
+            logger.info("Validation job {} completed successfully", jobId);
+        }
     }
 
-    @Transactional
-    private void updateJobStatus(String jobId, JobEntity.JobStatus status) {
-        jobRepository.findById(jobId).ifPresent(job -> {
-            JobEntity updatedJob = job.withStatus(status);
-            jobRepository.save(updatedJob);
-        });
+    private void finish(String jobId, RunningJob running) {
+        jobQueue.release(jobId);
+        jobProgress.untrack(jobId);
+        // The final state is known here unless the lease was lost on the way
+        JobEntity finished = jobRegistry.remove(jobId)
+            .filter(job -> job.status() != JobEntity.JobStatus.PROCESSING)
+            .or(() -> getJob(jobId))
+            .orElse(null);
+        runningJobs.remove(jobId, running);
+        running.completion.complete(finished);
     }
 
-    @Transactional
-    private void updateJobWithError(String jobId, String errorMessage) {
-        jobRepository.findById(jobId).ifPresent(job -> {
-            JobEntity updatedJob = job.withError(errorMessage);
-            jobRepository.save(updatedJob);
+    private void fail(String jobId, String errorMessage) {
+        if (jobQueue.fail(jobId, errorMessage)) {
+            jobRegistry.update(jobId, job -> job.withError(errorMessage));
+        }
+    }
+
+    /**
+     * Cancels a job that has not finished. A queued job is dropped right away; a run on this instance
+     * stops within one chunk, or about a thousand rows, and a run on another instance once its next
+     * heartbeat finds the lease gone. The instance that ran it removes the spooled input, the checkpoint
+     * and the errors stored so far, see {@link #removeLeftovers}; a sync validation that continued as the job
+     * stops the same way. Returns the job as it stands, which is unchanged when it had already finished, or empty
+     * when it does not exist.
+     */
+    public Optional<JobEntity> cancelJob(String jobId) {
+        Optional<JobQueue.Cancellation> cancellation = jobQueue.cancel(jobId);
+        if (cancellation.isEmpty()) {
+            return getJob(jobId);
+        }
+        JobEntity cancelled = cancellation.get().job();
+        logger.info("Cancelled job {}", jobId);
+        boolean queuedHere = jobScheduler.cancel(jobId);
+        if (cancellation.get().runningElsewhere()) {
+            // The instance running it removes the leftovers once it stopped writing
+            return Optional.of(cancelled);
+        }
+        RunningJob running = runningJobs.get(jobId);
+        String errorGeneration = cancellation.get().errorGeneration();
+        if (queuedHere || running == null) {
+            removeLeftovers(cancelled, errorGeneration);
+        } else {
+            // The run here removes them once it stopped writing, or the skip when it never got the lease
+            running.cancellation = cancellation.get();
+            if (running.completion.isDone()) {
+                removeLeftovers(cancelled, errorGeneration);
+            }
+        }
+        return Optional.of(cancelled);
+    }
+
+    /**
+     * Removes what a cancelled run left behind: the errors it stored under {@code errorGeneration}, if
+     * known, unless a stored report was produced with them. Other runs of the same content store theirs
+     * under generations of their own, which stay. The spooled input stays when a report of the job's
+     * rules is stored under the same hash, e.g. by a sync validation of the same content.
+     */
+    private void removeLeftovers(JobEntity job, String errorGeneration) {
+        String jobId = job.jobId();
+        String ruleSetFingerprint = job.ruleSetFingerprint() != null ? job.ruleSetFingerprint() : ruleSet.fingerprint();
+        jobCheckpoints.discard(jobId);
+        Optional<ReportEntity> report = reportCache.getCurrentVerified(jobId, ruleSetFingerprint);
+        if (errorGeneration != null && !report.map(ReportEntity::errorGeneration).filter(errorGeneration::equals).isPresent()) {
+            errorService.deleteErrors(jobId, ruleSetFingerprint, errorGeneration);
+        }
+        if (report.isPresent()) {
+            logger.info("Job {} has a stored report, keeping its spooled input", jobId);
+            return;
+        }
+        spoolStore.remove(jobId);
+    }
+
+    /**
+     * Returns the job that a submission of content with {@code hash} would resolve to, without the
+     * content: an existing job that is running or completed under the active rules, or a completed
+     * job created from a stored report of the active rules.
+     */
+    public Optional<JobEntity> findReusableJob(String hash, String filename) {
+        String ruleSetFingerprint = ruleSet.fingerprint();
+        Optional<JobEntity> existingJob = jobRepository.findById(hash)
+            .filter(job -> job.isReusableFor(ruleSetFingerprint));
+        if (existingJob.isPresent()) {
+            return existingJob;
+        }
+        return reportCache.getCurrent(hash, ruleSetFingerprint).map(report -> {
+            JobEntity completedJob = JobEntity.create(hash, filename, ruleSetFingerprint).withReport(report.report());
+            jobRepository.save(completedJob);
+            logger.info("Created completed job {} from stored report", hash);
+            return completedJob;
         });
     }
 
-    @PreDestroy
-    public void shutdown() {
-        logger.info("Shutting down virtual thread executor");
-        virtualThreadExecutor.shutdown();
-        try {
-            if (!virtualThreadExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
-                virtualThreadExecutor.shutdownNow();
+    /**
+     * The job as it stands; a job running on this instance is answered from memory.
+     */
+    public Optional<JobEntity> getJob(String jobId) {
+        return jobRegistry.get(jobId).or(() -> jobRepository.findById(jobId));
+    }
+
+    /**
+     * The jobs among {@code jobIds} that exist, read in one query.
+     */
+    public List<JobEntity> getJobs(Collection<String> jobIds) {
+        List<JobEntity> jobs = new ArrayList<>();
+        jobRepository.findAllById(jobIds).forEach(jobs::add);
+        return jobs;
+    }
+
+    private record JobClaim(JobEntity job, boolean owned) {}
+
+    /**
+     * A sync validation that outlived its request: the result it completes with, the result it fills
+     * once it started, the flag that stops it, and the flag that ties it to the job's lease.
+     */
+    private record SyncRun(
+            CompletableFuture<ValidationService.ValidationAndStorageResult> result,
+            CompletableFuture<ValidationResult> started,
+            AtomicBoolean stopRequested,
+            AtomicBoolean leased) {
+        void stop() {
+            stopRequested.set(true);
+        }
+
+        /**
+         * Makes the run the job's: it stops keeping its error list and from now on stops with the lease.
+         */
+        void continueAsJob() {
+            leased.set(true);
+            started.thenAccept(ValidationResult::stopRetaining);
+        }
+    }
+
+    /**
+     * A job claimed, queued or validating on this instance: {@code claimed} is the job as claimed or
+     * picked up, {@code completion} the job once its run finished.
+     */
+    private static final class RunningJob {
+        final CompletableFuture<JobEntity> claimed = new CompletableFuture<>();
+        final CompletableFuture<JobEntity> completion = new CompletableFuture<>();
+        // Set when the job was cancelled while admitted here, so whoever stops it cleans up
+        volatile JobQueue.Cancellation cancellation;
+
+        /**
+         * The job as this instance knows it, without reading MongoDB: final once finished, live while
+         * leased, as claimed otherwise. Waits for the claim when another submission is still making it.
+         */
+        JobEntity current(JobRegistry jobRegistry) {
+            JobEntity finished = completion.getNow(null);
+            if (finished != null) {
+                return finished;
             }
-        } catch (InterruptedException e) {
-            virtualThreadExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
+            JobEntity job;
+            try {
+                job = claimed.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            return jobRegistry.get(job.jobId()).orElse(job);
+        }
+
+        void fail(Throwable error) {
+            claimed.completeExceptionally(error);
+            completion.completeExceptionally(error);
         }
     }
+
+    /**
+     * What became of a sync validation: its result, or the job it continues as.
+     */
+    public record SyncOutcome(ValidationService.ValidationAndStorageResult result, JobEntity job) {
+        public static SyncOutcome finished(ValidationService.ValidationAndStorageResult result) {
+            return new SyncOutcome(result, null);
+        }
+
+        public static SyncOutcome promoted(JobEntity job) {
+            return new SyncOutcome(null, job);
+        }
+
+        public boolean isPromoted() {
+            return job != null;
+        }
+    }
+
 }
 
@@ -0,0 +1,98 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ReportEntity;
+import com.surepay.validation.util.BloomFilter;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter of the IDs of stored reports, so that uploads of new content skip the MongoDB lookup
+ * for an existing report. Built from MongoDB on startup and rebuilt every
+ * {@code validation.cache.known-reports.rebuild-interval} to pick up reports stored by other instances;
+ * until the first build completes every ID is reported as possibly known.
+ */
+@Component
+public class KnownReports {
+    private static final Logger logger = LoggerFactory.getLogger(KnownReports.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ValidationProperties.KnownReports config;
+    private final Object rebuildLock = new Object();
+    private volatile BloomFilter filter;
+    // Receives reports stored while a rebuild scans the collection
+    private volatile BloomFilter building;
+
+    public KnownReports(
+            MongoTemplate mongoTemplate,
+            ValidationProperties validationProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.config = validationProperties.getCache().getKnownReports();
+    }
+
+    /**
+     * False only when no report with this ID was stored by this instance or existed at the last rebuild.
+     * A report stored by another instance since then is missed until the next rebuild, so a miss only
+     * saves a read where being wrong is cheap; see {@link ReportCache#getCurrentVerified}.
+     */
+    public boolean mightExist(String reportId) {
+        BloomFilter current = filter;
+        return current == null || current.mightContain(reportId);
+    }
+
+    /**
+     * Call after the report is stored. The building filter is read before the current one: a rebuild that
+     * starts scanning after that read finds the stored report, and one that swaps in its filter after it
+     * hands over the filter that received the ID.
+     */
+    public void add(String reportId) {
+        BloomFilter next = building;
+        BloomFilter current = filter;
+        if (next != null) {
+            next.add(reportId);
+        }
+        if (current != null && current != next) {
+            current.add(reportId);
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${validation.cache.known-reports.rebuild-interval:PT15M}")
+    public void rebuild() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            String collection = mongoTemplate.getCollectionName(ReportEntity.class);
+            try {
+                long count = mongoTemplate.getCollection(collection).estimatedDocumentCount();
+                BloomFilter next = new BloomFilter(
+                    Math.max(config.getExpectedReports(), count * 2), config.getFalsePositiveRate());
+                building = next;
+                Query ids = new Query();
+                ids.fields().include("_id");
+                long added = 0;
+                try (Stream<Document> documents = mongoTemplate.stream(ids, Document.class, collection)) {
+                    for (Document document : (Iterable<Document>) documents::iterator) {
+                        next.add(String.valueOf(document.get("_id")));
+                        added++;
+                    }
+                }
+                filter = next;
+                logger.info("Known-reports filter built from {} reports ({} bits, {} hashes)",
+                    added, next.bitCount(), next.hashCount());
+            } catch (RuntimeException e) {
+                // Keep answering from the previous filter, or not at all before the first build
+                logger.warn("Failed to build known-reports filter: {}", e.getMessage());
+            } finally {
+                building = null;
+            }
+        }
+    }
+}
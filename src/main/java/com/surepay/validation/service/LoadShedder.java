@@ -0,0 +1,171 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decides whether a new upload is admitted before its body is read, from how saturated this instance
+ * is. Each signal is its current value divided by its limit in {@code validation.admission}: old
+ * generation heap in use, bytes being validated by sync requests and running jobs, async jobs queued
+ * for memory, and the recent MongoDB command latency. At 1 or above on any of them uploads are shed,
+ * with a Retry-After of how long that signal is expected to take to get back under its limit.
+ * <p>
+ * The signals are exported as {@code admission.saturation}, tagged by signal, their maximum as
+ * {@code admission.saturation.max}, and uploads answered with 429 as {@code admission.rejected}, tagged
+ * by the signal that was furthest over its limit.
+ */
+@Component
+public class LoadShedder {
+
+    enum Signal {
+        HEAP, IN_FLIGHT, QUEUE, MONGO;
+
+        String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private final JobScheduler jobScheduler;
+    private final JobService jobService;
+    private final MongoLatency mongoLatency;
+    private final ValidationProperties.Admission config;
+    // Tenured pools; young pools fill with garbage between collections and say nothing about pressure
+    private final List<MemoryPoolMXBean> oldGenerations = ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported())
+        .toList();
+    private final Map<Signal, Counter> rejected = new EnumMap<>(Signal.class);
+
+    public LoadShedder(
+            JobScheduler jobScheduler,
+            JobService jobService,
+            MongoLatency mongoLatency,
+            ValidationProperties validationProperties,
+            MeterRegistry meterRegistry) {
+        this.jobScheduler = jobScheduler;
+        this.jobService = jobService;
+        this.mongoLatency = mongoLatency;
+        this.config = validationProperties.getAdmission();
+        for (Signal signal : Signal.values()) {
+            Gauge.builder("admission.saturation", this, shedder -> shedder.level(signal))
+                .description("Share of its limit a signal of admission control is at; uploads are shed from 1")
+                .tag("signal", signal.tag())
+                .register(meterRegistry);
+            rejected.put(signal, Counter.builder("admission.rejected")
+                .description("Uploads rejected with 429 before their body was read")
+                .tag("signal", signal.tag())
+                .register(meterRegistry));
+        }
+        Gauge.builder("admission.saturation.max", this, LoadShedder::saturation)
+            .description("Highest admission control signal")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Whether an upload arriving now is shed, and how long the client should wait before trying again;
+     * empty when it is admitted. The caller counts the rejection once it actually answers with 429.
+     */
+    public Optional<Rejection> shed() {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+        Signal worst = null;
+        double worstLevel = 0;
+        Duration retryAfter = Duration.ZERO;
+        for (Signal signal : Signal.values()) {
+            double level = level(signal);
+            if (level < 1) {
+                continue;
+            }
+            if (level > worstLevel) {
+                worst = signal;
+                worstLevel = level;
+            }
+            Duration expected = expectedRecovery(signal, level);
+            if (expected.compareTo(retryAfter) > 0) {
+                retryAfter = expected;
+            }
+        }
+        if (worst == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new Rejection(bounded(retryAfter), rejected.get(worst)));
+    }
+
+    /**
+     * An upload over the limits: the Retry-After to send, and the counter of the signal furthest over.
+     */
+    public record Rejection(Duration retryAfter, Counter rejected) {
+        public void count() {
+            rejected.increment();
+        }
+    }
+
+    public double saturation() {
+        return Arrays.stream(Signal.values()).mapToDouble(this::level).max().orElse(0);
+    }
+
+    double level(Signal signal) {
+        return switch (signal) {
+            case HEAP -> heapUsedFraction() / config.getMaxHeapUsedFraction();
+            case IN_FLIGHT -> (double) inFlightBytes() / config.getMaxInFlightBytes();
+            case QUEUE -> (double) jobScheduler.queueDepth() / config.getMaxQueueDepth();
+            case MONGO -> (double) mongoLatency.average().toNanos() / config.getMaxMongoLatency().toNanos();
+        };
+    }
+
+    // What survived the last collection of the tenured pools: their current usage also counts garbage
+    // that was promoted and is only found dead by the next old collection
+    double heapUsedFraction() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = oldGenerations.isEmpty()
+            ? runtime.totalMemory() - runtime.freeMemory()
+            : oldGenerations.stream().mapToLong(LoadShedder::liveBytes).sum();
+        return (double) used / runtime.maxMemory();
+    }
+
+    private static long liveBytes(MemoryPoolMXBean pool) {
+        MemoryUsage afterCollection = pool.getCollectionUsage();
+        return afterCollection != null ? afterCollection.getUsed() : pool.getUsage().getUsed();
+    }
+
+    private long inFlightBytes() {
+        return jobScheduler.runningBytes() + jobService.syncBytesInFlight();
+    }
+
+    private Duration expectedRecovery(Signal signal, double level) {
+        return switch (signal) {
+            // What is beyond the limit drains at the speed jobs validate
+            case IN_FLIGHT -> drainTime(inFlightBytes() - config.getMaxInFlightBytes());
+            case QUEUE -> drainTime((long) (jobScheduler.queuedBytes() * (1 - 1 / level)));
+            // Neither the next collection nor MongoDB recovering can be predicted; back off more the worse it is
+            case HEAP, MONGO -> Duration.ofMillis((long) (config.getMinRetryAfter().toMillis() * level));
+        };
+    }
+
+    private Duration drainTime(long bytes) {
+        return Duration.ofMillis((long) (Math.max(0, bytes) / jobScheduler.drainRate() * 1000));
+    }
+
+    // Whole seconds, as Retry-After carries them, rounded up
+    private Duration bounded(Duration retryAfter) {
+        Duration bounded = retryAfter.compareTo(config.getMinRetryAfter()) < 0 ? config.getMinRetryAfter()
+            : retryAfter.compareTo(config.getMaxRetryAfter()) > 0 ? config.getMaxRetryAfter()
+            : retryAfter;
+        long seconds = bounded.toSeconds() + (bounded.toNanosPart() > 0 ? 1 : 0);
+        return Duration.ofSeconds(seconds);
+    }
+}
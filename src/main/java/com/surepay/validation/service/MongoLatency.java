@@ -0,0 +1,52 @@
+package com.surepay.validation.service;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent latency of the MongoDB commands this instance sends, as a moving average over about the last
+ * twenty commands. Failed commands count with the time they took, which is how timeouts show up. With
+ * no command for a minute there is nothing recent to report, and the latency reads as zero.
+ */
+@Component
+public class MongoLatency implements CommandListener {
+
+    private static final double SMOOTHING = 0.1;
+    private static final long STALE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private double averageNanos;
+    private long lastSampleNanos;
+    private boolean sampled;
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event.getElapsedTime(TimeUnit.NANOSECONDS), System.nanoTime());
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getElapsedTime(TimeUnit.NANOSECONDS), System.nanoTime());
+    }
+
+    synchronized void record(long elapsedNanos, long nowNanos) {
+        averageNanos = sampled ? averageNanos + SMOOTHING * (elapsedNanos - averageNanos) : elapsedNanos;
+        lastSampleNanos = nowNanos;
+        sampled = true;
+    }
+
+    public Duration average() {
+        return average(System.nanoTime());
+    }
+
+    synchronized Duration average(long nowNanos) {
+        if (!sampled || nowNanos - lastSampleNanos > STALE_NANOS) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos((long) averageNanos);
+    }
+}
@@ -0,0 +1,120 @@
+package com.surepay.validation.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ReportEntity;
+import com.surepay.validation.repository.ReportRepository;
+import com.surepay.validation.validator.RuleSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * In-memory cache of stored reports in front of {@link ReportRepository}.
+ * Reports are keyed by content hash and only change when the content is re-validated under other rules;
+ * entries are evicted (W-TinyLFU) once the cached payload size exceeds the configured weight, and a
+ * report found to be from other rules is re-read by {@link #getCurrent}. Reports of other rules than the
+ * active ones expire after {@code validation.cache.other-rules-ttl}, since any instance may replace them,
+ * so reads and the ETags derived from them do not stay behind such a re-validation for long.
+ * Concurrent misses for the same report wait for a single MongoDB read. Missing reports are not cached,
+ * but lookups by content hash ask {@link KnownReports} first and skip MongoDB for hashes never stored.
+ */
+@Component
+public class ReportCache {
+
+    static final String CACHE_NAME = "reports";
+
+    // Rough size of the summary record and entry bookkeeping, on top of the stored JSON payloads
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+    // Caffeine treats durations this long as never expiring
+    private static final Duration FOREVER = Duration.ofNanos(Long.MAX_VALUE);
+
+    private final ReportRepository reportRepository;
+    private final KnownReports knownReports;
+    private final Cache<String, ReportEntity> cache;
+    private final Counter skippedLookups;
+
+    public ReportCache(
+            ReportRepository reportRepository,
+            KnownReports knownReports,
+            RuleSet ruleSet,
+            ValidationProperties validationProperties,
+            MeterRegistry meterRegistry) {
+        this.reportRepository = reportRepository;
+        this.knownReports = knownReports;
+        Duration otherRulesTtl = validationProperties.getCache().getOtherRulesTtl();
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(validationProperties.getCache().getMaxWeightBytes())
+            .weigher(ReportCache::weigh)
+            .expireAfter(Expiry.<String, ReportEntity>writing((reportId, report) ->
+                Objects.equals(report.ruleSetFingerprint(), ruleSet.fingerprint()) ? FOREVER : otherRulesTtl))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.skippedLookups = Counter.builder("reports.lookups.skipped")
+            .description("Report lookups answered as missing by the known-reports filter")
+            .register(meterRegistry);
+    }
+
+    public Optional<ReportEntity> get(String reportId) {
+        return Optional.ofNullable(cache.get(reportId, id -> reportRepository.findById(id).orElse(null)));
+    }
+
+    /**
+     * Returns the report if it was produced by the rules with {@code ruleSetFingerprint}. A cached
+     * report produced by other rules is read again once, since another instance may have re-validated
+     * it in the meantime.
+     */
+    public Optional<ReportEntity> getCurrent(String reportId, String ruleSetFingerprint) {
+        if (!knownReports.mightExist(reportId)) {
+            skippedLookups.increment();
+            return Optional.empty();
+        }
+        Optional<ReportEntity> report = get(reportId);
+        if (report.isPresent() && !report.get().matchesRules(ruleSetFingerprint)) {
+            cache.invalidate(reportId);
+            report = get(reportId);
+        }
+        return report.filter(entity -> entity.matchesRules(ruleSetFingerprint));
+    }
+
+    /**
+     * Same as {@link #getCurrent}, but reads MongoDB also for hashes {@link KnownReports} has not seen,
+     * since reports stored by another instance are missing from it until its next rebuild. For
+     * decisions that redo or remove work, where a stale miss costs far more than the read.
+     */
+    public Optional<ReportEntity> getCurrentVerified(String reportId, String ruleSetFingerprint) {
+        if (knownReports.mightExist(reportId)) {
+            return getCurrent(reportId, ruleSetFingerprint);
+        }
+        Optional<ReportEntity> report = reportRepository.findById(reportId);
+        report.ifPresent(this::put);
+        return report.filter(entity -> entity.matchesRules(ruleSetFingerprint));
+    }
+
+    public boolean contains(String reportId) {
+        return get(reportId).isPresent();
+    }
+
+    public void put(ReportEntity report) {
+        knownReports.add(report.reportId());
+        cache.put(report.reportId(), report);
+    }
+
+    private static int weigh(String reportId, ReportEntity report) {
+        long weight = ENTRY_OVERHEAD_BYTES + reportId.length()
+            + length(report.summaryJson()) + length(report.firstErrorPageJson());
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+}
@@ -1,69 +1,145 @@
 package com.surepay.validation.service;
 
 import com.surepay.validation.dto.ValidationReportDto;
-import com.surepay.validation.repository.ReportRepository;
+import com.surepay.validation.domain.ReportEntity;
+import com.surepay.validation.reporter.ErrorExportWriter;
+import com.surepay.validation.reporter.ReportSerializer;
+import com.surepay.validation.validator.RuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
 public class ReportService {
     private static final Logger logger = LoggerFactory.getLogger(ReportService.class);
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final String LEGACY_VERSION = "0";
     
-    private final ReportRepository reportRepository;
+    private final ReportCache reportCache;
     private final ErrorService errorService;
+    private final ErrorExportWriter errorExportWriter;
+    private final ReportSerializer reportSerializer;
+    private final RuleSet ruleSet;
 
-    public ReportService(ReportRepository reportRepository, ErrorService errorService) {
-        this.reportRepository = reportRepository;
+    public ReportService(
+            ReportCache reportCache,
+            ErrorService errorService,
+            ErrorExportWriter errorExportWriter,
+            ReportSerializer reportSerializer,
+            RuleSet ruleSet) {
+        this.reportCache = reportCache;
         this.errorService = errorService;
+        this.errorExportWriter = errorExportWriter;
+        this.reportSerializer = reportSerializer;
+        this.ruleSet = ruleSet;
+    }
+    
+    public boolean reportExists(String reportId) {
+        return reportCache.contains(reportId);
+    }
+    
+    /**
+     * Whether a report exists that was produced by the active rules, i.e. one that submitting the same
+     * content again would return without re-validating.
+     */
+    public boolean isReportCurrent(String reportId) {
+        return reportCache.getCurrent(reportId, ruleSet.fingerprint()).isPresent();
+    }
+    
+    /**
+     * Identifies the stored version of a report for HTTP validators: the fingerprint of the rules that
+     * produced it. A report only changes when it is re-validated under other rules.
+     */
+    public Optional<String> getReportVersion(String reportId) {
+        return reportCache.get(reportId)
+            .map(report -> Objects.requireNonNullElse(report.ruleSetFingerprint(), LEGACY_VERSION));
     }
 
     public Optional<ValidationReportDto> getReport(String reportId, boolean includeErrors) {
         logger.debug("Retrieving report {} with errors: {}", reportId, includeErrors);
         
-        return reportRepository.findReportDtoById(reportId)
-            .map(report -> {
-                if (includeErrors) {
-                    Pageable defaultPageable = PageRequest.of(0, 1000);
-                    Page<ValidationReportDto.ValidationErrorDto> errorPage = errorService.getErrors(reportId, defaultPageable);
-                    List<ValidationReportDto.ValidationErrorDto> errors = errorPage.getContent();
-                    return new ValidationReportDto(
-                        report.valid(),
-                        report.errorCount(),
-                        report.duplicateReferenceCount(),
-                        report.balanceMismatchCount(),
-                        errors
-                    );
-                }
-                return report;
-            });
+        if (includeErrors) {
+            return getReportWithErrors(reportId, -1, DEFAULT_PAGE_SIZE);
+        }
+        return reportCache.get(reportId).map(ReportEntity::report);
     }
     
-    public Optional<ValidationReportDto> getReport(String reportId, boolean includeErrors, Pageable pageable) {
-        logger.debug("Retrieving report {} with errors: {}, page: {}, size: {}", 
-                    reportId, includeErrors, pageable.getPageNumber(), pageable.getPageSize());
+    /**
+     * Returns the report summary together with the errors following {@code afterIndex}.
+     * The totals come from the stored summary, so no count query is issued for the page.
+     */
+    public Optional<ValidationReportDto> getReportWithErrors(String reportId, int afterIndex, int pageSize) {
+        logger.debug("Retrieving report {} with errors after index: {}, size: {}", 
+                    reportId, afterIndex, pageSize);
         
-        return reportRepository.findReportDtoById(reportId)
-            .map(report -> {
-                if (includeErrors) {
-                    Page<ValidationReportDto.ValidationErrorDto> errorPage = errorService.getErrors(reportId, pageable);
-                    List<ValidationReportDto.ValidationErrorDto> errors = errorPage.getContent();
-                    return new ValidationReportDto(
-                        report.valid(),
-                        report.errorCount(),
-                        report.duplicateReferenceCount(),
-                        report.balanceMismatchCount(),
-                        errors
-                    );
-                }
-                return report;
-            });
+        return reportCache.get(reportId)
+            .map(report -> withErrorsAfter(report, afterIndex, pageSize));
+    }
+    
+    /**
+     * Returns the JSON response for the summary, or for the first error page when
+     * {@code firstErrorPage} is set, as stored with the report. Reports stored without
+     * these payloads, or whose first page was stored with another page size, are serialized here.
+     */
+    public Optional<ReportPayload> getReportPayload(String reportId, boolean firstErrorPage, int pageSize) {
+        return reportCache.get(reportId)
+            .map(entity -> firstErrorPage ? firstErrorPagePayload(entity, pageSize) : summaryPayload(entity));
+    }
+    
+    private ReportPayload summaryPayload(ReportEntity entity) {
+        byte[] json = entity.summaryJson() != null
+            ? entity.summaryJson()
+            : reportSerializer.toJson(entity.report());
+        return new ReportPayload(entity.report(), json, 0);
+    }
+    
+    private ReportPayload firstErrorPagePayload(ReportEntity entity, int pageSize) {
+        ValidationReportDto summary = entity.report();
+        if (entity.firstErrorPageJson() != null && entity.firstErrorPageSize() == pageSize) {
+            return new ReportPayload(summary, entity.firstErrorPageJson(), Math.min(summary.errorCount(), pageSize));
+        }
+        logger.debug("No stored first error page of size {} for report {}, serializing", pageSize, entity.reportId());
+        ValidationReportDto page = withErrorsAfter(entity, -1, pageSize);
+        return new ReportPayload(summary, reportSerializer.toJson(page), page.errors().size());
+    }
+    
+    private ValidationReportDto withErrorsAfter(ReportEntity entity, int afterIndex, int pageSize) {
+        ValidationReportDto report = entity.report();
+        List<ValidationReportDto.ValidationErrorDto> errors = report.errorCount() > afterIndex + 1
+            ? errorService.getErrorsAfter(entity.reportId(), entity.ruleSetFingerprint(), entity.errorGeneration(),
+                afterIndex, pageSize)
+            : List.of();
+        return new ValidationReportDto(
+            report.valid(),
+            report.errorCount(),
+            report.duplicateReferenceCount(),
+            report.balanceMismatchCount(),
+            errors
+        );
+    }
+    
+    public long exportErrors(String reportId, ErrorExportWriter.Format format, OutputStream out) throws IOException {
+        logger.info("Exporting errors for report {} as {}", reportId, format);
+        Optional<ReportEntity> report = reportCache.get(reportId);
+        try (Stream<ValidationReportDto.ValidationErrorDto> errors = errorService.streamErrors(reportId,
+                report.map(ReportEntity::ruleSetFingerprint).orElse(null),
+                report.map(ReportEntity::errorGeneration).orElse(null))) {
+            long exported = errorExportWriter.write(errors, format, out);
+            logger.info("Exported {} errors for report {}", exported, reportId);
+            return exported;
+        }
     }
-}
 
+    public record ReportPayload(
+        ValidationReportDto summary,
+        byte[] json,
+        int errorsIncluded
+    ) {}
+}
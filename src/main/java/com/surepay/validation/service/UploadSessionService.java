@@ -0,0 +1,397 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.dto.UploadPartResponse;
+import com.surepay.validation.dto.UploadSessionResponse;
+import com.surepay.validation.parser.CsvTransactionParser;
+import com.surepay.validation.parser.ParseException;
+import com.surepay.validation.parser.ParserFactory;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import com.surepay.validation.util.FileSizeValidator;
+import com.surepay.validation.util.SizeLimitedInputStream;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multi-part upload sessions: a file is uploaded as numbered parts, possibly in parallel and retried
+ * individually, and validated as one file once the session is completed. Each part is spooled under
+ * its own hash as it arrives. For CSV files, the chunks of every part are validated on a worker right
+ * away and stored like any other chunk results; completing the session assembles the parts and
+ * submits an async job, whose chunked validation then finds most chunks already validated and only
+ * has to stitch the rows around part boundaries and check uniqueness across the file.
+ * <p>
+ * Sessions live on the instance that created them, so all requests of a session must reach it.
+ */
+@Service
+public class UploadSessionService {
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionService.class);
+
+    private final SpoolStore spoolStore;
+    private final JobService jobService;
+    private final ChunkedValidationService chunkedValidationService;
+    private final ParserFactory parserFactory;
+    private final CsvTransactionParser csvParser;
+    private final ValidationProperties.Upload config;
+    private final JobExecutors jobExecutors;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public UploadSessionService(
+            SpoolStore spoolStore,
+            JobService jobService,
+            ChunkedValidationService chunkedValidationService,
+            ParserFactory parserFactory,
+            CsvTransactionParser csvParser,
+            JobExecutors jobExecutors,
+            ValidationProperties validationProperties) {
+        this.spoolStore = spoolStore;
+        this.jobService = jobService;
+        this.chunkedValidationService = chunkedValidationService;
+        this.parserFactory = parserFactory;
+        this.csvParser = csvParser;
+        this.jobExecutors = jobExecutors;
+        this.config = validationProperties.getUpload();
+    }
+
+    public UploadSessionResponse create(String filename, String contentType) throws ParseException {
+        boolean csv = parserFactory.getParser(contentType) == csvParser;
+        UploadSession session = new UploadSession(
+            UUID.randomUUID().toString(), filename, contentType, csv, Instant.now().plus(config.getSessionTtl()));
+        sessions.put(session.id, session);
+        logger.info("Created upload session {} for {}", session.id, filename);
+        return session.view();
+    }
+
+    public Optional<UploadSessionResponse> get(String uploadId) {
+        return Optional.ofNullable(sessions.get(uploadId)).map(UploadSession::view);
+    }
+
+    /**
+     * Stores part {@code partNumber} (1-based), replacing an earlier upload of the same part. Fails with
+     * a {@link FileUploadSizeException} once all parts together exceed the async size limit. A part of
+     * unknown size reserves all that is left of the limit until it is stored, so such parts are best
+     * uploaded one at a time. Every part extends the session's expiry.
+     */
+    public Optional<UploadPartResponse> uploadPart(String uploadId, int partNumber, InputStream in, long expectedSize)
+            throws IOException {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (partNumber < 1 || partNumber > config.getMaxParts()) {
+            throw new IllegalArgumentException(
+                "Part number must be between 1 and " + config.getMaxParts() + ", got " + partNumber);
+        }
+
+        // Parts arriving in parallel each reserve what they may add, so together they cannot exceed the limit
+        long reservation;
+        synchronized (session) {
+            if (session.closed) {
+                return Optional.empty();
+            }
+            if (session.completing) {
+                throw new IllegalArgumentException("Upload " + uploadId + " is being completed");
+            }
+            long budget = FileSizeValidator.MAX_ASYNC_FILE_SIZE - session.sizeWithout(partNumber) - session.reservedBytes;
+            if (expectedSize > budget) {
+                throw new FileUploadSizeException(String.format(
+                    "Upload exceeds the maximum allowed size of %d bytes", FileSizeValidator.MAX_ASYNC_FILE_SIZE),
+                    FileSizeValidator.MAX_ASYNC_FILE_SIZE, expectedSize);
+            }
+            reservation = expectedSize >= 0 ? expectedSize : Math.max(budget, 0);
+            session.reservedBytes += reservation;
+            session.extend(config.getSessionTtl());
+        }
+        SpooledFile part = null;
+        SpooledFile replaced;
+        try {
+            part = spoolStore.spoolStreamed(new SizeLimitedInputStream(in, reservation), expectedSize);
+            synchronized (session) {
+                if (session.closed || session.completing) {
+                    part.close();
+                    return Optional.empty();
+                }
+                replaced = session.parts.put(partNumber, part);
+                session.extend(config.getSessionTtl());
+            }
+        } finally {
+            synchronized (session) {
+                session.reservedBytes -= reservation;
+            }
+        }
+        if (replaced != null && replaced != part) {
+            replaced.close();
+        }
+        logger.info("Stored part {} of upload {} ({} bytes)", partNumber, uploadId, part.size());
+        if (session.csv) {
+            schedulePrevalidation(session, partNumber, part);
+        }
+        return Optional.of(new UploadPartResponse(partNumber, part.size(), part.hash()));
+    }
+
+    /**
+     * Assembles parts 1 to N into one spooled file and submits it as an async job of {@code submitter}. Returns empty when
+     * the session does not exist. The session is only removed once the file is assembled; until then a
+     * failed completion can be retried.
+     */
+    public Optional<JobEntity> complete(String uploadId, JobScheduler.Submitter submitter) throws IOException {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        List<SpooledFile> parts;
+        List<CompletableFuture<Void>> prevalidations;
+        long size;
+        synchronized (session) {
+            if (session.closed) {
+                return Optional.empty();
+            }
+            if (session.completing) {
+                throw new IllegalArgumentException("Upload " + uploadId + " is already being completed");
+            }
+            if (session.parts.isEmpty() || session.parts.lastKey() != session.parts.size()) {
+                throw new IllegalArgumentException("Upload " + uploadId + " needs parts 1 to "
+                    + (session.parts.isEmpty() ? 1 : session.parts.lastKey()) + ", has " + session.parts.keySet());
+            }
+            size = session.parts.values().stream().mapToLong(SpooledFile::size).sum();
+            if (size > FileSizeValidator.MAX_ASYNC_FILE_SIZE) {
+                throw new FileUploadSizeException(String.format(
+                    "Upload exceeds the maximum allowed size of %d bytes", FileSizeValidator.MAX_ASYNC_FILE_SIZE),
+                    FileSizeValidator.MAX_ASYNC_FILE_SIZE, size);
+            }
+            // Parts can neither be replaced nor expire while they are assembled
+            session.completing = true;
+            parts = List.copyOf(session.parts.values());
+            prevalidations = List.copyOf(session.prevalidations.values());
+        }
+
+        SpooledFile file;
+        try {
+            file = spoolStore.spool(new SequenceInputStream(openInOrder(parts)), size);
+        } catch (UncheckedIOException e) {
+            reopen(session);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            reopen(session);
+            throw e;
+        }
+        sessions.remove(uploadId, session);
+        // Chunks still being validated would otherwise be validated again by the job
+        CompletableFuture.allOf(prevalidations.toArray(CompletableFuture[]::new))
+            .exceptionally(e -> null)
+            .join();
+        session.close();
+        logger.info("Completed upload {} with {} parts as {}", uploadId, parts.size(), file.hash());
+        return Optional.of(jobService.submitJob(session.filename, file, session.contentType, submitter));
+    }
+
+    // The parts are still there after a failed assembly, so the client can complete the session again
+    private void reopen(UploadSession session) {
+        synchronized (session) {
+            session.completing = false;
+            session.extend(config.getSessionTtl());
+        }
+    }
+
+    public boolean abort(String uploadId) {
+        UploadSession session = sessions.remove(uploadId);
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        logger.info("Aborted upload session {}", uploadId);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${validation.upload.cleanup-interval:PT1M}")
+    public void removeExpiredSessions() {
+        Instant now = Instant.now();
+        sessions.values().removeIf(session -> {
+            if (!session.expireIfIdle(now)) {
+                return false;
+            }
+            logger.info("Upload session {} expired", session.id);
+            return true;
+        });
+    }
+
+    /**
+     * Validates the complete rows of a part. Rows need the header from part 1, so parts that arrive
+     * before it are picked up once it does; the partial rows at the edges of a part are validated when
+     * the whole file is.
+     */
+    private void schedulePrevalidation(UploadSession session, int partNumber, SpooledFile part) {
+        List<Map.Entry<Integer, SpooledFile>> ready = new ArrayList<>();
+        synchronized (session) {
+            if (partNumber == 1) {
+                try {
+                    session.header = readFirstLine(part);
+                } catch (IOException e) {
+                    logger.warn("Cannot read header of upload {}: {}", session.id, e.getMessage());
+                    return;
+                }
+                ready.addAll(session.parts.entrySet());
+            } else if (session.header != null) {
+                ready.add(Map.entry(partNumber, part));
+            }
+            // Chunk lookups and writes wait on MongoDB; the parsing and rules are handed to the CPU pool, which
+            // keeps part arrivals from oversubscribing the cores
+            for (Map.Entry<Integer, SpooledFile> entry : ready) {
+                byte[] header = session.header;
+                session.prevalidations.put(entry.getValue().hash(), CompletableFuture.runAsync(
+                    () -> prevalidate(session.id, entry.getKey(), entry.getValue(), header), jobExecutors.io()));
+            }
+        }
+    }
+
+    private void prevalidate(String uploadId, int partNumber, SpooledFile part, byte[] header) {
+        try {
+            long offset = partNumber == 1 ? header.length : firstRowStart(part);
+            if (offset >= part.size()) {
+                return;
+            }
+            int validated = chunkedValidationService.prevalidate(part.path(), offset, part.size() - offset, header);
+            logger.info("Validated {} chunks of part {} of upload {} on arrival", validated, partNumber, uploadId);
+        } catch (Exception e) {
+            // Only a head start: the job validates whatever was not stored here
+            logger.warn("Failed to validate part {} of upload {} on arrival: {}", partNumber, uploadId, e.getMessage());
+        }
+    }
+
+    private static byte[] readFirstLine(SpooledFile part) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = part.openStream()) {
+            int b;
+            while ((b = in.read()) != -1) {
+                line.write(b);
+                if (b == '\n') {
+                    break;
+                }
+            }
+        }
+        return line.toByteArray();
+    }
+
+    /**
+     * Offset just after the first line end of a part. The bytes before it finish a row that started
+     * in the previous part. Assumes the part does not start inside a quoted field; if it does, the
+     * stored chunks simply do not match the whole file and are validated again.
+     */
+    private static long firstRowStart(SpooledFile part) throws IOException {
+        try (InputStream in = part.openStream()) {
+            long position = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    return position;
+                }
+            }
+            return position;
+        }
+    }
+
+    private static Enumeration<InputStream> openInOrder(List<SpooledFile> parts) {
+        Iterator<SpooledFile> remaining = parts.iterator();
+        return new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return remaining.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return remaining.next().openStream();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static final class UploadSession {
+        final String id;
+        final String filename;
+        final String contentType;
+        final boolean csv;
+        final TreeMap<Integer, SpooledFile> parts = new TreeMap<>();
+        final Map<String, CompletableFuture<Void>> prevalidations = new HashMap<>();
+        byte[] header;
+        boolean closed;
+        boolean completing;
+        // Bytes that parts being uploaded may still add
+        long reservedBytes;
+        Instant expiresAt;
+
+        UploadSession(String id, String filename, String contentType, boolean csv, Instant expiresAt) {
+            this.id = id;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.csv = csv;
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized long sizeWithout(int partNumber) {
+            return parts.entrySet().stream()
+                .filter(entry -> entry.getKey() != partNumber)
+                .mapToLong(entry -> entry.getValue().size())
+                .sum();
+        }
+
+        synchronized void extend(Duration ttl) {
+            Instant extended = Instant.now().plus(ttl);
+            if (extended.isAfter(expiresAt)) {
+                expiresAt = extended;
+            }
+        }
+
+        /**
+         * Closes the session when it is past its expiry and no part is being uploaded or assembled.
+         */
+        synchronized boolean expireIfIdle(Instant now) {
+            if (expiresAt.isAfter(now) || completing || reservedBytes > 0) {
+                return false;
+            }
+            close();
+            return true;
+        }
+
+        synchronized UploadSessionResponse view() {
+            List<UploadPartResponse> partResponses = parts.entrySet().stream()
+                .map(entry -> new UploadPartResponse(entry.getKey(), entry.getValue().size(), entry.getValue().hash()))
+                .toList();
+            return new UploadSessionResponse(id, filename, contentType, expiresAt, partResponses);
+        }
+
+        synchronized void close() {
+            closed = true;
+            parts.values().forEach(SpooledFile::close);
+            parts.clear();
+            prevalidations.values().forEach(future -> future.cancel(true));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.surepay.validation.service;
 
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ValidationCheckpoint;
 import com.surepay.validation.domain.ValidationResult;
 import com.surepay.validation.parser.ParseException;
 import com.surepay.validation.parser.ParserFactory;
@@ -7,8 +9,12 @@ import com.surepay.validation.parser.TransactionParser;
 import com.surepay.validation.domain.ReportEntity;
 import com.surepay.validation.dto.ValidationReportDto;
 import com.surepay.validation.reporter.ReportGenerator;
+import com.surepay.validation.reporter.ReportSerializer;
 import com.surepay.validation.repository.ReportRepository;
-import com.surepay.validation.util.HashComputingInputStream;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import com.surepay.validation.util.CountingInputStream;
+import com.surepay.validation.validator.RuleSet;
 import com.surepay.validation.validator.TransactionValidator;
 import com.surepay.validation.validator.UniquenessValidator;
 import org.slf4j.Logger;
@@ -16,36 +22,71 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.surepay.validation.domain.Transaction;
 import com.surepay.validation.domain.ValidationError;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.lang.ScopedValue;
 
 @Service
 public class ValidationService {
     private static final Logger logger = LoggerFactory.getLogger(ValidationService.class);
 
+    // A single pass validates this many rows per CPU task, a few milliseconds of work, and checks
+    // between tasks whether its job was stopped
+    private static final int BLOCK_ROWS = 1024;
+
     private final ParserFactory parserFactory;
     private final List<TransactionValidator> validators;
     private final ReportGenerator reportGenerator;
     private final ReportRepository reportRepository;
+    private final ReportCache reportCache;
     private final ErrorService errorService;
+    private final ReportSerializer reportSerializer;
+    private final ValidationProperties validationProperties;
+    private final SpoolStore spoolStore;
+    private final ChunkedValidationService chunkedValidationService;
+    private final RuleSet ruleSet;
+    private final JobExecutors jobExecutors;
 
     public ValidationService(
             ParserFactory parserFactory,
             List<TransactionValidator> validators,
             ReportGenerator reportGenerator,
             ReportRepository reportRepository,
-            ErrorService errorService) {
+            ReportCache reportCache,
+            ErrorService errorService,
+            ReportSerializer reportSerializer,
+            ValidationProperties validationProperties,
+            SpoolStore spoolStore,
+            ChunkedValidationService chunkedValidationService,
+            RuleSet ruleSet,
+            JobExecutors jobExecutors) {
         this.parserFactory = parserFactory;
         this.validators = validators;
         this.reportGenerator = reportGenerator;
         this.reportRepository = reportRepository;
+        this.reportCache = reportCache;
         this.errorService = errorService;
+        this.reportSerializer = reportSerializer;
+        this.validationProperties = validationProperties;
+        this.spoolStore = spoolStore;
+        this.chunkedValidationService = chunkedValidationService;
+        this.ruleSet = ruleSet;
+        this.jobExecutors = jobExecutors;
     }
 
     @Transactional
@@ -53,35 +94,145 @@ public class ValidationService {
             InputStream fileInputStream,
             String contentType,
             String filename,
-            long fileSize) throws ParseException{
-        
-        HashComputingInputStream hashStream = new HashComputingInputStream(fileInputStream);
-        
+            long fileSize) throws ParseException, IOException {
+        try (SpooledFile file = spoolStore.spool(fileInputStream, fileSize)) {
+            return validateAndStore(file, contentType, filename, true, error -> {}, CheckpointSession.disabled(), result -> {});
+        }
+    }
+
+    /**
+     * Validates an upload that is already in the spool and keeps the error list. The caller keeps
+     * ownership of {@code file}.
+     */
+    @Transactional
+    public ValidationAndStorageResult validateAndStoreReport(
+            SpooledFile file,
+            String contentType,
+            String filename) throws ParseException, IOException {
+        return validateAndStore(file, contentType, filename, true, error -> {}, CheckpointSession.disabled(), result -> {});
+    }
+
+    /**
+     * Same as {@link #validateAndStoreReport(SpooledFile, String, String)} for a validation that may
+     * outlive the request waiting for it: reports progress to {@code checkpoints} and stops once it is
+     * stopped, and hands the result it fills to {@code onStart} before validating, so the caller can
+     * stop it from keeping the error list.
+     */
+    @Transactional
+    public ValidationAndStorageResult validateAndStoreReport(
+            SpooledFile file,
+            String contentType,
+            String filename,
+            CheckpointSession checkpoints,
+            Consumer<ValidationResult> onStart) throws ParseException, IOException {
+        return validateAndStore(file, contentType, filename, true, error -> {}, checkpoints, onStart);
+    }
+
+    /**
+     * Same as {@link #validateAndStoreReport} but does not keep the error list: every error is stored
+     * and handed to {@code errorListener} as soon as it is found. The returned report only carries the
+     * summary counts.
+     */
+    public ValidationAndStorageResult validateAndStreamReport(
+            InputStream fileInputStream,
+            String contentType,
+            String filename,
+            long fileSize,
+            Consumer<ValidationReportDto.ValidationErrorDto> errorListener) throws ParseException, IOException {
+        try (SpooledFile file = spoolStore.spool(fileInputStream, fileSize)) {
+            return validateAndStore(file, contentType, filename, false, errorListener, CheckpointSession.disabled(), result -> {});
+        }
+    }
 
-        String hash = hashStream.getHash();
+    /**
+     * Validates an upload that is already in the spool. The caller keeps ownership of {@code file}.
+     */
+    public ValidationAndStorageResult validateAndStreamReport(
+            SpooledFile file,
+            String contentType,
+            String filename,
+            Consumer<ValidationReportDto.ValidationErrorDto> errorListener) throws ParseException, IOException {
+        return validateAndStore(file, contentType, filename, false, errorListener, CheckpointSession.disabled(), result -> {});
+    }
+
+    /**
+     * Same as {@link #validateAndStreamReport(SpooledFile, String, String, Consumer)} for a run of an
+     * async job: continues from the resume point of {@code checkpoints} and records progress in it.
+     * Errors found before the resume point are not handed to {@code errorListener} again. Throws a
+     * {@link CancellationException}, with nothing more stored, once the session is stopped.
+     */
+    public ValidationAndStorageResult validateAndStreamReport(
+            SpooledFile file,
+            String contentType,
+            String filename,
+            Consumer<ValidationReportDto.ValidationErrorDto> errorListener,
+            CheckpointSession checkpoints) throws ParseException, IOException {
+        return validateAndStore(file, contentType, filename, false, errorListener, checkpoints, result -> {});
+    }
+
+    /**
+     * Returns the stored result for {@code hash} as a synchronous validation of the same content would,
+     * without needing the content itself. Reports produced by other rules are not returned.
+     */
+    public Optional<ValidationAndStorageResult> findStoredReport(String hash) {
+        return reportCache.getCurrent(hash, ruleSet.fingerprint())
+            .map(report -> loadStoredReport(report, true, error -> {}));
+    }
+
+    private ValidationAndStorageResult validateAndStore(
+            SpooledFile file,
+            String contentType,
+            String filename,
+            boolean retainErrors,
+            Consumer<ValidationReportDto.ValidationErrorDto> errorListener,
+            CheckpointSession checkpoints,
+            Consumer<ValidationResult> onStart) throws ParseException, IOException {
+        
+        String hash = file.hash();
         logger.info("Computed hash: {}", hash);
         
-        if (reportRepository.existsByHash(hash)) {
+        String ruleSetFingerprint = ruleSet.fingerprint();
+        // A stale miss in the known-reports filter would validate content another instance just stored
+        Optional<ReportEntity> existingReport = reportCache.getCurrentVerified(hash, ruleSetFingerprint);
+        if (existingReport.isPresent()) {
             logger.info("Report with hash {} already exists, returning existing report without re-validation", hash);
-            Optional<ValidationReportDto> existingReport = reportRepository.findReportDtoById(hash);
-            if (existingReport.isPresent()) {
-                ValidationReportDto storedReport = existingReport.get();
-                List<ValidationReportDto.ValidationErrorDto> errors = errorService.getErrors(hash);
-                ValidationReportDto reportDto = new ValidationReportDto(
-                    storedReport.valid(),
-                    storedReport.errorCount(),
-                    storedReport.duplicateReferenceCount(),
-                    storedReport.balanceMismatchCount(),
-                    errors
-                );
-                
-                ValidationResult resultFromDto = createValidationResultFromDto(reportDto);
-                
-                return new ValidationAndStorageResult(reportDto, hash, resultFromDto);
-            }
+            return loadStoredReport(existingReport.get(), retainErrors, errorListener);
         }
 
-        ValidationResult result = validateFile(hashStream, contentType);
+        // Errors go to a generation of this run (or job), so the report still served keeps its errors
+        ErrorBatchWriter errorWriter = checkpoints.isEnabled()
+            ? errorService.openWriter(hash, ruleSetFingerprint, checkpoints.errorGeneration())
+            : errorService.openWriter(hash, ruleSetFingerprint);
+        int firstPageSize = validationProperties.getPagination().getDefaultPageSize();
+        List<ValidationReportDto.ValidationErrorDto> firstErrorPage = new ArrayList<>();
+        Consumer<ValidationError> sink = error -> {
+            ValidationReportDto.ValidationErrorDto errorDto = reportGenerator.toErrorDto(error);
+            errorWriter.write(errorDto);
+            if (firstErrorPage.size() < firstPageSize) {
+                firstErrorPage.add(errorDto);
+            }
+            errorListener.accept(errorDto);
+        };
+        ValidationResult result = retainErrors ? ValidationResult.withListener(sink) : ValidationResult.streaming(sink);
+        onStart.accept(result);
+        TransactionParser parser = parserFactory.getParser(contentType);
+        ChunkedValidationService.Checkpoints chunkCheckpoints = checkpoints.isEnabled()
+            ? new ResumableRun(hash, ruleSetFingerprint, checkpoints, result, errorWriter, firstErrorPage, firstPageSize)
+            : ChunkedValidationService.Checkpoints.reportingTo((byteOffset, rowCount) ->
+                checkpoints.reportProgress(byteOffset, rowCount, result.getErrorCount()), checkpoints::isStopped);
+        try {
+            if (!chunkedValidationService.validate(file, parser, result, chunkCheckpoints)) {
+                validateFile(file, parser, result, checkpoints);
+            }
+        } catch (RuntimeException | IOException e) {
+            errorWriter.abandon();
+            if (!checkpoints.isEnabled()) {
+                // Nothing continues a run without a job, so what it stored is of no use to anyone
+                errorService.deleteErrors(hash, ruleSetFingerprint, errorWriter.getGeneration());
+            }
+            throw e;
+        }
+        errorWriter.flush();
 
         ValidationReportDto reportDto = reportGenerator.generateReportDto(result);
         
@@ -97,61 +248,120 @@ public class ValidationService {
             filename,
             contentType,
             Instant.now(),
-            fileSize
+            file.size()
         );
         
-        ReportEntity document = ReportEntity.create(hash, reportForStorage, metadata);
-        reportRepository.save(document);
-        logger.debug("Saved validation report to MongoDB with ID: {} (summary only, {} errors)", 
-                    hash, reportDto.errorCount());
-        
-        errorService.storeErrors(hash, reportDto.errors());
+        ReportEntity.SerializedPayloads payloads =
+            reportSerializer.serializePayloads(reportForStorage, firstErrorPage, firstPageSize);
+        ReportEntity document = ReportEntity.create(
+            hash, reportForStorage, metadata, payloads, ruleSetFingerprint, errorWriter.getGeneration());
+        // Switches readers to this run's errors in one step; only the errors of the report replaced go
+        ReportEntity replaced = reportRepository.replace(document);
+        reportCache.put(document);
+        if (replaced != null && !Objects.equals(replaced.errorGeneration(), document.errorGeneration())) {
+            // Stored chunk results kept this cheap: only rules that changed ran again
+            logger.info("Report with hash {} replaced the report of rules {}", hash, replaced.ruleSetFingerprint());
+            errorService.deleteErrors(hash, replaced.ruleSetFingerprint(), replaced.errorGeneration());
+        }
         logger.info("Stored validation report with hash: {} (summary: {} errors)", hash, result.getErrorCount());
         
         return new ValidationAndStorageResult(reportDto, hash, result);
     }
 
-    private ValidationResult createValidationResultFromDto(ValidationReportDto reportDto) {
-        ValidationResult result = new ValidationResult();
-        for (ValidationReportDto.ValidationErrorDto errorDto : reportDto.errors()) {
-            ValidationError.ErrorType errorType = ValidationError.ErrorType.valueOf(errorDto.errorType());
-            ValidationError error = new ValidationError(
-                errorDto.transactionReference(),
-                errorDto.description(),
-                errorType
-            );
-            result.addError(error);
-        }
-        return result;
+    private ValidationAndStorageResult loadStoredReport(
+            ReportEntity report,
+            boolean retainErrors,
+            Consumer<ValidationReportDto.ValidationErrorDto> errorListener) {
+        String hash = report.reportId();
+        ValidationReportDto storedReport = report.report();
+        ValidationResult resultFromStore = retainErrors ? new ValidationResult() : ValidationResult.streaming(error -> {});
+        try (Stream<ValidationReportDto.ValidationErrorDto> errors = errorService.streamErrors(hash, report.ruleSetFingerprint(), report.errorGeneration())) {
+            errors.forEach(errorDto -> {
+                resultFromStore.addError(toValidationError(errorDto));
+                errorListener.accept(errorDto);
+            });
+        }
+        
+        ValidationReportDto reportDto = new ValidationReportDto(
+            storedReport.valid(),
+            storedReport.errorCount(),
+            storedReport.duplicateReferenceCount(),
+            storedReport.balanceMismatchCount(),
+            reportGenerator.generateReportDto(resultFromStore).errors()
+        );
+        
+        return new ValidationAndStorageResult(reportDto, hash, resultFromStore);
     }
 
-    private ValidationResult validateFile(InputStream fileInputStream, String contentType)
-            throws ParseException {
-        logger.info("Starting validation for content type: {}", contentType);
-
-        TransactionParser parser = parserFactory.getParser(contentType);
+    private ValidationError toValidationError(ValidationReportDto.ValidationErrorDto errorDto) {
+        return new ValidationError(
+            errorDto.transactionReference(),
+            errorDto.description(),
+            ValidationError.ErrorType.valueOf(errorDto.errorType())
+        );
+    }
 
-        ValidationResult result = new ValidationResult();
+    /**
+     * Validates {@code file} in one pass, a block of rows at a time. The parser reads the spooled file as
+     * it goes, so each block is parsed and validated on the CPU pool; its errors reach {@code result}
+     * here, once the block is done, so storing or streaming them never blocks a CPU pool thread.
+     */
+    private void validateFile(
+            SpooledFile file,
+            TransactionParser parser,
+            ValidationResult result,
+            CheckpointSession checkpoints) throws ParseException, IOException {
+        logger.info("Starting validation with {}", parser.getClass().getSimpleName());
 
         long validationStartTime = System.nanoTime();
 
-        var scopedValue = UniquenessValidator.getScopedValue();
-        try {
-            return ScopedValue.where(scopedValue, new HashSet<>()).call(() -> {
-                try (var transactionStream = parser.parse(fileInputStream)) {
-                    transactionStream.forEach(transaction -> {
-                        validators.forEach(validator ->
-                                validator.validate(transaction, result)
-                        );
-                    });
+        Set<String> seenReferences = new HashSet<>();
+        List<ValidationError> found = new ArrayList<>();
+        ValidationResult block = ValidationResult.streaming(found::add);
+        long rows = 0;
+        try (CountingInputStream fileInputStream = new CountingInputStream(file.openStream());
+             Stream<Transaction> transactionStream = parser.parse(fileInputStream)) {
+            Iterator<Transaction> transactions = transactionStream.iterator();
+            int validated;
+            do {
+                validated = jobExecutors.parseOnCpu(() -> validateBlock(transactions, seenReferences, block));
+                rows += validated;
+                found.forEach(result::addError);
+                found.clear();
+                if (checkpoints.isStopped()) {
+                    throw new CancellationException("Validation stopped at row " + rows);
                 }
+                checkpoints.reportProgress(fileInputStream.getCount(), rows, result.getErrorCount());
+            } while (validated == BLOCK_ROWS);
+        }
 
-                long validationEndTime = System.nanoTime();
-                long totalValidationTimeMs = (validationEndTime - validationStartTime) / 1_000_000;
+        long validationEndTime = System.nanoTime();
+        long totalValidationTimeMs = (validationEndTime - validationStartTime) / 1_000_000;
 
-                logger.info("Validation completed. Found {} errors. Total time spent on validations: {} ms",
-                        result.getErrorCount(), totalValidationTimeMs);
-                return result;
+        logger.info("Validation completed. Found {} errors. Total time spent on validations: {} ms",
+                result.getErrorCount(), totalValidationTimeMs);
+    }
+
+    /**
+     * Validates up to {@link #BLOCK_ROWS} rows of {@code transactions} into {@code block} and returns
+     * how many there were; {@code seenReferences} carries reference uniqueness across blocks.
+     */
+    private int validateBlock(
+            Iterator<Transaction> transactions,
+            Set<String> seenReferences,
+            ValidationResult block) throws ParseException {
+        var scopedValue = UniquenessValidator.getScopedValue();
+        try {
+            return ScopedValue.where(scopedValue, seenReferences).call(() -> {
+                int rows = 0;
+                while (rows < BLOCK_ROWS && transactions.hasNext()) {
+                    Transaction transaction = transactions.next();
+                    validators.forEach(validator ->
+                            validator.validate(transaction, block)
+                    );
+                    rows++;
+                }
+                return rows;
             });
         } catch (Exception e) {
             if (e instanceof ParseException) {
@@ -161,6 +371,93 @@ public class ValidationService {
         }
     }
 
+    /**
+     * Connects the checkpoints of a chunked validation to the job's checkpoint session, and brings the
+     * result, the error store and the first error page to the resume point.
+     */
+    private final class ResumableRun implements ChunkedValidationService.Checkpoints {
+        private final String hash;
+        private final String ruleSetFingerprint;
+        private final CheckpointSession session;
+        private final ValidationResult result;
+        private final ErrorBatchWriter errorWriter;
+        private final List<ValidationReportDto.ValidationErrorDto> firstErrorPage;
+        private final int firstPageSize;
+
+        ResumableRun(
+                String hash,
+                String ruleSetFingerprint,
+                CheckpointSession session,
+                ValidationResult result,
+                ErrorBatchWriter errorWriter,
+                List<ValidationReportDto.ValidationErrorDto> firstErrorPage,
+                int firstPageSize) {
+            this.hash = hash;
+            this.ruleSetFingerprint = ruleSetFingerprint;
+            this.session = session;
+            this.result = result;
+            this.errorWriter = errorWriter;
+            this.firstErrorPage = firstErrorPage;
+            this.firstPageSize = firstPageSize;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public Optional<ValidationCheckpoint> resumePoint() {
+            return session.resumePoint()
+                .filter(checkpoint -> ruleSetFingerprint.equals(checkpoint.ruleSetFingerprint()));
+        }
+
+        @Override
+        public DataInputStream openReferences() throws IOException {
+            return session.openReferences();
+        }
+
+        @Override
+        public void resume(ValidationCheckpoint checkpoint) {
+            session.resumedFrom(checkpoint);
+            result.resumeFrom(checkpoint);
+            errorWriter.resumeAt(checkpoint.errorCount());
+            int stored = Math.min(firstPageSize, checkpoint.errorCount());
+            if (stored > 0) {
+                firstErrorPage.addAll(errorService.getErrorsAfter(hash, ruleSetFingerprint, errorWriter.getGeneration(), -1, stored));
+            }
+        }
+
+        @Override
+        public void appendReferences(ByteBuffer references) throws IOException {
+            session.appendReferences(references);
+        }
+
+        @Override
+        public boolean isStopped() {
+            return session.isStopped();
+        }
+
+        @Override
+        public void progress(long byteOffset, long rowCount) {
+            session.reportProgress(byteOffset, rowCount, result.getErrorCount());
+        }
+
+        @Override
+        public boolean isDue() {
+            return session.isDue();
+        }
+
+        @Override
+        public void save(int nextChunk, long byteOffset, long rowCount) throws IOException {
+            // The checkpoint may only count errors that are stored
+            errorWriter.flush();
+            if (!session.save(ruleSetFingerprint, nextChunk, byteOffset, rowCount, result)) {
+                throw new CancellationException("Validation of " + hash + " lost its lease at byte " + byteOffset);
+            }
+        }
+    }
+
     public record ValidationAndStorageResult(
         ValidationReportDto reportDto,
         String reportId,
@@ -0,0 +1,7 @@
+package com.surepay.validation.spool;
+
+public class SpoolQuotaExceededException extends RuntimeException {
+    public SpoolQuotaExceededException(String message) {
+        super(message);
+    }
+}
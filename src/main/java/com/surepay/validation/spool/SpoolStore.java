@@ -0,0 +1,382 @@
+package com.surepay.validation.spool;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.util.ContentHash;
+import com.surepay.validation.util.HashComputingInputStream;
+import com.surepay.validation.util.TreeHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed store for uploads. An upload is copied to the spool directory, tree-hashed in
+ * parallel and renamed to the hash, so identical uploads share one file and the hash is known before
+ * any parsing starts. Disk usage is bounded by {@code validation.spool.max-bytes};
+ * files nobody holds open are removed once older than {@code validation.spool.retention}, or earlier
+ * when space is needed.
+ * <p>
+ * The directory may be shared by several instances. Each instance counts what the directory holds
+ * again before an upload (at most once a second), on every cleanup and whenever its quota looks
+ * exhausted, so uploads spooled elsewhere count against the limit too. Leases are only known to the instance that holds them, so it touches the
+ * files it holds on every cleanup, and no instance removes a file touched within two cleanup
+ * intervals, nor a partial upload written to within that time.
+ */
+@Component
+public class SpoolStore {
+    private static final Logger logger = LoggerFactory.getLogger(SpoolStore.class);
+
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final long RECOUNT_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Duration retention;
+    // Files used this recently may be held by another instance sharing the directory
+    private final Duration inUseWindow;
+    private final AtomicLong usedBytes = new AtomicLong();
+    // Reserved by uploads of this instance and not yet written, so not found when the directory is counted
+    private final AtomicLong unwrittenBytes = new AtomicLong();
+    private final AtomicLong lastRecount = new AtomicLong(System.nanoTime() - RECOUNT_INTERVAL_NANOS);
+    private final ConcurrentHashMap<String, Integer> leases = new ConcurrentHashMap<>();
+
+    public SpoolStore(ValidationProperties validationProperties) {
+        ValidationProperties.Spool spool = validationProperties.getSpool();
+        this.directory = Path.of(spool.getDirectory());
+        this.maxBytes = spool.getMaxBytes();
+        this.retention = spool.getRetention();
+        this.inUseWindow = spool.getCleanupInterval().multipliedBy(2);
+        try {
+            Files.createDirectories(directory);
+            usedBytes.set(scanDirectory(true));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot initialise spool directory " + directory, e);
+        }
+        logger.info("Spool directory {} holds {} bytes (limit {})", directory, usedBytes.get(), maxBytes);
+    }
+
+    /**
+     * Copies {@code in} into the spool and returns the leased file. {@code expectedSize} is only used
+     * to fail fast when the upload cannot fit; pass -1 when it is unknown.
+     */
+    public SpooledFile spool(InputStream in, long expectedSize) throws IOException {
+        return spool(in, expectedSize, false);
+    }
+
+    /**
+     * Like {@link #spool}, but hashes the upload while it is copied. Meant for uploads read straight
+     * off the socket, which arrive slower than one core hashes them, so the file is never read back.
+     */
+    public SpooledFile spoolStreamed(InputStream in, long expectedSize) throws IOException {
+        return spool(in, expectedSize, true);
+    }
+
+    private SpooledFile spool(InputStream in, long expectedSize, boolean hashWhileCopying) throws IOException {
+        if (expectedSize > maxBytes) {
+            throw new SpoolQuotaExceededException(String.format(
+                "Upload of %d bytes exceeds the spool capacity of %d bytes", expectedSize, maxBytes));
+        }
+
+        long last = lastRecount.get();
+        if (System.nanoTime() - last >= RECOUNT_INTERVAL_NANOS && lastRecount.compareAndSet(last, System.nanoTime())) {
+            recount();
+        }
+
+        Path partial = directory.resolve(UUID.randomUUID() + PARTIAL_SUFFIX);
+        HashComputingInputStream hashStream = hashWhileCopying ? new HashComputingInputStream(in) : null;
+        long size = 0;
+        try {
+            try (FileChannel target = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 ReadableByteChannel source = Channels.newChannel(hashStream != null ? hashStream : in)) {
+                while (true) {
+                    // With a known size only reserve what is left, plus one byte to detect the end of the stream
+                    long count = expectedSize >= size
+                        ? Math.min(TRANSFER_CHUNK_SIZE, expectedSize - size + 1)
+                        : TRANSFER_CHUNK_SIZE;
+                    reserve(count);
+                    unwrittenBytes.addAndGet(count);
+                    long transferred = 0;
+                    try {
+                        transferred = target.transferFrom(source, size, count);
+                    } finally {
+                        // The written part of the reservation is in the partial file now, the rest is not needed
+                        usedBytes.addAndGet(transferred - count);
+                        unwrittenBytes.addAndGet(-count);
+                        size += transferred;
+                    }
+                    if (transferred < count) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            usedBytes.addAndGet(-size);
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+
+        String hash;
+        try {
+            // A copy from local disk is faster than one core hashes; hashing the written file runs on all cores
+            hash = hashStream != null ? hashStream.getHash() : TreeHash.of(partial);
+        } catch (IOException | RuntimeException e) {
+            discard(partial, size);
+            throw e;
+        }
+        Path target = directory.resolve(hash);
+        publish(partial, target, size);
+        try {
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            release(hash);
+            throw e;
+        }
+        logger.info("Spooled {} bytes as {}", size, hash);
+        return new SpooledFile(hash, target, size, () -> release(hash));
+    }
+
+    /**
+     * Leases the spooled upload with {@code hash}, for example one spooled by another instance that
+     * shares the spool directory. Empty when no such file is spooled.
+     */
+    public Optional<SpooledFile> open(String hash) throws IOException {
+        if (!ContentHash.isValid(hash)) {
+            return Optional.empty();
+        }
+        Path target = directory.resolve(hash);
+        long[] size = {-1};
+        leases.compute(hash, (key, count) -> {
+            try {
+                size[0] = Files.size(target);
+                return count == null ? 1 : count + 1;
+            } catch (IOException e) {
+                return count;
+            }
+        });
+        if (size[0] < 0) {
+            return Optional.empty();
+        }
+        try {
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            release(hash);
+            throw e;
+        }
+        return Optional.of(new SpooledFile(hash, target, size[0], () -> release(hash)));
+    }
+
+    /**
+     * Removes the spooled upload with {@code hash} now instead of after the retention period, unless
+     * someone holds it open. Returns whether it was removed.
+     */
+    public boolean remove(String hash) {
+        Path target = directory.resolve(hash);
+        if (!ContentHash.isValid(hash) || !Files.exists(target)) {
+            return false;
+        }
+        long freed = deleteIfUnleased(target);
+        if (freed > 0) {
+            logger.info("Removed spooled upload {} ({} bytes)", hash, freed);
+        }
+        return freed > 0;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    @Scheduled(fixedDelayString = "${validation.spool.cleanup-interval:PT5M}")
+    public void cleanup() {
+        touchLeased();
+        Instant olderThan = Instant.now().minus(retention);
+        evict(olderThan.isBefore(inUseBefore()) ? olderThan : inUseBefore(), Long.MAX_VALUE);
+        recount();
+    }
+
+    private void reserve(long bytes) {
+        if (tryReserve(bytes)) {
+            return;
+        }
+        evict(inUseBefore(), bytes);
+        recount();
+        if (!tryReserve(bytes)) {
+            throw new SpoolQuotaExceededException(String.format(
+                "Spool capacity of %d bytes is exhausted, try again later", maxBytes));
+        }
+    }
+
+    private boolean tryReserve(long bytes) {
+        long current;
+        do {
+            current = usedBytes.get();
+            if (current + bytes > maxBytes) {
+                return false;
+            }
+        } while (!usedBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    private Instant inUseBefore() {
+        return Instant.now().minus(inUseWindow);
+    }
+
+    /**
+     * Marks the files held here as in use for the instances that share the directory.
+     */
+    private void touchLeased() {
+        FileTime now = FileTime.from(Instant.now());
+        for (String hash : leases.keySet()) {
+            try {
+                Files.setLastModifiedTime(directory.resolve(hash), now);
+            } catch (IOException e) {
+                logger.warn("Failed to touch spooled file {}: {}", hash, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Counts the directory again, including what other instances spooled or removed.
+     */
+    private void recount() {
+        try {
+            usedBytes.set(scanDirectory(false) + unwrittenBytes.get());
+        } catch (IOException e) {
+            logger.warn("Failed to count spool directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes unleased spooled files last used before {@code olderThan}, oldest first, until at
+     * least {@code bytesNeeded} bytes have been freed.
+     */
+    private void evict(Instant olderThan, long bytesNeeded) {
+        List<Path> candidates = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, path -> !isPartial(path))) {
+            files.forEach(candidates::add);
+        } catch (IOException e) {
+            logger.warn("Failed to list spool directory {}: {}", directory, e.getMessage());
+            return;
+        }
+        candidates.sort(Comparator.comparing(SpoolStore::lastModified));
+
+        long freed = 0;
+        for (Path path : candidates) {
+            if (freed >= bytesNeeded || !lastModified(path).isBefore(olderThan)) {
+                break;
+            }
+            freed += deleteIfUnleased(path);
+        }
+        if (freed > 0) {
+            logger.info("Removed {} bytes of spooled uploads", freed);
+        }
+    }
+
+    private long deleteIfUnleased(Path path) {
+        long[] freed = {0};
+        leases.compute(path.getFileName().toString(), (hash, count) -> {
+            if (count == null) {
+                try {
+                    long size = Files.size(path);
+                    Files.delete(path);
+                    usedBytes.addAndGet(-size);
+                    freed[0] = size;
+                } catch (IOException e) {
+                    logger.warn("Failed to remove spooled file {}: {}", path, e.getMessage());
+                }
+            }
+            return count;
+        });
+        return freed[0];
+    }
+
+    /**
+     * Renames a completed upload to its hash and takes a lease on it, or drops it when the same content
+     * is already spooled. Runs under the lease map lock for the hash, so it cannot race with cleanup
+     * or with another upload of the same content.
+     */
+    private void publish(Path partial, Path target, long size) throws IOException {
+        IOException[] failure = {null};
+        leases.compute(target.getFileName().toString(), (hash, count) -> {
+            try {
+                if (Files.exists(target)) {
+                    discard(partial, size);
+                } else {
+                    Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+                return count == null ? 1 : count + 1;
+            } catch (IOException e) {
+                failure[0] = e;
+                return count;
+            }
+        });
+        if (failure[0] != null) {
+            discard(partial, size);
+            throw failure[0];
+        }
+    }
+
+    private void release(String hash) {
+        leases.computeIfPresent(hash, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void discard(Path partial, long size) throws IOException {
+        Files.deleteIfExists(partial);
+        usedBytes.addAndGet(-size);
+    }
+
+    private long scanDirectory(boolean removeAbandoned) throws IOException {
+        long total = 0;
+        Instant inUseBefore = inUseBefore();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                try {
+                    // Left behind by an interrupted upload, unless another instance is still writing it
+                    if (removeAbandoned && isPartial(path) && lastModified(path).isBefore(inUseBefore)) {
+                        Files.deleteIfExists(path);
+                    } else {
+                        total += Files.size(path);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Published or removed by another instance meanwhile
+                }
+            }
+        }
+        return total;
+    }
+
+    private static boolean isPartial(Path path) {
+        return path.getFileName().toString().endsWith(PARTIAL_SUFFIX);
+    }
+
+    private static Instant lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant();
+        } catch (IOException e) {
+            return Instant.MIN;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.surepay.validation.spool;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An upload stored in the spool directory under its content hash. While it is open the file is
+ * leased and will not be removed by cleanup; closing it releases the lease, not the file.
+ */
+public final class SpooledFile implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final String hash;
+    private final Path path;
+    private final long size;
+    private final Runnable release;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    SpooledFile(String hash, Path path, long size, Runnable release) {
+        this.hash = hash;
+        this.path = path;
+        this.size = size;
+        this.release = release;
+    }
+
+    public String hash() {
+        return hash;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(Files.newInputStream(path), READ_BUFFER_SIZE);
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.surepay.validation.util;
+
+import com.dynatrace.hash4j.hashing.HashValue128;
+import com.dynatrace.hash4j.hashing.Hasher128;
+import com.dynatrace.hash4j.hashing.Hashing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter over strings. {@link #mightContain} never returns false for a key that was
+ * added; it returns true for a key that was not with roughly the configured probability while no more
+ * than the expected number of keys are added. Bit positions come from double hashing the two halves
+ * of an XXH3-128 hash.
+ */
+public final class BloomFilter {
+
+    private static final Hasher128 HASHER = Hashing.xxh3_128();
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    public BloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Expected keys must be positive and the false positive rate in (0, 1)");
+        }
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = new AtomicLongArray(Math.toIntExact(Math.max(1, (optimalBits + 63) / 64)));
+        this.bitCount = (long) bits.length() * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * ln2));
+    }
+
+    public void add(String key) {
+        HashValue128 hash = HASHER.hashCharsTo128Bits(key);
+        long combined = hash.getMostSignificantBits();
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(combined, bitCount);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+            combined += hash.getLeastSignificantBits();
+        }
+    }
+
+    public boolean mightContain(String key) {
+        HashValue128 hash = HASHER.hashCharsTo128Bits(key);
+        long combined = hash.getMostSignificantBits();
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(combined, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += hash.getLeastSignificantBits();
+        }
+        return true;
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+}
@@ -0,0 +1,53 @@
+package com.surepay.validation.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the content hash the service uses as report and job ID, so clients can ask for an existing
+ * result before uploading.
+ */
+public final class ContentHash {
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+    private ContentHash() {
+    }
+
+    public static String of(Path file) throws IOException {
+        return TreeHash.of(file);
+    }
+
+    public static String of(InputStream in) throws IOException {
+        HashComputingInputStream hashStream = new HashComputingInputStream(in);
+        hashStream.transferTo(OutputStream.nullOutputStream());
+        return hashStream.getHash();
+    }
+
+    public static boolean isValid(String hash) {
+        return hash != null && HASH_PATTERN.matcher(hash).matches();
+    }
+
+    /**
+     * Extracts a content hash from an {@code If-None-Match} value such as {@code "<hash>"} or
+     * {@code W/"<hash>"}. Only the first entity tag is considered.
+     */
+    public static Optional<String> fromEntityTag(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return Optional.empty();
+        }
+        String tag = ifNoneMatch.split(",")[0].trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        tag = tag.toLowerCase();
+        return isValid(tag) ? Optional.of(tag) : Optional.empty();
+    }
+}
@@ -0,0 +1,136 @@
+package com.surepay.validation.util;
+
+import com.dynatrace.hash4j.hashing.HashStream128;
+import com.dynatrace.hash4j.hashing.HashValue128;
+import com.dynatrace.hash4j.hashing.Hashing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Splits a CSV file into content-defined chunks (FastCDC with normalized chunking). A cut point is
+ * chosen by a gear hash over the last 64 bytes and then moved to the next line end outside quotes, so
+ * every chunk holds whole rows and an edit only changes the chunks around it. The header line is
+ * always the first chunk on its own.
+ */
+public final class CsvChunker {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long[] GEAR = gearTable();
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final int minSize;
+    private final int averageSize;
+    private final int maxSize;
+    private final long smallMask;
+    private final long largeMask;
+
+    public CsvChunker(int minSize, int averageSize, int maxSize) {
+        if (minSize <= 0 || minSize > averageSize || averageSize > maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= average <= max");
+        }
+        this.minSize = minSize;
+        this.averageSize = averageSize;
+        this.maxSize = maxSize;
+        int bits = 31 - Integer.numberOfLeadingZeros(averageSize);
+        // Harder to match below the average size and easier above it, which narrows the size spread
+        this.smallMask = -1L << (64 - Math.min(bits + 2, 63));
+        this.largeMask = -1L << (64 - Math.max(bits - 2, 1));
+    }
+
+    public List<Chunk> split(Path file) throws IOException {
+        return split(file, 0, Files.size(file), true);
+    }
+
+    /**
+     * Splits {@code length} bytes of {@code file} starting at {@code offset}, which must be the start
+     * of a row outside quotes. Without {@code header} the first line is cut like any other row, so the
+     * chunks line up with those of the whole file soon after the region starts.
+     */
+    public List<Chunk> split(Path file, long offset, long length, boolean header) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        HashStream128 hash = Hashing.xxh3_128().hashStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long end = offset + length;
+        long position = offset;
+        long chunkStart = offset;
+        long fingerprint = 0;
+        boolean inQuotes = false;
+        boolean escaped = false;
+        boolean cutPending = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             InputStream in = Channels.newInputStream(channel.position(offset))) {
+            int read;
+            while (position < end
+                    && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position))) > 0) {
+                int segmentStart = 0;
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (b == '\\' && inQuotes) {
+                        // OpenCSV's default escape character
+                        escaped = true;
+                    }
+
+                    long size = position + i + 1 - chunkStart;
+                    if (!header && !cutPending && size >= minSize) {
+                        fingerprint = (fingerprint << 1) + GEAR[b & 0xff];
+                        cutPending = (fingerprint & (size < averageSize ? smallMask : largeMask)) == 0
+                            || size >= maxSize;
+                    }
+                    if (b == '\n' && !inQuotes && (header || cutPending)) {
+                        hash.putBytes(buffer, segmentStart, i + 1 - segmentStart);
+                        chunks.add(new Chunk(chunkStart, size, hex(hash.get())));
+                        hash.reset();
+                        segmentStart = i + 1;
+                        chunkStart = position + i + 1;
+                        fingerprint = 0;
+                        header = false;
+                        cutPending = false;
+                    }
+                }
+                hash.putBytes(buffer, segmentStart, read - segmentStart);
+                position += read;
+            }
+        }
+        if (position > chunkStart) {
+            chunks.add(new Chunk(chunkStart, position - chunkStart, hex(hash.get())));
+        }
+        return chunks;
+    }
+
+    private static String hex(HashValue128 value) {
+        return HEX.toHexDigits(value.getMostSignificantBits()) + HEX.toHexDigits(value.getLeastSignificantBits());
+    }
+
+    /**
+     * Fixed gear table (SplitMix64 from a constant seed). Stored chunk hashes depend on the cut points,
+     * so this table must never change.
+     */
+    private static long[] gearTable() {
+        long[] table = new long[256];
+        long state = 0x5eed_c5f0_0d1e_c0deL;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9e3779b97f4a7c15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+
+    public record Chunk(long offset, long length, String hash) {}
+}
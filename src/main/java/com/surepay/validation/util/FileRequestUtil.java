@@ -54,14 +54,15 @@ public class FileRequestUtil {
     }
 
     public static String determineContentType(MultipartFile file) {
-        String contentType = file.getContentType();
-        
+        return determineContentType(file.getContentType(), file.getOriginalFilename());
+    }
+
+    public static String determineContentType(String contentType, String filename) {
         if (contentType != null && !contentType.isEmpty() && 
             !isGenericContentType(contentType)) {
             return contentType;
         }
 
-        String filename = file.getOriginalFilename();
         if (filename != null) {
             var matcher = FILE_EXTENSION_PATTERN.matcher(filename);
             if (matcher.find()) {
@@ -1,40 +1,36 @@
 package com.surepay.validation.util;
 
-import net.jpountz.xxhash.XXHashFactory;
-import net.jpountz.xxhash.StreamingXXHash64;
+import com.dynatrace.hash4j.hashing.HashStream128;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
- * InputStream wrapper that computes xxHash128 hash while reading data.
+ * InputStream wrapper that computes the {@link TreeHash} of everything read through it.
  * This allows hash computation and file processing to happen in a single pass.
  */
 public class HashComputingInputStream extends InputStream {
-    private static final XXHashFactory xxHashFactory = XXHashFactory.fastestInstance();
-    private static final long XXHASH_SEED_1 = 0L;
-    private static final long XXHASH_SEED_2 = 1L;
     
     private final InputStream delegate;
-    private final StreamingXXHash64 hasher1;
-    private final StreamingXXHash64 hasher2;
+    private final HashStream128 chunkHash = TreeHash.hasher().hashStream();
+    private long[] digests = new long[16];
+    private int chunkCount;
+    private int chunkFill;
+    private long length;
     private String computedHash;
-    private boolean hashComputed = false;
     
     public HashComputingInputStream(InputStream delegate) {
         this.delegate = delegate;
-        this.hasher1 = xxHashFactory.newStreamingHash64(XXHASH_SEED_1);
-        this.hasher2 = xxHashFactory.newStreamingHash64(XXHASH_SEED_2);
     }
     
     @Override
     public int read() throws IOException {
         int byteValue = delegate.read();
         if (byteValue != -1) {
-            byte[] singleByte = {(byte) byteValue};
-            hasher1.update(singleByte, 0, 1);
-            hasher2.update(singleByte, 0, 1);
+            chunkHash.putByte((byte) byteValue);
+            advance(1);
         }
         return byteValue;
     }
@@ -42,9 +38,14 @@ public class HashComputingInputStream extends InputStream {
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
         int bytesRead = delegate.read(b, off, len);
-        if (bytesRead > 0) {
-            hasher1.update(b, off, bytesRead);
-            hasher2.update(b, off, bytesRead);
+        int position = off;
+        int remaining = bytesRead;
+        while (remaining > 0) {
+            int count = Math.min(remaining, TreeHash.CHUNK_SIZE - chunkFill);
+            chunkHash.putBytes(b, position, count);
+            advance(count);
+            position += count;
+            remaining -= count;
         }
         return bytesRead;
     }
@@ -64,23 +65,30 @@ public class HashComputingInputStream extends InputStream {
      * Should be called after all data has been read.
      */
     public String getHash() {
-        if (!hashComputed) {
-            long hash1 = hasher1.getValue();
-            long hash2 = hasher2.getValue();
-            computedHash = longPairToHex(hash1, hash2);
-            hashComputed = true;
+        if (computedHash == null) {
+            if (chunkFill > 0) {
+                completeChunk();
+            }
+            computedHash = TreeHash.root(digests, chunkCount, length);
         }
         return computedHash;
     }
     
-    private String longPairToHex(long high, long low) {
-        String highHex = Long.toUnsignedString(high, 16);
-        String lowHex = Long.toUnsignedString(low, 16);
-        
-        String paddedHigh = String.format("%16s", highHex).replace(' ', '0');
-        String paddedLow = String.format("%16s", lowHex).replace(' ', '0');
-        
-        return paddedHigh + paddedLow;
+    private void advance(int count) {
+        chunkFill += count;
+        length += count;
+        if (chunkFill == TreeHash.CHUNK_SIZE) {
+            completeChunk();
+        }
+    }
+    
+    private void completeChunk() {
+        if (digests.length < (chunkCount + 1) * 2) {
+            digests = Arrays.copyOf(digests, digests.length * 2);
+        }
+        TreeHash.store(digests, chunkCount++, chunkHash.get());
+        chunkHash.reset();
+        chunkFill = 0;
     }
     
     /**
@@ -98,4 +106,3 @@ public class HashComputingInputStream extends InputStream {
         }
     }
 }
-
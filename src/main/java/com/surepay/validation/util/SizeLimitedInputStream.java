@@ -0,0 +1,55 @@
+package com.surepay.validation.util;
+
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with the same {@link FileUploadSizeException} as a streamed multipart part once more than
+ * {@code maxSize} bytes are read, for request bodies whose length is not known up front.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maxSize;
+    private long count;
+
+    public SizeLimitedInputStream(InputStream in, long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            advance(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    private void advance(long bytes) throws FileUploadSizeException {
+        count += bytes;
+        if (count > maxSize) {
+            throw new FileUploadSizeException(
+                String.format("Upload exceeds the maximum allowed size of %d bytes", maxSize), maxSize, count);
+        }
+    }
+}
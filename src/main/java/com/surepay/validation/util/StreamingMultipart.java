@@ -0,0 +1,56 @@
+package com.surepay.validation.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletDiskFileUpload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Reads a multipart request with the streaming API of Commons FileUpload, so the {@code file} part is
+ * handed over as it comes off the socket instead of being written to disk by the servlet container
+ * first. Relies on {@code spring.servlet.multipart.resolve-lazily}, which leaves the body unread.
+ */
+public final class StreamingMultipart {
+
+    public static final String FILE_FIELD = "file";
+
+    private StreamingMultipart() {
+    }
+
+    /**
+     * Skips to the {@code file} part and returns its stream. Reading more than {@code maxFileSize}
+     * bytes from it fails with a {@link org.apache.commons.fileupload2.core.FileUploadSizeException}.
+     */
+    public static Optional<FilePart> openFilePart(HttpServletRequest request, long maxFileSize) throws IOException {
+        JakartaServletDiskFileUpload upload = new JakartaServletDiskFileUpload();
+        upload.setFileSizeMax(maxFileSize);
+        FileItemInputIterator items = upload.getItemIterator(request);
+        while (items.hasNext()) {
+            FileItemInput item = items.next();
+            if (!item.isFormField() && FILE_FIELD.equals(item.getFieldName())) {
+                String filename = item.getName() != null ? item.getName() : "unknown";
+                return Optional.of(new FilePart(filename, item.getContentType(), partSize(item), item.getInputStream()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Parts rarely carry a Content-Length of their own; the request's also counts the other parts
+    private static long partSize(FileItemInput item) {
+        String length = item.getHeaders() != null ? item.getHeaders().getHeader("Content-Length") : null;
+        try {
+            return length != null ? Long.parseLong(length.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The {@code file} part; {@code size} is -1 unless the part declares its length.
+     */
+    public record FilePart(String filename, String contentType, long size, InputStream stream) {}
+}
@@ -0,0 +1,144 @@
+package com.surepay.validation.util;
+
+import com.dynatrace.hash4j.hashing.HashValue128;
+import com.dynatrace.hash4j.hashing.Hasher128;
+import com.dynatrace.hash4j.hashing.Hashing;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Content hash used as report and job ID: the input is split into {@link #CHUNK_SIZE} chunks, each
+ * chunk is hashed with XXH3-128, and the root is the XXH3-128 of all chunk digests followed by the
+ * total length. Chunks are independent, so a file on disk is read and hashed by a small pool of
+ * reader threads, one chunk buffer each, while {@link HashComputingInputStream} produces the same digest
+ * from a stream. Reports and jobs record the {@link #VERSION} of the hash they are keyed by.
+ */
+public final class TreeHash {
+
+    /**
+     * Format of the digest; version 1 was the pair of XXH64 hashes over the whole content.
+     */
+    public static final int VERSION = 2;
+
+    public static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final Hasher128 HASHER = Hashing.xxh3_128();
+    private static final HexFormat HEX = HexFormat.of();
+
+    // Positional reads block, so files are hashed on platform threads of their own rather than the common
+    // pool or the caller's virtual thread; every reader holds at most one chunk buffer at a time
+    private static final int READERS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService READER_POOL =
+        Executors.newFixedThreadPool(READERS, Thread.ofPlatform().name("tree-hash-", 0).daemon().factory());
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(READERS);
+
+    private TreeHash() {
+    }
+
+    static Hasher128 hasher() {
+        return HASHER;
+    }
+
+    public static String of(byte[] data) {
+        int chunkCount = chunkCount(data.length);
+        long[] digests = new long[chunkCount * 2];
+        for (int i = 0; i < chunkCount; i++) {
+            int offset = i * CHUNK_SIZE;
+            store(digests, i, HASHER.hashBytesTo128Bits(data, offset, Math.min(CHUNK_SIZE, data.length - offset)));
+        }
+        return root(digests, chunkCount, data.length);
+    }
+
+    /**
+     * Hashes a file with its chunks read and hashed in parallel.
+     */
+    public static String of(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            int chunkCount = chunkCount(length);
+            long[] digests = new long[chunkCount * 2];
+            AtomicInteger nextChunk = new AtomicInteger();
+            List<Future<Void>> readers = new ArrayList<>();
+            for (int i = 0; i < Math.min(READERS, chunkCount); i++) {
+                readers.add(READER_POOL.submit(() -> {
+                    hashChunks(channel, length, chunkCount, nextChunk, digests);
+                    return null;
+                }));
+            }
+            try {
+                for (Future<Void> reader : readers) {
+                    reader.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while hashing " + file);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+            } finally {
+                // Readers still running stop after their current chunk instead of reading a closed channel
+                nextChunk.set(chunkCount);
+            }
+            return root(digests, chunkCount, length);
+        }
+    }
+
+    static String root(long[] digests, int chunkCount, long length) {
+        ByteBuffer input = ByteBuffer.allocate(chunkCount * 16 + 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < chunkCount * 2; i++) {
+            input.putLong(digests[i]);
+        }
+        input.putLong(length);
+        HashValue128 root = HASHER.hashBytesTo128Bits(input.array());
+        return HEX.toHexDigits(root.getMostSignificantBits()) + HEX.toHexDigits(root.getLeastSignificantBits());
+    }
+
+    static void store(long[] digests, int chunk, HashValue128 digest) {
+        digests[chunk * 2] = digest.getMostSignificantBits();
+        digests[chunk * 2 + 1] = digest.getLeastSignificantBits();
+    }
+
+    private static int chunkCount(long length) {
+        return Math.toIntExact((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    private static void hashChunks(FileChannel channel, long length, int chunkCount, AtomicInteger nextChunk, long[] digests)
+            throws IOException {
+        byte[] pooled = BUFFERS.poll();
+        byte[] buffer = pooled != null ? pooled : new byte[CHUNK_SIZE];
+        try {
+            for (int i = nextChunk.getAndIncrement(); i < chunkCount; i = nextChunk.getAndIncrement()) {
+                long position = (long) i * CHUNK_SIZE;
+                int chunkLength = (int) Math.min(CHUNK_SIZE, length - position);
+                readFully(channel, ByteBuffer.wrap(buffer, 0, chunkLength), position);
+                store(digests, i, HASHER.hashBytesTo128Bits(buffer, 0, chunkLength));
+            }
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("File shrank while hashing");
+            }
+        }
+    }
+}
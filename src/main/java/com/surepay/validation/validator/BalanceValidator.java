@@ -24,5 +24,10 @@ public class BalanceValidator implements TransactionValidator {
             result.addError(ValidationError.balanceMismatch(transaction));
         }
     }
+
+    @Override
+    public String fingerprint() {
+        return "balance/v1:tolerance=" + validationProperties.getBalance().getTolerance().stripTrailingZeros().toPlainString();
+    }
 }
 
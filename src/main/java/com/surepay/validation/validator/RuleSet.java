@@ -0,0 +1,41 @@
+package com.surepay.validation.validator;
+
+import com.dynatrace.hash4j.hashing.Hasher64;
+import com.dynatrace.hash4j.hashing.Hashing;
+import org.springframework.stereotype.Component;
+
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The active validators as a whole. Its fingerprint covers every rule, its configuration and the
+ * order the rules run in, and is stored with each result so results produced by other rules are
+ * never served as current.
+ */
+@Component
+public class RuleSet {
+
+    private static final Hasher64 HASHER = Hashing.xxh3_64();
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final List<TransactionValidator> validators;
+
+    public RuleSet(List<TransactionValidator> validators) {
+        this.validators = validators;
+    }
+
+    public String fingerprint() {
+        return hash(validators.stream()
+            .map(TransactionValidator::fingerprint)
+            .collect(Collectors.joining("\n")));
+    }
+
+    public static String fingerprint(TransactionValidator validator) {
+        return hash(validator.fingerprint());
+    }
+
+    private static String hash(String value) {
+        return HEX.toHexDigits(HASHER.hashCharsToLong(value));
+    }
+}
@@ -5,5 +5,20 @@ import com.surepay.validation.domain.ValidationResult;
 
 public interface TransactionValidator {
     void validate(Transaction transaction, ValidationResult result);
-}
 
+    /**
+     * Whether the outcome for a transaction depends on that transaction alone. Results of row-local
+     * validators can be reused for the same rows in another file.
+     */
+    default boolean isRowLocal() {
+        return true;
+    }
+
+    /**
+     * Identifies the rule and every setting that affects its outcome. Stored results are only reused
+     * while this value is unchanged, so bump the version in it whenever the rule's logic changes.
+     */
+    default String fingerprint() {
+        return getClass().getName();
+    }
+}
@@ -21,6 +21,16 @@ public class UniquenessValidator implements TransactionValidator {
         }
     }
     
+    @Override
+    public boolean isRowLocal() {
+        return false;
+    }
+    
+    @Override
+    public String fingerprint() {
+        return "uniqueness/v1";
+    }
+    
     public static ScopedValue<Set<String>> getScopedValue() {
         return SEEN_REFERENCES;
     }
@@ -0,0 +1,145 @@
+package com.surepay.validation.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.service.LoadShedder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionFilterTest {
+
+    @Mock
+    private LoadShedder loadShedder;
+
+    private final Counter rejected = new SimpleMeterRegistry().counter("admission.rejected");
+    private AdmissionFilter admissionFilter;
+
+    @BeforeEach
+    void setUp() {
+        admissionFilter = new AdmissionFilter(loadShedder, new ObjectMapper());
+    }
+
+    @Test
+    void shouldRejectUploadWithoutReadingItWhileSaturated() throws Exception {
+        when(loadShedder.shed()).thenReturn(Optional.of(rejection(12)));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/validation/validate");
+        request.setContent("Reference\n".getBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        admissionFilter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("12");
+        assertThat(response.getContentAsString()).contains("\"error\":\"TOO_MANY_REQUESTS\"");
+        assertThat(chain.getRequest()).isNull();
+        assertThat(rejected.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldPassUploadOnWhileAdmitted() throws Exception {
+        when(loadShedder.shed()).thenReturn(Optional.empty());
+        MockFilterChain chain = new MockFilterChain();
+
+        admissionFilter.doFilter(new MockHttpServletRequest("POST", "/api/v1/validation/validate/async"),
+            new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    @Test
+    void shouldShedPartsOfUploadSessions() throws Exception {
+        when(loadShedder.shed()).thenReturn(Optional.of(rejection(3)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        admissionFilter.doFilter(new MockHttpServletRequest("PUT", "/api/v1/validation/uploads/abc/parts/1"), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void shouldLetConditionalUploadCheckForStoredResultWhileSaturated() throws Exception {
+        when(loadShedder.shed()).thenReturn(Optional.of(rejection(12)));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/validation/validate");
+        request.addHeader("If-None-Match", "\"0123456789abcdef0123456789abcdef\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        admissionFilter.doFilter(request, response, chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(AdmissionFilter.deferredShed(request)).map(LoadShedder.Rejection::retryAfter).contains(Duration.ofSeconds(12));
+        // A stored result may still answer it, so only the controller counts it, if it sheds it
+        assertThat(rejected.count()).isZero();
+    }
+
+    @Test
+    void shouldTreatOnlyStreamTrueAsStreamingMode() {
+        assertThat(AdmissionFilter.isStreaming("stream=true")).isTrue();
+        assertThat(AdmissionFilter.isStreaming("deadline=5&stream=true")).isTrue();
+        assertThat(AdmissionFilter.isStreaming("stream=false")).isFalse();
+        assertThat(AdmissionFilter.isStreaming("upstream=true")).isFalse();
+        assertThat(AdmissionFilter.isStreaming("stream")).isFalse();
+        assertThat(AdmissionFilter.isStreaming(null)).isFalse();
+    }
+
+    @Test
+    void shouldLetConditionalUploadWithStreamFalseCheckForStoredResult() throws Exception {
+        when(loadShedder.shed()).thenReturn(Optional.of(rejection(12)));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/validation/validate");
+        request.setQueryString("stream=false");
+        request.addHeader("If-None-Match", "\"0123456789abcdef0123456789abcdef\"");
+        MockFilterChain chain = new MockFilterChain();
+
+        admissionFilter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    @Test
+    void shouldShedConditionalUploadThatAlwaysReadsTheBody() throws Exception {
+        when(loadShedder.shed()).thenReturn(Optional.of(rejection(12)));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/validation/validate");
+        request.setQueryString("stream=true");
+        request.addHeader("If-None-Match", "\"0123456789abcdef0123456789abcdef\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        admissionFilter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    private LoadShedder.Rejection rejection(long seconds) {
+        return new LoadShedder.Rejection(Duration.ofSeconds(seconds), rejected);
+    }
+
+    @Test
+    void shouldNotShedRequestsWithoutUpload() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        admissionFilter.doFilter(new MockHttpServletRequest("GET", "/api/v1/validation/validate"),
+            new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        verifyNoInteractions(loadShedder);
+    }
+}
@@ -25,6 +25,9 @@ class GlobalExceptionHandlerTest {
     @MockitoBean
     private com.surepay.validation.service.JobService jobService;
 
+    @MockitoBean
+    private com.surepay.validation.spool.SpoolStore spoolStore;
+
     @Test
     void shouldHandleParseException() throws Exception {
         String csv = "invalid csv content";
@@ -32,7 +35,7 @@ class GlobalExceptionHandlerTest {
             "file", "test.csv", "text/csv", csv.getBytes()
         );
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobService.validateWithin(any(), any(), any(), any()))
             .thenThrow(new ParseException("Invalid CSV format"));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
@@ -50,7 +53,7 @@ class GlobalExceptionHandlerTest {
             "file", "test.csv", "text/csv", csv.getBytes()
         );
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobService.validateWithin(any(), any(), any(), any()))
             .thenThrow(new IllegalArgumentException("Unsupported format"));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
@@ -68,7 +71,7 @@ class GlobalExceptionHandlerTest {
             "file", "test.csv", "text/csv", csv.getBytes()
         );
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobService.validateWithin(any(), any(), any(), any()))
             .thenThrow(new RuntimeException(new java.io.IOException("File read error")));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
@@ -86,7 +89,7 @@ class GlobalExceptionHandlerTest {
             "file", "test.csv", "text/csv", csv.getBytes()
         );
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobService.validateWithin(any(), any(), any(), any()))
             .thenThrow(new RuntimeException("Out of memory"));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
@@ -104,7 +107,7 @@ class GlobalExceptionHandlerTest {
             "file", "test.csv", "text/csv", csv.getBytes()
         );
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobService.validateWithin(any(), any(), any(), any()))
             .thenThrow(new RuntimeException("Unexpected error"));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
@@ -114,5 +117,21 @@ class GlobalExceptionHandlerTest {
             .andExpect(jsonPath("$.error").value("INTERNAL_ERROR"))
             .andExpect(jsonPath("$.message").exists());
     }
-}
 
+    @Test
+    void shouldHandleSpoolQuotaExceededException() throws Exception {
+        org.springframework.mock.web.MockMultipartFile file = new org.springframework.mock.web.MockMultipartFile(
+            "file", "test.csv", "text/csv", "test content".getBytes()
+        );
+        
+        when(spoolStore.spool(any(), anyLong()))
+            .thenThrow(new com.surepay.validation.spool.SpoolQuotaExceededException("Spool is full"));
+
+        mockMvc.perform(multipart("/api/v1/validation/validate")
+                .file(file))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "60"))
+            .andExpect(jsonPath("$.error").value("INSUFFICIENT_STORAGE"))
+            .andExpect(jsonPath("$.message").value("Spool is full"));
+    }
+}
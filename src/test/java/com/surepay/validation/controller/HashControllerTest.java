@@ -0,0 +1,86 @@
+package com.surepay.validation.controller;
+
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.service.JobService;
+import com.surepay.validation.service.ReportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Optional;
+
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(HashController.class)
+class HashControllerTest {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private ReportService reportService;
+
+    @MockitoBean
+    private JobService jobService;
+
+    @Test
+    void shouldReportAvailableReport() throws Exception {
+        when(reportService.isReportCurrent(HASH)).thenReturn(true);
+        when(jobService.getJob(HASH)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/validation/hashes/" + HASH))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"" + HASH + "\""))
+            .andExpect(header().string("Content-Location", "/api/v1/validation/reports/" + HASH))
+            .andExpect(jsonPath("$.hash").value(HASH))
+            .andExpect(jsonPath("$.reportAvailable").value(true));
+    }
+
+    @Test
+    void shouldReportRunningJob() throws Exception {
+        when(reportService.isReportCurrent(HASH)).thenReturn(false);
+        when(jobService.getJob(HASH)).thenReturn(Optional.of(JobEntity.create(HASH, "test.csv")));
+
+        mockMvc.perform(get("/api/v1/validation/hashes/" + HASH.toUpperCase()))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("Content-Location"))
+            .andExpect(jsonPath("$.reportAvailable").value(false))
+            .andExpect(jsonPath("$.jobStatus").value("PENDING"));
+    }
+
+    @Test
+    void shouldReturnNotFoundForUnknownHash() throws Exception {
+        when(reportService.isReportCurrent(HASH)).thenReturn(false);
+        when(jobService.getJob(HASH)).thenReturn(Optional.empty());
+
+        mockMvc.perform(head("/api/v1/validation/hashes/" + HASH))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldAnswerHeadForKnownHash() throws Exception {
+        when(reportService.isReportCurrent(HASH)).thenReturn(true);
+        when(jobService.getJob(HASH)).thenReturn(Optional.empty());
+
+        mockMvc.perform(head("/api/v1/validation/hashes/" + HASH))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"" + HASH + "\""));
+    }
+
+    @Test
+    void shouldRejectMalformedHash() throws Exception {
+        mockMvc.perform(get("/api/v1/validation/hashes/not-a-hash"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_INPUT"));
+
+        verifyNoInteractions(reportService, jobService);
+    }
+}
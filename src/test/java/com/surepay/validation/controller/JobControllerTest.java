@@ -1,7 +1,11 @@
 package com.surepay.validation.controller;
 
 import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationProgress;
+import com.surepay.validation.dto.ValidationJobResponse;
 import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.service.JobEvents;
+import com.surepay.validation.service.JobScheduler;
 import com.surepay.validation.service.JobService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,12 +13,17 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -27,11 +36,15 @@ class JobControllerTest {
     @MockitoBean
     private JobService jobService;
 
+    @MockitoBean
+    private JobEvents jobEvents;
+
     @Test
     void shouldGetJobStatusForPendingJob() throws Exception {
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.PENDING,
-            Instant.now(), null, null, null
+            Instant.now(), null, null, null, null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -43,11 +56,33 @@ class JobControllerTest {
             .andExpect(jsonPath("$.status").value("PENDING"));
     }
 
+    @Test
+    void shouldReportQueuePositionOfQueuedJob() throws Exception {
+        JobEntity job = new JobEntity(
+            "job123", "test.csv", JobEntity.JobStatus.PENDING,
+            Instant.now(), null, null, null, null,
+            null, 0, null, null, null, null, null, null, null
+        );
+        Instant estimatedStart = Instant.parse("2030-01-01T00:00:00Z");
+        
+        when(jobService.getJob("job123")).thenReturn(Optional.of(job));
+        when(jobService.getQueueStatus("job123"))
+            .thenReturn(Optional.of(new JobScheduler.QueueStatus(2, 3, estimatedStart)));
+
+        mockMvc.perform(get("/api/v1/validation/jobs/job123/status"))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.status").value("PENDING"))
+            .andExpect(jsonPath("$.queuePosition").value(2))
+            .andExpect(jsonPath("$.queueDepth").value(3))
+            .andExpect(jsonPath("$.estimatedStartAt").value("2030-01-01T00:00:00Z"));
+    }
+
     @Test
     void shouldGetJobStatusForProcessingJob() throws Exception {
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.PROCESSING,
-            Instant.now(), null, null, null
+            Instant.now(), null, null, null, null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -57,12 +92,60 @@ class JobControllerTest {
             .andExpect(jsonPath("$.status").value("PROCESSING"));
     }
 
+    @Test
+    void shouldReportProgressOfRunningJob() throws Exception {
+        ValidationProgress progress = new ValidationProgress(
+            512, 1024, 10000, 3, 2500.0, Instant.parse("2030-01-01T00:00:00Z"), Instant.now());
+        JobEntity job = JobEntity.create("job123", "test.csv")
+            .withStatus(JobEntity.JobStatus.PROCESSING)
+            .withProgress(progress);
+
+        when(jobService.getJob("job123")).thenReturn(Optional.of(job));
+
+        mockMvc.perform(get("/api/v1/validation/jobs/job123/status"))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.progress.bytesRead").value(512))
+            .andExpect(jsonPath("$.progress.rowsValidated").value(10000))
+            .andExpect(jsonPath("$.progress.errorCount").value(3))
+            .andExpect(jsonPath("$.progress.rowsPerSecond").value(2500.0))
+            .andExpect(jsonPath("$.progress.estimatedCompletionAt").value("2030-01-01T00:00:00Z"));
+    }
+
+    @Test
+    void shouldStreamJobEvents() throws Exception {
+        JobEntity job = JobEntity.create("job123", "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        SseEmitter emitter = new SseEmitter();
+        when(jobEvents.subscribe("job123")).thenReturn(Optional.of(emitter));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/validation/jobs/job123/events")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        emitter.send(SseEmitter.event().name("status").data(ValidationJobResponse.from(job)));
+        emitter.complete();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM))
+            .andExpect(content().string(containsString("event:status")))
+            .andExpect(content().string(containsString("\"status\":\"PROCESSING\"")));
+    }
+
+    @Test
+    void shouldReturn404WhenStreamingEventsOfUnknownJob() throws Exception {
+        when(jobEvents.subscribe("missing")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/validation/jobs/missing/events"))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     void shouldGetJobStatusForCompletedJob() throws Exception {
         ValidationReportDto report = new ValidationReportDto(true, 0, 0, 0, List.of());
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.COMPLETED,
-            Instant.now(), Instant.now(), report, null
+            Instant.now(), Instant.now(), report, null, null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -77,7 +160,8 @@ class JobControllerTest {
     void shouldGetJobStatusForFailedJob() throws Exception {
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.FAILED,
-            Instant.now(), Instant.now(), null, "Error message"
+            Instant.now(), Instant.now(), null, "Error message", null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -101,7 +185,8 @@ class JobControllerTest {
         ValidationReportDto report = new ValidationReportDto(true, 0, 0, 0, List.of());
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.COMPLETED,
-            Instant.now(), Instant.now(), report, null
+            Instant.now(), Instant.now(), report, null, null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -116,7 +201,8 @@ class JobControllerTest {
     void shouldReturnAcceptedForProcessingJobResult() throws Exception {
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.PROCESSING,
-            Instant.now(), null, null, null
+            Instant.now(), null, null, null, null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -129,7 +215,8 @@ class JobControllerTest {
     void shouldReturnInternalServerErrorForFailedJobResult() throws Exception {
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.FAILED,
-            Instant.now(), Instant.now(), null, "Error"
+            Instant.now(), Instant.now(), null, "Error", null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -150,7 +237,8 @@ class JobControllerTest {
     void shouldReturnAcceptedForPendingJobResult() throws Exception {
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.PENDING,
-            Instant.now(), null, null, null
+            Instant.now(), null, null, null, null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -170,7 +258,8 @@ class JobControllerTest {
         );
         JobEntity job = new JobEntity(
             "job123", "test.csv", JobEntity.JobStatus.COMPLETED,
-            Instant.now(), Instant.now(), report, null
+            Instant.now(), Instant.now(), report, null, null,
+            null, 0, null, null, null, null, null, null, null
         );
         
         when(jobService.getJob("job123")).thenReturn(Optional.of(job));
@@ -182,5 +271,59 @@ class JobControllerTest {
             .andExpect(jsonPath("$.errors").isArray())
             .andExpect(jsonPath("$.errors.length()").value(2));
     }
-}
 
+    @Test
+    void shouldCancelRunningJob() throws Exception {
+        JobEntity job = new JobEntity(
+            "job123", "test.csv", JobEntity.JobStatus.CANCELLED,
+            Instant.now(), Instant.now(), null, null, null,
+            null, 0, null, null, null, null, null, null, null
+        );
+        
+        when(jobService.cancelJob("job123")).thenReturn(Optional.of(job));
+
+        mockMvc.perform(delete("/api/v1/validation/jobs/job123"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("CANCELLED"));
+    }
+
+    @Test
+    void shouldRefuseToCancelFinishedJob() throws Exception {
+        JobEntity job = new JobEntity(
+            "job123", "test.csv", JobEntity.JobStatus.COMPLETED,
+            Instant.now(), Instant.now(), new ValidationReportDto(true, 0, 0, 0, List.of()), null, null,
+            null, 0, null, null, null, null, null, null, null
+        );
+        
+        when(jobService.cancelJob("job123")).thenReturn(Optional.of(job));
+
+        mockMvc.perform(delete("/api/v1/validation/jobs/job123"))
+            .andExpect(status().isConflict())
+            .andExpect(jsonPath("$.error").value("JOB_FINISHED"));
+    }
+
+    @Test
+    void shouldReturn404WhenCancellingUnknownJob() throws Exception {
+        when(jobService.cancelJob("nonexistent")).thenReturn(Optional.empty());
+
+        mockMvc.perform(delete("/api/v1/validation/jobs/nonexistent"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldReturnGoneForResultOfCancelledJob() throws Exception {
+        JobEntity job = new JobEntity(
+            "job123", "test.csv", JobEntity.JobStatus.CANCELLED,
+            Instant.now(), Instant.now(), null, null, null,
+            null, 0, null, null, null, null, null, null, null
+        );
+        
+        when(jobService.getJob("job123")).thenReturn(Optional.of(job));
+
+        mockMvc.perform(get("/api/v1/validation/jobs/job123/status"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("CANCELLED"));
+        mockMvc.perform(get("/api/v1/validation/jobs/job123/result"))
+            .andExpect(status().isGone());
+    }
+}
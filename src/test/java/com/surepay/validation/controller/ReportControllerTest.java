@@ -1,7 +1,9 @@
 package com.surepay.validation.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.surepay.validation.config.ValidationProperties;
 import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.reporter.ErrorExportWriter;
 import com.surepay.validation.service.ReportService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,12 +12,20 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -25,6 +35,9 @@ class ReportControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @MockitoBean
     private ReportService reportService;
     
@@ -37,13 +50,14 @@ class ReportControllerTest {
         pagination.setDefaultPageSize(1000);
         pagination.setMaxPageSize(10000);
         when(validationProperties.getPagination()).thenReturn(pagination);
+        when(reportService.getReportVersion("report123")).thenReturn(Optional.of("v1"));
     }
 
     @Test
     void shouldGetReportWithoutErrors() throws Exception {
         ValidationReportDto report = new ValidationReportDto(true, 0, 0, 0, List.of());
         
-        when(reportService.getReport("report123", false)).thenReturn(Optional.of(report));
+        when(reportService.getReportPayload("report123", false, 0)).thenReturn(Optional.of(payload(report)));
 
         mockMvc.perform(get("/api/v1/validation/reports/report123"))
             .andExpect(status().isOk())
@@ -63,7 +77,7 @@ class ReportControllerTest {
             )
         );
         
-        when(reportService.getReport(eq("report123"), eq(true), any())).thenReturn(Optional.of(report));
+        when(reportService.getReportPayload("report123", true, 1000)).thenReturn(Optional.of(payload(report)));
 
         mockMvc.perform(get("/api/v1/validation/reports/report123")
                 .param("errors", "true"))
@@ -84,7 +98,7 @@ class ReportControllerTest {
             )
         );
         
-        when(reportService.getReport(eq("report123"), eq(true), any())).thenReturn(Optional.of(report));
+        when(reportService.getReportWithErrors(eq("report123"), anyInt(), anyInt())).thenReturn(Optional.of(report));
 
         mockMvc.perform(get("/api/v1/validation/reports/report123")
                 .param("errors", "true")
@@ -92,7 +106,39 @@ class ReportControllerTest {
                 .param("size", "2"))
             .andExpect(status().isOk())
             .andExpect(jsonPath("$.errorCount").value(5))
-            .andExpect(jsonPath("$.errors.length()").value(2));
+            .andExpect(jsonPath("$.errors.length()").value(2))
+            .andExpect(header().string("X-Total-Count", "5"))
+            .andExpect(header().string("X-Next-Cursor", "3"));
+        
+        verify(reportService).getReportWithErrors("report123", 1, 2);
+    }
+
+    @Test
+    void shouldGetReportErrorsAfterCursor() throws Exception {
+        ValidationReportDto report = new ValidationReportDto(
+            false, 5, 2, 3,
+            List.of(new ValidationReportDto.ValidationErrorDto("ref5", "desc5", "BALANCE_MISMATCH", "Error"))
+        );
+        
+        when(reportService.getReportWithErrors("report123", 3, 2)).thenReturn(Optional.of(report));
+
+        mockMvc.perform(get("/api/v1/validation/reports/report123")
+                .param("errors", "true")
+                .param("after", "3")
+                .param("size", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.errors.length()").value(1))
+            .andExpect(header().string("X-Total-Count", "5"))
+            .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void shouldRejectNegativeCursor() throws Exception {
+        mockMvc.perform(get("/api/v1/validation/reports/report123")
+                .param("errors", "true")
+                .param("after", "-2"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_INPUT"));
     }
 
     @Test
@@ -102,7 +148,7 @@ class ReportControllerTest {
             List.of(new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "BALANCE_MISMATCH", "Error"))
         );
         
-        when(reportService.getReport(eq("report123"), eq(true), any())).thenReturn(Optional.of(report));
+        when(reportService.getReportPayload("report123", true, 1000)).thenReturn(Optional.of(payload(report)));
 
         mockMvc.perform(get("/api/v1/validation/reports/report123")
                 .param("errors", "true"))
@@ -111,7 +157,7 @@ class ReportControllerTest {
 
     @Test
     void shouldReturnNotFoundForNonExistentReport() throws Exception {
-        when(reportService.getReport("nonexistent", false)).thenReturn(Optional.empty());
+        when(reportService.getReportVersion("nonexistent")).thenReturn(Optional.empty());
 
         mockMvc.perform(get("/api/v1/validation/reports/nonexistent"))
             .andExpect(status().isNotFound());
@@ -119,7 +165,7 @@ class ReportControllerTest {
 
     @Test
     void shouldReturnNotFoundForNonExistentReportWithErrors() throws Exception {
-        when(reportService.getReport(eq("nonexistent"), eq(true), any())).thenReturn(Optional.empty());
+        when(reportService.getReportVersion("nonexistent")).thenReturn(Optional.empty());
 
         mockMvc.perform(get("/api/v1/validation/reports/nonexistent")
                 .param("errors", "true"))
@@ -130,7 +176,7 @@ class ReportControllerTest {
     void shouldHandleReportWithNoErrorsWhenErrorsRequested() throws Exception {
         ValidationReportDto report = new ValidationReportDto(true, 0, 0, 0, List.of());
         
-        when(reportService.getReport(eq("report123"), eq(true), any())).thenReturn(Optional.of(report));
+        when(reportService.getReportPayload("report123", true, 1000)).thenReturn(Optional.of(payload(report)));
 
         mockMvc.perform(get("/api/v1/validation/reports/report123")
                 .param("errors", "true"))
@@ -146,7 +192,7 @@ class ReportControllerTest {
             List.of()
         );
         
-        when(reportService.getReport("report123", false)).thenReturn(Optional.of(report));
+        when(reportService.getReportPayload("report123", false, 0)).thenReturn(Optional.of(payload(report)));
 
         mockMvc.perform(get("/api/v1/validation/reports/report123"))
             .andExpect(status().isOk())
@@ -154,5 +200,124 @@ class ReportControllerTest {
             .andExpect(jsonPath("$.duplicateReferenceCount").value(500))
             .andExpect(jsonPath("$.balanceMismatchCount").value(500));
     }
-}
 
+    @Test
+    void shouldStreamErrorExportAsNdjson() throws Exception {
+        when(reportService.reportExists("report123")).thenReturn(true);
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write("{\"transactionReference\":\"ref1\"}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(reportService).exportErrors(eq("report123"), eq(ErrorExportWriter.Format.NDJSON), any());
+
+        MvcResult result = mockMvc.perform(get("/api/v1/validation/reports/report123/errors/export"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson"))
+            .andExpect(header().string("Content-Disposition", "attachment; filename=\"report123-errors.ndjson\""))
+            .andExpect(content().string("{\"transactionReference\":\"ref1\"}\n"));
+    }
+
+    @Test
+    void shouldExportErrorsAsCsv() throws Exception {
+        when(reportService.reportExists("report123")).thenReturn(true);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/validation/reports/report123/errors/export")
+                .param("format", "csv"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("text/csv"));
+        
+        verify(reportService).exportErrors(eq("report123"), eq(ErrorExportWriter.Format.CSV), any());
+    }
+
+    @Test
+    void shouldReturnNotFoundWhenExportingUnknownReport() throws Exception {
+        when(reportService.reportExists("nonexistent")).thenReturn(false);
+
+        mockMvc.perform(get("/api/v1/validation/reports/nonexistent/errors/export"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldRejectUnsupportedExportFormat() throws Exception {
+        mockMvc.perform(get("/api/v1/validation/reports/report123/errors/export")
+                .param("format", "xml"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_INPUT"));
+    }
+
+    @Test
+    void shouldServeSummaryWithVersionedEtagAndRevalidation() throws Exception {
+        ValidationReportDto report = new ValidationReportDto(true, 0, 0, 0, List.of());
+        
+        when(reportService.getReportPayload("report123", false, 0)).thenReturn(Optional.of(payload(report)));
+
+        mockMvc.perform(get("/api/v1/validation/reports/report123"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"report123.v1\""))
+            .andExpect(header().string("Cache-Control", containsString("no-cache")));
+    }
+
+    @Test
+    void shouldReturnNotModifiedWithoutLoadingReport() throws Exception {
+        mockMvc.perform(get("/api/v1/validation/reports/report123")
+                .header("If-None-Match", "\"report123.v1\""))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string("ETag", "\"report123.v1\""));
+
+        mockMvc.perform(get("/api/v1/validation/reports/report123")
+                .param("errors", "true")
+                .header("If-None-Match", "W/\"other\", \"report123.v1:-1:1000\""))
+            .andExpect(status().isNotModified());
+        
+        verify(reportService, never()).getReportPayload(anyString(), anyBoolean(), anyInt());
+        verify(reportService, never()).getReportWithErrors(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void shouldServeReportAgainAfterItWasRevalidatedUnderOtherRules() throws Exception {
+        ValidationReportDto report = new ValidationReportDto(true, 0, 0, 0, List.of());
+        
+        when(reportService.getReportVersion("report123")).thenReturn(Optional.of("v2"));
+        when(reportService.getReportPayload("report123", false, 0)).thenReturn(Optional.of(payload(report)));
+
+        mockMvc.perform(get("/api/v1/validation/reports/report123")
+                .header("If-None-Match", "\"report123.v1\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"report123.v2\""));
+    }
+
+    @Test
+    void shouldServeFirstErrorPageWithCursorHeaders() throws Exception {
+        ValidationReportDto firstPage = new ValidationReportDto(
+            false, 3, 0, 3,
+            List.of(
+                new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "BALANCE_MISMATCH", "Error"),
+                new ValidationReportDto.ValidationErrorDto("ref2", "desc2", "BALANCE_MISMATCH", "Error")
+            )
+        );
+        
+        when(reportService.getReportPayload("report123", true, 2)).thenReturn(Optional.of(
+            new ReportService.ReportPayload(firstPage, objectMapper.writeValueAsBytes(firstPage), 2)));
+
+        mockMvc.perform(get("/api/v1/validation/reports/report123")
+                .param("errors", "true")
+                .param("size", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.errors.length()").value(2))
+            .andExpect(header().string("ETag", "\"report123.v1:-1:2\""))
+            .andExpect(header().string("X-Total-Count", "3"))
+            .andExpect(header().string("X-Next-Cursor", "1"));
+    }
+
+    private ReportService.ReportPayload payload(ValidationReportDto report) throws Exception {
+        return new ReportService.ReportPayload(report, objectMapper.writeValueAsBytes(report), report.errors().size());
+    }
+}
@@ -0,0 +1,123 @@
+package com.surepay.validation.controller;
+
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.dto.UploadPartResponse;
+import com.surepay.validation.dto.UploadSessionResponse;
+import com.surepay.validation.service.UploadSessionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(UploadSessionController.class)
+class UploadSessionControllerTest {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private UploadSessionService uploadSessionService;
+
+    @Test
+    void shouldCreateUploadSession() throws Exception {
+        when(uploadSessionService.create("big.csv", "text/csv")).thenReturn(
+            new UploadSessionResponse("upload1", "big.csv", "text/csv", Instant.now(), List.of()));
+
+        mockMvc.perform(post("/api/v1/validation/uploads")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"filename\":\"big.csv\"}"))
+            .andExpect(status().isCreated())
+            .andExpect(header().string("Location", "/api/v1/validation/uploads/upload1"))
+            .andExpect(jsonPath("$.uploadId").value("upload1"))
+            .andExpect(jsonPath("$.contentType").value("text/csv"));
+    }
+
+    @Test
+    void shouldRejectUnsupportedFormat() throws Exception {
+        mockMvc.perform(post("/api/v1/validation/uploads")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"filename\":\"big.xml\"}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("UNSUPPORTED_FORMAT"));
+
+        verifyNoInteractions(uploadSessionService);
+    }
+
+    @Test
+    void shouldStorePartFromRawBody() throws Exception {
+        when(uploadSessionService.uploadPart(eq("upload1"), eq(2), any(InputStream.class), anyLong()))
+            .thenReturn(Optional.of(new UploadPartResponse(2, 5, HASH)));
+
+        mockMvc.perform(put("/api/v1/validation/uploads/upload1/parts/2")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content("a,b\n1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"" + HASH + "\""))
+            .andExpect(jsonPath("$.partNumber").value(2))
+            .andExpect(jsonPath("$.hash").value(HASH));
+    }
+
+    @Test
+    void shouldReturnNotFoundForUnknownUpload() throws Exception {
+        when(uploadSessionService.uploadPart(eq("missing"), eq(1), any(InputStream.class), anyLong()))
+            .thenReturn(Optional.empty());
+        when(uploadSessionService.get("missing")).thenReturn(Optional.empty());
+        when(uploadSessionService.complete(eq("missing"), any())).thenReturn(Optional.empty());
+
+        mockMvc.perform(put("/api/v1/validation/uploads/missing/parts/1").content("a"))
+            .andExpect(status().isNotFound())
+            .andExpect(jsonPath("$.error").value("UPLOAD_NOT_FOUND"));
+        mockMvc.perform(get("/api/v1/validation/uploads/missing"))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(post("/api/v1/validation/uploads/missing/complete"))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(delete("/api/v1/validation/uploads/missing"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldSubmitJobOnCompletion() throws Exception {
+        when(uploadSessionService.complete(eq("upload1"), any())).thenReturn(Optional.of(JobEntity.create("job1", "big.csv")));
+
+        mockMvc.perform(post("/api/v1/validation/uploads/upload1/complete"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", "/api/v1/validation/jobs/job1/status"))
+            .andExpect(jsonPath("$.jobId").value("job1"))
+            .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    void shouldRejectCompletionWithMissingParts() throws Exception {
+        when(uploadSessionService.complete(eq("upload1"), any()))
+            .thenThrow(new IllegalArgumentException("Upload upload1 needs parts 1 to 3, has [1, 3]"));
+
+        mockMvc.perform(post("/api/v1/validation/uploads/upload1/complete"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_INPUT"));
+    }
+
+    @Test
+    void shouldAbortUpload() throws Exception {
+        when(uploadSessionService.abort("upload1")).thenReturn(true);
+
+        mockMvc.perform(delete("/api/v1/validation/uploads/upload1"))
+            .andExpect(status().isNoContent());
+    }
+}
@@ -2,22 +2,43 @@ package com.surepay.validation.controller;
 
 import com.surepay.validation.domain.JobEntity;
 import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.service.JobScheduler;
 import com.surepay.validation.service.JobService;
+import com.surepay.validation.service.LoadShedder;
+import com.surepay.validation.config.ValidationProperties;
 import com.surepay.validation.service.ValidationService;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(ValidationController.class)
@@ -32,6 +53,26 @@ class ValidationControllerTest {
     @MockitoBean
     private JobService jobService;
 
+    @MockitoBean
+    private SpoolStore spoolStore;
+
+    @TempDir
+    Path spoolDirectory;
+
+    private final io.micrometer.core.instrument.Counter rejected =
+        new io.micrometer.core.instrument.simple.SimpleMeterRegistry().counter("admission.rejected");
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getSpool().setDirectory(spoolDirectory.toString());
+        SpoolStore realSpoolStore = new SpoolStore(validationProperties);
+        when(spoolStore.spoolStreamed(any(), anyLong())).thenAnswer(invocation ->
+            realSpoolStore.spoolStreamed(invocation.getArgument(0), invocation.getArgument(1)));
+        when(spoolStore.spool(any(), anyLong())).thenAnswer(invocation ->
+            realSpoolStore.spool(invocation.getArgument(0), invocation.getArgument(1)));
+    }
+
     @Test
     void shouldValidateCsvFileSynchronously() throws Exception {
         String csv = """
@@ -48,8 +89,8 @@ class ValidationControllerTest {
         ValidationService.ValidationAndStorageResult result = 
             new ValidationService.ValidationAndStorageResult(reportDto, "hash123", validationResult);
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
-            .thenReturn(result);
+        when(jobService.validateWithin(any(), any(), any(), any()))
+            .thenReturn(JobService.SyncOutcome.finished(result));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
                 .file(file))
@@ -81,8 +122,8 @@ class ValidationControllerTest {
         ValidationService.ValidationAndStorageResult result = 
             new ValidationService.ValidationAndStorageResult(reportDto, "hash123", validationResult);
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
-            .thenReturn(result);
+        when(jobService.validateWithin(any(), any(), any(), any()))
+            .thenReturn(JobService.SyncOutcome.finished(result));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
                 .file(file))
@@ -145,7 +186,7 @@ class ValidationControllerTest {
         
         JobEntity job = JobEntity.create("hash123", "test.csv");
         
-        when(jobService.submitJob(anyString(), any(), anyString(), anyLong()))
+        when(jobService.submitJob(anyString(), any(), anyString(), anyLong(), any(JobScheduler.Submitter.class)))
             .thenReturn(job);
 
         mockMvc.perform(multipart("/api/v1/validation/validate/async")
@@ -212,8 +253,8 @@ class ValidationControllerTest {
         ValidationService.ValidationAndStorageResult result = 
             new ValidationService.ValidationAndStorageResult(reportDto, "hash123", validationResult);
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
-            .thenReturn(result);
+        when(jobService.validateWithin(any(), any(), any(), any()))
+            .thenReturn(JobService.SyncOutcome.finished(result));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
                 .file(file))
@@ -237,12 +278,375 @@ class ValidationControllerTest {
         ValidationService.ValidationAndStorageResult result = 
             new ValidationService.ValidationAndStorageResult(reportDto, "hash123", validationResult);
         
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
-            .thenReturn(result);
+        when(jobService.validateWithin(any(), any(), any(), any()))
+            .thenReturn(JobService.SyncOutcome.finished(result));
 
         mockMvc.perform(multipart("/api/v1/validation/validate")
                 .file(file))
             .andExpect(status().isOk());
     }
-}
 
+    @Test
+    void shouldStreamSynchronousValidationResult() throws Exception {
+        String csv = """
+            Reference,AccountNumber,Description,Start Balance,Mutation,End Balance
+            194261,NL91RABO0315273637,Book John Smith,21.6,-41.83,-20.23
+            194261,NL91RABO0315273637,Duplicate,21.6,-41.83,-20.23
+            """;
+        
+        MockMultipartFile file = new MockMultipartFile(
+            "file", "test.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8)
+        );
+        
+        ValidationReportDto summary = new ValidationReportDto(false, 1, 1, 0, List.of());
+        doAnswer(invocation -> {
+            Consumer<ValidationReportDto.ValidationErrorDto> listener = invocation.getArgument(4);
+            listener.accept(new ValidationReportDto.ValidationErrorDto(
+                "194261", "Duplicate", "DUPLICATE_REFERENCE", "Duplicate transaction reference"));
+            return new ValidationService.ValidationAndStorageResult(
+                summary, "hash123", new com.surepay.validation.domain.ValidationResult());
+        }).when(validationService).validateAndStreamReport(any(), any(), any(), anyLong(), any());
+
+        MvcResult mvcResult = mockMvc.perform(multipart("/api/v1/validation/validate")
+                .file(file)
+                .param("stream", "true"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.errors.length()").value(1))
+            .andExpect(jsonPath("$.errors[0].transactionReference").value("194261"))
+            .andExpect(jsonPath("$.valid").value(false))
+            .andExpect(jsonPath("$.errorCount").value(1))
+            .andExpect(jsonPath("$.reportId").value("hash123"));
+    }
+
+    @Test
+    void shouldReportParseErrorInStreamedResponseTrailer() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+            "file", "test.csv", "text/csv", "Reference\n1".getBytes(StandardCharsets.UTF_8)
+        );
+        
+        when(validationService.validateAndStreamReport(any(), any(), any(), anyLong(), any()))
+            .thenThrow(new com.surepay.validation.parser.ParseException("Invalid CSV format"));
+
+        MvcResult mvcResult = mockMvc.perform(multipart("/api/v1/validation/validate")
+                .file(file)
+                .param("stream", "true"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.errors").isEmpty())
+            .andExpect(jsonPath("$.error.error").value("PARSE_ERROR"));
+    }
+
+    @Test
+    void shouldReturnStoredReportForKnownHashWithoutReadingUpload() throws Exception {
+        String hash = "0123456789abcdef0123456789abcdef";
+        MockMultipartFile file = new MockMultipartFile(
+            "file", "test.csv", "text/csv", "ignored".getBytes(StandardCharsets.UTF_8)
+        );
+        ValidationReportDto reportDto = new ValidationReportDto(true, 0, 0, 0, List.of());
+        when(validationService.findStoredReport(hash)).thenReturn(Optional.of(
+            new ValidationService.ValidationAndStorageResult(reportDto, hash, new com.surepay.validation.domain.ValidationResult())));
+
+        mockMvc.perform(multipart("/api/v1/validation/validate")
+                .file(file)
+                .header("If-None-Match", "\"" + hash + "\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Report-Id", hash))
+            .andExpect(jsonPath("$.valid").value(true));
+
+        verify(jobService, never()).validateWithin(any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldValidateUploadWhenHashIsUnknown() throws Exception {
+        String hash = "0123456789abcdef0123456789abcdef";
+        String csv = """
+            Reference,AccountNumber,Description,Start Balance,Mutation,End Balance
+            194261,NL91RABO0315273637,Book John Smith,21.6,-41.83,-20.23
+            """;
+        MockMultipartFile file = new MockMultipartFile(
+            "file", "test.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8)
+        );
+        ValidationReportDto reportDto = new ValidationReportDto(true, 0, 0, 0, List.of());
+        when(validationService.findStoredReport(hash)).thenReturn(Optional.empty());
+        when(jobService.validateWithin(any(), any(), any(), any())).thenReturn(JobService.SyncOutcome.finished(
+            new ValidationService.ValidationAndStorageResult(reportDto, "other", new com.surepay.validation.domain.ValidationResult())));
+
+        mockMvc.perform(multipart("/api/v1/validation/validate")
+                .file(file)
+                .header("If-None-Match", "\"" + hash + "\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Report-Id", "other"));
+    }
+
+    @Test
+    void shouldShedConditionalUploadLetThroughWhenHashIsUnknown() throws Exception {
+        String hash = "0123456789abcdef0123456789abcdef";
+        MockMultipartFile file = new MockMultipartFile(
+            "file", "test.csv", "text/csv", "ignored".getBytes(StandardCharsets.UTF_8)
+        );
+        when(validationService.findStoredReport(hash)).thenReturn(Optional.empty());
+
+        mockMvc.perform(multipart("/api/v1/validation/validate")
+                .file(file)
+                .header("If-None-Match", "\"" + hash + "\"")
+                .requestAttr(AdmissionFilter.REJECTION_ATTRIBUTE, new LoadShedder.Rejection(java.time.Duration.ofSeconds(7), rejected)))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "7"))
+            .andExpect(jsonPath("$.error").value("TOO_MANY_REQUESTS"));
+
+        verify(jobService, never()).validateWithin(any(), any(), any(), any());
+        assertThat(rejected.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRequireFilePartWhenHashIsUnknown() throws Exception {
+        mockMvc.perform(multipart("/api/v1/validation/validate")
+                .header("If-None-Match", "\"0123456789abcdef0123456789abcdef\""))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_FILE"));
+    }
+
+    @Test
+    void shouldReturnExistingJobForKnownHashWithoutReadingUpload() throws Exception {
+        String hash = "0123456789abcdef0123456789abcdef";
+        MockMultipartFile file = new MockMultipartFile(
+            "file", "test.csv", "text/csv", "ignored".getBytes(StandardCharsets.UTF_8)
+        );
+        JobEntity job = JobEntity.create(hash, "test.csv");
+        when(jobService.findReusableJob(hash, "test.csv")).thenReturn(Optional.of(job));
+
+        mockMvc.perform(multipart("/api/v1/validation/validate/async")
+                .file(file)
+                .header("If-None-Match", "W/\"" + hash + "\"")
+                .header("X-Filename", "test.csv"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", "/api/v1/validation/jobs/" + hash + "/status"))
+            .andExpect(jsonPath("$.jobId").value(hash));
+
+        verify(jobService, never()).submitJob(any(), any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void shouldAnswerConditionalAsyncUploadFromExistingJobWhileShedding() throws Exception {
+        String hash = "0123456789abcdef0123456789abcdef";
+        when(jobService.findReusableJob(hash, "unknown")).thenReturn(Optional.of(JobEntity.create(hash, "test.csv")));
+
+        mockMvc.perform(post("/api/v1/validation/validate/async")
+                .contentType("text/csv")
+                .content("ignored")
+                .header("If-None-Match", "\"" + hash + "\"")
+                .requestAttr(AdmissionFilter.REJECTION_ATTRIBUTE, new LoadShedder.Rejection(java.time.Duration.ofSeconds(7), rejected)))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.jobId").value(hash));
+
+        verify(jobService, never()).submitJob(any(), any(SpooledFile.class), any(), any());
+        // Served from the existing job, so it was not rejected
+        assertThat(rejected.count()).isZero();
+    }
+
+    @Test
+    void shouldValidateStreamedUploadFromSpool() throws Exception {
+        String csv = """
+            Reference,AccountNumber,Description,Start Balance,Mutation,End Balance
+            194261,NL91RABO0315273637,Book John Smith,21.6,-41.83,-20.23
+            """;
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(true, 0, 0, 0, List.of()), "hash123",
+            new com.surepay.validation.domain.ValidationResult());
+        ArgumentCaptor<SpooledFile> spooled = ArgumentCaptor.forClass(SpooledFile.class);
+        when(jobService.validateWithin(spooled.capture(), eq("text/csv"), eq("test.csv"), isNull()))
+            .thenAnswer(invocation -> {
+                try (InputStream in = spooled.getValue().openStream()) {
+                    assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(csv);
+                }
+                return JobService.SyncOutcome.finished(result);
+            });
+
+        mockMvc.perform(post("/api/v1/validation/validate/stream")
+                .contentType("multipart/form-data; boundary=B")
+                .content(multipartBody("test.csv", "application/octet-stream", csv)))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Report-Id", "hash123"))
+            .andExpect(jsonPath("$.valid").value(true));
+
+        verify(spoolStore, never()).spool(any(), anyLong());
+        // The request's length also counts the boundaries, so the part's unknown length is passed on
+        verify(spoolStore).spoolStreamed(any(), eq(-1L));
+        assertThat(Files.exists(spooled.getValue().path())).isTrue();
+    }
+
+    @Test
+    void shouldRejectStreamedUploadOfUnsupportedFormat() throws Exception {
+        mockMvc.perform(post("/api/v1/validation/validate/stream")
+                .contentType("multipart/form-data; boundary=B")
+                .content(multipartBody("test.txt", null, "data")))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("UNSUPPORTED_FORMAT"));
+
+        verify(spoolStore, never()).spoolStreamed(any(), anyLong());
+    }
+
+    @Test
+    void shouldRejectEmptyStreamedUpload() throws Exception {
+        mockMvc.perform(post("/api/v1/validation/validate/stream")
+                .contentType("multipart/form-data; boundary=B")
+                .content(multipartBody("test.csv", "text/csv", "")))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_FILE"));
+    }
+
+    @Test
+    void shouldSubmitStreamedUploadAsJob() throws Exception {
+        JobEntity job = JobEntity.create("hash123", "test.json");
+        when(jobService.submitJob(eq("test.json"), any(SpooledFile.class), eq("application/json"), any())).thenReturn(job);
+
+        mockMvc.perform(post("/api/v1/validation/validate/async/stream")
+                .contentType("multipart/form-data; boundary=B")
+                .content(multipartBody("test.json", null, "[]")))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", "/api/v1/validation/jobs/hash123/status"))
+            .andExpect(jsonPath("$.jobId").value("hash123"));
+    }
+
+    @Test
+    void shouldRequireFilePartForStreamedUpload() throws Exception {
+        mockMvc.perform(post("/api/v1/validation/validate/async/stream")
+                .contentType("multipart/form-data; boundary=B")
+                .content("--B\r\nContent-Disposition: form-data; name=\"comment\"\r\n\r\nx\r\n--B--\r\n"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_FILE"));
+    }
+
+    @Test
+    void shouldValidateRawCsvBody() throws Exception {
+        String csv = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n";
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(true, 0, 0, 0, List.of()), "hash123",
+            new com.surepay.validation.domain.ValidationResult());
+        when(jobService.validateWithin(any(SpooledFile.class), eq("text/csv"), eq("statements.csv"), isNull()))
+            .thenReturn(JobService.SyncOutcome.finished(result));
+
+        mockMvc.perform(post("/api/v1/validation/validate")
+                .contentType("text/csv; charset=UTF-8")
+                .header("X-Filename", "statements.csv")
+                .content(csv))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Report-Id", "hash123"));
+
+        verify(spoolStore).spoolStreamed(any(), anyLong());
+    }
+
+    @Test
+    void shouldReturnStoredReportForRawBodyWithKnownHash() throws Exception {
+        String hash = "0123456789abcdef0123456789abcdef";
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(true, 0, 0, 0, List.of()), hash,
+            new com.surepay.validation.domain.ValidationResult());
+        when(validationService.findStoredReport(hash)).thenReturn(Optional.of(result));
+
+        mockMvc.perform(post("/api/v1/validation/validate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-None-Match", "\"" + hash + "\"")
+                .content("[]"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Report-Id", hash));
+
+        verify(spoolStore, never()).spoolStreamed(any(), anyLong());
+    }
+
+    @Test
+    void shouldSubmitRawJsonBodyAsJob() throws Exception {
+        JobEntity job = JobEntity.create("hash123", "unknown");
+        when(jobService.submitJob(eq("unknown"), any(SpooledFile.class), eq("application/json"), any())).thenReturn(job);
+
+        mockMvc.perform(post("/api/v1/validation/validate/async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", "/api/v1/validation/jobs/hash123/status"))
+            .andExpect(jsonPath("$.jobId").value("hash123"));
+    }
+
+    @Test
+    void shouldScheduleJobForClientAndPriorityFromHeaders() throws Exception {
+        JobEntity job = JobEntity.create("hash123", "unknown");
+        when(jobService.submitJob(eq("unknown"), any(SpooledFile.class), eq("application/json"), any())).thenReturn(job);
+
+        mockMvc.perform(post("/api/v1/validation/validate/async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Client-Id", "payments")
+                .header("X-Job-Priority", "interactive")
+                .content("[]"))
+            .andExpect(status().isAccepted());
+
+        verify(jobService).submitJob(eq("unknown"), any(SpooledFile.class), eq("application/json"),
+            eq(new JobScheduler.Submitter("payments", JobEntity.Priority.INTERACTIVE)));
+    }
+
+    @Test
+    void shouldRejectUnknownJobPriority() throws Exception {
+        mockMvc.perform(post("/api/v1/validation/validate/async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Job-Priority", "urgent")
+                .content("[]"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_INPUT"));
+
+        verify(spoolStore, never()).spoolStreamed(any(), anyLong());
+    }
+
+    @Test
+    void shouldReturnJobWhenSyncValidationMissesDeadline() throws Exception {
+        String csv = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n";
+        JobEntity job = JobEntity.create("hash123", "statements.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        when(jobService.validateWithin(any(SpooledFile.class), eq("text/csv"), eq("statements.csv"), eq(Duration.ofMillis(500))))
+            .thenReturn(JobService.SyncOutcome.promoted(job));
+
+        mockMvc.perform(post("/api/v1/validation/validate")
+                .contentType("text/csv")
+                .header("X-Filename", "statements.csv")
+                .header("X-Sync-Deadline", "500ms")
+                .content(csv))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", "/api/v1/validation/jobs/hash123/status"))
+            .andExpect(jsonPath("$.jobId").value("hash123"))
+            .andExpect(jsonPath("$.status").value("PROCESSING"));
+    }
+
+    @Test
+    void shouldRejectInvalidSyncDeadline() throws Exception {
+        mockMvc.perform(post("/api/v1/validation/validate")
+                .contentType("text/csv")
+                .header("X-Sync-Deadline", "soon")
+                .content("Reference\n"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_INPUT"));
+
+        verify(spoolStore, never()).spoolStreamed(any(), anyLong());
+    }
+
+    @Test
+    void shouldRejectEmptyRawBody() throws Exception {
+        mockMvc.perform(post("/api/v1/validation/validate/async")
+                .contentType("text/csv"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("INVALID_FILE"));
+
+        verify(jobService, never()).submitJob(any(), any(SpooledFile.class), any(), any());
+    }
+
+    private static byte[] multipartBody(String filename, String contentType, String content) {
+        String body = "--B\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+            + (contentType != null ? "Content-Type: " + contentType + "\r\n" : "")
+            + "\r\n" + content + "\r\n--B--\r\n";
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+}
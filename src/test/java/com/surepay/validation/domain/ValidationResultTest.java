@@ -0,0 +1,77 @@
+package com.surepay.validation.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ValidationResultTest {
+
+    private static final ValidationError DUPLICATE =
+        new ValidationError("ref1", "desc1", ValidationError.ErrorType.DUPLICATE_REFERENCE);
+    private static final ValidationError MISMATCH =
+        new ValidationError("ref2", "desc2", ValidationError.ErrorType.BALANCE_MISMATCH);
+
+    @Test
+    void shouldCountAndRetainErrors() {
+        ValidationResult result = new ValidationResult();
+
+        result.addError(DUPLICATE);
+        result.addError(MISMATCH);
+        result.addError(MISMATCH);
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getErrorCount()).isEqualTo(3);
+        assertThat(result.getDuplicateReferenceCount()).isEqualTo(1);
+        assertThat(result.getBalanceMismatchCount()).isEqualTo(2);
+        assertThat(result.getErrors()).containsExactly(DUPLICATE, MISMATCH, MISMATCH);
+    }
+
+    @Test
+    void shouldForwardErrorsWithoutRetainingThemWhenStreaming() {
+        List<ValidationError> forwarded = new ArrayList<>();
+        ValidationResult result = ValidationResult.streaming(forwarded::add);
+
+        result.addError(DUPLICATE);
+        result.addError(MISMATCH);
+
+        assertThat(forwarded).containsExactly(DUPLICATE, MISMATCH);
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(result.getErrorCount()).isEqualTo(2);
+        assertThat(result.isValid()).isFalse();
+    }
+
+    @Test
+    void shouldRetainAndForwardErrorsWithListener() {
+        List<ValidationError> forwarded = new ArrayList<>();
+        ValidationResult result = ValidationResult.withListener(forwarded::add);
+
+        result.addError(DUPLICATE);
+
+        assertThat(forwarded).containsExactly(DUPLICATE);
+        assertThat(result.getErrors()).containsExactly(DUPLICATE);
+    }
+
+    @Test
+    void shouldOnlyCountErrorsOnceItStopsRetainingThem() {
+        List<ValidationError> forwarded = new ArrayList<>();
+        ValidationResult result = ValidationResult.withListener(forwarded::add);
+        result.addError(DUPLICATE);
+
+        result.stopRetaining();
+        result.addError(MISMATCH);
+
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(forwarded).containsExactly(DUPLICATE, MISMATCH);
+        assertThat(result.getErrorCount()).isEqualTo(2);
+        assertThat(result.getBalanceMismatchCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldBeValidWithoutErrors() {
+        assertThat(new ValidationResult().isValid()).isTrue();
+        assertThat(ValidationResult.streaming(error -> {}).isValid()).isTrue();
+    }
+}
@@ -0,0 +1,82 @@
+package com.surepay.validation.reporter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ErrorExportWriterTest {
+
+    private ErrorExportWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new ErrorExportWriter(new ObjectMapper());
+    }
+
+    @Test
+    void shouldWriteOneJsonObjectPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = writer.write(sampleErrors(), ErrorExportWriter.Format.NDJSON, out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(count).isEqualTo(2);
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).isEqualTo(
+            "{\"transactionReference\":\"112806\",\"description\":\"Book Peter de Vries\","
+                + "\"errorType\":\"DUPLICATE_REFERENCE\",\"errorMessage\":\"Duplicate transaction reference\"}");
+        assertThat(lines.get(1)).startsWith("{\"transactionReference\":\"167875\"");
+    }
+
+    @Test
+    void shouldWriteCsvWithHeader() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = writer.write(sampleErrors(), ErrorExportWriter.Format.CSV, out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(count).isEqualTo(2);
+        assertThat(lines).containsExactly(
+            "transactionReference,description,errorType,errorMessage",
+            "112806,Book Peter de Vries,DUPLICATE_REFERENCE,Duplicate transaction reference",
+            "167875,\"Toy, Greg\",BALANCE_MISMATCH,End balance does not match calculated balance"
+        );
+    }
+
+    @Test
+    void shouldWriteNothingForEmptyNdjsonExport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = writer.write(Stream.empty(), ErrorExportWriter.Format.NDJSON, out);
+
+        assertThat(count).isZero();
+        assertThat(out.size()).isZero();
+    }
+
+    @Test
+    void shouldParseFormatCaseInsensitively() {
+        assertThat(ErrorExportWriter.Format.fromString("NdJson")).isEqualTo(ErrorExportWriter.Format.NDJSON);
+        assertThat(ErrorExportWriter.Format.fromString("csv")).isEqualTo(ErrorExportWriter.Format.CSV);
+        assertThatThrownBy(() -> ErrorExportWriter.Format.fromString("xml"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Unsupported export format");
+    }
+
+    private Stream<ValidationReportDto.ValidationErrorDto> sampleErrors() {
+        return Stream.of(
+            new ValidationReportDto.ValidationErrorDto(
+                "112806", "Book Peter de Vries", "DUPLICATE_REFERENCE", "Duplicate transaction reference"),
+            new ValidationReportDto.ValidationErrorDto(
+                "167875", "Toy, Greg", "BALANCE_MISMATCH", "End balance does not match calculated balance")
+        );
+    }
+}
@@ -0,0 +1,61 @@
+package com.surepay.validation.reporter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.dto.ErrorResponse;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingReportWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void shouldStartResponseBeforeValidationFinishes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (StreamingReportWriter writer = new StreamingReportWriter(objectMapper, out)) {
+            assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("{\"errors\":[");
+        }
+    }
+
+    @Test
+    void shouldWriteErrorsFollowedBySummaryTrailer() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (StreamingReportWriter writer = new StreamingReportWriter(objectMapper, out)) {
+            writer.writeError(new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Duplicate"));
+            writer.writeError(new ValidationReportDto.ValidationErrorDto("ref2", "desc2", "BALANCE_MISMATCH", "Mismatch"));
+            writer.finish(new ValidationReportDto(false, 2, 1, 1, List.of()), "hash123");
+        }
+
+        JsonNode json = objectMapper.readTree(out.toByteArray());
+        assertThat(json.get("errors")).hasSize(2);
+        assertThat(json.get("errors").get(1).get("transactionReference").asText()).isEqualTo("ref2");
+        assertThat(json.get("valid").asBoolean()).isFalse();
+        assertThat(json.get("errorCount").asInt()).isEqualTo(2);
+        assertThat(json.get("duplicateReferenceCount").asLong()).isEqualTo(1);
+        assertThat(json.get("balanceMismatchCount").asLong()).isEqualTo(1);
+        assertThat(json.get("reportId").asText()).isEqualTo("hash123");
+    }
+
+    @Test
+    void shouldWriteErrorTrailerWhenValidationFails() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (StreamingReportWriter writer = new StreamingReportWriter(objectMapper, out)) {
+            writer.fail(ErrorResponse.of("PARSE_ERROR", "Failed to parse file"));
+        }
+
+        JsonNode json = objectMapper.readTree(out.toByteArray());
+        assertThat(json.get("errors")).isEmpty();
+        assertThat(json.get("error").get("error").asText()).isEqualTo("PARSE_ERROR");
+        assertThat(json.has("valid")).isFalse();
+    }
+}
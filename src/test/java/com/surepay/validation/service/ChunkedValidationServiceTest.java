@@ -0,0 +1,438 @@
+package com.surepay.validation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ChunkResultEntity;
+import com.surepay.validation.domain.Transaction;
+import com.surepay.validation.domain.ValidationCheckpoint;
+import com.surepay.validation.domain.ValidationError;
+import com.surepay.validation.domain.ValidationResult;
+import com.surepay.validation.parser.CsvTransactionParser;
+import com.surepay.validation.parser.JsonTransactionParser;
+import com.surepay.validation.repository.ChunkResultRepository;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import com.surepay.validation.validator.BalanceValidator;
+import com.surepay.validation.validator.TransactionValidator;
+import com.surepay.validation.validator.UniquenessValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkedValidationServiceTest {
+
+    private static final String HEADER = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n";
+
+    @Mock
+    private ChunkResultRepository chunkResultRepository;
+
+    @TempDir
+    Path spoolDirectory;
+
+    private final Map<String, ChunkResultEntity> storedChunks = new HashMap<>();
+    private final CsvTransactionParser csvParser = new CsvTransactionParser();
+    private ValidationProperties validationProperties;
+    private List<TransactionValidator> validators;
+    private SpoolStore spoolStore;
+    private JobExecutors jobExecutors;
+    private ChunkedValidationService service;
+
+    @BeforeEach
+    void setUp() {
+        validationProperties = new ValidationProperties();
+        validationProperties.getSpool().setDirectory(spoolDirectory.toString());
+        validationProperties.getChunking().setMinSize(256);
+        validationProperties.getChunking().setAverageSize(1024);
+        validationProperties.getChunking().setMaxSize(4096);
+        validators = List.of(new UniquenessValidator(), new BalanceValidator(validationProperties));
+        spoolStore = new SpoolStore(validationProperties);
+        jobExecutors = new JobExecutors(validationProperties, new SimpleMeterRegistry());
+        service = new ChunkedValidationService(validators, csvParser, chunkResultRepository, jobExecutors, validationProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutors.shutdown();
+    }
+
+    @Test
+    void shouldReportSameErrorsAsSinglePassValidation() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 3000);
+
+        assertThat(errorsOf(csv)).isNotEmpty().isEqualTo(singlePassErrors(csv));
+    }
+
+    @Test
+    void shouldOnlyRunParsingAndRulesOnCpuPool() throws Exception {
+        stubRepository();
+        Set<String> repositoryThreads = ConcurrentHashMap.newKeySet();
+        Set<String> ruleThreads = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            repositoryThreads.add(Thread.currentThread().getName());
+            return invocation.getArgument(0);
+        }).when(chunkResultRepository).saveAll(any());
+        TransactionValidator recordingRule = new TransactionValidator() {
+            @Override
+            public void validate(Transaction transaction, ValidationResult result) {
+                ruleThreads.add(Thread.currentThread().getName());
+                result.addError(new ValidationError(transaction.reference(), "recorded", ValidationError.ErrorType.BALANCE_MISMATCH));
+            }
+        };
+        validators = List.of(new UniquenessValidator(), recordingRule);
+        service = new ChunkedValidationService(validators, csvParser, chunkResultRepository, jobExecutors, validationProperties);
+
+        Set<String> listenerThreads = ConcurrentHashMap.newKeySet();
+        try (SpooledFile file = spool(HEADER + rows(0, 3000))) {
+            service.validate(file, csvParser, ValidationResult.streaming(error ->
+                listenerThreads.add(Thread.currentThread().getName())));
+        }
+
+        assertThat(ruleThreads).isNotEmpty().allMatch(name -> name.startsWith("validation-cpu-"));
+        assertThat(repositoryThreads).isNotEmpty().noneMatch(name -> name.startsWith("validation-cpu-"));
+        // Errors are handed to the result after each batch, so storing or streaming them stays off the pool
+        assertThat(listenerThreads).isNotEmpty().noneMatch(name -> name.startsWith("validation-cpu-"));
+    }
+
+    @Test
+    void shouldOnlyValidateNewChunksOfAnAppendedFile() throws Exception {
+        stubRepository();
+        String original = HEADER + rows(0, 3000);
+        errorsOf(original);
+        int originalChunks = storedChunks.size();
+        clearInvocations(chunkResultRepository);
+
+        String appended = original + rows(3000, 20) + "REF000010,NL01,Repeated,1.00,1.00,2.00\n";
+
+        assertThat(errorsOf(appended)).isEqualTo(singlePassErrors(appended));
+        ArgumentCaptor<List<ChunkResultEntity>> saved = ArgumentCaptor.captor();
+        verify(chunkResultRepository, atLeastOnce()).saveAll(saved.capture());
+        int validatedAgain = saved.getAllValues().stream().mapToInt(List::size).sum();
+        assertThat(validatedAgain).isPositive().isLessThanOrEqualTo(2);
+        assertThat(originalChunks).isGreaterThan(10);
+    }
+
+    @Test
+    void shouldOnlyTouchReusedChunksLastUsedLongAgo() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 3000);
+        errorsOf(csv);
+        clearInvocations(chunkResultRepository);
+
+        errorsOf(csv);
+        verify(chunkResultRepository, never()).touchAll(any(), any());
+
+        Instant longAgo = Instant.now().minus(Duration.ofDays(20));
+        storedChunks.replaceAll((hash, chunk) -> new ChunkResultEntity(
+            hash, chunk.rowCount(), chunk.referenceFingerprints(), chunk.ruleErrors(), chunk.createdAt(), longAgo));
+        errorsOf(csv);
+
+        ArgumentCaptor<Collection<String>> touched = ArgumentCaptor.captor();
+        verify(chunkResultRepository, atLeastOnce()).touchAll(touched.capture(), any());
+        assertThat(touched.getAllValues().stream().mapToInt(Collection::size).sum()).isEqualTo(storedChunks.size());
+    }
+
+    @Test
+    void shouldFindDuplicatesInsideReusedChunks() throws Exception {
+        stubRepository();
+        String rows = rows(0, 3000);
+        errorsOf(HEADER + rows);
+
+        // The prepended row makes a later, unchanged row a duplicate
+        String prepended = HEADER + "REF002500,NL01,Early,1.00,1.00,2.00\n" + rows;
+
+        List<ValidationError> errors = errorsOf(prepended);
+        assertThat(errors).isEqualTo(singlePassErrors(prepended));
+        assertThat(errors).anyMatch(error -> error.transactionReference().equals("REF002500")
+            && error.errorType() == ValidationError.ErrorType.DUPLICATE_REFERENCE);
+    }
+
+    @Test
+    void shouldRerunOnlyChangedRuleOnStoredChunks() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 3000);
+        errorsOf(csv);
+        Map<String, ChunkResultEntity> before = new HashMap<>(storedChunks);
+
+        validationProperties.getBalance().setTolerance(new java.math.BigDecimal("5"));
+        List<ValidationError> errors = errorsOf(csv);
+
+        assertThat(errors).isEqualTo(singlePassErrors(csv));
+        assertThat(errors).noneMatch(error -> error.errorType() == ValidationError.ErrorType.BALANCE_MISMATCH);
+        storedChunks.forEach((hash, chunk) -> {
+            assertThat(chunk.ruleErrors()).hasSize(2);
+            assertThat(chunk.referenceFingerprints()).isSameAs(before.get(hash).referenceFingerprints());
+        });
+    }
+
+    @Test
+    void shouldReuseChunksValidatedPerPart() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 3000);
+        int partBoundary = csv.indexOf("REF001500,");
+        try (SpooledFile file = spool(csv)) {
+            byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+            service.prevalidate(file.path(), header.length, partBoundary - header.length, header);
+            service.prevalidate(file.path(), partBoundary, csv.length() - partBoundary, header);
+        }
+        int prevalidated = storedChunks.size();
+        assertThat(prevalidated).isGreaterThan(30);
+        clearInvocations(chunkResultRepository);
+
+        assertThat(errorsOf(csv)).isEqualTo(singlePassErrors(csv));
+        ArgumentCaptor<List<ChunkResultEntity>> saved = ArgumentCaptor.captor();
+        verify(chunkResultRepository, atLeastOnce()).saveAll(saved.capture());
+        int validatedAgain = saved.getAllValues().stream().mapToInt(List::size).sum();
+        // Only the chunks around the header and the part boundary
+        assertThat(validatedAgain).isLessThan(prevalidated / 4);
+    }
+
+    @Test
+    void shouldResumeFromCheckpointWithSameReport() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 20000);
+        try (SpooledFile file = spool(csv)) {
+            ValidationResult full = new ValidationResult();
+            RecordingCheckpoints recording = new RecordingCheckpoints(full, null, null);
+            assertThat(service.validate(file, csvParser, full, recording)).isTrue();
+            assertThat(recording.saved).hasSizeGreaterThan(1);
+
+            ValidationCheckpoint checkpoint = recording.saved.get(1);
+            byte[] snapshot = Arrays.copyOf(recording.references.toByteArray(), (int) checkpoint.referenceSnapshotBytes());
+            ValidationResult resumed = new ValidationResult();
+            RecordingCheckpoints resuming = new RecordingCheckpoints(resumed, checkpoint, snapshot);
+            assertThat(service.validate(file, csvParser, resumed, resuming)).isTrue();
+
+            assertThat(resuming.resumed).isTrue();
+            List<ValidationError> combined = new ArrayList<>(full.getErrors().subList(0, checkpoint.errorCount()));
+            combined.addAll(resumed.getErrors());
+            assertThat(combined).isEqualTo(singlePassErrors(csv));
+            assertThat(resumed.getErrorCount()).isEqualTo(full.getErrorCount());
+            assertThat(resumed.getDuplicateReferenceCount()).isEqualTo(full.getDuplicateReferenceCount());
+            assertThat(checkpoint.rowCount())
+                .isEqualTo(csv.substring(0, (int) checkpoint.byteOffset()).chars().filter(c -> c == '\n').count() - 1);
+        }
+    }
+
+    @Test
+    void shouldStopBeforeNextChunkOnceStopped() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 20000);
+        try (SpooledFile file = spool(csv)) {
+            ValidationResult result = new ValidationResult();
+            RecordingCheckpoints checkpoints = new RecordingCheckpoints(result, null, null);
+            checkpoints.stopAfterSaves = 1;
+
+            assertThatThrownBy(() -> service.validate(file, csvParser, result, checkpoints))
+                .isInstanceOf(CancellationException.class)
+                .hasMessageContaining("stopped at byte " + checkpoints.saved.get(0).byteOffset());
+
+            assertThat(checkpoints.saved).hasSize(1);
+            assertThat(result.getErrorCount()).isEqualTo(checkpoints.saved.get(0).errorCount());
+        }
+    }
+
+    @Test
+    void shouldReportProgressBeforeEveryChunk() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 20000);
+        try (SpooledFile file = spool(csv)) {
+            ValidationResult result = new ValidationResult();
+            RecordingCheckpoints checkpoints = new RecordingCheckpoints(result, null, null);
+
+            assertThat(service.validate(file, csvParser, result, checkpoints)).isTrue();
+
+            assertThat(checkpoints.progress).hasSizeGreaterThan(1);
+            assertThat(checkpoints.progress.get(0)).containsExactly(HEADER.length(), 0);
+            for (long[] progress : checkpoints.progress) {
+                assertThat(progress[1])
+                    .isEqualTo(csv.substring(0, (int) progress[0]).chars().filter(c -> c == '\n').count() - 1);
+            }
+        }
+    }
+
+    @Test
+    void shouldStartOverWhenCheckpointDoesNotMatchChunks() throws Exception {
+        stubRepository();
+        String csv = HEADER + rows(0, 3000);
+        ValidationCheckpoint elsewhere = new ValidationCheckpoint(
+            "rules", 2, 12345, 10, 1, null, 0, 1, "refs", 0, Instant.now());
+        try (SpooledFile file = spool(csv)) {
+            ValidationResult result = new ValidationResult();
+            RecordingCheckpoints checkpoints = new RecordingCheckpoints(result, elsewhere, new byte[0]);
+
+            assertThat(service.validate(file, csvParser, result, checkpoints)).isTrue();
+
+            assertThat(checkpoints.resumed).isFalse();
+            assertThat(result.getErrors()).isEqualTo(singlePassErrors(csv));
+        }
+    }
+
+    @Test
+    void shouldDeclineNonCsvParsersAndDisabledChunking() throws Exception {
+        try (SpooledFile file = spool(HEADER + rows(0, 10))) {
+            JsonTransactionParser jsonParser = new JsonTransactionParser(new ObjectMapper());
+            assertThat(service.validate(file, jsonParser, new ValidationResult())).isFalse();
+
+            validationProperties.getChunking().setEnabled(false);
+            assertThat(service.validate(file, csvParser, new ValidationResult())).isFalse();
+        }
+        verifyNoInteractions(chunkResultRepository);
+    }
+
+    private void stubRepository() {
+        when(chunkResultRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<ChunkResultEntity> found = new ArrayList<>();
+            Iterable<String> ids = invocation.getArgument(0);
+            ids.forEach(id -> {
+                if (storedChunks.containsKey(id)) {
+                    found.add(storedChunks.get(id));
+                }
+            });
+            return found;
+        });
+        lenient().when(chunkResultRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<ChunkResultEntity> chunks = invocation.getArgument(0);
+            chunks.forEach(chunk -> storedChunks.put(chunk.chunkHash(), chunk));
+            return chunks;
+        });
+    }
+
+    private List<ValidationError> errorsOf(String csv) throws Exception {
+        try (SpooledFile file = spool(csv)) {
+            ValidationResult result = new ValidationResult();
+            assertThat(service.validate(file, csvParser, result)).isTrue();
+            return result.getErrors();
+        }
+    }
+
+    private List<ValidationError> singlePassErrors(String csv) throws Exception {
+        ValidationResult result = new ValidationResult();
+        ScopedValue.where(UniquenessValidator.getScopedValue(), new HashSet<>()).call(() -> {
+            try (Stream<Transaction> transactions = csvParser.parse(
+                    new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))) {
+                transactions.forEach(transaction ->
+                    validators.forEach(validator -> validator.validate(transaction, result)));
+            }
+            return null;
+        });
+        return result.getErrors();
+    }
+
+    private SpooledFile spool(String csv) throws Exception {
+        byte[] data = csv.getBytes(StandardCharsets.UTF_8);
+        return spoolStore.spool(new ByteArrayInputStream(data), data.length);
+    }
+
+    /**
+     * Checkpoints that are due after every batch and keep everything in memory.
+     */
+    private static final class RecordingCheckpoints implements ChunkedValidationService.Checkpoints {
+        final ByteArrayOutputStream references = new ByteArrayOutputStream();
+        final List<ValidationCheckpoint> saved = new ArrayList<>();
+        final List<long[]> progress = new ArrayList<>();
+        final ValidationResult result;
+        final ValidationCheckpoint resumePoint;
+        final byte[] resumeReferences;
+        boolean resumed;
+        int stopAfterSaves = Integer.MAX_VALUE;
+
+        RecordingCheckpoints(ValidationResult result, ValidationCheckpoint resumePoint, byte[] resumeReferences) {
+            this.result = result;
+            this.resumePoint = resumePoint;
+            this.resumeReferences = resumeReferences;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public Optional<ValidationCheckpoint> resumePoint() {
+            return Optional.ofNullable(resumePoint);
+        }
+
+        @Override
+        public DataInputStream openReferences() {
+            return new DataInputStream(new ByteArrayInputStream(resumeReferences));
+        }
+
+        @Override
+        public void resume(ValidationCheckpoint checkpoint) {
+            result.resumeFrom(checkpoint);
+            resumed = true;
+        }
+
+        @Override
+        public void appendReferences(ByteBuffer bytes) {
+            references.write(bytes.array(), bytes.position(), bytes.remaining());
+        }
+
+        @Override
+        public boolean isStopped() {
+            return saved.size() >= stopAfterSaves;
+        }
+
+        @Override
+        public void progress(long byteOffset, long rowCount) {
+            progress.add(new long[] {byteOffset, rowCount});
+        }
+
+        @Override
+        public boolean isDue() {
+            return true;
+        }
+
+        @Override
+        public void save(int nextChunk, long byteOffset, long rowCount) {
+            saved.add(new ValidationCheckpoint("rules", nextChunk, byteOffset, rowCount, result.getErrorCount(), null,
+                result.getDuplicateReferenceCount(), result.getBalanceMismatchCount(), "refs", references.size(), Instant.now()));
+        }
+    }
+
+    private static String rows(int from, int count) {
+        StringBuilder rows = new StringBuilder();
+        for (int i = from; i < from + count; i++) {
+            // Every 7th row has a wrong end balance, every 13th repeats an earlier reference
+            int reference = i % 13 == 12 ? i - 5 : i;
+            int endBalance = i % 7 == 0 ? i + 2 : i + 1;
+            rows.append(String.format("REF%06d,NL91RABO%010d,Payment %d,%d.00,1.00,%d.00\n",
+                reference, i * 31L, i, i, endBalance));
+        }
+        return rows.toString();
+    }
+}
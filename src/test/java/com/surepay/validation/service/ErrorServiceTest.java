@@ -3,25 +3,29 @@ package com.surepay.validation.service;
 import com.surepay.validation.domain.ErrorEntity;
 import com.surepay.validation.dto.ValidationReportDto;
 import com.surepay.validation.repository.ErrorRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
 class ErrorServiceTest {
 
     @Mock
@@ -30,155 +34,192 @@ class ErrorServiceTest {
     @Mock
     private MongoTemplate mongoTemplate;
 
+    private final JobExecutors jobExecutors =
+        new JobExecutors(new com.surepay.validation.config.ValidationProperties(), new SimpleMeterRegistry());
     private ErrorService errorService;
 
     @BeforeEach
     void setUp() {
         com.surepay.validation.config.ValidationProperties validationProperties = new com.surepay.validation.config.ValidationProperties();
         validationProperties.getError().setBatchSize(1000);
-        errorService = new ErrorService(errorRepository, mongoTemplate, validationProperties);
+        validationProperties.getExport().setBatchSize(1000);
+        errorService = new ErrorService(errorRepository, mongoTemplate, validationProperties, jobExecutors);
     }
 
-    @Test
-    void shouldStoreErrors() {
-        String reportId = "testreport123";
-        ValidationReportDto.ValidationErrorDto error1 = new ValidationReportDto.ValidationErrorDto(
-            "ref1", "desc1", "DUPLICATE_REFERENCE", "Duplicate reference"
-        );
-        ValidationReportDto.ValidationErrorDto error2 = new ValidationReportDto.ValidationErrorDto(
-            "ref2", "desc2", "BALANCE_MISMATCH", "Balance mismatch"
-        );
-        List<ValidationReportDto.ValidationErrorDto> errors = List.of(error1, error2);
-        
-        when(errorRepository.countByReportId(reportId)).thenReturn(0L);
-        // insertAll returns void, so we don't need to mock it - just verify it's called
-
-        errorService.storeErrors(reportId, errors);
-
-        verify(mongoTemplate, atLeastOnce()).insertAll(any());
+    @AfterEach
+    void tearDown() {
+        jobExecutors.shutdown();
     }
 
     @Test
-    void shouldNotStoreErrorsWhenAlreadyExist() {
+    void shouldWriteErrorsInBatchesAsTheyArrive() {
+        com.surepay.validation.config.ValidationProperties properties = new com.surepay.validation.config.ValidationProperties();
+        properties.getError().setBatchSize(2);
+        ErrorService batchingService = new ErrorService(errorRepository, mongoTemplate, properties, jobExecutors);
         String reportId = "testreport123";
-        ValidationReportDto.ValidationErrorDto error = new ValidationReportDto.ValidationErrorDto(
-            "ref1", "desc1", "DUPLICATE_REFERENCE", "Duplicate"
-        );
-        List<ValidationReportDto.ValidationErrorDto> errors = List.of(error);
         
-        when(errorRepository.countByReportId(reportId)).thenReturn(5L);
-
-        errorService.storeErrors(reportId, errors);
-
+        ErrorBatchWriter writer = batchingService.openWriter(reportId, "rules1", "gen1");
+        writer.write(new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Error"));
         verify(mongoTemplate, never()).insertAll(any());
+        writer.write(new ValidationReportDto.ValidationErrorDto("ref2", "desc2", "BALANCE_MISMATCH", "Error"));
+        writer.write(new ValidationReportDto.ValidationErrorDto("ref3", "desc3", "BALANCE_MISMATCH", "Error"));
+        writer.flush();
+        
+        org.mockito.ArgumentCaptor<List<ErrorEntity>> captor = org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(mongoTemplate, times(2)).insertAll(captor.capture());
+        assertThat(captor.getAllValues().get(0)).extracting(ErrorEntity::index).containsExactly(0, 1);
+        assertThat(captor.getAllValues().get(1)).extracting(ErrorEntity::index).containsExactly(2);
+        assertThat(captor.getAllValues().get(0)).extracting(ErrorEntity::generation).containsOnly("gen1");
+        assertThat(writer.getWrittenCount()).isEqualTo(3);
+        verify(errorRepository, times(1)).deleteByReportIdAndRuleSetFingerprintAndGeneration(reportId, "rules1", "gen1");
     }
 
     @Test
-    void shouldNotStoreErrorsWhenListIsEmpty() {
-        String reportId = "testreport123";
-        
-        errorService.storeErrors(reportId, java.util.List.of());
-
-        verify(mongoTemplate, never()).insertAll(any());
+    void shouldKeepErrorsOfInterleavedRunsOfSameReportApart() {
+        com.surepay.validation.config.ValidationProperties properties = new com.surepay.validation.config.ValidationProperties();
+        properties.getError().setBatchSize(2);
+        ErrorService batchingService = new ErrorService(errorRepository, mongoTemplate, properties, jobExecutors);
+        List<ErrorEntity> stored = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+        doAnswer(invocation -> {
+            stored.addAll(invocation.getArgument(0));
+            return null;
+        }).when(mongoTemplate).insertAll(any());
+        doAnswer(invocation -> {
+            String generation = invocation.getArgument(2);
+            stored.removeIf(error -> generation.equals(error.generation()));
+            return null;
+        }).when(errorRepository).deleteByReportIdAndRuleSetFingerprintAndGeneration(eq("testreport123"), eq("rules1"), anyString());
+
+        ErrorBatchWriter first = batchingService.openWriter("testreport123", "rules1");
+        ErrorBatchWriter second = batchingService.openWriter("testreport123", "rules1");
+        for (int i = 0; i < 5; i++) {
+            first.write(new ValidationReportDto.ValidationErrorDto("first" + i, "desc", "BALANCE_MISMATCH", "Error"));
+            second.write(new ValidationReportDto.ValidationErrorDto("second" + i, "desc", "BALANCE_MISMATCH", "Error"));
+            if (i == 2) {
+                // Flushing the first run mid-way mirrors a checkpoint while the other run keeps writing
+                first.flush();
+            }
+        }
+        first.flush();
+        second.flush();
+
+        assertThat(first.getGeneration()).isNotEqualTo(second.getGeneration());
+        assertThat(stored).filteredOn(error -> error.generation().equals(first.getGeneration()))
+            .extracting(ErrorEntity::index, ErrorEntity::transactionReference)
+            .containsExactlyInAnyOrder(
+                tuple(0, "first0"), tuple(1, "first1"), tuple(2, "first2"), tuple(3, "first3"), tuple(4, "first4"));
+        assertThat(stored).filteredOn(error -> error.generation().equals(second.getGeneration()))
+            .extracting(ErrorEntity::index, ErrorEntity::transactionReference)
+            .containsExactlyInAnyOrder(
+                tuple(0, "second0"), tuple(1, "second1"), tuple(2, "second2"), tuple(3, "second3"), tuple(4, "second4"));
+        assertThat(stored).hasSize(10);
     }
 
     @Test
-    void shouldNotStoreErrorsWhenListIsNull() {
-        String reportId = "testreport123";
+    void shouldReportFailedBatchInsertOnFlush() {
+        com.surepay.validation.config.ValidationProperties properties = new com.surepay.validation.config.ValidationProperties();
+        properties.getError().setBatchSize(1);
+        ErrorService batchingService = new ErrorService(errorRepository, mongoTemplate, properties, jobExecutors);
+        when(mongoTemplate.insertAll(any())).thenThrow(new IllegalStateException("write failed"));
         
-        errorService.storeErrors(reportId, null);
+        ErrorBatchWriter writer = batchingService.openWriter("testreport123", "rules1");
+        writer.write(new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Error"));
+        
+        assertThatThrownBy(writer::flush).isInstanceOf(IllegalStateException.class).hasMessage("write failed");
+    }
 
-        verify(mongoTemplate, never()).insertAll(any());
+    @Test
+    void shouldKeepErrorsBeforeCheckpointWhenResuming() {
+        ErrorBatchWriter resumed = errorService.openWriter("testreport123", "rules1", "gen1");
+        resumed.resumeAt(5);
+        resumed.write(new ValidationReportDto.ValidationErrorDto("ref6", "desc6", "BALANCE_MISMATCH", "Error"));
+        resumed.flush();
+        ErrorBatchWriter resumedWithoutErrors = errorService.openWriter("testreport456", "rules1", "gen2");
+        resumedWithoutErrors.resumeAt(3);
+        resumedWithoutErrors.flush();
+
+        org.mockito.ArgumentCaptor<List<ErrorEntity>> captor = org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(mongoTemplate).insertAll(captor.capture());
+        assertThat(captor.getValue()).extracting(ErrorEntity::index).containsExactly(5);
+        verify(errorRepository).deleteByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanEqual("testreport123", "rules1", "gen1", 5);
+        verify(errorRepository).deleteByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanEqual("testreport456", "rules1", "gen2", 3);
+        verify(errorRepository, never()).deleteByReportIdAndRuleSetFingerprintAndGeneration(anyString(), anyString(), anyString());
     }
 
     @Test
-    void shouldGetAllErrors() {
-        String reportId = "testreport123";
-        ErrorEntity entity1 = ErrorEntity.create(reportId, 
-            new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Error"), 0);
-        ErrorEntity entity2 = ErrorEntity.create(reportId,
-            new ValidationReportDto.ValidationErrorDto("ref2", "desc2", "BALANCE_MISMATCH", "Error"), 1);
-        
-        when(errorRepository.findByReportIdOrderByIndexAsc(reportId))
-            .thenReturn(List.of(entity1, entity2));
+    void shouldDropBufferedErrorsOfAbandonedRun() {
+        ErrorBatchWriter writer = errorService.openWriter("testreport123", "rules1");
+        writer.write(new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Error"));
 
-        List<ValidationReportDto.ValidationErrorDto> errors = errorService.getErrors(reportId);
+        writer.abandon();
+        writer.flush();
 
-        assertThat(errors).hasSize(2);
-        assertThat(errors.get(0).transactionReference()).isEqualTo("ref1");
-        assertThat(errors.get(0).errorType()).isEqualTo("DUPLICATE_REFERENCE");
-        assertThat(errors.get(1).transactionReference()).isEqualTo("ref2");
-        assertThat(errors.get(1).errorType()).isEqualTo("BALANCE_MISMATCH");
+        verify(mongoTemplate, never()).insertAll(any());
     }
 
     @Test
-    void shouldGetErrorsWithPagination() {
-        String reportId = "testreport123";
-        Pageable pageable = PageRequest.of(0, 10);
-        
-        ErrorEntity entity = ErrorEntity.create(reportId,
-            new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Error"), 0);
-        
-        Page<ErrorEntity> entityPage = new PageImpl<>(List.of(entity), pageable, 1);
+    void shouldDeleteErrorsOfGivenGenerationOnly() {
+        errorService.deleteErrors("testreport123", "rules2", "gen1");
         
-        when(errorRepository.findByReportIdOrderByIndexAsc(reportId, pageable))
-            .thenReturn(entityPage);
-
-        Page<ValidationReportDto.ValidationErrorDto> errorPage = errorService.getErrors(reportId, pageable);
-
-        assertThat(errorPage.getContent()).hasSize(1);
-        assertThat(errorPage.getTotalElements()).isEqualTo(1);
-        assertThat(errorPage.getContent().get(0).transactionReference()).isEqualTo("ref1");
+        verify(errorRepository).deleteByReportIdAndRuleSetFingerprintAndGeneration("testreport123", "rules2", "gen1");
     }
 
     @Test
-    void shouldReturnEmptyListWhenNoErrors() {
-        String reportId = "testreport123";
+    void shouldNotTouchDatabaseWhenWriterReceivesNoErrors() {
+        ErrorBatchWriter writer = errorService.openWriter("testreport123", "rules1");
+        writer.flush();
         
-        when(errorRepository.findByReportIdOrderByIndexAsc(reportId))
-            .thenReturn(java.util.List.of());
-
-        List<ValidationReportDto.ValidationErrorDto> errors = errorService.getErrors(reportId);
-
-        assertThat(errors).isEmpty();
+        verify(mongoTemplate, never()).insertAll(any());
+        verify(errorRepository, never()).deleteByReportIdAndRuleSetFingerprintAndGeneration(anyString(), anyString(), anyString());
     }
 
     @Test
-    void shouldReturnEmptyPageWhenNoErrorsWithPagination() {
+    void shouldGetErrorsAfterCursor() {
         String reportId = "testreport123";
-        Pageable pageable = PageRequest.of(0, 10);
         
-        Page<ErrorEntity> emptyPage = new PageImpl<>(java.util.List.of(), pageable, 0);
+        ErrorEntity entity = ErrorEntity.create(reportId, "rules1", "gen1",
+            new ValidationReportDto.ValidationErrorDto("ref6", "desc6", "DUPLICATE_REFERENCE", "Error"), 5);
         
-        when(errorRepository.findByReportIdOrderByIndexAsc(reportId, pageable))
-            .thenReturn(emptyPage);
+        when(errorRepository.findByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanOrderByIndexAsc(reportId, "rules1", "gen1", 4, Limit.of(10)))
+            .thenReturn(List.of(entity));
 
-        Page<ValidationReportDto.ValidationErrorDto> errorPage = errorService.getErrors(reportId, pageable);
+        List<ValidationReportDto.ValidationErrorDto> errors = errorService.getErrorsAfter(reportId, "rules1", "gen1", 4, 10);
 
-        assertThat(errorPage.getContent()).isEmpty();
-        assertThat(errorPage.getTotalElements()).isEqualTo(0);
+        assertThat(errors).hasSize(1);
+        assertThat(errors.get(0).transactionReference()).isEqualTo("ref6");
     }
 
     @Test
-    void shouldCheckIfErrorsExist() {
+    void shouldReturnEmptyListWhenCursorIsPastLastError() {
         String reportId = "testreport123";
         
-        when(errorRepository.countByReportId(reportId)).thenReturn(5L);
+        when(errorRepository.findByReportIdAndRuleSetFingerprintAndGenerationAndIndexGreaterThanOrderByIndexAsc(reportId, "rules1", "gen1", 99, Limit.of(10)))
+            .thenReturn(java.util.List.of());
 
-        boolean exists = errorService.hasErrors(reportId);
+        List<ValidationReportDto.ValidationErrorDto> errors = errorService.getErrorsAfter(reportId, "rules1", "gen1", 99, 10);
 
-        assertThat(exists).isTrue();
+        assertThat(errors).isEmpty();
     }
 
     @Test
-    void shouldReturnFalseWhenNoErrorsExist() {
+    void shouldStreamErrorsFromCursorInIndexOrder() {
         String reportId = "testreport123";
+        ErrorEntity entity = ErrorEntity.create(reportId, "rules1", "gen1",
+            new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Error"), 0);
         
-        when(errorRepository.countByReportId(reportId)).thenReturn(0L);
-
-        boolean exists = errorService.hasErrors(reportId);
+        when(mongoTemplate.stream(any(Query.class), eq(ErrorEntity.class))).thenReturn(Stream.of(entity));
 
-        assertThat(exists).isFalse();
+        try (Stream<ValidationReportDto.ValidationErrorDto> errors = errorService.streamErrors(reportId, "rules1", "gen1")) {
+            assertThat(errors.toList()).extracting(ValidationReportDto.ValidationErrorDto::transactionReference)
+                .containsExactly("ref1");
+        }
+        
+        verify(mongoTemplate).stream(argThat(query -> 
+            query.getQueryObject().get("reportId").equals(reportId)
+                && query.getQueryObject().get("ruleSetFingerprint").equals("rules1")
+                && query.getQueryObject().get("generation").equals("gen1")
+                && query.getSortObject().containsKey("index")
+                && query.getMeta().getCursorBatchSize() == 1000
+        ), eq(ErrorEntity.class));
     }
 }
-
@@ -0,0 +1,145 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationCheckpoint;
+import com.surepay.validation.domain.ValidationResult;
+import com.surepay.validation.domain.ValidationError;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JobCheckpointsTest {
+
+    @Mock
+    private JobQueue jobQueue;
+
+    @TempDir
+    Path directory;
+
+    private JobCheckpoints jobCheckpoints;
+
+    @BeforeEach
+    void setUp() {
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getJobs().setCheckpointDirectory(directory.toString());
+        validationProperties.getJobs().setCheckpointInterval(Duration.ZERO);
+        jobCheckpoints = new JobCheckpoints(jobQueue, validationProperties);
+    }
+
+    @Test
+    void shouldStoreSnapshotBeforeReferencingIt() throws Exception {
+        when(jobQueue.checkpoint(eq("hash1"), any())).thenReturn(true);
+        ValidationResult result = new ValidationResult();
+        result.addError(new ValidationError("REF1", "desc", ValidationError.ErrorType.BALANCE_MISMATCH));
+
+        try (CheckpointSession session = jobCheckpoints.open(JobEntity.create("hash1", "test.csv"))) {
+            assertThat(session.resumePoint()).isEmpty();
+            assertThat(session.isDue()).isTrue();
+            session.appendReferences(references(1, 2));
+            assertThat(session.save("rules1", 3, 4096, 120, result)).isTrue();
+        }
+
+        ArgumentCaptor<ValidationCheckpoint> checkpoint = ArgumentCaptor.forClass(ValidationCheckpoint.class);
+        verify(jobQueue).checkpoint(eq("hash1"), checkpoint.capture());
+        assertThat(checkpoint.getValue().nextChunk()).isEqualTo(3);
+        assertThat(checkpoint.getValue().byteOffset()).isEqualTo(4096);
+        assertThat(checkpoint.getValue().rowCount()).isEqualTo(120);
+        assertThat(checkpoint.getValue().errorCount()).isEqualTo(1);
+        assertThat(checkpoint.getValue().balanceMismatchCount()).isEqualTo(1);
+        assertThat(checkpoint.getValue().referenceSnapshotBytes()).isEqualTo(32);
+        assertThat(Files.size(Path.of(checkpoint.getValue().referenceSnapshot()))).isEqualTo(32);
+    }
+
+    @Test
+    void shouldResumeFromSnapshotAndDropWhatCameAfterCheckpoint() throws Exception {
+        Files.write(directory.resolve("hash1.refs"), references(1, 2, 3).array());
+        JobEntity job = withCheckpoint(JobEntity.create("hash1", "test.csv"), 32);
+
+        try (CheckpointSession session = jobCheckpoints.open(job)) {
+            assertThat(session.resumePoint()).contains(job.checkpoint());
+            try (DataInputStream in = session.openReferences()) {
+                assertThat(in.readLong()).isEqualTo(1);
+                in.readLong();
+                assertThat(in.readLong()).isEqualTo(2);
+            }
+            session.resumedFrom(job.checkpoint());
+            session.appendReferences(references(4));
+        }
+
+        byte[] snapshot = Files.readAllBytes(directory.resolve("hash1.refs"));
+        assertThat(snapshot).hasSize(48);
+        assertThat(ByteBuffer.wrap(snapshot).getLong(32)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldRewriteSnapshotWhenCheckpointWasNotResumed() throws Exception {
+        Files.write(directory.resolve("hash1.refs"), references(1, 2, 3).array());
+        JobEntity job = withCheckpoint(JobEntity.create("hash1", "test.csv"), 32);
+
+        try (CheckpointSession session = jobCheckpoints.open(job)) {
+            assertThat(session.resumePoint()).isPresent();
+            session.appendReferences(references(4));
+        }
+
+        byte[] snapshot = Files.readAllBytes(directory.resolve("hash1.refs"));
+        assertThat(snapshot).hasSize(16);
+        assertThat(ByteBuffer.wrap(snapshot).getLong(0)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldStartOverWhenSnapshotIsMissing() {
+        JobEntity job = withCheckpoint(JobEntity.create("hash1", "test.csv"), 32);
+
+        try (CheckpointSession session = jobCheckpoints.open(job)) {
+            assertThat(session.resumePoint()).isEmpty();
+        }
+    }
+
+    @Test
+    void shouldRemoveSnapshotOfFinishedJobOnly() throws Exception {
+        Files.write(directory.resolve("hash1.refs"), references(1).array());
+        Files.write(directory.resolve("hash2.refs"), references(2).array());
+
+        jobCheckpoints.discard("hash1");
+
+        assertThat(directory.resolve("hash1.refs")).doesNotExist();
+        assertThat(directory.resolve("hash2.refs")).exists();
+        assertThat(CheckpointSession.disabled().isEnabled()).isFalse();
+        assertThat(CheckpointSession.disabled().isDue()).isFalse();
+    }
+
+    private static JobEntity withCheckpoint(JobEntity job, long snapshotBytes) {
+        ValidationCheckpoint checkpoint = new ValidationCheckpoint(
+            "rules1", 2, 2048, 60, 0, "gen1", 0, 0, "hash1.refs", snapshotBytes, Instant.now());
+        return new JobEntity(
+            job.jobId(), job.filename(), JobEntity.JobStatus.PROCESSING, job.createdAt(), null, null, null,
+            "rules1", "text/csv", 4096, "worker-1", Instant.now(), checkpoint, null, null, null, null);
+    }
+
+    // Fingerprints with the given high halves and a zero low half
+    private static ByteBuffer references(long... highs) {
+        ByteBuffer bytes = ByteBuffer.allocate(highs.length * 16);
+        for (long high : highs) {
+            bytes.putLong(high).putLong(0);
+        }
+        return bytes.flip();
+    }
+}
@@ -0,0 +1,144 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationProgress;
+import com.surepay.validation.dto.ValidationJobResponse;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JobEventsTest {
+
+    @Mock
+    private JobService jobService;
+
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+    private JobEvents jobEvents;
+
+    @BeforeEach
+    void setUp() {
+        jobEvents = new JobEvents(jobService, new ValidationProperties()) {
+            @Override
+            SseEmitter newEmitter(long timeoutMillis) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+    }
+
+    @Test
+    void shouldSendFinalStatusOfFinishedJobAndEnd() {
+        JobEntity job = JobEntity.create("hash1", "test.csv").withReport(new ValidationReportDto(true, 0, 0, 0, List.of()));
+        when(jobService.getJob("hash1")).thenReturn(Optional.of(job));
+
+        jobEvents.subscribe("hash1");
+
+        assertThat(emitters.get(0).events).containsExactly("status:COMPLETED");
+        assertThat(emitters.get(0).completed).isTrue();
+        assertThat(jobEvents.subscribedJobs()).isZero();
+    }
+
+    @Test
+    void shouldFollowJobRunningHereWithoutReadingItAgain() {
+        JobEntity job = JobEntity.create("hash1", "test.csv");
+        CompletableFuture<JobEntity> run = new CompletableFuture<>();
+        ValidationProgress progress = new ValidationProgress(512, 1024, 100, 1, 2000.0, Instant.now(), Instant.now());
+        when(jobService.getJob("hash1")).thenReturn(Optional.of(job));
+        when(jobService.getRunningJob("hash1")).thenReturn(Optional.of(run));
+        when(jobService.getQueueStatus("hash1"))
+            .thenReturn(Optional.of(new JobScheduler.QueueStatus(2, 3, Instant.parse("2030-01-01T00:00:00Z"))))
+            .thenReturn(Optional.empty());
+        when(jobService.getProgress("hash1")).thenReturn(Optional.of(progress));
+
+        jobEvents.subscribe("hash1");
+        jobEvents.subscribe("hash1");
+        jobEvents.pushProgress();
+        jobEvents.pushProgress();
+        // Nothing changed since the last push
+        jobEvents.pushProgress();
+        run.complete(job.withReport(new ValidationReportDto(false, 1, 0, 1, List.of())));
+
+        RecordingEmitter first = emitters.get(0);
+        assertThat(first.events).containsExactly("status:PENDING", "progress:PENDING", "status:PROCESSING", "status:COMPLETED");
+        assertThat(first.sent.get(1).queuePosition()).isEqualTo(2);
+        assertThat(first.sent.get(2).progress()).isEqualTo(progress);
+        assertThat(first.completed).isTrue();
+        assertThat(emitters.get(1).events).containsExactly("status:PENDING", "progress:PENDING", "status:PROCESSING", "status:COMPLETED");
+        assertThat(jobEvents.subscribedJobs()).isZero();
+        verify(jobService, times(2)).getJob("hash1");
+        verify(jobService, never()).getJobs(any());
+    }
+
+    @Test
+    void shouldRefreshJobsRunningElsewhereInOneRead() {
+        JobEntity job = JobEntity.create("hash1", "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        JobEntity other = JobEntity.create("hash2", "other.csv");
+        ValidationProgress progress = new ValidationProgress(512, 1024, 100, 1, null, null, Instant.now());
+        when(jobService.getJob("hash1")).thenReturn(Optional.of(job));
+        when(jobService.getJob("hash2")).thenReturn(Optional.of(other));
+        when(jobService.getRunningJob(any())).thenReturn(Optional.empty());
+        when(jobService.getJobs(any()))
+            .thenReturn(List.of(job.withProgress(progress), other))
+            .thenReturn(List.of(job.withError("boom")));
+
+        jobEvents.subscribe("hash1");
+        jobEvents.subscribe("hash2");
+        jobEvents.pushProgress();
+        jobEvents.refreshRemote();
+        jobEvents.refreshRemote();
+
+        assertThat(emitters.get(0).events).containsExactly("status:PROCESSING", "progress:PROCESSING", "status:FAILED");
+        assertThat(emitters.get(0).completed).isTrue();
+        // A job that is gone ends its stream
+        assertThat(emitters.get(1).events).containsExactly("status:PENDING");
+        assertThat(emitters.get(1).completed).isTrue();
+        assertThat(jobEvents.subscribedJobs()).isZero();
+        verify(jobService, times(2)).getJobs(any());
+        verify(jobService, never()).getProgress(any());
+    }
+
+    /**
+     * Keeps what is sent instead of writing it to a response.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<String> events = new ArrayList<>();
+        final List<ValidationJobResponse> sent = new ArrayList<>();
+        boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String name = null;
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof ValidationJobResponse response) {
+                    sent.add(response);
+                    events.add(name + ":" + response.status());
+                } else if (part.getData().toString().startsWith("event:")) {
+                    name = part.getData().toString().lines().findFirst().orElseThrow().substring("event:".length());
+                }
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.parser.ParseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JobExecutorsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private JobExecutors jobExecutors;
+
+    @BeforeEach
+    void setUp() {
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getJobs().setCpuParallelism(2);
+        meterRegistry = new SimpleMeterRegistry();
+        jobExecutors = new JobExecutors(validationProperties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutors.shutdown();
+    }
+
+    @Test
+    void shouldRunCpuStagesOnPlatformPoolThreads() throws Exception {
+        String stageThread = jobExecutors.onCpu(() -> {
+            assertThat(Thread.currentThread().isVirtual()).isFalse();
+            return Thread.currentThread().getName();
+        });
+
+        assertThat(stageThread).startsWith("validation-cpu-");
+        assertThat(meterRegistry.get("jobs.stage.cpu").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("jobs.cpu.utilization").gauge().value()).isBetween(0.0, 1.0);
+    }
+
+    @Test
+    void shouldRunIoStagesOnVirtualThreads() throws Exception {
+        Future<Boolean> virtual = jobExecutors.io().submit(() -> Thread.currentThread().isVirtual());
+
+        assertThat(virtual.get()).isTrue();
+    }
+
+    @Test
+    void shouldRethrowWhatCpuStageThrows() {
+        assertThatThrownBy(() -> jobExecutors.onCpu(() -> {
+            throw new ParseException("Invalid format");
+        })).isInstanceOf(ParseException.class).hasMessage("Invalid format");
+    }
+
+    @Test
+    void shouldRethrowCheckedAndStopExceptionsOfParseStages() {
+        assertThatThrownBy(() -> jobExecutors.parseOnCpu(() -> {
+            throw new IOException("Spooled file shrank");
+        })).isInstanceOf(IOException.class).hasMessage("Spooled file shrank");
+        assertThatThrownBy(() -> jobExecutors.parseOnCpu(() -> {
+            throw new CancellationException("Validation stopped at row 1024");
+        })).isInstanceOf(CancellationException.class).hasMessage("Validation stopped at row 1024");
+    }
+}
@@ -0,0 +1,85 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.domain.ValidationProgress;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JobProgressTest {
+
+    @Mock
+    private JobQueue jobQueue;
+
+    private JobProgress jobProgress;
+
+    @BeforeEach
+    void setUp() {
+        jobProgress = new JobProgress(jobQueue);
+    }
+
+    @Test
+    void shouldMeasureRateFromFirstReportOfTheRun() throws Exception {
+        JobProgress.Tracker tracker = jobProgress.track("hash1", 10_000);
+        assertThat(jobProgress.current("hash1")).get()
+            .extracting(ValidationProgress::bytesRead, ValidationProgress::rowsPerSecond)
+            .containsExactly(0L, null);
+
+        // A resumed run starts half way through
+        tracker.progress(5_000, 500, 7);
+        Thread.sleep(50);
+        tracker.progress(6_000, 600, 9);
+
+        ValidationProgress progress = jobProgress.current("hash1").orElseThrow();
+        assertThat(progress.bytesRead()).isEqualTo(6_000);
+        assertThat(progress.totalBytes()).isEqualTo(10_000);
+        assertThat(progress.rowsValidated()).isEqualTo(600);
+        assertThat(progress.errorCount()).isEqualTo(9);
+        // 100 rows in about 50 ms, not 600
+        assertThat(progress.rowsPerSecond()).isBetween(100.0, 2_000.0);
+        // 4000 bytes left at about 1000 bytes per 50 ms
+        assertThat(progress.estimatedCompletionAt()).isAfter(progress.updatedAt());
+
+        jobProgress.untrack("hash1");
+        assertThat(jobProgress.current("hash1")).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldPersistOnlyProgressThatChanged() {
+        JobProgress.Tracker running = jobProgress.track("hash1", 1_000);
+        jobProgress.track("hash2", 1_000);
+        running.progress(100, 10, 0);
+
+        jobProgress.persist();
+        jobProgress.persist();
+        running.progress(200, 20, 1);
+        jobProgress.persist();
+
+        ArgumentCaptor<Map<String, ValidationProgress>> written = ArgumentCaptor.forClass(Map.class);
+        verify(jobQueue, times(3)).recordProgress(written.capture());
+        assertThat(written.getAllValues().get(0)).containsOnlyKeys("hash1");
+        assertThat(written.getAllValues().get(1)).isEmpty();
+        assertThat(written.getAllValues().get(2).get("hash1").bytesRead()).isEqualTo(200);
+    }
+
+    @Test
+    void shouldKeepTrackingWhenProgressCannotBeWritten() {
+        jobProgress.track("hash1", 1_000).progress(100, 10, 0);
+        doThrow(new IllegalStateException("unavailable")).when(jobQueue).recordProgress(anyMap());
+
+        jobProgress.persist();
+
+        assertThat(jobProgress.current("hash1")).isPresent();
+        assertThat(jobProgress.current("hash1").get().updatedAt()).isBeforeOrEqualTo(Instant.now());
+    }
+}
@@ -0,0 +1,206 @@
+package com.surepay.validation.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ValidationProgress;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JobQueueTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private JobQueue jobQueue;
+
+    @BeforeEach
+    void setUp() {
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getJobs().setInstanceId("worker-1");
+        jobQueue = new JobQueue(mongoTemplate, validationProperties);
+    }
+
+    @Test
+    void shouldLeasePendingOrExpiredJobForThisInstance() {
+        JobEntity leased = JobEntity.create("hash1", "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(leased);
+
+        assertThat(jobQueue.lease("hash1")).contains(leased);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(JobEntity.class));
+        assertThat(query.getValue().getQueryObject().get("_id")).isEqualTo("hash1");
+        assertThat(query.getValue().getQueryObject().toString()).contains("PENDING", "PROCESSING", "leaseExpiresAt");
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertThat(set.get("status")).isEqualTo(JobEntity.JobStatus.PROCESSING);
+        assertThat(set.get("leaseOwner")).isEqualTo("worker-1");
+        assertThat(set).containsKey("leaseExpiresAt");
+    }
+
+    @Test
+    void shouldNotLeaseJobHeldElsewhere() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(null);
+
+        assertThat(jobQueue.lease("hash1")).isEmpty();
+
+        jobQueue.renewLeases();
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(Update.class), eq(JobEntity.class));
+    }
+
+    @Test
+    void shouldFindLeasableJobsWithInputAfterLastOfPreviousPage() {
+        JobEntity last = JobEntity.create("hash1", "test.csv").withInput("text/csv", 10);
+        when(mongoTemplate.find(any(Query.class), eq(JobEntity.class))).thenReturn(List.of());
+
+        jobQueue.findLeasable(last, 1000, 20);
+        jobQueue.findLeasable(null, Long.MAX_VALUE, 20);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(query.capture(), eq(JobEntity.class));
+        assertThat(query.getAllValues().get(0).getQueryObject().toString())
+            .contains("PENDING", "leaseExpiresAt", "contentType", "createdAt", "hash1", "fileSize");
+        // Without a limit on the file size, as when nothing runs, every size qualifies
+        assertThat(query.getAllValues().get(1).getQueryObject().toString()).doesNotContain("fileSize");
+        assertThat(query.getValue().getSortObject()).containsKeys("createdAt", "_id");
+        assertThat(query.getValue().getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldRenewOnlyLeasesHeldByThisInstance() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(JobEntity.create("hash1", "test.csv"));
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(JobEntity.class)))
+            .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        jobQueue.lease("hash1");
+
+        jobQueue.renewLeases();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateMulti(query.capture(), any(Update.class), eq(JobEntity.class));
+        assertThat(query.getValue().getQueryObject().get("leaseOwner")).isEqualTo("worker-1");
+        assertThat(query.getValue().getQueryObject().toString()).contains("hash1");
+
+        jobQueue.release("hash1");
+        jobQueue.renewLeases();
+        verifyNoMoreInteractions(mongoTemplate);
+    }
+
+    @Test
+    void shouldStoreReportOnlyWhileHoldingLease() {
+        ValidationReportDto report = new ValidationReportDto(true, 0, 0, 0, List.of());
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(JobEntity.class)))
+            .thenReturn(UpdateResult.acknowledged(1, 1L, null), UpdateResult.acknowledged(0, 0L, null));
+
+        assertThat(jobQueue.complete("hash1", report)).isTrue();
+        assertThat(jobQueue.fail("hash2", "boom")).isFalse();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(query.capture(), update.capture(), eq(JobEntity.class));
+        assertThat(query.getAllValues()).allSatisfy(q ->
+            assertThat(q.getQueryObject().get("leaseOwner")).isEqualTo("worker-1"));
+        Document completed = update.getAllValues().get(0).getUpdateObject();
+        assertThat(((Document) completed.get("$set")).get("status")).isEqualTo(JobEntity.JobStatus.COMPLETED);
+        assertThat(((Document) completed.get("$unset")).keySet()).containsExactlyInAnyOrder("leaseOwner", "leaseExpiresAt", "checkpoint");
+    }
+
+    @Test
+    void shouldCancelUnfinishedJobWhoeverHoldsIt() {
+        JobEntity pending = JobEntity.create("hash1", "test.csv");
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(pending, pending.withStatus(JobEntity.JobStatus.PROCESSING));
+        jobQueue.lease("hash1");
+        assertThat(jobQueue.holds("hash1")).isTrue();
+
+        Optional<JobQueue.Cancellation> cancellation = jobQueue.cancel("hash1");
+
+        assertThat(cancellation).map(JobQueue.Cancellation::runningElsewhere).contains(false);
+        assertThat(cancellation.get().job().status()).isEqualTo(JobEntity.JobStatus.CANCELLED);
+        assertThat(cancellation.get().job().leaseOwner()).isNull();
+        assertThat(cancellation.get().job().completedAt()).isNotNull();
+        assertThat(jobQueue.holds("hash1")).isFalse();
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(JobEntity.class));
+        assertThat(query.getValue().getQueryObject()).doesNotContainKey("leaseOwner");
+        assertThat(query.getValue().getQueryObject().toString()).contains("PENDING", "PROCESSING");
+        Document cancel = update.getValue().getUpdateObject();
+        assertThat(((Document) cancel.get("$set")).get("status")).isEqualTo(JobEntity.JobStatus.CANCELLED);
+        assertThat(((Document) cancel.get("$unset")).keySet()).containsExactlyInAnyOrder("leaseOwner", "leaseExpiresAt", "checkpoint");
+    }
+
+    @Test
+    void shouldTellWhetherCancelledJobWasRunningElsewhere() {
+        JobEntity running = new JobEntity("hash1", "test.csv", JobEntity.JobStatus.PROCESSING, Instant.now(), null, null, null,
+            "rules1", "text/csv", 100, "worker-2", Instant.now().plusSeconds(60), null, null, null, null, null);
+        JobEntity expired = new JobEntity("hash2", "test.csv", JobEntity.JobStatus.PROCESSING, Instant.now(), null, null, null,
+            "rules1", "text/csv", 100, "worker-2", Instant.now().minusSeconds(60), null, null, null, null, null);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(running, expired, null);
+
+        assertThat(jobQueue.cancel("hash1")).map(JobQueue.Cancellation::runningElsewhere).contains(true);
+        assertThat(jobQueue.cancel("hash2")).map(JobQueue.Cancellation::runningElsewhere).contains(false);
+        assertThat(jobQueue.cancel("hash3")).isEmpty();
+    }
+
+    @Test
+    void shouldForgetLeasesLostSinceLastHeartbeat() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenAnswer(invocation -> JobEntity.create(
+                (String) ((Query) invocation.getArgument(0)).getQueryObject().get("_id"), "test.csv"));
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(JobEntity.class)))
+            .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.find(any(Query.class), eq(JobEntity.class))).thenReturn(List.of(JobEntity.create("hash2", "test.csv")));
+        jobQueue.lease("hash1");
+        jobQueue.lease("hash2");
+
+        jobQueue.renewLeases();
+
+        assertThat(jobQueue.holds("hash1")).isFalse();
+        assertThat(jobQueue.holds("hash2")).isTrue();
+    }
+
+    @Test
+    void shouldRecordProgressOfHeldJobsInOneBulkWrite() {
+        BulkOperations bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, JobEntity.class)).thenReturn(bulk);
+        ValidationProgress progress = new ValidationProgress(512, 1024, 100, 2, 50.0, null, Instant.now());
+
+        jobQueue.recordProgress(Map.of("hash1", progress, "hash2", progress));
+        jobQueue.recordProgress(Map.of());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(2)).updateOne(query.capture(), update.capture());
+        verify(bulk).execute();
+        verify(mongoTemplate, times(1)).bulkOps(any(BulkOperations.BulkMode.class), eq(JobEntity.class));
+        assertThat(query.getValue().getQueryObject().get("leaseOwner")).isEqualTo("worker-1");
+        assertThat(((Document) update.getValue().getUpdateObject().get("$set")).get("progress")).isEqualTo(progress);
+    }
+}
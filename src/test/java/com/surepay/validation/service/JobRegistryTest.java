@@ -0,0 +1,67 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.dto.ValidationReportDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JobRegistryTest {
+
+    @Mock
+    private JobQueue jobQueue;
+
+    private JobProgress jobProgress;
+    private JobRegistry jobRegistry;
+
+    @BeforeEach
+    void setUp() {
+        jobProgress = new JobProgress(jobQueue);
+        jobRegistry = new JobRegistry(jobQueue, jobProgress);
+    }
+
+    @Test
+    void shouldAnswerLeasedJobWithLiveProgress() {
+        JobEntity leased = JobEntity.create("hash1", "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        when(jobQueue.holds("hash1")).thenReturn(true);
+
+        jobRegistry.register(leased);
+        jobProgress.track("hash1", 1024).progress(512, 100, 3);
+
+        JobEntity job = jobRegistry.get("hash1").orElseThrow();
+        assertThat(job.status()).isEqualTo(JobEntity.JobStatus.PROCESSING);
+        assertThat(job.progress().bytesRead()).isEqualTo(512);
+        assertThat(job.progress().errorCount()).isEqualTo(3);
+        assertThat(jobRegistry.get("hash2")).isEmpty();
+    }
+
+    @Test
+    void shouldNotAnswerJobWhoseLeaseWasLost() {
+        when(jobQueue.holds("hash1")).thenReturn(false);
+
+        jobRegistry.register(JobEntity.create("hash1", "test.csv").withStatus(JobEntity.JobStatus.PROCESSING));
+
+        assertThat(jobRegistry.get("hash1")).isEmpty();
+        assertThat(jobRegistry.size()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldHandBackFinalStateWhenRemoved() {
+        jobRegistry.register(JobEntity.create("hash1", "test.csv").withStatus(JobEntity.JobStatus.PROCESSING));
+
+        jobRegistry.update("hash1", job -> job.withReport(new ValidationReportDto(true, 0, 0, 0, List.of())));
+        jobRegistry.update("hash2", job -> job.withError("never registered"));
+
+        assertThat(jobRegistry.remove("hash1")).get().extracting(JobEntity::status).isEqualTo(JobEntity.JobStatus.COMPLETED);
+        assertThat(jobRegistry.remove("hash2")).isEmpty();
+        assertThat(jobRegistry.size()).isZero();
+    }
+}
@@ -0,0 +1,256 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobSchedulerTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final JobScheduler.Submitter NIGHTLY = new JobScheduler.Submitter("nightly", JobEntity.Priority.BATCH);
+
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private JobExecutors jobExecutors;
+    private JobScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getJobs().setMemoryBudgetBytes(1024 * MB);
+        meterRegistry = new SimpleMeterRegistry();
+        jobExecutors = new JobExecutors(validationProperties, meterRegistry);
+        scheduler = new JobScheduler(validationProperties, jobExecutors, meterRegistry);
+    }
+
+    private void useScheduler(ValidationProperties.Jobs jobs) {
+        ValidationProperties validationProperties = new ValidationProperties();
+        jobs.setMemoryBudgetBytes(1024 * MB);
+        validationProperties.setJobs(jobs);
+        scheduler = new JobScheduler(validationProperties, jobExecutors, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutors.shutdown();
+    }
+
+    @Test
+    void shouldEstimateMoreMemoryForLargerFiles() {
+        long small = JobScheduler.estimateMemory(10 * MB, "text/csv");
+        long large = JobScheduler.estimateMemory(1000 * MB, "text/csv");
+
+        assertThat(small).isGreaterThan(JobScheduler.BASE_JOB_BYTES);
+        assertThat(large).isGreaterThan(small);
+        assertThat(JobScheduler.estimateMemory(1000 * MB, "application/json")).isPositive();
+    }
+
+    @Test
+    void shouldBoundStartableFileSizeByRemainingBudgetOnceJobsRun() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        assertThat(scheduler.largestStartableFile()).isEqualTo(Long.MAX_VALUE);
+
+        scheduler.submit("first", 700 * MB, "text/csv", NIGHTLY, blockingJob("first", release), () -> {});
+        awaitStarted(1);
+
+        long largest = scheduler.largestStartableFile();
+        assertThat(scheduler.reservedBytes() + JobScheduler.estimateMemory(largest, "application/json"))
+            .isLessThanOrEqualTo(scheduler.memoryBudget());
+        assertThat(scheduler.reservedBytes() + JobScheduler.estimateMemory(largest + MB, "application/json"))
+            .isGreaterThan(scheduler.memoryBudget());
+        release.countDown();
+    }
+
+    @Test
+    void shouldQueueJobsBeyondTheMemoryBudgetInArrivalOrder() throws Exception {
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch releaseRest = new CountDownLatch(1);
+
+        scheduler.submit("first", 700 * MB, "text/csv", NIGHTLY, blockingJob("first", releaseFirst), () -> {});
+        scheduler.submit("second", 700 * MB, "text/csv", NIGHTLY, blockingJob("second", releaseRest), () -> {});
+        scheduler.submit("third", 1 * MB, "text/csv", NIGHTLY, blockingJob("third", releaseRest), () -> {});
+
+        awaitStarted(1);
+        assertThat(started).containsExactly("first");
+        assertThat(scheduler.queueDepth()).isEqualTo(2);
+        assertThat(meterRegistry.get("jobs.queue.depth").gauge().value()).isEqualTo(2);
+        // The small job does not overtake the large one ahead of it
+        JobScheduler.QueueStatus third = scheduler.queueStatus("third").orElseThrow();
+        assertThat(third.position()).isEqualTo(2);
+        assertThat(third.queueDepth()).isEqualTo(2);
+        assertThat(third.estimatedStartAt()).isAfter(scheduler.queueStatus("second").orElseThrow().estimatedStartAt());
+        assertThat(scheduler.queueStatus("first")).isEmpty();
+        assertThat(scheduler.runningBytes()).isEqualTo(700 * MB);
+        assertThat(scheduler.queuedBytes()).isEqualTo(701 * MB);
+
+        releaseFirst.countDown();
+        awaitStarted(3);
+        assertThat(started).containsExactly("first", "second", "third");
+        releaseRest.countDown();
+        awaitReserved(0);
+    }
+
+    @Test
+    void shouldStartSmallFileAheadOfQueuedBatchJobs() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.submit("first", 700 * MB, "text/csv", blockingJob("first", release));
+        scheduler.submit("second", 700 * MB, "text/csv", blockingJob("second", release));
+        scheduler.submit("small", 10 * MB, "text/csv", blockingJob("small", release));
+
+        awaitStarted(2);
+        // Batch jobs stay within their share of the budget, which leaves headroom for small files
+        assertThat(started).containsExactly("first", "small");
+        assertThat(scheduler.queueStatus("second")).isPresent();
+        assertThat(scheduler.laneFor(10 * MB, null)).isEqualTo(JobEntity.Priority.INTERACTIVE);
+        assertThat(scheduler.laneFor(10 * MB, JobEntity.Priority.BATCH)).isEqualTo(JobEntity.Priority.BATCH);
+        assertThat(meterRegistry.get("jobs.queue.wait").tag("lane", "interactive").timer().count()).isEqualTo(1);
+
+        release.countDown();
+        awaitStarted(3);
+        awaitReserved(0);
+    }
+
+    @Test
+    void shouldShareQueueBetweenClientsByWeight() throws Exception {
+        ValidationProperties.Jobs jobs = new ValidationProperties.Jobs();
+        jobs.setClientWeights(Map.of("payments", 2));
+        useScheduler(jobs);
+        CountDownLatch release = new CountDownLatch(1);
+        JobScheduler.Submitter bulk = new JobScheduler.Submitter("bulk", JobEntity.Priority.BATCH);
+        JobScheduler.Submitter adhoc = new JobScheduler.Submitter("adhoc", JobEntity.Priority.BATCH);
+        JobScheduler.Submitter payments = new JobScheduler.Submitter("payments", JobEntity.Priority.BATCH);
+
+        scheduler.submit("huge", 2000 * MB, "text/csv", blockingJob("huge", release));
+        awaitStarted(1);
+        for (int i = 1; i <= 3; i++) {
+            scheduler.submit("bulk-" + i, 100 * MB, "text/csv", bulk, blockingJob("bulk-" + i, release), () -> {});
+        }
+        scheduler.submit("adhoc", 100 * MB, "text/csv", adhoc, blockingJob("adhoc", release), () -> {});
+        scheduler.submit("payments", 100 * MB, "text/csv", payments, blockingJob("payments", release), () -> {});
+
+        // A client's backlog does not hold up the others, and a heavier weight gets ahead sooner
+        assertThat(scheduler.queueStatus("payments").orElseThrow().position()).isEqualTo(1);
+        assertThat(scheduler.queueStatus("bulk-1").orElseThrow().position()).isEqualTo(2);
+        assertThat(scheduler.queueStatus("adhoc").orElseThrow().position()).isEqualTo(3);
+        assertThat(scheduler.queueStatus("bulk-3").orElseThrow().position()).isEqualTo(5);
+
+        release.countDown();
+        awaitStarted(6);
+        awaitReserved(0);
+    }
+
+    @Test
+    void shouldStartBatchJobAheadOfInteractiveOnceItWaitedTooLong() throws Exception {
+        ValidationProperties.Jobs jobs = new ValidationProperties.Jobs();
+        jobs.setMaxQueueWait(Duration.ofMillis(100));
+        useScheduler(jobs);
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.submit("huge", 2000 * MB, "text/csv", blockingJob("huge", release));
+        scheduler.submit("batch", 100 * MB, "text/csv", blockingJob("batch", release));
+        scheduler.submit("fresh", 1 * MB, "text/csv", blockingJob("fresh", release));
+        assertThat(scheduler.queueStatus("fresh").orElseThrow().position()).isEqualTo(1);
+
+        Thread.sleep(150);
+        scheduler.submit("late", 1 * MB, "text/csv", blockingJob("late", release));
+        // Both jobs queued before the deadline are now ahead, oldest first
+        assertThat(scheduler.queueStatus("batch").orElseThrow().position()).isEqualTo(1);
+        assertThat(scheduler.queueStatus("fresh").orElseThrow().position()).isEqualTo(2);
+        assertThat(scheduler.queueStatus("late").orElseThrow().position()).isEqualTo(3);
+
+        release.countDown();
+        awaitStarted(4);
+        awaitReserved(0);
+    }
+
+    @Test
+    void shouldRunJobLargerThanTheBudgetAlone() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.submit("huge", 2000 * MB, "text/csv", blockingJob("huge", release));
+        scheduler.submit("small", 1 * MB, "text/csv", blockingJob("small", release));
+
+        awaitStarted(1);
+        assertThat(scheduler.reservedBytes()).isGreaterThan(scheduler.memoryBudget());
+        assertThat(scheduler.queueStatus("small")).isPresent();
+        assertThat(scheduler.queueStatus("small").get().estimatedStartAt()).isAfter(Instant.now());
+
+        release.countDown();
+        awaitStarted(2);
+        awaitReserved(0);
+    }
+
+    @Test
+    void shouldReleaseMemoryWhenJobFails() throws Exception {
+        scheduler.submit("failing", 10 * MB, "text/csv", () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        awaitReserved(0);
+        assertThat(scheduler.runningJobs()).isZero();
+    }
+
+    @Test
+    void shouldDropCancelledJobFromQueueAndStartTheNext() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> dropped = new CopyOnWriteArrayList<>();
+
+        scheduler.submit("first", 500 * MB, "text/csv", blockingJob("first", release));
+        scheduler.submit("second", 800 * MB, "text/csv", JobScheduler.Submitter.ANONYMOUS,
+            blockingJob("second", release), () -> dropped.add("second"));
+        scheduler.submit("third", 100 * MB, "text/csv", blockingJob("third", release));
+        awaitStarted(1);
+
+        assertThat(scheduler.cancel("second")).isTrue();
+        assertThat(scheduler.cancel("first")).isFalse();
+
+        awaitStarted(2);
+        assertThat(started).containsExactly("first", "third");
+        assertThat(dropped).containsExactly("second");
+        assertThat(scheduler.queueDepth()).isZero();
+        release.countDown();
+        awaitReserved(0);
+    }
+
+    private Runnable blockingJob(String jobId, CountDownLatch release) {
+        return () -> {
+            started.add(jobId);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // Give jobs that should not start a moment to do so anyway
+        Thread.sleep(50);
+    }
+
+    private void awaitReserved(long bytes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.reservedBytes() != bytes && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(scheduler.reservedBytes()).isEqualTo(bytes);
+    }
+}
@@ -1,24 +1,49 @@
 package com.surepay.validation.service;
 
+import com.surepay.validation.config.ValidationProperties;
 import com.surepay.validation.domain.JobEntity;
 import com.surepay.validation.dto.ValidationReportDto;
 import com.surepay.validation.parser.ParseException;
 import com.surepay.validation.repository.JobRepository;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
 import com.surepay.validation.util.HashComputingInputStream;
+import com.surepay.validation.validator.RuleSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,28 +56,82 @@ class JobServiceTest {
     @Mock
     private JobRepository jobRepository;
 
+    @Mock
+    private ReportCache reportCache;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private RuleSet ruleSet;
+
+    @Mock
+    private JobQueue jobQueue;
+
+    @Mock
+    private JobCheckpoints jobCheckpoints;
+
+    @Mock
+    private ErrorService errorService;
+
+    private JobExecutors jobExecutors;
+    private JobProgress jobProgress;
+    private SpoolStore spoolStore;
     private JobService jobService;
 
+    @TempDir
+    Path spoolDirectory;
+
     @BeforeEach
     void setUp() {
-        jobService = new JobService(validationService, jobRepository);
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getSpool().setDirectory(spoolDirectory.toString());
+        jobExecutors = new JobExecutors(validationProperties, new SimpleMeterRegistry());
+        lenient().when(ruleSet.fingerprint()).thenReturn("rules1");
+        lenient().when(jobQueue.lease(anyString())).thenAnswer(invocation -> Optional.of(
+            JobEntity.create(invocation.getArgument(0), "test.csv").withStatus(JobEntity.JobStatus.PROCESSING)));
+        lenient().when(jobQueue.complete(anyString(), any())).thenReturn(true);
+        lenient().when(jobCheckpoints.open(any(JobEntity.class), any())).thenReturn(CheckpointSession.disabled());
+        spoolStore = new SpoolStore(validationProperties);
+        jobProgress = new JobProgress(jobQueue);
+        jobService = new JobService(validationService, jobRepository, spoolStore, reportCache, mongoTemplate, ruleSet,
+            new JobScheduler(validationProperties, jobExecutors, new SimpleMeterRegistry()), jobExecutors, jobQueue, jobCheckpoints, errorService,
+            jobProgress, new JobRegistry(jobQueue, jobProgress), validationProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutors.shutdown();
     }
 
     @Test
     void shouldCreateNewJobWhenNoExistingJob() throws IOException {
         byte[] fileData = "test data".getBytes();
         
-        when(jobRepository.findById(anyString())).thenReturn(Optional.empty());
-        when(jobRepository.save(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         JobEntity job = jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
 
-        assertThat(job.jobId()).isNotNull();
+        assertThat(job.jobId()).isEqualTo(HashComputingInputStream.computeHash(fileData));
         assertThat(job.filename()).isEqualTo("test.csv");
         assertThat(job.status()).isEqualTo(JobEntity.JobStatus.PENDING);
         assertThat(job.createdAt()).isNotNull();
         
-        verify(jobRepository).save(any(JobEntity.class));
+        verify(jobRepository).insert(any(JobEntity.class));
+    }
+
+    @Test
+    void shouldStoreSubmitterWithNewJob() throws IOException {
+        byte[] fileData = "test data".getBytes();
+        JobScheduler.Submitter submitter = new JobScheduler.Submitter("payments", JobEntity.Priority.BATCH);
+
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        JobEntity job = jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length, submitter);
+
+        // Kept on the job so an instance picking it up schedules it the same way
+        assertThat(job.clientId()).isEqualTo("payments");
+        assertThat(job.priority()).isEqualTo(JobEntity.Priority.BATCH);
     }
 
     @Test
@@ -61,16 +140,13 @@ class JobServiceTest {
         // Hash will be computed during validation, not in submitJob
         String hash = HashComputingInputStream.computeHash(fileData);
         
-        JobEntity job = JobEntity.create(hash, "test.csv");
         ValidationReportDto reportDto = new ValidationReportDto(true, 0, 0, 0, java.util.List.of());
         com.surepay.validation.domain.ValidationResult validationResult = new com.surepay.validation.domain.ValidationResult();
         ValidationService.ValidationAndStorageResult result = 
             new ValidationService.ValidationAndStorageResult(reportDto, hash, validationResult);
         
-        // First call returns empty (new job), subsequent calls return the job
-        when(jobRepository.findById(anyString())).thenReturn(Optional.empty(), Optional.of(job));
-        when(jobRepository.save(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong())).thenReturn(result);
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any())).thenReturn(result);
 
         JobEntity submittedJob = jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
 
@@ -80,8 +156,221 @@ class JobServiceTest {
         
         Thread.sleep(500);
         
-        verify(jobRepository, atLeastOnce()).save(any(JobEntity.class));
-        verify(validationService).validateAndStoreReport(any(), any(), any(), anyLong());
+        verify(jobQueue).complete(eq(hash), any(ValidationReportDto.class));
+        verify(validationService).validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any());
+        // The final state is known without reading the job back
+        verify(jobRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void shouldAnswerRunningJobFromMemory() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ValidationReportDto reportDto = new ValidationReportDto(false, 2, 0, 2, java.util.List.of());
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            reportDto, hash, new com.surepay.validation.domain.ValidationResult());
+
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobQueue.holds(hash)).thenReturn(true);
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return result;
+        });
+
+        jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<JobEntity> completion = jobService.getRunningJob(hash).orElseThrow();
+
+        assertThat(jobService.getJob(hash)).get().extracting(JobEntity::status).isEqualTo(JobEntity.JobStatus.PROCESSING);
+        release.countDown();
+
+        JobEntity finished = completion.get(5, TimeUnit.SECONDS);
+        assertThat(finished.status()).isEqualTo(JobEntity.JobStatus.COMPLETED);
+        assertThat(finished.report().errorCount()).isEqualTo(2);
+        assertThat(finished.leaseOwner()).isNull();
+        verify(jobRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void shouldReturnSyncResultWithinDeadline() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(true, 0, 0, 0, java.util.List.of()), "hash1", new com.surepay.validation.domain.ValidationResult());
+        AtomicBoolean onVirtualThread = new AtomicBoolean();
+        when(validationService.validateAndStoreReport(any(SpooledFile.class), eq("text/csv"), eq("test.csv"), any(), any()))
+            .thenAnswer(invocation -> {
+                // The run waits on MongoDB and the disk; only its parsing and rules go to the CPU pool
+                onVirtualThread.set(Thread.currentThread().isVirtual());
+                return result;
+            });
+
+        JobService.SyncOutcome outcome = jobService.validateWithin(
+            spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length), "text/csv", "test.csv", Duration.ofSeconds(5));
+
+        assertThat(outcome.isPromoted()).isFalse();
+        assertThat(outcome.result()).isSameAs(result);
+        assertThat(onVirtualThread).isTrue();
+        verify(jobRepository, never()).insert(any(JobEntity.class));
+    }
+
+    @Test
+    void shouldContinueSyncValidationAsJobWhenDeadlinePasses() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        CountDownLatch release = new CountDownLatch(1);
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(false, 3, 0, 3, java.util.List.of()), hash, new com.surepay.validation.domain.ValidationResult());
+        com.surepay.validation.domain.ValidationResult filling = new com.surepay.validation.domain.ValidationResult();
+
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobQueue.holds(hash)).thenReturn(true);
+        when(validationService.validateAndStoreReport(any(SpooledFile.class), eq("text/csv"), eq("test.csv"), any(), any()))
+            .thenAnswer(invocation -> {
+                CheckpointSession session = invocation.getArgument(3);
+                java.util.function.Consumer<com.surepay.validation.domain.ValidationResult> onStart = invocation.getArgument(4);
+                onStart.accept(filling);
+                filling.addError(new com.surepay.validation.domain.ValidationError(
+                    "REF1", "Payment", com.surepay.validation.domain.ValidationError.ErrorType.BALANCE_MISMATCH));
+                session.reportProgress(4, 1, 1);
+                release.await(5, TimeUnit.SECONDS);
+                return result;
+            });
+
+        JobService.SyncOutcome outcome = jobService.validateWithin(
+            spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length), "text/csv", "test.csv", Duration.ofMillis(50));
+
+        assertThat(outcome.isPromoted()).isTrue();
+        assertThat(outcome.job().jobId()).isEqualTo(hash);
+        assertThat(outcome.job().status()).isEqualTo(JobEntity.JobStatus.PROCESSING);
+        CompletableFuture<JobEntity> completion = jobService.getRunningJob(hash).orElseThrow();
+        // The run keeps reporting to the job, from where it was when the deadline passed
+        assertThat(jobService.getJob(hash).orElseThrow().progress().bytesRead()).isEqualTo(4);
+        assertThat(jobService.syncBytesInFlight()).isEqualTo(fileData.length);
+        // Nobody reads the error list of the run anymore, and the job only gets its summary
+        assertThat(filling.getErrors()).isEmpty();
+        assertThat(filling.getErrorCount()).isEqualTo(1);
+        release.countDown();
+
+        JobEntity finished = completion.get(5, TimeUnit.SECONDS);
+        assertThat(finished.status()).isEqualTo(JobEntity.JobStatus.COMPLETED);
+        assertThat(finished.report().errorCount()).isEqualTo(3);
+        verify(validationService).validateAndStoreReport(any(SpooledFile.class), any(), any(), any(), any());
+        verify(jobQueue).complete(eq(hash), any());
+        verify(jobQueue).release(hash);
+    }
+
+    @Test
+    void shouldStopSyncValidationWhenContentAlreadyRunsAsJob() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity elsewhere = JobEntity.create(hash, "test.csv", "rules1").withStatus(JobEntity.JobStatus.PROCESSING);
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        when(jobRepository.insert(any(JobEntity.class))).thenThrow(new DuplicateKeyException("duplicate"));
+        // Another instance submitted the content after this run started
+        when(jobRepository.findById(hash)).thenReturn(Optional.empty(), Optional.of(elsewhere));
+        when(validationService.validateAndStoreReport(any(SpooledFile.class), any(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                CheckpointSession session = invocation.getArgument(3);
+                for (int i = 0; i < 500 && !session.isStopped(); i++) {
+                    Thread.sleep(10);
+                }
+                if (session.isStopped()) {
+                    stopped.countDown();
+                    throw new CancellationException("Validation stopped at row 1024");
+                }
+                return null;
+            });
+
+        JobService.SyncOutcome outcome = jobService.validateWithin(
+            spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length), "text/csv", "test.csv", Duration.ofMillis(50));
+
+        assertThat(outcome.isPromoted()).isTrue();
+        assertThat(outcome.job()).isEqualTo(elsewhere);
+        assertThat(stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(jobService.getRunningJob(hash)).isEmpty();
+        verify(jobQueue, never()).lease(anyString());
+        verify(jobQueue, never()).complete(anyString(), any());
+        verify(jobQueue, never()).fail(anyString(), anyString());
+    }
+
+    @Test
+    void shouldReturnActiveJobWithoutStartingSyncValidation() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity pending = JobEntity.create(hash, "test.csv", "rules1");
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(pending));
+
+        // As when the client re-sends a request that was answered with the job
+        JobService.SyncOutcome outcome = jobService.validateWithin(
+            spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length), "text/csv", "test.csv", Duration.ofSeconds(5));
+
+        assertThat(outcome.isPromoted()).isTrue();
+        assertThat(outcome.job()).isEqualTo(pending);
+        assertThat(jobService.syncBytesInFlight()).isZero();
+        verify(validationService, never()).validateAndStoreReport(any(SpooledFile.class), any(), any(), any(), any());
+        verify(jobRepository, never()).insert(any(JobEntity.class));
+    }
+
+    @Test
+    void shouldStopPromotedSyncValidationWhenJobIsCancelled() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        AtomicBoolean holds = new AtomicBoolean(true);
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobQueue.holds(hash)).thenAnswer(invocation -> holds.get());
+        when(validationService.validateAndStoreReport(any(SpooledFile.class), any(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                CheckpointSession session = invocation.getArgument(3);
+                for (int i = 0; i < 500 && !session.isStopped(); i++) {
+                    Thread.sleep(10);
+                }
+                if (session.isStopped()) {
+                    stopped.countDown();
+                    throw new CancellationException("Validation stopped at row 1024");
+                }
+                return null;
+            });
+
+        JobService.SyncOutcome outcome = jobService.validateWithin(
+            spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length), "text/csv", "test.csv", Duration.ofMillis(50));
+        assertThat(outcome.isPromoted()).isTrue();
+        CompletableFuture<JobEntity> completion = jobService.getRunningJob(hash).orElseThrow();
+        // Cancelling drops the lease, which the run checks between chunks
+        holds.set(false);
+
+        assertThat(stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        completion.get(5, TimeUnit.SECONDS);
+        verify(jobQueue, never()).complete(anyString(), any());
+        verify(jobQueue, never()).fail(anyString(), anyString());
+    }
+
+    @Test
+    void shouldFailPromotedJobWhenSyncValidationFails() throws Exception {
+        byte[] fileData = "invalid data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(validationService.validateAndStoreReport(any(SpooledFile.class), any(), any(), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            throw new ParseException("Invalid format");
+        });
+
+        JobService.SyncOutcome outcome = jobService.validateWithin(
+            spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length), "text/csv", "test.csv", Duration.ofMillis(50));
+        assertThat(outcome.isPromoted()).isTrue();
+        CompletableFuture<JobEntity> completion = jobService.getRunningJob(hash).orElseThrow();
+        release.countDown();
+        completion.get(5, TimeUnit.SECONDS);
+
+        verify(jobQueue).fail(eq(hash), contains("Failed to parse file"));
+        verify(jobQueue).release(hash);
     }
 
     @Test
@@ -115,21 +404,17 @@ class JobServiceTest {
         
         JobEntity job = JobEntity.create(hash, "test.csv");
         
-        when(jobRepository.findById(anyString())).thenReturn(Optional.empty(), Optional.of(job));
-        when(jobRepository.save(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobRepository.findById(anyString())).thenReturn(Optional.of(job));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any()))
             .thenThrow(new ParseException("Invalid format"));
 
         jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
         
         Thread.sleep(500);
         
-        ArgumentCaptor<JobEntity> captor = ArgumentCaptor.forClass(JobEntity.class);
-        verify(jobRepository, atLeast(2)).save(captor.capture());
-        
-        JobEntity savedJob = captor.getAllValues().get(captor.getAllValues().size() - 1);
-        assertThat(savedJob.status()).isEqualTo(JobEntity.JobStatus.FAILED);
-        assertThat(savedJob.errorMessage()).contains("Failed to parse file");
+        verify(jobQueue).fail(eq(hash), contains("Failed to parse file"));
+        verify(jobQueue).release(hash);
     }
 
     @Test
@@ -139,21 +424,17 @@ class JobServiceTest {
         
         JobEntity job = JobEntity.create(hash, "test.csv");
         
-        when(jobRepository.findById(anyString())).thenReturn(Optional.empty(), Optional.of(job));
-        when(jobRepository.save(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobRepository.findById(anyString())).thenReturn(Optional.of(job));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any()))
             .thenThrow(new RuntimeException("Out of memory"));
 
         jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
         
         Thread.sleep(500);
         
-        ArgumentCaptor<JobEntity> captor = ArgumentCaptor.forClass(JobEntity.class);
-        verify(jobRepository, atLeast(2)).save(captor.capture());
-        
-        JobEntity savedJob = captor.getAllValues().get(captor.getAllValues().size() - 1);
-        assertThat(savedJob.status()).isEqualTo(JobEntity.JobStatus.FAILED);
-        assertThat(savedJob.errorMessage()).contains("An error occurred during validation");
+        verify(jobQueue).fail(eq(hash), contains("An error occurred during validation"));
+        verify(jobQueue).release(hash);
     }
 
     @Test
@@ -163,48 +444,421 @@ class JobServiceTest {
         
         JobEntity job = JobEntity.create(hash, "test.csv");
         
-        when(jobRepository.findById(anyString())).thenReturn(Optional.empty(), Optional.of(job));
-        when(jobRepository.save(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong()))
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobRepository.findById(anyString())).thenReturn(Optional.of(job));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any()))
             .thenThrow(new RuntimeException("Unexpected error"));
 
         jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
         
         Thread.sleep(500);
         
-        ArgumentCaptor<JobEntity> captor = ArgumentCaptor.forClass(JobEntity.class);
-        verify(jobRepository, atLeast(2)).save(captor.capture());
-        
-        JobEntity savedJob = captor.getAllValues().get(captor.getAllValues().size() - 1);
-        assertThat(savedJob.status()).isEqualTo(JobEntity.JobStatus.FAILED);
-        assertThat(savedJob.errorMessage()).contains("An error occurred");
+        verify(jobQueue).fail(eq(hash), contains("An error occurred"));
+        verify(jobQueue).release(hash);
     }
 
     @Test
-    void shouldUpdateJobStatusToProcessing() throws IOException, InterruptedException {
+    void shouldLeaseJobBeforeProcessing() throws IOException, InterruptedException {
         byte[] fileData = "test data".getBytes();
         String hash = HashComputingInputStream.computeHash(fileData);
         
-        JobEntity job = JobEntity.create(hash, "test.csv");
         ValidationReportDto reportDto = new ValidationReportDto(true, 0, 0, 0, java.util.List.of());
         com.surepay.validation.domain.ValidationResult validationResult = new com.surepay.validation.domain.ValidationResult();
         ValidationService.ValidationAndStorageResult result = 
             new ValidationService.ValidationAndStorageResult(reportDto, hash, validationResult);
         
-        when(jobRepository.findById(anyString())).thenReturn(Optional.empty(), Optional.of(job));
-        when(jobRepository.save(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(validationService.validateAndStoreReport(any(), any(), any(), anyLong())).thenReturn(result);
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any())).thenReturn(result);
 
         jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
         
         Thread.sleep(500);
         
-        ArgumentCaptor<JobEntity> captor = ArgumentCaptor.forClass(JobEntity.class);
-        verify(jobRepository, atLeast(2)).save(captor.capture());
+        InOrder inOrder = inOrder(jobQueue, validationService);
+        inOrder.verify(jobQueue).lease(hash);
+        inOrder.verify(validationService).validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any());
+        inOrder.verify(jobQueue).complete(eq(hash), any(ValidationReportDto.class));
+        verify(jobRepository, never()).save(any(JobEntity.class));
+    }
+
+    @Test
+    void shouldReturnCompletedJobForSameContentWithoutRevalidating() throws IOException {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity completed = JobEntity.create(hash, "test.csv", "rules1")
+            .withReport(new ValidationReportDto(true, 0, 0, 0, java.util.List.of()));
         
-        boolean foundProcessing = captor.getAllValues().stream()
-            .anyMatch(j -> j.status() == JobEntity.JobStatus.PROCESSING);
-        assertThat(foundProcessing).isTrue();
+        when(jobRepository.insert(any(JobEntity.class))).thenThrow(new DuplicateKeyException("E11000"));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(completed));
+
+        JobEntity job = jobService.submitJob("other-name.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+
+        assertThat(job).isEqualTo(completed);
+        verify(jobRepository, never()).save(any(JobEntity.class));
+        verifyNoInteractions(validationService, mongoTemplate);
     }
-}
 
+    @Test
+    void shouldRetryFailedJobWhenClaimingIt() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity failed = JobEntity.create(hash, "test.csv").withError("boom");
+        JobEntity pending = JobEntity.create(hash, "test.csv");
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenThrow(new DuplicateKeyException("E11000"));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(failed));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(pending);
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any()))
+            .thenThrow(new ParseException("Invalid format"));
+
+        JobEntity job = jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+
+        assertThat(job).isEqualTo(pending);
+        verify(validationService, timeout(5000)).validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldRevalidateJobCompletedUnderOtherRules() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity stale = JobEntity.create(hash, "test.csv", "rules0")
+            .withReport(new ValidationReportDto(true, 0, 0, 0, java.util.List.of()));
+        JobEntity pending = JobEntity.create(hash, "test.csv", "rules1");
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenThrow(new DuplicateKeyException("E11000"));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(stale));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(pending);
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any()))
+            .thenThrow(new ParseException("Invalid format"));
+
+        JobEntity job = jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+
+        assertThat(job).isEqualTo(pending);
+        assertThat(jobService.findReusableJob(hash, "test.csv")).isEmpty();
+        verify(validationService, timeout(5000)).validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldAttachToFailedJobRetriedByAnotherSubmitter() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity failed = JobEntity.create(hash, "test.csv").withError("boom");
+        JobEntity processing = JobEntity.create(hash, "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenThrow(new DuplicateKeyException("E11000"));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(failed), Optional.of(processing));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(null);
+
+        JobEntity job = jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+
+        assertThat(job).isEqualTo(processing);
+        verifyNoInteractions(validationService);
+    }
+
+    @Test
+    void shouldCoalesceConcurrentSubmissionsOnOneInstance() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(true, 0, 0, 0, java.util.List.of()), hash,
+            new com.surepay.validation.domain.ValidationResult());
+        CountDownLatch release = new CountDownLatch(1);
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return result;
+        });
+
+        jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+        JobEntity attached = jobService.submitJob("again.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+        Optional<CompletableFuture<JobEntity>> running = jobService.getRunningJob(hash);
+        // The second submission is answered from the job claimed by the first
+        verify(jobRepository, never()).findById(hash);
+        release.countDown();
+
+        assertThat(attached.jobId()).isEqualTo(hash);
+        assertThat(attached.filename()).isEqualTo("test.csv");
+        assertThat(running).isPresent();
+        assertThat(running.get().get(5, TimeUnit.SECONDS)).isNotNull();
+        verify(jobRepository, times(1)).insert(any(JobEntity.class));
+        verify(validationService, times(1)).validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any());
+        assertThat(jobService.getRunningJob(hash)).isEmpty();
+    }
+
+    @Test
+    void shouldSkipJobLeasedByAnotherInstance() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity processing = JobEntity.create(hash, "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(processing));
+        when(jobQueue.lease(hash)).thenReturn(Optional.empty());
+
+        jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+
+        verify(jobRepository, timeout(5000)).findById(hash);
+        verifyNoInteractions(validationService);
+        verify(jobQueue, never()).fail(anyString(), anyString());
+    }
+
+    @Test
+    void shouldRemoveLeftoversOfJobCancelledBeforeItGotItsLease() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity cancelled = JobEntity.create(hash, "test.csv").withStatus(JobEntity.JobStatus.CANCELLED);
+        CountDownLatch leasing = new CountDownLatch(1);
+        CountDownLatch cancelledLatch = new CountDownLatch(1);
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(cancelled));
+        when(jobQueue.cancel(hash)).thenReturn(Optional.of(new JobQueue.Cancellation(cancelled, false, "gen1")));
+        when(reportCache.getCurrentVerified(hash, "rules1")).thenReturn(Optional.empty());
+        when(jobQueue.lease(hash)).thenAnswer(invocation -> {
+            leasing.countDown();
+            cancelledLatch.await();
+            return Optional.empty();
+        });
+
+        jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+        assertThat(leasing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<JobEntity> run = jobService.getRunningJob(hash).orElseThrow();
+        jobService.cancelJob(hash);
+        // Admitted already, so the skip cleans up once it finds the job cancelled
+        verify(errorService, never()).deleteErrors(anyString(), anyString(), anyString());
+        cancelledLatch.countDown();
+
+        assertThat(run.get(5, TimeUnit.SECONDS).status()).isEqualTo(JobEntity.JobStatus.CANCELLED);
+        verify(errorService).deleteErrors(hash, "rules1", "gen1");
+        verify(jobCheckpoints).discard(hash);
+        verifyNoInteractions(validationService);
+        assertThat(spoolDirectory.resolve(hash)).doesNotExist();
+    }
+
+    @Test
+    void shouldPickUpLeasableJobFromSpool() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash;
+        try (SpooledFile spooled = spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length)) {
+            hash = spooled.hash();
+        }
+        JobEntity pending = JobEntity.create(hash, "test.csv").withInput("text/csv", fileData.length);
+        JobEntity elsewhere = JobEntity.create(HashComputingInputStream.computeHash("other".getBytes()), "other.csv")
+            .withInput("text/csv", 5);
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(true, 0, 0, 0, java.util.List.of()), hash,
+            new com.surepay.validation.domain.ValidationResult());
+        
+        when(jobQueue.findLeasable(isNull(), anyLong(), anyInt())).thenReturn(java.util.List.of(elsewhere, pending));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), eq("text/csv"), eq("test.csv"), any(), any()))
+            .thenReturn(result);
+
+        jobService.pollForWork();
+
+        verify(jobQueue, timeout(5000)).complete(eq(hash), any(ValidationReportDto.class));
+        verify(jobQueue, never()).lease(elsewhere.jobId());
+        verify(validationService, times(1)).validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldPagePastJobsSpooledElsewhere() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash;
+        try (SpooledFile spooled = spoolStore.spool(new ByteArrayInputStream(fileData), fileData.length)) {
+            hash = spooled.hash();
+        }
+        java.util.List<JobEntity> elsewhere = new java.util.ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            elsewhere.add(JobEntity.create(HashComputingInputStream.computeHash(("other" + i).getBytes()), "other.csv")
+                .withInput("text/csv", 6));
+        }
+        JobEntity pending = JobEntity.create(hash, "test.csv").withInput("text/csv", fileData.length);
+        ValidationService.ValidationAndStorageResult result = new ValidationService.ValidationAndStorageResult(
+            new ValidationReportDto(true, 0, 0, 0, java.util.List.of()), hash,
+            new com.surepay.validation.domain.ValidationResult());
+
+        when(jobQueue.findLeasable(isNull(), anyLong(), anyInt())).thenReturn(elsewhere);
+        when(jobQueue.findLeasable(eq(elsewhere.getLast()), anyLong(), anyInt())).thenReturn(java.util.List.of(pending));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), eq("text/csv"), eq("test.csv"), any(), any()))
+            .thenReturn(result);
+
+        jobService.pollForWork();
+
+        verify(jobQueue, timeout(5000)).complete(eq(hash), any(ValidationReportDto.class));
+        verify(jobQueue, times(2)).findLeasable(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void shouldReadLimitedPagesPerPollAndContinueOnNextPoll() {
+        java.util.List<JobEntity> elsewhere = new java.util.ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            elsewhere.add(JobEntity.create(HashComputingInputStream.computeHash(("other" + i).getBytes()), "other.csv")
+                .withInput("text/csv", 6));
+        }
+        when(jobQueue.findLeasable(any(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            JobEntity after = invocation.getArgument(0);
+            int from = after == null ? 0 : elsewhere.indexOf(after) + 1;
+            return elsewhere.subList(from, Math.min(from + (int) invocation.getArgument(2), elsewhere.size()));
+        });
+
+        jobService.pollForWork();
+        verify(jobQueue, times(5)).findLeasable(any(), anyLong(), anyInt());
+        verify(jobQueue, never()).findLeasable(eq(elsewhere.get(99)), anyLong(), anyInt());
+
+        jobService.pollForWork();
+        // The next poll reads the rest, and the one after starts from the oldest job again
+        verify(jobQueue).findLeasable(eq(elsewhere.get(99)), anyLong(), anyInt());
+        jobService.pollForWork();
+        verify(jobQueue, times(2)).findLeasable(isNull(), anyLong(), anyInt());
+    }
+
+    @Test
+    void shouldStopRunningJobWhenCancelledAndRemoveItsErrors() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity processing = JobEntity.create(hash, "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        CountDownLatch validating = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobQueue.cancel(hash)).thenReturn(Optional.of(
+            new JobQueue.Cancellation(processing.withStatus(JobEntity.JobStatus.CANCELLED), false, null)));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(processing.withStatus(JobEntity.JobStatus.CANCELLED)));
+        when(jobCheckpoints.open(any(JobEntity.class), any())).thenReturn(new CheckpointSession(hash, null, "gen1", null,
+            jobQueue, java.time.Duration.ZERO, CheckpointSession.ProgressListener.NONE, () -> false, () -> {}));
+        when(validationService.validateAndStreamReport(any(SpooledFile.class), any(), any(), any(), any()))
+            .thenAnswer(invocation -> {
+                validating.countDown();
+                cancelled.await();
+                throw new CancellationException("Validation stopped at row 1024");
+            });
+
+        jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+        assertThat(validating.await(5, TimeUnit.SECONDS)).isTrue();
+        Optional<JobEntity> job = jobService.cancelJob(hash);
+        // The run itself removes the errors, once it no longer writes any
+        verify(errorService, never()).deleteErrors(eq(hash), anyString(), anyString());
+        cancelled.countDown();
+
+        assertThat(job).map(JobEntity::status).contains(JobEntity.JobStatus.CANCELLED);
+        verify(errorService, timeout(5000)).deleteErrors(hash, "rules1", "gen1");
+        verify(jobCheckpoints, timeout(5000)).discard(hash);
+        verify(jobQueue, timeout(5000)).release(hash);
+        verify(jobQueue, never()).fail(anyString(), anyString());
+        verify(jobQueue, never()).complete(anyString(), any());
+        assertThat(spoolDirectory.resolve(hash)).doesNotExist();
+    }
+
+    @Test
+    void shouldCancelJobNotRunningHereAndRemoveLeftovers() throws Exception {
+        String hash = HashComputingInputStream.computeHash("test data".getBytes());
+        Files.write(spoolDirectory.resolve(hash), "test data".getBytes());
+        JobEntity cancelled = JobEntity.create(hash, "test.csv").withStatus(JobEntity.JobStatus.CANCELLED);
+        
+        when(jobQueue.cancel(hash)).thenReturn(Optional.of(new JobQueue.Cancellation(cancelled, false, "gen1")));
+        when(reportCache.getCurrentVerified(hash, "rules1")).thenReturn(Optional.empty());
+
+        assertThat(jobService.cancelJob(hash)).contains(cancelled);
+        verify(errorService).deleteErrors(hash, "rules1", "gen1");
+        verify(jobCheckpoints).discard(hash);
+        assertThat(spoolDirectory.resolve(hash)).doesNotExist();
+    }
+
+    @Test
+    void shouldKeepErrorsAndInputOfReportStoredForSameContentWhenCancelled() throws Exception {
+        String hash = HashComputingInputStream.computeHash("test data".getBytes());
+        Files.write(spoolDirectory.resolve(hash), "test data".getBytes());
+        JobEntity cancelled = JobEntity.create(hash, "test.csv", "rules1").withStatus(JobEntity.JobStatus.CANCELLED);
+        
+        when(jobQueue.cancel(hash)).thenReturn(Optional.of(new JobQueue.Cancellation(cancelled, false, "gen1")));
+        when(reportCache.getCurrentVerified(hash, "rules1")).thenReturn(Optional.of(com.surepay.validation.domain.ReportEntity.create(
+            hash, new ValidationReportDto(false, 1, 1, 0, java.util.List.of()),
+            new com.surepay.validation.domain.ReportEntity.ReportMetadata("test.csv", "text/csv", Instant.now(), 10),
+            null, "rules1", "gen1")));
+
+        assertThat(jobService.cancelJob(hash)).contains(cancelled);
+        verify(jobCheckpoints).discard(hash);
+        verify(errorService, never()).deleteErrors(anyString(), anyString(), anyString());
+        assertThat(spoolDirectory.resolve(hash)).exists();
+    }
+
+    @Test
+    void shouldLeaveCleanupToInstanceRunningCancelledJob() throws Exception {
+        String hash = HashComputingInputStream.computeHash("test data".getBytes());
+        Files.write(spoolDirectory.resolve(hash), "test data".getBytes());
+        JobEntity cancelled = JobEntity.create(hash, "test.csv").withStatus(JobEntity.JobStatus.CANCELLED);
+        
+        when(jobQueue.cancel(hash)).thenReturn(Optional.of(new JobQueue.Cancellation(cancelled, true, "gen1")));
+
+        assertThat(jobService.cancelJob(hash)).contains(cancelled);
+        verifyNoInteractions(errorService, jobCheckpoints);
+        assertThat(spoolDirectory.resolve(hash)).exists();
+    }
+
+    @Test
+    void shouldLeaveFinishedJobAsItIsWhenCancelled() {
+        JobEntity completed = JobEntity.create("hash1", "test.csv").withReport(new ValidationReportDto(true, 0, 0, 0, java.util.List.of()));
+        
+        when(jobQueue.cancel("hash1")).thenReturn(Optional.empty());
+        when(jobRepository.findById("hash1")).thenReturn(Optional.of(completed));
+
+        assertThat(jobService.cancelJob("hash1")).contains(completed);
+        verifyNoInteractions(errorService, jobCheckpoints);
+    }
+
+    @Test
+    void shouldRetryCancelledJobWhenClaimingIt() throws Exception {
+        byte[] fileData = "test data".getBytes();
+        String hash = HashComputingInputStream.computeHash(fileData);
+        JobEntity cancelled = JobEntity.create(hash, "test.csv").withStatus(JobEntity.JobStatus.CANCELLED);
+        JobEntity retried = JobEntity.create(hash, "test.csv");
+        
+        when(jobRepository.insert(any(JobEntity.class))).thenThrow(new DuplicateKeyException("duplicate"));
+        when(jobRepository.findById(hash)).thenReturn(Optional.of(cancelled));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobEntity.class)))
+            .thenReturn(retried);
+
+        JobEntity job = jobService.submitJob("test.csv", new ByteArrayInputStream(fileData), "text/csv", fileData.length);
+
+        assertThat(job.status()).isEqualTo(JobEntity.JobStatus.PENDING);
+        verify(jobQueue, timeout(5000)).lease(hash);
+    }
+
+    @Test
+    void shouldReuseRunningJobForKnownHash() {
+        JobEntity running = JobEntity.create("hash1", "test.csv").withStatus(JobEntity.JobStatus.PROCESSING);
+        when(jobRepository.findById("hash1")).thenReturn(Optional.of(running));
+
+        assertThat(jobService.findReusableJob("hash1", "test.csv")).contains(running);
+        verifyNoInteractions(reportCache);
+    }
+
+    @Test
+    void shouldCreateCompletedJobFromStoredReport() {
+        ValidationReportDto summary = new ValidationReportDto(false, 2, 1, 1, java.util.List.of());
+        JobEntity failed = JobEntity.create("hash1", "test.csv").withError("boom");
+        when(jobRepository.findById("hash1")).thenReturn(Optional.of(failed));
+        when(reportCache.getCurrent("hash1", "rules1")).thenReturn(Optional.of(com.surepay.validation.domain.ReportEntity.create(
+            "hash1", summary, new com.surepay.validation.domain.ReportEntity.ReportMetadata("test.csv", "text/csv", Instant.now(), 10),
+            null, "rules1")));
+        when(jobRepository.save(any(JobEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Optional<JobEntity> job = jobService.findReusableJob("hash1", "test.csv");
+
+        assertThat(job).isPresent();
+        assertThat(job.get().status()).isEqualTo(JobEntity.JobStatus.COMPLETED);
+        assertThat(job.get().report()).isEqualTo(summary);
+    }
+
+    @Test
+    void shouldNotReuseAnythingForUnknownHash() {
+        when(jobRepository.findById("hash1")).thenReturn(Optional.empty());
+        when(reportCache.getCurrent("hash1", "rules1")).thenReturn(Optional.empty());
+
+        assertThat(jobService.findReusableJob("hash1", "test.csv")).isEmpty();
+    }
+}
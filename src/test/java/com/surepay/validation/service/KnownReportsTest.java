@@ -0,0 +1,135 @@
+package com.surepay.validation.service;
+
+import com.mongodb.client.MongoCollection;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ReportEntity;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KnownReportsTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> collection;
+
+    private ValidationProperties validationProperties;
+
+    private KnownReports knownReports;
+
+    @BeforeEach
+    void setUp() {
+        validationProperties = new ValidationProperties();
+        knownReports = new KnownReports(mongoTemplate, validationProperties);
+    }
+
+    @Test
+    void shouldTreatEveryReportAsPossibleBeforeFirstBuild() {
+        assertThat(knownReports.mightExist("hash1")).isTrue();
+        assertThat(knownReports.mightExist("hash2")).isTrue();
+    }
+
+    @Test
+    void shouldOnlyKnowStoredAndAddedReportsAfterBuild() {
+        stubReports("hash1", "hash2");
+
+        knownReports.rebuild();
+
+        assertThat(knownReports.mightExist("hash1")).isTrue();
+        assertThat(knownReports.mightExist("hash2")).isTrue();
+        assertThat(knownReports.mightExist("hash3")).isFalse();
+
+        knownReports.add("hash3");
+
+        assertThat(knownReports.mightExist("hash3")).isTrue();
+    }
+
+    @Test
+    void shouldKeepReportsAddedDuringRebuild() {
+        when(mongoTemplate.getCollectionName(ReportEntity.class)).thenReturn("reports");
+        when(mongoTemplate.getCollection("reports")).thenReturn(collection);
+        when(collection.estimatedDocumentCount()).thenReturn(1L);
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("reports"))).thenAnswer(invocation -> {
+            // Stored by a validation while the collection is being scanned
+            knownReports.add("hash2");
+            return Stream.of(new Document("_id", "hash1"));
+        });
+
+        knownReports.rebuild();
+
+        assertThat(knownReports.mightExist("hash1")).isTrue();
+        assertThat(knownReports.mightExist("hash2")).isTrue();
+    }
+
+    @Test
+    void shouldNotLoseReportsAddedWhileRebuildsSwapFilters() throws Exception {
+        when(mongoTemplate.getCollectionName(ReportEntity.class)).thenReturn("reports");
+        when(mongoTemplate.getCollection("reports")).thenReturn(collection);
+        when(collection.estimatedDocumentCount()).thenReturn(0L);
+        Set<String> stored = ConcurrentHashMap.newKeySet();
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("reports")))
+            .thenAnswer(invocation -> List.copyOf(stored).stream().map(id -> new Document("_id", id)));
+        knownReports.rebuild();
+
+        Thread rebuilds = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < 200; i++) {
+                knownReports.rebuild();
+            }
+        });
+        for (int i = 0; i < 5_000; i++) {
+            stored.add("hash" + i);
+            knownReports.add("hash" + i);
+        }
+        rebuilds.join();
+
+        for (int i = 0; i < 5_000; i++) {
+            assertThat(knownReports.mightExist("hash" + i)).as("hash" + i).isTrue();
+        }
+    }
+
+    @Test
+    void shouldKeepAnsweringMaybeWhenBuildFails() {
+        when(mongoTemplate.getCollectionName(ReportEntity.class)).thenReturn("reports");
+        when(mongoTemplate.getCollection("reports")).thenThrow(new IllegalStateException("unavailable"));
+
+        knownReports.rebuild();
+
+        assertThat(knownReports.mightExist("hash1")).isTrue();
+    }
+
+    @Test
+    void shouldNotBuildWhenDisabled() {
+        validationProperties.getCache().getKnownReports().setEnabled(false);
+
+        knownReports.rebuild();
+
+        assertThat(knownReports.mightExist("hash1")).isTrue();
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    private void stubReports(String... reportIds) {
+        when(mongoTemplate.getCollectionName(ReportEntity.class)).thenReturn("reports");
+        when(mongoTemplate.getCollection("reports")).thenReturn(collection);
+        when(collection.estimatedDocumentCount()).thenReturn((long) reportIds.length);
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("reports")))
+            .thenReturn(Stream.of(reportIds).map(id -> new Document("_id", id)));
+    }
+}
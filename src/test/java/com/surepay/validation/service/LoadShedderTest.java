@@ -0,0 +1,113 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LoadShedderTest {
+
+    @Mock
+    private JobScheduler jobScheduler;
+
+    @Mock
+    private JobService jobService;
+
+    @Mock
+    private MongoLatency mongoLatency;
+
+    private ValidationProperties validationProperties;
+    private SimpleMeterRegistry meterRegistry;
+    private LoadShedder loadShedder;
+    private double heapUsed = 0.5;
+
+    @BeforeEach
+    void setUp() {
+        validationProperties = new ValidationProperties();
+        ValidationProperties.Admission admission = validationProperties.getAdmission();
+        admission.setMaxHeapUsedFraction(0.8);
+        admission.setMaxInFlightBytes(1_000);
+        admission.setMaxQueueDepth(10);
+        admission.setMaxMongoLatency(Duration.ofMillis(100));
+        admission.setMinRetryAfter(Duration.ofSeconds(5));
+        admission.setMaxRetryAfter(Duration.ofSeconds(60));
+        meterRegistry = new SimpleMeterRegistry();
+        loadShedder = new LoadShedder(jobScheduler, jobService, mongoLatency, validationProperties, meterRegistry) {
+            @Override
+            double heapUsedFraction() {
+                return heapUsed;
+            }
+        };
+    }
+
+    @Test
+    void shouldAdmitWhileEverySignalIsBelowItsLimit() {
+        signals(400, 100, 2, Duration.ofMillis(20));
+
+        assertThat(loadShedder.shed()).isEmpty();
+        assertThat(meterRegistry.get("admission.saturation.max").gauge().value()).isEqualTo(0.625);
+        assertThat(meterRegistry.get("admission.saturation").tag("signal", "in-flight").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    void shouldShedUntilBytesBeyondTheLimitDrained() {
+        // 2000 bytes in flight, 1000 over the limit, drain at 50 bytes per second
+        signals(800, 1_200, 2, Duration.ofMillis(20));
+        when(jobScheduler.drainRate()).thenReturn(50.0);
+
+        LoadShedder.Rejection rejection = loadShedder.shed().orElseThrow();
+        assertThat(rejection.retryAfter()).isEqualTo(Duration.ofSeconds(20));
+        // Counted only once the caller actually answers with 429
+        assertThat(meterRegistry.get("admission.rejected").tag("signal", "in-flight").counter().count()).isZero();
+        rejection.count();
+        assertThat(meterRegistry.get("admission.rejected").tag("signal", "in-flight").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldBackOffLongerTheSlowerMongoDbIs() {
+        signals(0, 0, 0, Duration.ofMillis(150));
+
+        // 1.5 times the minimum, rounded up to whole seconds
+        assertThat(loadShedder.shed()).map(LoadShedder.Rejection::retryAfter).contains(Duration.ofSeconds(8));
+        loadShedder.shed().orElseThrow().count();
+        assertThat(meterRegistry.get("admission.rejected").tag("signal", "mongo").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCapRetryAfterAndCountWorstSignal() {
+        heapUsed = 0.84;
+        signals(0, 0, 40, Duration.ZERO);
+        when(jobScheduler.queuedBytes()).thenReturn(1_000_000L);
+        when(jobScheduler.drainRate()).thenReturn(1_000.0);
+
+        loadShedder.shed().orElseThrow().count();
+        assertThat(loadShedder.shed()).map(LoadShedder.Rejection::retryAfter).contains(Duration.ofSeconds(60));
+        assertThat(meterRegistry.get("admission.rejected").tag("signal", "queue").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("admission.rejected").tag("signal", "heap").counter().count()).isZero();
+    }
+
+    @Test
+    void shouldAdmitEverythingWhenDisabled() {
+        validationProperties.getAdmission().setEnabled(false);
+        heapUsed = 1.0;
+
+        assertThat(loadShedder.shed()).isEmpty();
+        verifyNoInteractions(jobScheduler, jobService, mongoLatency);
+    }
+
+    private void signals(long runningBytes, long syncBytes, int queueDepth, Duration mongoLatencyAverage) {
+        when(jobScheduler.runningBytes()).thenReturn(runningBytes);
+        when(jobService.syncBytesInFlight()).thenReturn(syncBytes);
+        when(jobScheduler.queueDepth()).thenReturn(queueDepth);
+        when(mongoLatency.average()).thenReturn(mongoLatencyAverage);
+    }
+}
@@ -0,0 +1,34 @@
+package com.surepay.validation.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MongoLatencyTest {
+
+    private final MongoLatency mongoLatency = new MongoLatency();
+
+    @Test
+    void shouldFollowRecentCommands() {
+        assertThat(mongoLatency.average(0)).isZero();
+
+        mongoLatency.record(TimeUnit.MILLISECONDS.toNanos(10), 0);
+        assertThat(mongoLatency.average(0)).isEqualTo(Duration.ofMillis(10));
+
+        for (int i = 0; i < 50; i++) {
+            mongoLatency.record(TimeUnit.MILLISECONDS.toNanos(1_000), 0);
+        }
+        assertThat(mongoLatency.average(0)).isBetween(Duration.ofMillis(990), Duration.ofMillis(1_000));
+    }
+
+    @Test
+    void shouldForgetLatencyWithoutRecentCommands() {
+        mongoLatency.record(TimeUnit.SECONDS.toNanos(5), 0);
+
+        assertThat(mongoLatency.average(TimeUnit.SECONDS.toNanos(30))).isEqualTo(Duration.ofSeconds(5));
+        assertThat(mongoLatency.average(TimeUnit.MINUTES.toNanos(2))).isZero();
+    }
+}
@@ -0,0 +1,226 @@
+package com.surepay.validation.service;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ReportEntity;
+import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.repository.ReportRepository;
+import com.surepay.validation.validator.RuleSet;
+import com.mongodb.client.MongoCollection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportCacheTest {
+
+    private static final RuleSet ACTIVE_RULES = new RuleSet(List.of()) {
+        @Override
+        public String fingerprint() {
+            return "rules2";
+        }
+    };
+
+    @Mock
+    private ReportRepository reportRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private KnownReports knownReports;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ReportCache reportCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ValidationProperties validationProperties = new ValidationProperties();
+        knownReports = new KnownReports(mongoTemplate, validationProperties);
+        reportCache = new ReportCache(reportRepository, knownReports, ACTIVE_RULES, validationProperties, meterRegistry);
+    }
+
+    @Test
+    void shouldReadReportFromRepositoryOnlyOnce() {
+        ReportEntity report = report("hash1");
+        when(reportRepository.findById("hash1")).thenReturn(Optional.of(report));
+
+        assertThat(reportCache.get("hash1")).contains(report);
+        assertThat(reportCache.get("hash1")).contains(report);
+        assertThat(reportCache.contains("hash1")).isTrue();
+
+        verify(reportRepository, times(1)).findById("hash1");
+    }
+
+    @Test
+    void shouldNotCacheMissingReports() {
+        ReportEntity report = report("hash1");
+        when(reportRepository.findById("hash1")).thenReturn(Optional.empty(), Optional.of(report));
+
+        assertThat(reportCache.get("hash1")).isEmpty();
+        assertThat(reportCache.get("hash1")).contains(report);
+    }
+
+    @Test
+    void shouldServePutReportsWithoutRepositoryRead() {
+        ReportEntity report = report("hash1");
+
+        reportCache.put(report);
+
+        assertThat(reportCache.get("hash1")).contains(report);
+        verifyNoInteractions(reportRepository);
+    }
+
+    @Test
+    void shouldCoalesceConcurrentMisses() throws Exception {
+        ReportEntity report = report("hash1");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(reportRepository.findById("hash1")).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(report);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Optional<ReportEntity>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> reportCache.get("hash1")));
+            }
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            release.countDown();
+
+            for (Future<Optional<ReportEntity>> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).contains(report);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(reportRepository, times(1)).findById("hash1");
+    }
+
+    @Test
+    void shouldRereadReportOfOtherRulesOnce() {
+        ReportEntity stale = ReportEntity.create("hash1", new ValidationReportDto(true, 0, 0, 0, List.of()),
+            new ReportEntity.ReportMetadata("test.csv", "text/csv", Instant.now(), 10), null, "rules1");
+        ReportEntity current = ReportEntity.create("hash1", new ValidationReportDto(false, 1, 0, 1, List.of()),
+            new ReportEntity.ReportMetadata("test.csv", "text/csv", Instant.now(), 10), null, "rules2");
+        reportCache.put(stale);
+        when(reportRepository.findById("hash1")).thenReturn(Optional.of(current));
+
+        assertThat(reportCache.getCurrent("hash1", "rules2")).contains(current);
+        assertThat(reportCache.getCurrent("hash1", "rules2")).contains(current);
+        assertThat(reportCache.getCurrent("hash1", "rules3")).isEmpty();
+
+        verify(reportRepository, times(2)).findById("hash1");
+    }
+
+    @Test
+    void shouldOnlyKeepReportsOfOtherRulesForTheirTtl() {
+        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties.getCache().setOtherRulesTtl(Duration.ZERO);
+        ReportCache shortLived = new ReportCache(
+            reportRepository, knownReports, ACTIVE_RULES, validationProperties, meterRegistry);
+        ReportEntity otherRules = report("hash1", "rules1");
+        ReportEntity activeRules = report("hash2", "rules2");
+        when(reportRepository.findById("hash1")).thenReturn(Optional.of(otherRules));
+
+        shortLived.put(otherRules);
+        shortLived.put(activeRules);
+
+        assertThat(shortLived.get("hash1")).contains(otherRules);
+        assertThat(shortLived.get("hash2")).contains(activeRules);
+        verify(reportRepository).findById("hash1");
+        verify(reportRepository, never()).findById("hash2");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldSkipRepositoryForReportsNeverStored() {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        when(mongoTemplate.getCollectionName(ReportEntity.class)).thenReturn("reports");
+        when(mongoTemplate.getCollection("reports")).thenReturn(collection);
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("reports")))
+            .thenReturn(Stream.of(new Document("_id", "hash1")));
+        when(reportRepository.findById("hash1")).thenReturn(Optional.of(report("hash1", "rules1")));
+        knownReports.rebuild();
+
+        assertThat(reportCache.getCurrent("hash2", "rules1")).isEmpty();
+        assertThat(reportCache.getCurrent("hash1", "rules1")).isPresent();
+
+        reportCache.put(report("hash2", "rules1"));
+
+        assertThat(reportCache.getCurrent("hash2", "rules1")).isPresent();
+        verify(reportRepository, never()).findById("hash2");
+        assertThat(meterRegistry.get("reports.lookups.skipped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReadRepositoryForVerifiedLookupOfReportsNeverSeen() {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        when(mongoTemplate.getCollectionName(ReportEntity.class)).thenReturn("reports");
+        when(mongoTemplate.getCollection("reports")).thenReturn(collection);
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("reports"))).thenReturn(Stream.empty());
+        knownReports.rebuild();
+        // Stored by another instance after the rebuild
+        when(reportRepository.findById("hash1")).thenReturn(Optional.of(report("hash1", "rules1")));
+
+        assertThat(reportCache.getCurrent("hash1", "rules1")).isEmpty();
+        assertThat(reportCache.getCurrentVerified("hash1", "rules1")).isPresent();
+        assertThat(reportCache.getCurrentVerified("hash1", "rules2")).isEmpty();
+        assertThat(reportCache.getCurrent("hash1", "rules1")).isPresent();
+        assertThat(reportCache.getCurrentVerified("hash2", "rules1")).isEmpty();
+        // Once by the verified lookup, once more when the report is asked for under other rules
+        verify(reportRepository, times(2)).findById("hash1");
+        verify(reportRepository).findById("hash2");
+    }
+
+    @Test
+    void shouldPublishHitAndMissMetrics() {
+        when(reportRepository.findById("hash1")).thenReturn(Optional.of(report("hash1")));
+
+        reportCache.get("hash1");
+        reportCache.get("hash1");
+
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ReportCache.CACHE_NAME).tag("result", "hit")
+            .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ReportCache.CACHE_NAME).tag("result", "miss")
+            .functionCounter().count()).isEqualTo(1);
+    }
+
+    private static ReportEntity report(String reportId) {
+        return ReportEntity.create(reportId, new ValidationReportDto(true, 0, 0, 0, List.of()),
+            new ReportEntity.ReportMetadata("test.csv", "text/csv", Instant.now(), 10));
+    }
+
+    private static ReportEntity report(String reportId, String ruleSetFingerprint) {
+        return ReportEntity.create(reportId, new ValidationReportDto(true, 0, 0, 0, List.of()),
+            new ReportEntity.ReportMetadata("test.csv", "text/csv", Instant.now(), 10), null, ruleSetFingerprint);
+    }
+}
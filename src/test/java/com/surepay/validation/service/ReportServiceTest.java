@@ -1,22 +1,31 @@
 package com.surepay.validation.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.ReportEntity;
 import com.surepay.validation.dto.ValidationReportDto;
+import com.surepay.validation.reporter.ErrorExportWriter;
+import com.surepay.validation.reporter.ReportSerializer;
 import com.surepay.validation.repository.ReportRepository;
+import com.surepay.validation.validator.RuleSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -29,11 +38,21 @@ class ReportServiceTest {
     @Mock
     private ErrorService errorService;
 
+    @Mock
+    private RuleSet ruleSet;
+
     private ReportService reportService;
 
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     @BeforeEach
     void setUp() {
-        reportService = new ReportService(reportRepository, errorService);
+        ValidationProperties validationProperties = new ValidationProperties();
+        KnownReports knownReports = new KnownReports(mock(MongoTemplate.class), validationProperties);
+        ReportCache reportCache = new ReportCache(
+            reportRepository, knownReports, ruleSet, validationProperties, new SimpleMeterRegistry());
+        reportService = new ReportService(reportCache, errorService, new ErrorExportWriter(objectMapper),
+            new ReportSerializer(objectMapper), ruleSet);
     }
 
     @Test
@@ -43,14 +62,14 @@ class ReportServiceTest {
             true, 0, 0, 0, java.util.List.of()
         );
         
-        when(reportRepository.findReportDtoById(reportId)).thenReturn(Optional.of(reportDto));
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(entity(reportId, reportDto, null)));
 
         Optional<ValidationReportDto> result = reportService.getReport(reportId, false);
 
         assertThat(result).isPresent();
         assertThat(result.get()).isEqualTo(reportDto);
         assertThat(result.get().errors()).isEmpty();
-        verify(errorService, never()).getErrors(anyString(), any(Pageable.class));
+        verify(errorService, never()).getErrorsAfter(anyString(), any(), any(), anyInt(), anyInt());
     }
 
     @Test
@@ -67,12 +86,8 @@ class ReportServiceTest {
             "ref2", "desc2", "BALANCE_MISMATCH", "Balance mismatch"
         );
         
-        Page<ValidationReportDto.ValidationErrorDto> errorPage = new PageImpl<>(
-            List.of(error1, error2)
-        );
-        
-        when(reportRepository.findReportDtoById(reportId)).thenReturn(Optional.of(reportDto));
-        when(errorService.getErrors(eq(reportId), any(Pageable.class))).thenReturn(errorPage);
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(entity(reportId, reportDto, null)));
+        when(errorService.getErrorsAfter(eq(reportId), eq("rules1"), eq("gen1"), eq(-1), anyInt())).thenReturn(List.of(error1, error2));
 
         Optional<ValidationReportDto> result = reportService.getReport(reportId, true);
 
@@ -81,81 +96,88 @@ class ReportServiceTest {
         assertThat(result.get().errorCount()).isEqualTo(2);
         assertThat(result.get().duplicateReferenceCount()).isEqualTo(1);
         assertThat(result.get().balanceMismatchCount()).isEqualTo(1);
-        verify(errorService).getErrors(eq(reportId), any(Pageable.class));
+        verify(errorService).getErrorsAfter(eq(reportId), eq("rules1"), eq("gen1"), eq(-1), anyInt());
     }
 
     @Test
-    void shouldGetReportWithPagination() {
+    void shouldGetReportWithErrorsAfterCursor() {
         String reportId = "testreport123";
         ValidationReportDto reportDto = new ValidationReportDto(
             false, 5, 2, 3, java.util.List.of()
         );
         
-        Pageable pageable = PageRequest.of(1, 2);
-        Page<ValidationReportDto.ValidationErrorDto> errorPage = new PageImpl<>(
-            List.of(
-                new ValidationReportDto.ValidationErrorDto("ref3", "desc3", "BALANCE_MISMATCH", "Error"),
-                new ValidationReportDto.ValidationErrorDto("ref4", "desc4", "BALANCE_MISMATCH", "Error")
-            ),
-            pageable,
-            5
+        List<ValidationReportDto.ValidationErrorDto> page = List.of(
+            new ValidationReportDto.ValidationErrorDto("ref3", "desc3", "BALANCE_MISMATCH", "Error"),
+            new ValidationReportDto.ValidationErrorDto("ref4", "desc4", "BALANCE_MISMATCH", "Error")
         );
         
-        when(reportRepository.findReportDtoById(reportId)).thenReturn(Optional.of(reportDto));
-        when(errorService.getErrors(reportId, pageable)).thenReturn(errorPage);
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(entity(reportId, reportDto, null)));
+        when(errorService.getErrorsAfter(reportId, "rules1", "gen1", 1, 2)).thenReturn(page);
 
-        Optional<ValidationReportDto> result = reportService.getReport(reportId, true, pageable);
+        Optional<ValidationReportDto> result = reportService.getReportWithErrors(reportId, 1, 2);
 
         assertThat(result).isPresent();
         assertThat(result.get().errors()).hasSize(2);
         assertThat(result.get().errorCount()).isEqualTo(5);
-        verify(errorService).getErrors(reportId, pageable);
+        verify(errorService).getErrorsAfter(reportId, "rules1", "gen1", 1, 2);
+    }
+
+    @Test
+    void shouldSkipErrorQueryWhenCursorIsPastLastError() {
+        String reportId = "testreport123";
+        ValidationReportDto reportDto = new ValidationReportDto(
+            false, 5, 2, 3, java.util.List.of()
+        );
+        
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(entity(reportId, reportDto, null)));
+
+        Optional<ValidationReportDto> result = reportService.getReportWithErrors(reportId, 4, 10);
+
+        assertThat(result).isPresent();
+        assertThat(result.get().errors()).isEmpty();
+        assertThat(result.get().errorCount()).isEqualTo(5);
+        verify(errorService, never()).getErrorsAfter(anyString(), any(), any(), anyInt(), anyInt());
     }
 
     @Test
     void shouldReturnEmptyWhenReportNotFound() {
         String reportId = "nonexistent";
         
-        when(reportRepository.findReportDtoById(reportId)).thenReturn(Optional.empty());
+        when(reportRepository.findById(reportId)).thenReturn(Optional.empty());
 
         Optional<ValidationReportDto> result = reportService.getReport(reportId, false);
 
         assertThat(result).isEmpty();
-        verify(errorService, never()).getErrors(anyString(), any(Pageable.class));
+        verify(errorService, never()).getErrorsAfter(anyString(), any(), any(), anyInt(), anyInt());
     }
 
     @Test
     void shouldReturnEmptyWhenReportNotFoundWithErrors() {
         String reportId = "nonexistent";
         
-        when(reportRepository.findReportDtoById(reportId)).thenReturn(Optional.empty());
+        when(reportRepository.findById(reportId)).thenReturn(Optional.empty());
 
         Optional<ValidationReportDto> result = reportService.getReport(reportId, true);
 
         assertThat(result).isEmpty();
-        verify(errorService, never()).getErrors(anyString(), any(Pageable.class));
+        verify(errorService, never()).getErrorsAfter(anyString(), any(), any(), anyInt(), anyInt());
     }
 
     @Test
-    void shouldUseDefaultPaginationWhenErrorsRequested() {
+    void shouldUseDefaultPageSizeWhenErrorsRequested() {
         String reportId = "testreport123";
         ValidationReportDto reportDto = new ValidationReportDto(
             false, 1, 0, 1, java.util.List.of()
         );
         
-        Page<ValidationReportDto.ValidationErrorDto> errorPage = new PageImpl<>(
-            List.of(new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "BALANCE_MISMATCH", "Error"))
-        );
-        
-        when(reportRepository.findReportDtoById(reportId)).thenReturn(Optional.of(reportDto));
-        when(errorService.getErrors(eq(reportId), any(Pageable.class))).thenReturn(errorPage);
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(entity(reportId, reportDto, null)));
+        when(errorService.getErrorsAfter(reportId, "rules1", "gen1", -1, 1000)).thenReturn(
+            List.of(new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "BALANCE_MISMATCH", "Error")));
 
         Optional<ValidationReportDto> result = reportService.getReport(reportId, true);
 
         assertThat(result).isPresent();
-        verify(errorService).getErrors(eq(reportId), argThat(pageable -> 
-            pageable.getPageNumber() == 0 && pageable.getPageSize() == 1000
-        ));
+        verify(errorService).getErrorsAfter(reportId, "rules1", "gen1", -1, 1000);
     }
 
     @Test
@@ -165,10 +187,7 @@ class ReportServiceTest {
             true, 0, 0, 0, java.util.List.of()
         );
         
-        Page<ValidationReportDto.ValidationErrorDto> emptyPage = new PageImpl<>(java.util.List.of());
-        
-        when(reportRepository.findReportDtoById(reportId)).thenReturn(Optional.of(reportDto));
-        when(errorService.getErrors(eq(reportId), any(Pageable.class))).thenReturn(emptyPage);
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(entity(reportId, reportDto, null)));
 
         Optional<ValidationReportDto> result = reportService.getReport(reportId, true);
 
@@ -176,5 +195,89 @@ class ReportServiceTest {
         assertThat(result.get().errors()).isEmpty();
         assertThat(result.get().valid()).isTrue();
     }
-}
 
+    @Test
+    void shouldExportErrorsAndCloseCursor() throws Exception {
+        String reportId = "testreport123";
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Stream<ValidationReportDto.ValidationErrorDto> errors = Stream.of(
+            new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "DUPLICATE_REFERENCE", "Duplicate"),
+            new ValidationReportDto.ValidationErrorDto("ref2", "desc2", "BALANCE_MISMATCH", "Balance mismatch")
+        ).onClose(() -> closed.set(true));
+        
+        when(errorService.streamErrors(reportId, null, null)).thenReturn(errors);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported = reportService.exportErrors(reportId, ErrorExportWriter.Format.NDJSON, out);
+
+        assertThat(exported).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8).lines()).hasSize(2);
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    void shouldServeStoredPayloadsWithoutQueryingErrors() {
+        String reportId = "testreport123";
+        ValidationReportDto summary = new ValidationReportDto(false, 3, 0, 3, List.of());
+        byte[] summaryJson = "{\"summary\":true}".getBytes(StandardCharsets.UTF_8);
+        byte[] firstPageJson = "{\"page\":true}".getBytes(StandardCharsets.UTF_8);
+        
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(
+            entity(reportId, summary, new ReportEntity.SerializedPayloads(summaryJson, firstPageJson, 2))));
+
+        assertThat(reportService.getReportPayload(reportId, false, 0).get().json()).isSameAs(summaryJson);
+        ReportService.ReportPayload firstPage = reportService.getReportPayload(reportId, true, 2).get();
+        assertThat(firstPage.json()).isSameAs(firstPageJson);
+        assertThat(firstPage.errorsIncluded()).isEqualTo(2);
+        verifyNoInteractions(errorService);
+    }
+
+    @Test
+    void shouldSerializePayloadsForLegacyReports() throws Exception {
+        String reportId = "testreport123";
+        ValidationReportDto summary = new ValidationReportDto(false, 1, 0, 1, List.of());
+        List<ValidationReportDto.ValidationErrorDto> errors = List.of(
+            new ValidationReportDto.ValidationErrorDto("ref1", "desc1", "BALANCE_MISMATCH", "Error"));
+        
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(entity(reportId, summary, null)));
+        when(errorService.getErrorsAfter(reportId, "rules1", "gen1", -1, 10)).thenReturn(errors);
+
+        ReportService.ReportPayload summaryPayload = reportService.getReportPayload(reportId, false, 0).get();
+        assertThat(objectMapper.readValue(summaryPayload.json(), ValidationReportDto.class)).isEqualTo(summary);
+        
+        ReportService.ReportPayload firstPage = reportService.getReportPayload(reportId, true, 10).get();
+        assertThat(objectMapper.readValue(firstPage.json(), ValidationReportDto.class).errors()).isEqualTo(errors);
+        assertThat(firstPage.errorsIncluded()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldSerializeFirstPageWhenStoredPageSizeDiffers() {
+        String reportId = "testreport123";
+        ValidationReportDto summary = new ValidationReportDto(false, 3, 0, 3, List.of());
+        byte[] json = "{}".getBytes(StandardCharsets.UTF_8);
+        
+        when(reportRepository.findById(reportId)).thenReturn(Optional.of(
+            entity(reportId, summary, new ReportEntity.SerializedPayloads(json, json, 1000))));
+        when(errorService.getErrorsAfter(reportId, "rules1", "gen1", -1, 2)).thenReturn(List.of());
+
+        assertThat(reportService.getReportPayload(reportId, true, 2).get().json()).isNotSameAs(json);
+        verify(errorService).getErrorsAfter(reportId, "rules1", "gen1", -1, 2);
+    }
+
+    @Test
+    void shouldOnlyTreatReportsOfActiveRulesAsCurrent() {
+        ValidationReportDto summary = new ValidationReportDto(true, 0, 0, 0, java.util.List.of());
+        when(reportRepository.findById("report1")).thenReturn(Optional.of(entity("report1", summary, null)));
+        when(ruleSet.fingerprint()).thenReturn("rules1", "rules2");
+
+        assertThat(reportService.isReportCurrent("report1")).isTrue();
+        assertThat(reportService.isReportCurrent("report1")).isFalse();
+        assertThat(reportService.getReportVersion("report1")).contains("rules1");
+        assertThat(reportService.getReportVersion("unknown")).isEmpty();
+    }
+
+    private static ReportEntity entity(String reportId, ValidationReportDto summary, ReportEntity.SerializedPayloads payloads) {
+        return ReportEntity.create(reportId, summary,
+            new ReportEntity.ReportMetadata("test.csv", "text/csv", Instant.now(), 100), payloads, "rules1", "gen1");
+    }
+}
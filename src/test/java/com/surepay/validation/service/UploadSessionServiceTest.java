@@ -0,0 +1,221 @@
+package com.surepay.validation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.dto.UploadPartResponse;
+import com.surepay.validation.dto.UploadSessionResponse;
+import com.surepay.validation.parser.CsvTransactionParser;
+import com.surepay.validation.parser.JsonTransactionParser;
+import com.surepay.validation.parser.ParserFactory;
+import com.surepay.validation.spool.SpoolQuotaExceededException;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTest {
+
+    private static final String HEADER = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n";
+    private static final String PART_1 = HEADER + "REF1,NL01,First,1.00,1.00,2.00\nREF2,NL01,Sec";
+    private static final String PART_2 = "ond,1.00,1.00,2.00\nREF3,NL01,Third,1.00,1.00,2.00\n";
+
+    @Mock
+    private JobService jobService;
+
+    @Mock
+    private ChunkedValidationService chunkedValidationService;
+
+    @TempDir
+    Path spoolDirectory;
+
+    private ValidationProperties validationProperties;
+    private JobExecutors jobExecutors;
+    private UploadSessionService service;
+
+    @BeforeEach
+    void setUp() {
+        validationProperties = new ValidationProperties();
+        validationProperties.getSpool().setDirectory(spoolDirectory.toString());
+        jobExecutors = new JobExecutors(validationProperties, new SimpleMeterRegistry());
+        service = createService();
+    }
+
+    private UploadSessionService createService() {
+        CsvTransactionParser csvParser = new CsvTransactionParser();
+        ParserFactory parserFactory = new ParserFactory(
+            List.of(csvParser, new JsonTransactionParser(new ObjectMapper())));
+        return new UploadSessionService(
+            new SpoolStore(validationProperties), jobService, chunkedValidationService,
+            parserFactory, csvParser, jobExecutors, validationProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutors.shutdown();
+    }
+
+    @Test
+    void shouldAssemblePartsInOrderAndSubmitJob() throws Exception {
+        JobEntity job = JobEntity.create("job1", "big.csv");
+        when(jobService.submitJob(eq("big.csv"), any(SpooledFile.class), eq("text/csv"), eq(JobScheduler.Submitter.ANONYMOUS))).thenReturn(job);
+        String uploadId = service.create("big.csv", "text/csv").uploadId();
+
+        service.uploadPart(uploadId, 2, stream(PART_2), PART_2.length());
+        service.uploadPart(uploadId, 1, stream(PART_1), PART_1.length());
+
+        assertThat(service.complete(uploadId, JobScheduler.Submitter.ANONYMOUS)).contains(job);
+        ArgumentCaptor<SpooledFile> assembled = ArgumentCaptor.forClass(SpooledFile.class);
+        verify(jobService).submitJob(eq("big.csv"), assembled.capture(), eq("text/csv"), eq(JobScheduler.Submitter.ANONYMOUS));
+        try (SpooledFile file = assembled.getValue(); InputStream in = file.openStream()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(PART_1 + PART_2);
+        }
+        assertThat(service.get(uploadId)).isEmpty();
+    }
+
+    @Test
+    void shouldValidatePartsOnceHeaderArrives() throws Exception {
+        String uploadId = service.create("big.csv", "text/csv").uploadId();
+
+        service.uploadPart(uploadId, 2, stream(PART_2), PART_2.length());
+        verifyNoInteractions(chunkedValidationService);
+        service.uploadPart(uploadId, 1, stream(PART_1), PART_1.length());
+
+        byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+        int part2RowStart = PART_2.indexOf('\n') + 1;
+        verify(chunkedValidationService, timeout(5000)).prevalidate(
+            any(Path.class), eq((long) header.length), eq((long) PART_1.length() - header.length), eq(header));
+        verify(chunkedValidationService, timeout(5000)).prevalidate(
+            any(Path.class), eq((long) part2RowStart), eq((long) PART_2.length() - part2RowStart), eq(header));
+    }
+
+    @Test
+    void shouldNotValidateJsonPartsOnArrival() throws Exception {
+        String uploadId = service.create("big.json", "application/json").uploadId();
+
+        service.uploadPart(uploadId, 1, stream("[{\"reference\":"), 14);
+
+        verifyNoInteractions(chunkedValidationService);
+    }
+
+    @Test
+    void shouldReplaceReuploadedPart() throws Exception {
+        String uploadId = service.create("big.csv", "text/csv").uploadId();
+
+        service.uploadPart(uploadId, 1, stream("broken"), 6);
+        UploadPartResponse retried = service.uploadPart(uploadId, 1, stream(PART_1), PART_1.length()).orElseThrow();
+
+        UploadSessionResponse session = service.get(uploadId).orElseThrow();
+        assertThat(session.parts()).containsExactly(retried);
+        assertThat(retried.size()).isEqualTo(PART_1.length());
+    }
+
+    @Test
+    void shouldRejectCompletionWithMissingParts() throws Exception {
+        String uploadId = service.create("big.csv", "text/csv").uploadId();
+        service.uploadPart(uploadId, 2, stream(PART_2), PART_2.length());
+
+        assertThatThrownBy(() -> service.complete(uploadId, JobScheduler.Submitter.ANONYMOUS))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("needs parts 1 to 2");
+        assertThatThrownBy(() -> service.uploadPart(uploadId, 0, stream(PART_1), PART_1.length()))
+            .isInstanceOf(IllegalArgumentException.class);
+        verify(jobService, never()).submitJob(any(), any(SpooledFile.class), any(), any(JobScheduler.Submitter.class));
+    }
+
+    @Test
+    void shouldKeepSessionWhenAssemblyFails() throws Exception {
+        // Room for the parts, but not for the assembled copy next to them
+        validationProperties.getSpool().setMaxBytes((PART_1.length() + PART_2.length()) * 3L / 2);
+        service = createService();
+        String uploadId = service.create("big.csv", "text/csv").uploadId();
+        service.uploadPart(uploadId, 1, stream(PART_1), PART_1.length());
+        service.uploadPart(uploadId, 2, stream(PART_2), PART_2.length());
+
+        assertThatThrownBy(() -> service.complete(uploadId, JobScheduler.Submitter.ANONYMOUS))
+            .isInstanceOf(SpoolQuotaExceededException.class);
+
+        assertThat(service.get(uploadId).orElseThrow().parts()).hasSize(2);
+        verify(jobService, never()).submitJob(any(), any(SpooledFile.class), any(), any(JobScheduler.Submitter.class));
+    }
+
+    @Test
+    void shouldReserveRemainingSizeForPartsBeingUploaded() throws Exception {
+        String uploadId = service.create("big.json", "application/json").uploadId();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream unknownSize = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        };
+        CompletableFuture<Optional<UploadPartResponse>> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return service.uploadPart(uploadId, 1, unknownSize, -1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Part 1 may still grow to the whole limit, so nothing else fits next to it
+        assertThatThrownBy(() -> service.uploadPart(uploadId, 2, stream("[]"), 2))
+            .isInstanceOf(FileUploadSizeException.class);
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isPresent();
+        assertThat(service.uploadPart(uploadId, 2, stream("[]"), 2)).isPresent();
+    }
+
+    @Test
+    void shouldForgetAbortedAndUnknownSessions() throws Exception {
+        String uploadId = service.create("big.csv", "text/csv").uploadId();
+
+        assertThat(service.abort(uploadId)).isTrue();
+
+        assertThat(service.get(uploadId)).isEmpty();
+        assertThat(service.abort(uploadId)).isFalse();
+        assertThat(service.uploadPart(uploadId, 1, stream(PART_1), PART_1.length())).isEmpty();
+        assertThat(service.complete(uploadId, JobScheduler.Submitter.ANONYMOUS)).isEmpty();
+        verify(chunkedValidationService, never()).prevalidate(any(), anyLong(), anyLong(), any());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
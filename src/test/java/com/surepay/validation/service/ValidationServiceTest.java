@@ -5,23 +5,49 @@ import com.surepay.validation.parser.CsvTransactionParser;
 import com.surepay.validation.parser.JsonTransactionParser;
 import com.surepay.validation.parser.ParserFactory;
 import com.surepay.validation.parser.TransactionParser;
+import com.surepay.validation.domain.JobEntity;
+import com.surepay.validation.domain.ReportEntity;
+import com.surepay.validation.domain.ValidationCheckpoint;
+import com.surepay.validation.dto.ValidationReportDto;
 import com.surepay.validation.reporter.ReportGenerator;
+import com.surepay.validation.reporter.ReportSerializer;
+import com.surepay.validation.spool.SpoolStore;
+import com.surepay.validation.spool.SpooledFile;
+import com.surepay.validation.util.HashComputingInputStream;
+import com.surepay.validation.repository.ChunkResultRepository;
 import com.surepay.validation.repository.ReportRepository;
 import com.surepay.validation.config.ValidationProperties;
 import com.surepay.validation.validator.BalanceValidator;
+import com.surepay.validation.validator.RuleSet;
 import com.surepay.validation.validator.TransactionValidator;
 import com.surepay.validation.validator.UniquenessValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
 
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class ValidationServiceTest {
@@ -33,20 +59,34 @@ class ValidationServiceTest {
     
     @Mock
     private ErrorService errorService;
+    
+    @Mock
+    private ChunkResultRepository chunkResultRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ValidationProperties validationProperties;
+
+    private RuleSet ruleSet;
+    private JobExecutors jobExecutors;
+
+    @TempDir
+    Path spoolDirectory;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
         
-        when(reportRepository.existsByHash(anyString())).thenReturn(false);
+        when(errorService.openWriter(anyString(), any())).thenReturn(mock(ErrorBatchWriter.class));
         
+        CsvTransactionParser csvParser = new CsvTransactionParser();
         List<TransactionParser> parsers = List.of(
-            new CsvTransactionParser(),
+            csvParser,
             new JsonTransactionParser(new ObjectMapper())
         );
         ParserFactory parserFactory = new ParserFactory(parsers);
         
-        ValidationProperties validationProperties = new ValidationProperties();
+        validationProperties = new ValidationProperties();
         validationProperties.getBalance().setTolerance(new BigDecimal("0.01"));
         
         List<TransactionValidator> validators = List.of(
@@ -56,7 +96,24 @@ class ValidationServiceTest {
         
         ReportGenerator reportGenerator = new ReportGenerator();
         
-        service = new ValidationService(parserFactory, validators, reportGenerator, reportRepository, errorService);
+        validationProperties.getPagination().setDefaultPageSize(2);
+        validationProperties.getSpool().setDirectory(spoolDirectory.toString());
+        
+        ruleSet = new RuleSet(validators);
+        jobExecutors = new JobExecutors(validationProperties, new SimpleMeterRegistry());
+        KnownReports knownReports = new KnownReports(mock(MongoTemplate.class), validationProperties);
+        ReportCache reportCache = new ReportCache(
+            reportRepository, knownReports, ruleSet, validationProperties, new SimpleMeterRegistry());
+        
+        service = new ValidationService(parserFactory, validators, reportGenerator, reportRepository, reportCache, errorService,
+            new ReportSerializer(objectMapper), validationProperties, new SpoolStore(validationProperties),
+            new ChunkedValidationService(validators, csvParser, chunkResultRepository, jobExecutors, validationProperties),
+            ruleSet, jobExecutors);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutors.shutdown();
     }
 
     @Test
@@ -145,5 +202,252 @@ class ValidationServiceTest {
         assertThat(result.validationResult().getDuplicateReferenceCount()).isEqualTo(1);
         assertThat(result.validationResult().getBalanceMismatchCount()).isEqualTo(1);
     }
-}
 
+    @Test
+    void shouldStreamErrorsWithoutRetainingThem() throws Exception {
+        String csv = """
+            Reference,AccountNumber,Description,Start Balance,Mutation,End Balance
+            112806,NL27SNSB0917829871,First,91.23,+15.57,106.8
+            112806,NL69ABNA0433647324,Duplicate,90.83,-10.91,79.92
+            167875,NL93ABNA0585619023,Balance Error,5429,-939,6368
+            """;
+
+        byte[] csvBytes = csv.getBytes(StandardCharsets.UTF_8);
+        List<String> streamedReferences = new ArrayList<>();
+        var result = service.validateAndStreamReport(
+            new java.io.ByteArrayInputStream(csvBytes), "text/csv", "test.csv", csvBytes.length,
+            error -> streamedReferences.add(error.transactionReference()));
+
+        assertThat(streamedReferences).containsExactly("112806", "167875");
+        assertThat(result.validationResult().getErrors()).isEmpty();
+        assertThat(result.reportDto().errors()).isEmpty();
+        assertThat(result.reportDto().errorCount()).isEqualTo(2);
+        assertThat(result.reportDto().duplicateReferenceCount()).isEqualTo(1);
+        assertThat(result.reportDto().balanceMismatchCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStorePreSerializedSummaryAndFirstErrorPage() throws Exception {
+        String csv = """
+            Reference,AccountNumber,Description,Start Balance,Mutation,End Balance
+            1,NL91RABO0315273637,Bad 1,10.00,+1.00,99.00
+            2,NL91RABO0315273637,Bad 2,10.00,+1.00,99.00
+            3,NL91RABO0315273637,Bad 3,10.00,+1.00,99.00
+            """;
+
+        byte[] csvBytes = csv.getBytes(StandardCharsets.UTF_8);
+        service.validateAndStoreReport(
+            new java.io.ByteArrayInputStream(csvBytes), "text/csv", "test.csv", csvBytes.length);
+
+        ArgumentCaptor<ReportEntity> captor = ArgumentCaptor.forClass(ReportEntity.class);
+        verify(reportRepository).replace(captor.capture());
+        ReportEntity saved = captor.getValue();
+
+        ValidationReportDto summary = objectMapper.readValue(saved.summaryJson(), ValidationReportDto.class);
+        assertThat(summary).isEqualTo(saved.report());
+        assertThat(summary.errors()).isEmpty();
+
+        ValidationReportDto firstPage = objectMapper.readValue(saved.firstErrorPageJson(), ValidationReportDto.class);
+        assertThat(saved.firstErrorPageSize()).isEqualTo(2);
+        assertThat(firstPage.errorCount()).isEqualTo(3);
+        assertThat(firstPage.errors()).hasSize(2);
+        assertThat(firstPage.errors().get(0).transactionReference()).isEqualTo("1");
+    }
+
+    @Test
+    void shouldUseContentHashAsReportId() throws Exception {
+        byte[] first = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n1,NL91,A,1,+1,2\n"
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] second = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n2,NL91,B,1,+1,2\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+        var firstResult = service.validateAndStoreReport(
+            new java.io.ByteArrayInputStream(first), "text/csv", "a.csv", first.length);
+        var secondResult = service.validateAndStoreReport(
+            new java.io.ByteArrayInputStream(second), "text/csv", "b.csv", second.length);
+
+        assertThat(firstResult.reportId()).isEqualTo(HashComputingInputStream.computeHash(first));
+        assertThat(secondResult.reportId()).isEqualTo(HashComputingInputStream.computeHash(second));
+        assertThat(firstResult.reportId()).isNotEqualTo(secondResult.reportId());
+    }
+
+    @Test
+    void shouldReuseReportOnlyWhileRulesAreUnchanged() throws Exception {
+        byte[] csv = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n1,NL91,A,1,+1,2.005\n"
+            .getBytes(StandardCharsets.UTF_8);
+        String hash = HashComputingInputStream.computeHash(csv);
+        ReportEntity stored = ReportEntity.create(hash, new ValidationReportDto(true, 0, 0, 0, List.of()),
+            new ReportEntity.ReportMetadata("a.csv", "text/csv", java.time.Instant.now(), csv.length), null,
+            ruleSet.fingerprint(), "gen0");
+        when(reportRepository.findById(hash)).thenReturn(java.util.Optional.of(stored));
+        when(reportRepository.replace(any())).thenReturn(stored);
+        when(errorService.streamErrors(hash, stored.ruleSetFingerprint(), "gen0")).thenReturn(java.util.stream.Stream.empty());
+        ErrorBatchWriter errorWriter = mock(ErrorBatchWriter.class);
+        when(errorWriter.getGeneration()).thenReturn("gen1");
+        when(errorService.openWriter(anyString(), any())).thenReturn(errorWriter);
+
+        var reused = service.validateAndStoreReport(new java.io.ByteArrayInputStream(csv), "text/csv", "a.csv", csv.length);
+
+        assertThat(reused.validationResult().isValid()).isTrue();
+        verify(reportRepository, org.mockito.Mockito.never()).replace(org.mockito.ArgumentMatchers.any());
+
+        validationProperties.getBalance().setTolerance(new BigDecimal("0.001"));
+        var revalidated = service.validateAndStoreReport(new java.io.ByteArrayInputStream(csv), "text/csv", "a.csv", csv.length);
+
+        assertThat(revalidated.validationResult().getBalanceMismatchCount()).isEqualTo(1);
+        // The errors of the replaced report are only removed once the new report is stored
+        ArgumentCaptor<ReportEntity> captor = ArgumentCaptor.forClass(ReportEntity.class);
+        InOrder replacement = inOrder(reportRepository, errorService);
+        replacement.verify(reportRepository).replace(captor.capture());
+        replacement.verify(errorService).deleteErrors(hash, stored.ruleSetFingerprint(), "gen0");
+        assertThat(captor.getValue().ruleSetFingerprint()).isEqualTo(ruleSet.fingerprint()).isNotEqualTo(stored.ruleSetFingerprint());
+        assertThat(captor.getValue().errorGeneration()).isEqualTo("gen1");
+    }
+
+    @Test
+    void shouldResumeInterruptedJobWithSameReport() throws Exception {
+        validationProperties.getChunking().setMinSize(256);
+        validationProperties.getChunking().setAverageSize(1024);
+        validationProperties.getChunking().setMaxSize(4096);
+        validationProperties.getJobs().setCheckpointDirectory(spoolDirectory.resolve("checkpoints").toString());
+        validationProperties.getJobs().setCheckpointInterval(java.time.Duration.ZERO);
+        JobQueue jobQueue = mock(JobQueue.class);
+        JobCheckpoints jobCheckpoints = new JobCheckpoints(jobQueue, validationProperties);
+        ErrorBatchWriter errorWriter = mock(ErrorBatchWriter.class);
+        when(errorService.openWriter(anyString(), any(), any())).thenReturn(errorWriter);
+        StringBuilder csv = new StringBuilder("Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n");
+        for (int i = 0; i < 20000; i++) {
+            // Every 13th row repeats an earlier reference, every 7th has a wrong end balance
+            csv.append(String.format("REF%06d,NL91RABO%010d,Payment %d,%d.00,1.00,%d.00\n",
+                i % 13 == 12 ? i - 5 : i, i * 31L, i, i, i % 7 == 0 ? i + 2 : i + 1));
+        }
+        byte[] data = csv.toString().getBytes(StandardCharsets.UTF_8);
+        SpooledFile file = new SpoolStore(validationProperties).spool(new java.io.ByteArrayInputStream(data), data.length);
+        JobEntity job = JobEntity.create(file.hash(), "big.csv");
+
+        // The instance stops while it records its third checkpoint
+        when(jobQueue.holds(anyString())).thenReturn(true);
+        when(jobQueue.checkpoint(anyString(), any())).thenReturn(true, true).thenThrow(new IllegalStateException("stopped"));
+        try (CheckpointSession session = jobCheckpoints.open(job)) {
+            assertThatThrownBy(() -> service.validateAndStreamReport(file, "text/csv", "big.csv", error -> {}, session))
+                .hasMessage("stopped");
+        }
+        ArgumentCaptor<ValidationCheckpoint> saved = ArgumentCaptor.forClass(ValidationCheckpoint.class);
+        verify(jobQueue, times(3)).checkpoint(anyString(), saved.capture());
+        ValidationCheckpoint checkpoint = saved.getAllValues().get(1);
+        assertThat(checkpoint.errorGeneration()).isNotNull();
+        when(errorWriter.getGeneration()).thenReturn(checkpoint.errorGeneration());
+        List<ValidationReportDto.ValidationErrorDto> storedFirstPage = List.of(
+            new ValidationReportDto.ValidationErrorDto("REF000000", "Payment 0", "BALANCE_MISMATCH", "Error"),
+            new ValidationReportDto.ValidationErrorDto("REF000007", "Payment 12", "DUPLICATE_REFERENCE", "Error"));
+        when(errorService.getErrorsAfter(file.hash(), ruleSet.fingerprint(), checkpoint.errorGeneration(), -1, 2))
+            .thenReturn(storedFirstPage);
+        reset(jobQueue);
+        when(jobQueue.holds(anyString())).thenReturn(true);
+        when(jobQueue.checkpoint(anyString(), any())).thenReturn(true);
+
+        JobEntity interrupted = new JobEntity(job.jobId(), job.filename(), JobEntity.JobStatus.PROCESSING, job.createdAt(),
+            null, null, null, ruleSet.fingerprint(), "text/csv", data.length, "worker-2", java.time.Instant.now(), checkpoint, null, null, null, null);
+        ValidationService.ValidationAndStorageResult resumed;
+        try (file; CheckpointSession session = jobCheckpoints.open(interrupted)) {
+            resumed = service.validateAndStreamReport(file, "text/csv", "big.csv", error -> {}, session);
+        }
+
+        long duplicates = java.util.stream.IntStream.range(0, 20000).filter(i -> i % 13 == 12).count();
+        long mismatches = java.util.stream.IntStream.range(0, 20000).filter(i -> i % 7 == 0).count();
+        assertThat(resumed.reportDto().duplicateReferenceCount()).isEqualTo(duplicates);
+        assertThat(resumed.reportDto().balanceMismatchCount()).isEqualTo(mismatches);
+        assertThat(resumed.reportDto().errorCount()).isEqualTo(duplicates + mismatches);
+        verify(errorWriter).resumeAt(checkpoint.errorCount());
+        // Both runs of the job store their errors under the generation of its first run
+        verify(errorService, times(2)).openWriter(file.hash(), ruleSet.fingerprint(), checkpoint.errorGeneration());
+        verify(errorService, never()).deleteErrors(anyString(), any(), any());
+        ArgumentCaptor<ReportEntity> report = ArgumentCaptor.forClass(ReportEntity.class);
+        verify(reportRepository).replace(report.capture());
+        assertThat(objectMapper.readValue(report.getValue().firstErrorPageJson(), ValidationReportDto.class).errors())
+            .isEqualTo(storedFirstPage);
+    }
+
+    @Test
+    void shouldStopChunkedValidationWhenCheckpointLosesLease() throws Exception {
+        validationProperties.getChunking().setMinSize(256);
+        validationProperties.getChunking().setAverageSize(1024);
+        validationProperties.getChunking().setMaxSize(4096);
+        validationProperties.getJobs().setCheckpointDirectory(spoolDirectory.resolve("checkpoints").toString());
+        validationProperties.getJobs().setCheckpointInterval(java.time.Duration.ZERO);
+        JobQueue jobQueue = mock(JobQueue.class);
+        ErrorBatchWriter errorWriter = mock(ErrorBatchWriter.class);
+        when(errorService.openWriter(anyString(), any(), any())).thenReturn(errorWriter);
+        StringBuilder csv = new StringBuilder("Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n");
+        for (int i = 0; i < 20000; i++) {
+            csv.append(String.format("REF%06d,NL91RABO%010d,Payment %d,%d.00,1.00,%d.00\n", i, i * 31L, i, i, i + 1));
+        }
+        byte[] data = csv.toString().getBytes(StandardCharsets.UTF_8);
+        SpooledFile file = new SpoolStore(validationProperties).spool(new java.io.ByteArrayInputStream(data), data.length);
+
+        // Another instance took the job over between the last stop check and the checkpoint
+        when(jobQueue.holds(anyString())).thenReturn(true);
+        when(jobQueue.checkpoint(anyString(), any())).thenReturn(false);
+        try (file; CheckpointSession session = new JobCheckpoints(jobQueue, validationProperties).open(JobEntity.create(file.hash(), "big.csv"))) {
+            assertThatThrownBy(() -> service.validateAndStreamReport(file, "text/csv", "big.csv", error -> {}, session))
+                .isInstanceOf(java.util.concurrent.CancellationException.class)
+                .hasMessageContaining("lost its lease");
+        }
+
+        verify(jobQueue, times(1)).checkpoint(anyString(), any());
+        verify(errorWriter).abandon();
+        // The instance that took the job over continues the errors stored so far
+        verify(errorService, never()).deleteErrors(anyString(), any(), any());
+        verify(reportRepository, never()).replace(any());
+    }
+
+    @Test
+    void shouldStopSinglePassValidationOfCancelledJob() throws Exception {
+        validationProperties.getJobs().setCheckpointDirectory(spoolDirectory.resolve("checkpoints").toString());
+        JobQueue jobQueue = mock(JobQueue.class);
+        ErrorBatchWriter errorWriter = mock(ErrorBatchWriter.class);
+        when(errorService.openWriter(anyString(), any(), any())).thenReturn(errorWriter);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 3000; i++) {
+            json.append(i == 0 ? "" : ",").append(String.format(
+                "{\"reference\":\"%d\",\"accountNumber\":\"NL91RABO0315273637\",\"description\":\"Payment\","
+                    + "\"startBalance\":1.00,\"mutation\":1.00,\"endBalance\":3.00}", i));
+        }
+        byte[] data = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+        SpooledFile file = new SpoolStore(validationProperties).spool(new java.io.ByteArrayInputStream(data), data.length);
+        List<ValidationReportDto.ValidationErrorDto> handed = new java.util.ArrayList<>();
+        java.util.Set<Thread> handingThreads = new java.util.HashSet<>();
+
+        // Lease lost on the first check, as after a cancellation
+        try (file; CheckpointSession session = new JobCheckpoints(jobQueue, validationProperties).open(JobEntity.create(file.hash(), "big.json"))) {
+            assertThatThrownBy(() -> service.validateAndStreamReport(file, "application/json", "big.json", error -> {
+                handed.add(error);
+                handingThreads.add(Thread.currentThread());
+            }, session))
+                .isInstanceOf(java.util.concurrent.CancellationException.class);
+        }
+
+        // The first block is handed over before the check, off the CPU pool
+        assertThat(handed).hasSize(1024);
+        assertThat(handingThreads).containsExactly(Thread.currentThread());
+        verify(errorWriter).abandon();
+        verify(errorWriter, never()).flush();
+        verify(reportRepository, never()).replace(any());
+    }
+
+    @Test
+    void shouldRemoveErrorsOfFailedValidationWithoutJob() {
+        ErrorBatchWriter errorWriter = mock(ErrorBatchWriter.class);
+        when(errorWriter.getGeneration()).thenReturn("gen1");
+        when(errorService.openWriter(anyString(), any())).thenReturn(errorWriter);
+        byte[] data = "[{\"reference\": ".getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> service.validateAndStoreReport(
+            new java.io.ByteArrayInputStream(data), "application/json", "broken.json", data.length))
+            .isInstanceOf(RuntimeException.class);
+
+        verify(errorWriter).abandon();
+        verify(errorService).deleteErrors(HashComputingInputStream.computeHash(data), ruleSet.fingerprint(), "gen1");
+        verify(reportRepository, never()).replace(any());
+    }
+}
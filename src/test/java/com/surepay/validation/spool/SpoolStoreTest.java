@@ -0,0 +1,211 @@
+package com.surepay.validation.spool;
+
+import com.surepay.validation.config.ValidationProperties;
+import com.surepay.validation.util.HashComputingInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpoolStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private ValidationProperties validationProperties;
+
+    @BeforeEach
+    void setUp() {
+        validationProperties = new ValidationProperties();
+        validationProperties.getSpool().setDirectory(directory.toString());
+    }
+
+    @Test
+    void shouldStoreUploadUnderItsContentHash() throws IOException {
+        byte[] data = randomBytes(20 * 1024 * 1024);
+        SpoolStore store = new SpoolStore(validationProperties);
+
+        try (SpooledFile file = store.spool(new ByteArrayInputStream(data), data.length)) {
+            assertThat(file.hash()).isEqualTo(HashComputingInputStream.computeHash(data));
+            assertThat(file.size()).isEqualTo(data.length);
+            assertThat(file.path()).isEqualTo(directory.resolve(file.hash()));
+            try (InputStream in = file.openStream()) {
+                assertThat(in.readAllBytes()).isEqualTo(data);
+            }
+        }
+        assertThat(store.getUsedBytes()).isEqualTo(data.length);
+    }
+
+    @Test
+    void shouldHashStreamedUploadWhileCopying() throws IOException {
+        byte[] data = randomBytes(9 * 1024 * 1024 + 7);
+        SpoolStore store = new SpoolStore(validationProperties);
+
+        try (SpooledFile streamed = store.spoolStreamed(new ByteArrayInputStream(data), data.length + 200);
+             SpooledFile copied = store.spool(new ByteArrayInputStream(data), data.length)) {
+            assertThat(streamed.hash()).isEqualTo(copied.hash());
+            assertThat(streamed.size()).isEqualTo(data.length);
+            assertThat(Files.readAllBytes(streamed.path())).isEqualTo(data);
+        }
+        assertThat(store.getUsedBytes()).isEqualTo(data.length);
+    }
+
+    @Test
+    void shouldShareOneFileForIdenticalUploads() throws IOException {
+        byte[] data = "Reference,AccountNumber\n1,NL91\n".getBytes(StandardCharsets.UTF_8);
+        SpoolStore store = new SpoolStore(validationProperties);
+
+        try (SpooledFile first = store.spool(new ByteArrayInputStream(data), -1);
+             SpooledFile second = store.spool(new ByteArrayInputStream(data), -1)) {
+            assertThat(second.path()).isEqualTo(first.path());
+        }
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+        assertThat(store.getUsedBytes()).isEqualTo(data.length);
+    }
+
+    @Test
+    void shouldRejectUploadLargerThanQuota() {
+        validationProperties.getSpool().setMaxBytes(1024);
+        SpoolStore store = new SpoolStore(validationProperties);
+
+        assertThatThrownBy(() -> store.spool(new ByteArrayInputStream(new byte[2048]), 2048))
+            .isInstanceOf(SpoolQuotaExceededException.class);
+        assertThatThrownBy(() -> store.spool(new ByteArrayInputStream(new byte[2048]), -1))
+            .isInstanceOf(SpoolQuotaExceededException.class);
+        assertThat(store.getUsedBytes()).isZero();
+    }
+
+    @Test
+    void shouldEvictUnusedFilesWhenSpaceIsNeeded() throws IOException {
+        validationProperties.getSpool().setMaxBytes(1500);
+        SpoolStore store = new SpoolStore(validationProperties);
+        byte[] first = randomBytes(1024);
+        byte[] second = randomBytes(1024);
+
+        String firstHash;
+        try (SpooledFile file = store.spool(new ByteArrayInputStream(first), first.length)) {
+            firstHash = file.hash();
+        }
+        Files.setLastModifiedTime(directory.resolve(firstHash), FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        try (SpooledFile file = store.spool(new ByteArrayInputStream(second), second.length)) {
+            assertThat(Files.exists(file.path())).isTrue();
+        }
+
+        assertThat(Files.exists(directory.resolve(firstHash))).isFalse();
+    }
+
+    @Test
+    void shouldCountAndKeepFilesRecentlyUsedByAnotherInstance() throws IOException {
+        validationProperties.getSpool().setMaxBytes(1500);
+        SpoolStore store = new SpoolStore(validationProperties);
+        SpoolStore other = new SpoolStore(validationProperties);
+        byte[] first = randomBytes(1024);
+        byte[] second = randomBytes(1024);
+
+        // Released here, but possibly still held by the other instance
+        String firstHash;
+        try (SpooledFile file = other.spool(new ByteArrayInputStream(first), first.length)) {
+            firstHash = file.hash();
+        }
+
+        assertThatThrownBy(() -> store.spool(new ByteArrayInputStream(second), second.length))
+            .isInstanceOf(SpoolQuotaExceededException.class);
+        assertThat(Files.exists(directory.resolve(firstHash))).isTrue();
+        assertThat(store.getUsedBytes()).isEqualTo(1024);
+    }
+
+    @Test
+    void shouldRemoveOnlyExpiredUnleasedFilesOnCleanup() throws IOException {
+        validationProperties.getSpool().setRetention(Duration.ofMinutes(10));
+        SpoolStore store = new SpoolStore(validationProperties);
+        FileTime expired = FileTime.from(Instant.now().minus(Duration.ofHours(1)));
+
+        SpooledFile released = store.spool(new ByteArrayInputStream(randomBytes(100)), 100);
+        released.close();
+        SpooledFile leased = store.spool(new ByteArrayInputStream(randomBytes(100)), 100);
+        SpooledFile recent = store.spool(new ByteArrayInputStream(randomBytes(100)), 100);
+        recent.close();
+        Files.setLastModifiedTime(released.path(), expired);
+        Files.setLastModifiedTime(leased.path(), expired);
+
+        store.cleanup();
+
+        assertThat(Files.exists(released.path())).isFalse();
+        assertThat(Files.exists(leased.path())).isTrue();
+        assertThat(Files.exists(recent.path())).isTrue();
+        assertThat(store.getUsedBytes()).isEqualTo(200);
+        leased.close();
+    }
+
+    @Test
+    void shouldRemoveFileOnRequestUnlessItIsHeld() throws IOException {
+        byte[] data = "Reference,AccountNumber\n1,NL91\n".getBytes(StandardCharsets.UTF_8);
+        SpoolStore store = new SpoolStore(validationProperties);
+
+        SpooledFile file = store.spool(new ByteArrayInputStream(data), data.length);
+        assertThat(store.remove(file.hash())).isFalse();
+        file.close();
+        assertThat(store.remove(file.hash())).isTrue();
+
+        assertThat(file.path()).doesNotExist();
+        assertThat(store.getUsedBytes()).isZero();
+        assertThat(store.remove(file.hash())).isFalse();
+    }
+
+    @Test
+    void shouldOpenFileSpooledByAnotherInstance() throws IOException {
+        validationProperties.getSpool().setRetention(Duration.ofMinutes(10));
+        byte[] data = randomBytes(100);
+        String hash;
+        try (SpooledFile file = new SpoolStore(validationProperties).spool(new ByteArrayInputStream(data), data.length)) {
+            hash = file.hash();
+        }
+        Files.setLastModifiedTime(directory.resolve(hash), FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        SpoolStore store = new SpoolStore(validationProperties);
+
+        SpooledFile opened = store.open(hash).orElseThrow();
+        store.cleanup();
+
+        assertThat(opened.size()).isEqualTo(data.length);
+        assertThat(Files.readAllBytes(opened.path())).isEqualTo(data);
+        assertThat(store.open(HashComputingInputStream.computeHash(randomBytes(10)))).isEmpty();
+        assertThat(store.open("../" + hash)).isEmpty();
+        opened.close();
+    }
+
+    @Test
+    void shouldRemovePartialUploadsOnStartup() throws IOException {
+        Files.write(directory.resolve("abandoned.part"), new byte[10]);
+        Files.setLastModifiedTime(directory.resolve("abandoned.part"), FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        // Still being written by another instance that shares the directory
+        Files.write(directory.resolve("uploading.part"), new byte[5]);
+        Files.write(directory.resolve("somehash"), new byte[20]);
+
+        SpoolStore store = new SpoolStore(validationProperties);
+
+        assertThat(Files.exists(directory.resolve("abandoned.part"))).isFalse();
+        assertThat(Files.exists(directory.resolve("uploading.part"))).isTrue();
+        assertThat(store.getUsedBytes()).isEqualTo(25);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size ^ System.nanoTime()).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,43 @@
+package com.surepay.validation.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentHashTest {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldProduceSameDigestAsServer() throws Exception {
+        byte[] data = "Reference,AccountNumber\n1,NL91\n".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(directory.resolve("statement.csv"), data);
+
+        assertThat(ContentHash.of(file)).isEqualTo(HashComputingInputStream.computeHash(data));
+        assertThat(ContentHash.of(new ByteArrayInputStream(data))).isEqualTo(HashComputingInputStream.computeHash(data));
+    }
+
+    @Test
+    void shouldExtractHashFromEntityTag() {
+        assertThat(ContentHash.fromEntityTag("\"" + HASH + "\"")).contains(HASH);
+        assertThat(ContentHash.fromEntityTag("W/\"" + HASH + "\"")).contains(HASH);
+        assertThat(ContentHash.fromEntityTag(HASH.toUpperCase())).contains(HASH);
+        assertThat(ContentHash.fromEntityTag("\"" + HASH + "\", \"other\"")).contains(HASH);
+    }
+
+    @Test
+    void shouldIgnoreInvalidEntityTags() {
+        assertThat(ContentHash.fromEntityTag(null)).isEmpty();
+        assertThat(ContentHash.fromEntityTag("*")).isEmpty();
+        assertThat(ContentHash.fromEntityTag("\"abc\"")).isEmpty();
+    }
+}
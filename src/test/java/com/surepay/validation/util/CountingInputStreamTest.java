@@ -0,0 +1,24 @@
+package com.surepay.validation.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountingInputStreamTest {
+
+    @Test
+    void shouldCountBytesReadAndSkipped() throws Exception {
+        try (CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(new byte[100]))) {
+            in.read();
+            in.read(new byte[10], 0, 10);
+            in.skip(20);
+            assertThat(in.getCount()).isEqualTo(31);
+
+            in.readAllBytes();
+            assertThat(in.read()).isEqualTo(-1);
+            assertThat(in.getCount()).isEqualTo(100);
+        }
+    }
+}
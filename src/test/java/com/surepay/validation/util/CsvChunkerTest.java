@@ -0,0 +1,109 @@
+package com.surepay.validation.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvChunkerTest {
+
+    private static final String HEADER = "Reference,AccountNumber,Description,Start Balance,Mutation,End Balance\n";
+
+    private final CsvChunker chunker = new CsvChunker(256, 1024, 4096);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldCoverFileWithChunksEndingOnRowBoundaries() throws Exception {
+        String csv = HEADER + rows(0, 2000);
+        Path file = write("file.csv", csv);
+
+        List<CsvChunker.Chunk> chunks = chunker.split(file);
+
+        assertThat(chunks.get(0).length()).isEqualTo(HEADER.length());
+        assertThat(chunks.size()).isGreaterThan(10);
+        long offset = 0;
+        for (CsvChunker.Chunk chunk : chunks) {
+            assertThat(chunk.offset()).isEqualTo(offset);
+            assertThat(csv.charAt((int) (chunk.offset() + chunk.length() - 1))).isEqualTo('\n');
+            offset += chunk.length();
+        }
+        assertThat(offset).isEqualTo(csv.length());
+    }
+
+    @Test
+    void shouldKeepChunksBeforeAnAppendOrEdit() throws Exception {
+        String original = HEADER + rows(0, 2000);
+        List<CsvChunker.Chunk> before = chunker.split(write("original.csv", original));
+        List<CsvChunker.Chunk> appended = chunker.split(write("appended.csv", original + rows(2000, 50)));
+        String edited = original.replace("REF000500,", "REF000500X,");
+        List<CsvChunker.Chunk> after = chunker.split(write("edited.csv", edited));
+
+        List<String> beforeHashes = before.stream().map(CsvChunker.Chunk::hash).toList();
+        assertThat(appended.subList(0, before.size() - 1).stream().map(CsvChunker.Chunk::hash).toList())
+            .isEqualTo(beforeHashes.subList(0, before.size() - 1));
+        long unchanged = after.stream().map(CsvChunker.Chunk::hash).filter(beforeHashes::contains).count();
+        assertThat(unchanged).isGreaterThanOrEqualTo(before.size() - 3);
+    }
+
+    @Test
+    void shouldLineUpRegionChunksWithWholeFileChunks() throws Exception {
+        String csv = HEADER + rows(0, 2000);
+        Path file = write("file.csv", csv);
+        int regionStart = csv.indexOf("REF000700,");
+
+        List<CsvChunker.Chunk> whole = chunker.split(file);
+        List<CsvChunker.Chunk> region = chunker.split(file, regionStart, csv.length() - regionStart, false);
+
+        assertThat(region.get(0).offset()).isEqualTo(regionStart);
+        assertThat(region.get(region.size() - 1).offset() + region.get(region.size() - 1).length())
+            .isEqualTo(csv.length());
+        List<String> wholeHashes = whole.stream().map(CsvChunker.Chunk::hash).toList();
+        long shared = region.stream().map(CsvChunker.Chunk::hash).filter(wholeHashes::contains).count();
+        assertThat(shared).isGreaterThanOrEqualTo(region.size() - 6);
+    }
+
+    @Test
+    void shouldNotCutInsideQuotedFields() throws Exception {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 2000; i++) {
+            csv.append("REF").append(i).append(",NL91,\"multi\nline \\\" description\",1,1,2\n");
+        }
+        Path file = write("quoted.csv", csv.toString());
+
+        List<CsvChunker.Chunk> chunks = chunker.split(file);
+
+        assertThat(chunks.size()).isGreaterThan(10);
+        for (CsvChunker.Chunk chunk : chunks.subList(1, chunks.size())) {
+            String text = csv.substring((int) chunk.offset(), (int) (chunk.offset() + chunk.length()));
+            assertThat(text).startsWith("REF").endsWith(",1,1,2\n");
+        }
+    }
+
+    @Test
+    void shouldRejectInconsistentSizes() {
+        assertThatThrownBy(() -> new CsvChunker(1024, 256, 4096)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Path write(String name, String content) throws Exception {
+        return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static String rows(int from, int count) {
+        Random random = new Random(from);
+        StringBuilder rows = new StringBuilder();
+        for (int i = from; i < from + count; i++) {
+            rows.append(String.format("REF%06d,NL91RABO%010d,Payment %d,%d.00,%d.00,%d.00\n",
+                i, random.nextInt(1_000_000), random.nextInt(), i, 1, i + 1));
+        }
+        return rows.toString();
+    }
+}
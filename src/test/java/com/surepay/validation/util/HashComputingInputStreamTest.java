@@ -110,5 +110,18 @@ class HashComputingInputStreamTest {
         
         assertThat(hash).matches("[0-9a-f]{32}");
     }
-}
 
+    @Test
+    void shouldProduceSameHashForSingleByteReads() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        
+        try (HashComputingInputStream hashStream = new HashComputingInputStream(new java.io.ByteArrayInputStream(data))) {
+            while (hashStream.read() != -1) {
+            }
+            assertThat(hashStream.getHash()).isEqualTo(HashComputingInputStream.computeHash(data));
+        }
+    }
+}
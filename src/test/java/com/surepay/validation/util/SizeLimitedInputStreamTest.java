@@ -0,0 +1,37 @@
+package com.surepay.validation.util;
+
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SizeLimitedInputStreamTest {
+
+    @Test
+    void shouldPassThroughStreamWithinLimit() throws Exception {
+        byte[] data = new byte[100];
+        try (InputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(data), 100)) {
+            assertThat(in.readAllBytes()).hasSize(100);
+        }
+    }
+
+    @Test
+    void shouldFailOnceLimitIsExceeded() {
+        InputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[101]), 100);
+
+        assertThatThrownBy(in::readAllBytes).isInstanceOf(FileUploadSizeException.class);
+    }
+
+    @Test
+    void shouldCountSingleByteReads() throws Exception {
+        InputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[3]), 2);
+
+        in.read();
+        in.read();
+        assertThatThrownBy(in::read).isInstanceOf(FileUploadSizeException.class);
+    }
+}
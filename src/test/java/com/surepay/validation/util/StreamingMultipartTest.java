@@ -0,0 +1,86 @@
+package com.surepay.validation.util;
+
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingMultipartTest {
+
+    private static final String CSV = "Reference,AccountNumber\n1,NL91\n";
+
+    @Test
+    void shouldStreamFilePartAfterFormFields() throws Exception {
+        MockHttpServletRequest request = request("""
+            --B\r
+            Content-Disposition: form-data; name="comment"\r
+            \r
+            monthly\r
+            --B\r
+            Content-Disposition: form-data; name="file"; filename="statements.csv"\r
+            Content-Type: text/csv\r
+            \r
+            """ + CSV + "\r\n--B--\r\n");
+
+        Optional<StreamingMultipart.FilePart> part = StreamingMultipart.openFilePart(request, 1024);
+
+        assertThat(part).isPresent();
+        assertThat(part.get().filename()).isEqualTo("statements.csv");
+        assertThat(part.get().contentType()).isEqualTo("text/csv");
+        assertThat(part.get().size()).isEqualTo(-1);
+        try (InputStream in = part.get().stream()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(CSV);
+        }
+    }
+
+    @Test
+    void shouldTakeSizeFromPartContentLength() throws Exception {
+        MockHttpServletRequest request = request("""
+            --B\r
+            Content-Disposition: form-data; name="file"; filename="statements.csv"\r
+            Content-Length: %d\r
+            \r
+            """.formatted(CSV.length()) + CSV + "\r\n--B--\r\n");
+
+        assertThat(StreamingMultipart.openFilePart(request, 1024).orElseThrow().size()).isEqualTo(CSV.length());
+    }
+
+    @Test
+    void shouldReturnEmptyWithoutFilePart() throws Exception {
+        MockHttpServletRequest request = request("""
+            --B\r
+            Content-Disposition: form-data; name="comment"\r
+            \r
+            monthly\r
+            --B--\r
+            """);
+
+        assertThat(StreamingMultipart.openFilePart(request, 1024)).isEmpty();
+    }
+
+    @Test
+    void shouldFailWhenFilePartExceedsLimit() throws Exception {
+        MockHttpServletRequest request = request("""
+            --B\r
+            Content-Disposition: form-data; name="file"; filename="statements.csv"\r
+            \r
+            """ + CSV + "\r\n--B--\r\n");
+
+        InputStream in = StreamingMultipart.openFilePart(request, 10).orElseThrow().stream();
+
+        assertThatThrownBy(in::readAllBytes).isInstanceOf(FileUploadSizeException.class);
+    }
+
+    private static MockHttpServletRequest request(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/validation/validate/stream");
+        request.setContentType("multipart/form-data; boundary=B");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,74 @@
+package com.surepay.validation.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeHashTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, TreeHash.CHUNK_SIZE - 1, TreeHash.CHUNK_SIZE, TreeHash.CHUNK_SIZE + 1, 2 * TreeHash.CHUNK_SIZE + 17})
+    void shouldProduceSameDigestForFileStreamAndArray(int size) throws Exception {
+        byte[] data = randomBytes(size);
+        Path file = Files.write(directory.resolve("data-" + size), data);
+
+        String expected = TreeHash.of(data);
+
+        assertThat(expected).hasSize(32);
+        assertThat(TreeHash.of(file)).isEqualTo(expected);
+        assertThat(HashComputingInputStream.computeHash(data)).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldHashFilesConcurrentlyWithSharedReaders() throws Exception {
+        byte[] data = randomBytes(3 * TreeHash.CHUNK_SIZE + 5);
+        Path file = Files.write(directory.resolve("shared"), data);
+        String expected = TreeHash.of(data);
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> hashes = IntStream.range(0, 16)
+                .mapToObj(i -> callers.submit(() -> TreeHash.of(file)))
+                .toList();
+            for (Future<String> hash : hashes) {
+                assertThat(hash.get()).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void shouldDistinguishContentThatOnlyDiffersInLength() {
+        assertThat(TreeHash.of(new byte[0])).isNotEqualTo(TreeHash.of(new byte[1]));
+        assertThat(TreeHash.of(new byte[TreeHash.CHUNK_SIZE])).isNotEqualTo(TreeHash.of(new byte[TreeHash.CHUNK_SIZE + 1]));
+    }
+
+    @Test
+    void shouldDependOnChunkOrder() {
+        byte[] data = randomBytes(2 * TreeHash.CHUNK_SIZE);
+        byte[] swapped = new byte[data.length];
+        System.arraycopy(data, TreeHash.CHUNK_SIZE, swapped, 0, TreeHash.CHUNK_SIZE);
+        System.arraycopy(data, 0, swapped, TreeHash.CHUNK_SIZE, TreeHash.CHUNK_SIZE);
+
+        assertThat(TreeHash.of(swapped)).isNotEqualTo(TreeHash.of(data));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}